@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialization and estimate paths of the CPC sketch.
+ * The CPC sketch is heap only; the compressed image is read in place by the {@link CpcWrapper}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpcSketchBenchmark {
+
+  @Param({"11", "16"})
+  int lgK;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private CpcSketch updateSketch;
+  private CpcSketch sourceA;
+  private CpcSketch sourceB;
+  private Memory compactMem;
+  private long datum;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    updateSketch = new CpcSketch(lgK);
+    sourceA = new CpcSketch(lgK);
+    sourceB = new CpcSketch(lgK);
+    for (int i = 0; i < n; i++) {
+      sourceA.update(i);
+      sourceB.update(i + (n / 2));
+    }
+    compactMem = Memory.wrap(sourceB.toByteArray());
+    datum = 0;
+  }
+
+  @Benchmark
+  public CpcSketch update() {
+    updateSketch.update(datum++);
+    return updateSketch;
+  }
+
+  @Benchmark
+  public CpcSketch union() {
+    final CpcUnion union = new CpcUnion(lgK);
+    union.update(sourceA);
+    union.update(sourceB);
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sourceB.toByteArray();
+  }
+
+  @Benchmark
+  public CpcSketch heapify() {
+    return CpcSketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public double wrapAndGetEstimate() {
+    return new CpcWrapper(compactMem).getEstimate();
+  }
+
+  @Benchmark
+  public double getEstimate() {
+    return sourceA.getEstimate();
+  }
+
+}
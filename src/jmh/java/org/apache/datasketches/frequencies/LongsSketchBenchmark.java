@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.frequencies;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, merge, serialization and query paths of the frequent
+ * items sketch for longs. The input follows a geometric-like skew so that the sketch
+ * sees both heavy hitters and a long tail.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongsSketchBenchmark {
+  private static final int NUM_VALUES = 1 << 16; // power of 2
+
+  @Param({"1024", "65536"})
+  int maxMapSize;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private final long[] values = new long[NUM_VALUES];
+  private LongsSketch updateSketch;
+  private LongsSketch sourceA;
+  private LongsSketch sourceB;
+  private Memory compactMem;
+  private int index;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    final Random rand = new Random(1);
+    for (int i = 0; i < NUM_VALUES; i++) {
+      values[i] = Long.numberOfLeadingZeros(rand.nextLong()) * 1000L + rand.nextInt(1000);
+    }
+    updateSketch = new LongsSketch(maxMapSize);
+    sourceA = new LongsSketch(maxMapSize);
+    sourceB = new LongsSketch(maxMapSize);
+    for (int i = 0; i < n; i++) {
+      sourceA.update(values[i & (NUM_VALUES - 1)]);
+      sourceB.update(values[(i * 7) & (NUM_VALUES - 1)]);
+    }
+    compactMem = Memory.wrap(sourceB.toByteArray());
+    index = 0;
+  }
+
+  @Benchmark
+  public LongsSketch update() {
+    updateSketch.update(values[index++ & (NUM_VALUES - 1)]);
+    return updateSketch;
+  }
+
+  @Benchmark
+  public LongsSketch merge() {
+    final LongsSketch sketch = new LongsSketch(maxMapSize);
+    sketch.merge(sourceA);
+    sketch.merge(sourceB);
+    return sketch;
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sourceB.toByteArray();
+  }
+
+  @Benchmark
+  public LongsSketch getInstance() {
+    return LongsSketch.getInstance(compactMem);
+  }
+
+  @Benchmark
+  public long getEstimate() {
+    return sourceA.getEstimate(values[index++ & (NUM_VALUES - 1)]);
+  }
+
+  @Benchmark
+  public LongsSketch.Row[] getFrequentItems() {
+    return sourceA.getFrequentItems(ErrorType.NO_FALSE_POSITIVES);
+  }
+
+}
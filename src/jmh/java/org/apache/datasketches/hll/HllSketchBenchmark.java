@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableDirectHandle;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialization and estimate paths of the HLL sketch
+ * for each of the target HLL types, both on the heap and off-heap in direct memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HllSketchBenchmark {
+
+  @Param({"12", "21"})
+  int lgK;
+
+  @Param({"HLL_4", "HLL_6", "HLL_8"})
+  TgtHllType type;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  @Param({"heap", "direct"})
+  String memory;
+
+  private final WritableDirectHandle[] handles = new WritableDirectHandle[4];
+  private HllSketch updateSketch;
+  private HllSketch sourceA;
+  private HllSketch sourceB;
+  private Union union;
+  private Memory compactMem;
+  private long datum;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    final boolean direct = memory.equals("direct");
+    final int updateBytes = HllSketch.getMaxUpdatableSerializationBytes(lgK, type);
+    updateSketch = direct
+        ? new HllSketch(lgK, type, allocate(0, updateBytes))
+        : new HllSketch(lgK, type);
+    sourceA = direct
+        ? new HllSketch(lgK, type, allocate(1, updateBytes))
+        : new HllSketch(lgK, type);
+    sourceB = new HllSketch(lgK, type);
+    for (int i = 0; i < n; i++) {
+      sourceA.update(i);
+      sourceB.update(i + (n / 2));
+    }
+    union = direct
+        ? new Union(lgK, allocate(2, Union.getMaxSerializationBytes(lgK)))
+        : new Union(lgK);
+    final byte[] compactBytes = sourceB.toCompactByteArray();
+    if (direct) {
+      final WritableMemory wmem = allocate(3, compactBytes.length);
+      wmem.putByteArray(0, compactBytes, 0, compactBytes.length);
+      compactMem = wmem;
+    } else {
+      compactMem = Memory.wrap(compactBytes);
+    }
+    datum = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    for (int i = 0; i < handles.length; i++) {
+      if (handles[i] != null) {
+        handles[i].close();
+        handles[i] = null;
+      }
+    }
+  }
+
+  @Benchmark
+  public HllSketch update() {
+    updateSketch.update(datum++);
+    return updateSketch;
+  }
+
+  @Benchmark
+  public double union() {
+    union.reset();
+    union.update(sourceA);
+    union.update(sourceB);
+    return union.getEstimate();
+  }
+
+  @Benchmark
+  public byte[] toCompactByteArray() {
+    return sourceB.toCompactByteArray();
+  }
+
+  @Benchmark
+  public HllSketch heapify() {
+    return HllSketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public double wrapAndGetEstimate() {
+    return HllSketch.wrap(compactMem).getEstimate();
+  }
+
+  @Benchmark
+  public double getEstimate() {
+    return sourceA.getEstimate();
+  }
+
+  @Benchmark
+  public double getCompositeEstimate() {
+    return sourceA.getCompositeEstimate();
+  }
+
+  @Benchmark
+  public double getImprovedRawEstimate() {
+    return sourceA.getImprovedRawEstimate();
+  }
+
+  private WritableMemory allocate(final int index, final int bytes) {
+    handles[index] = WritableMemory.allocateDirect(bytes);
+    return handles[index].get();
+  }
+
+}
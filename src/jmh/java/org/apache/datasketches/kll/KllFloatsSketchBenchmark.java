@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, merge, serialization and query paths of the KLL floats sketch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KllFloatsSketchBenchmark {
+  private static final int NUM_VALUES = 1 << 16; // power of 2
+  private static final double[] FRACTIONS = {0.5, 0.9, 0.99, 0.999};
+  private static final float[] SPLIT_POINTS = {0.1f, 0.25f, 0.5f, 0.75f, 0.9f};
+
+  @Param({"200", "1000"})
+  int k;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private final float[] values = new float[NUM_VALUES];
+  private KllFloatsSketch updateSketch;
+  private KllFloatsSketch sourceA;
+  private KllFloatsSketch sourceB;
+  private Memory compactMem;
+  private int index;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    final Random rand = new Random(1);
+    for (int i = 0; i < NUM_VALUES; i++) {
+      values[i] = rand.nextFloat();
+    }
+    updateSketch = new KllFloatsSketch(k);
+    sourceA = new KllFloatsSketch(k);
+    sourceB = new KllFloatsSketch(k);
+    for (int i = 0; i < n; i++) {
+      sourceA.update(rand.nextFloat());
+      sourceB.update(rand.nextFloat());
+    }
+    compactMem = Memory.wrap(sourceB.toByteArray());
+    index = 0;
+  }
+
+  @Benchmark
+  public KllFloatsSketch update() {
+    updateSketch.update(values[index++ & (NUM_VALUES - 1)]);
+    return updateSketch;
+  }
+
+  @Benchmark
+  public KllFloatsSketch merge() {
+    final KllFloatsSketch sketch = new KllFloatsSketch(k);
+    sketch.merge(sourceA);
+    sketch.merge(sourceB);
+    return sketch;
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sourceB.toByteArray();
+  }
+
+  @Benchmark
+  public KllFloatsSketch heapify() {
+    return KllFloatsSketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public float getQuantile() {
+    return sourceA.getQuantile(0.99);
+  }
+
+  @Benchmark
+  public float[] getQuantiles() {
+    return sourceA.getQuantiles(FRACTIONS);
+  }
+
+  @Benchmark
+  public double getRank() {
+    return sourceA.getRank(0.5f);
+  }
+
+  @Benchmark
+  public double[] getCDF() {
+    return sourceA.getCDF(SPLIT_POINTS);
+  }
+
+}
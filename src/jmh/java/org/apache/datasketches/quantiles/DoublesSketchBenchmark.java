@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.quantiles;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableDirectHandle;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialization and query paths of the classic
+ * doubles quantiles sketch, both on the heap and off-heap in direct memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoublesSketchBenchmark {
+  private static final int NUM_VALUES = 1 << 16; // power of 2
+  private static final double[] FRACTIONS = {0.5, 0.9, 0.99, 0.999};
+  private static final double[] SPLIT_POINTS = {0.1, 0.25, 0.5, 0.75, 0.9};
+
+  @Param({"128", "1024"})
+  int k;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  @Param({"heap", "direct"})
+  String memory;
+
+  private final double[] values = new double[NUM_VALUES];
+  private final WritableDirectHandle[] handles = new WritableDirectHandle[4];
+  private UpdateDoublesSketch updateSketch;
+  private UpdateDoublesSketch sourceA;
+  private UpdateDoublesSketch sourceB;
+  private DoublesUnion union;
+  private Memory compactMem;
+  private int index;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    final boolean direct = memory.equals("direct");
+    final Random rand = new Random(1);
+    for (int i = 0; i < NUM_VALUES; i++) {
+      values[i] = rand.nextDouble();
+    }
+    final DoublesSketchBuilder bldr = DoublesSketch.builder().setK(k);
+    // large enough to avoid requests for more memory during the measurements
+    final int updateBytes = DoublesSketch.getUpdatableStorageBytes(k, 1L << 40);
+    updateSketch = direct ? bldr.build(allocate(0, updateBytes)) : bldr.build();
+    sourceA = direct ? bldr.build(allocate(1, updateBytes)) : bldr.build();
+    sourceB = bldr.build();
+    for (int i = 0; i < n; i++) {
+      sourceA.update(rand.nextDouble());
+      sourceB.update(rand.nextDouble());
+    }
+    final DoublesUnionBuilder unionBldr = DoublesUnion.builder().setMaxK(k);
+    union = direct ? unionBldr.build(allocate(2, updateBytes)) : unionBldr.build();
+    final byte[] compactBytes = sourceB.toByteArray(true);
+    if (direct) {
+      final WritableMemory wmem = allocate(3, compactBytes.length);
+      wmem.putByteArray(0, compactBytes, 0, compactBytes.length);
+      compactMem = wmem;
+    } else {
+      compactMem = Memory.wrap(compactBytes);
+    }
+    index = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    for (int i = 0; i < handles.length; i++) {
+      if (handles[i] != null) {
+        handles[i].close();
+        handles[i] = null;
+      }
+    }
+  }
+
+  @Benchmark
+  public UpdateDoublesSketch update() {
+    updateSketch.update(values[index++ & (NUM_VALUES - 1)]);
+    return updateSketch;
+  }
+
+  @Benchmark
+  public UpdateDoublesSketch union() {
+    union.reset();
+    union.update(sourceA);
+    union.update(sourceB);
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sourceB.toByteArray(true);
+  }
+
+  @Benchmark
+  public DoublesSketch heapify() {
+    return DoublesSketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public double wrapAndGetQuantile() {
+    return DoublesSketch.wrap(compactMem).getQuantile(0.99);
+  }
+
+  @Benchmark
+  public double getQuantile() {
+    return sourceA.getQuantile(0.99);
+  }
+
+  @Benchmark
+  public double[] getQuantiles() {
+    return sourceA.getQuantiles(FRACTIONS);
+  }
+
+  @Benchmark
+  public double[] getCDF() {
+    return sourceA.getCDF(SPLIT_POINTS);
+  }
+
+  private WritableMemory allocate(final int index, final int bytes) {
+    handles[index] = WritableMemory.allocateDirect(bytes);
+    return handles[index].get();
+  }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableDirectHandle;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialization and estimate paths of the Theta sketch,
+ * both on the heap and off-heap in direct memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThetaSketchBenchmark {
+  private static final int NUM_PARTITIONS = 256;
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  @Param({"heap", "direct"})
+  String memory;
+
+  private final WritableDirectHandle[] handles = new WritableDirectHandle[4];
+  private UpdateSketch updateSketch;
+  private UpdateSketch sourceA;
+  private CompactSketch sourceB;
+  private Union union;
+  private Memory compactMem;
+  private final List<Sketch> partitions = new ArrayList<>();
+  private long datum;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    final boolean direct = memory.equals("direct");
+    final int k = 1 << lgK;
+    final UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(k);
+    final int updateBytes = Sketch.getMaxUpdateSketchBytes(k);
+    updateSketch = direct ? bldr.build(allocate(0, updateBytes)) : bldr.build();
+    sourceA = direct ? bldr.build(allocate(1, updateBytes)) : bldr.build();
+    final UpdateSketch tmp = bldr.build();
+    for (int i = 0; i < n; i++) {
+      sourceA.update(i);
+      tmp.update(i + (n / 2));
+    }
+    sourceB = tmp.compact(true, null);
+    final SetOperationBuilder setOpBldr = SetOperation.builder().setNominalEntries(k);
+    union = direct
+        ? setOpBldr.buildUnion(allocate(2, SetOperation.getMaxUnionBytes(k)))
+        : setOpBldr.buildUnion();
+    final byte[] compactBytes = sourceB.toByteArray();
+    if (direct) {
+      final WritableMemory wmem = allocate(3, compactBytes.length);
+      wmem.putByteArray(0, compactBytes, 0, compactBytes.length);
+      compactMem = wmem;
+    } else {
+      compactMem = Memory.wrap(compactBytes);
+    }
+    final UpdateSketch[] parts = new UpdateSketch[NUM_PARTITIONS];
+    for (int p = 0; p < NUM_PARTITIONS; p++) { parts[p] = bldr.build(); }
+    for (int i = 0; i < n; i++) { parts[i % NUM_PARTITIONS].update(i); }
+    partitions.clear();
+    for (int p = 0; p < NUM_PARTITIONS; p++) { partitions.add(parts[p].compact(true, null)); }
+    datum = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    for (int i = 0; i < handles.length; i++) {
+      if (handles[i] != null) {
+        handles[i].close();
+        handles[i] = null;
+      }
+    }
+  }
+
+  @Benchmark
+  public UpdateSketch update() {
+    updateSketch.update(datum++);
+    return updateSketch;
+  }
+
+  @Benchmark
+  public CompactSketch union() {
+    union.reset();
+    union.update(sourceA);
+    union.update(sourceB);
+    return union.getResult();
+  }
+
+  @Benchmark
+  public CompactSketch unionManySequential() {
+    union.reset();
+    for (final Sketch sketch : partitions) { union.update(sketch); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public CompactSketch unionManyBatch() {
+    union.reset();
+    return union.union(partitions);
+  }
+
+  @Benchmark
+  public CompactSketch unionManyParallel() {
+    union.reset();
+    return union.union(partitions, ForkJoinPool.commonPool());
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sourceB.toByteArray();
+  }
+
+  @Benchmark
+  public Sketch heapify() {
+    return Sketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public double wrapAndGetEstimate() {
+    return Sketch.wrap(compactMem).getEstimate();
+  }
+
+  @Benchmark
+  public double getEstimate() {
+    return sourceA.getEstimate();
+  }
+
+  private WritableMemory allocate(final int index, final int bytes) {
+    handles[index] = WritableMemory.allocateDirect(bytes);
+    return handles[index].get();
+  }
+
+}
@@ -733,6 +733,20 @@ public final class Util {
         + "\" must be between 0.0 inclusive and 1.0 inclusive: " + p);
   }
 
+  /**
+   * Checks that the given range lies within an array or buffer of the given size.
+   *
+   * @param offset the index of the first element of the range
+   * @param length the number of elements in the range
+   * @param size the size of the array or buffer
+   */
+  public static void checkBounds(final long offset, final long length, final long size) {
+    if ((offset | length | (offset + length) | (size - (offset + length))) < 0) {
+      throw new SketchesArgumentException("Range out of bounds: offset: " + offset
+          + ", length: " + length + ", size: " + size);
+    }
+  }
+
   /**
    * Unsigned compare with longs.
    * @param n1 A long to be treated as if unsigned.
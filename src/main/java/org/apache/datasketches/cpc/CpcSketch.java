@@ -23,6 +23,7 @@ import static java.lang.Math.log;
 import static java.lang.Math.sqrt;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
+import static org.apache.datasketches.Util.checkBounds;
 import static org.apache.datasketches.Util.checkSeedHashes;
 import static org.apache.datasketches.Util.computeSeedHash;
 import static org.apache.datasketches.Util.invPow2;
@@ -400,6 +401,58 @@ public final class CpcSketch {
     hashUpdate(arr[0], arr[1]);
   }
 
+  /**
+   * Present an item that has already been hashed to the given 64-bit hash. This avoids hashing
+   * the item again when the hash is already known, for example from partitioning.
+   *
+   * <p>The low <i>lgK</i> bits of the hash select the row and the column is the number of
+   * leading zeros of the remaining upper bits. The hash must be uniformly distributed over all
+   * 64 bits, and all sketches that are merged must be fed hashes from the same function and seed.
+   * These sketches are not compatible with sketches fed through the other update methods, and
+   * the seed of this sketch plays no part in the hash.</p>
+   *
+   * @param hash64 the 64-bit hash of the item
+   */
+  public void updateWithHash(final long hash64) {
+    final long rowMask = (1L << lgK) - 1L;
+    //the low lgK bits are the row, so the column counts only the leading zeros above them
+    hashUpdate(hash64, hash64 | rowMask);
+  }
+
+  /**
+   * Present an item that has already been hashed to the given 128-bit hash.
+   *
+   * <p>The low <i>lgK</i> bits of <i>hash0</i> select the row and the column is the number of
+   * leading zeros of <i>hash1</i>, capped at 63. Given the two longs returned by
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} with the seed of this sketch,
+   * this is identical to the other update methods.</p>
+   *
+   * @param hash0 the first 64 bits of the hash of the item
+   * @param hash1 the second 64 bits of the hash of the item
+   */
+  public void updateWithHash(final long hash0, final long hash1) {
+    hashUpdate(hash0, hash1);
+  }
+
+  /**
+   * Present the items that have already been hashed to the 64-bit hashes in the given range of
+   * the array. This is equivalent to calling {@link #updateWithHash(long)} for each of them in
+   * order.
+   *
+   * @param hashes the array of 64-bit hashes
+   * @param offset the index of the first hash
+   * @param length the number of hashes
+   */
+  public void updateWithHash(final long[] hashes, final int offset, final int length) {
+    checkBounds(offset, length, hashes.length);
+    final long rowMask = (1L << lgK) - 1L;
+    final int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      final long hash64 = hashes[i];
+      hashUpdate(hash64, hash64 | rowMask);
+    }
+  }
+
   /**
    * Convience function that this Sketch is valid. This is a troubleshooting tool
    * for sketches that have been heapified from serialized images.
@@ -93,6 +93,22 @@ public final class MurmurHash3 implements Serializable {
     return hashState.finalMix128(k1, 0, longs << 3); //convert to bytes
   }
 
+  //--Hash of a single long--------------------------------------------
+  /**
+   * Returns the 128-bit hash of the given long in the given array of size 2. The result is the
+   * same as that of {@link #hash(long[], long)} with an array holding only the given long, but
+   * no array is allocated, which matters when hashing many items one at a time.
+   *
+   * @param key The input long.
+   * @param seed A long valued seed.
+   * @param hashOut The array of size 2 that receives the hash.
+   * @return the given hashOut array.
+   */
+  public static long[] hash(final long key, final long seed, final long[] hashOut) {
+    final HashState hashState = new HashState(seed, seed);
+    return hashState.finalMix128(key, 0, Long.BYTES, hashOut);
+  }
+
   //--Hash of int[]----------------------------------------------------
   /**
    * Returns a long array of size 2, which is a 128-bit hash of the input.
@@ -253,6 +269,11 @@ public final class MurmurHash3 implements Serializable {
     }
 
     long[] finalMix128(final long k1, final long k2, final long inputLengthBytes) {
+      return finalMix128(k1, k2, inputLengthBytes, new long[2]);
+    }
+
+    long[] finalMix128(final long k1, final long k2, final long inputLengthBytes,
+        final long[] hashOut) {
       h1 ^= mixK1(k1);
       h2 ^= mixK2(k2);
       h1 ^= inputLengthBytes;
@@ -263,7 +284,9 @@ public final class MurmurHash3 implements Serializable {
       h2 = finalMix64(h2);
       h1 += h2;
       h2 += h1;
-      return new long[] { h1, h2 };
+      hashOut[0] = h1;
+      hashOut[1] = h2;
+      return hashOut;
     }
 
     /**
@@ -41,6 +41,11 @@ abstract class AbstractCoupons extends HllSketchImpl {
     return getEstimate();
   }
 
+  @Override
+  double getImprovedRawEstimate() {
+    return getEstimate();
+  }
+
   abstract int getCouponCount();
 
   abstract int[] getCouponIntArr();
@@ -83,6 +83,51 @@ abstract class AbstractHllArray extends HllSketchImpl {
     return HllEstimators.hllCompositeEstimate(this);
   }
 
+  /**
+   * This is Ertl's improved raw estimator, computed from the histogram of the register values.
+   * @return the improved raw estimate
+   */
+  @Override
+  double getImprovedRawEstimate() {
+    return HllEstimators.hllImprovedRawEstimate(lgConfigK, getRegisterHistogram());
+  }
+
+  /**
+   * Returns the histogram of the actual register values, where entry <i>v</i> is the number of
+   * slots with the value <i>v</i>. This computes it with one pass over the slots. The heap
+   * implementations keep the result and maintain it incrementally from then on.
+   * @return the histogram of the actual register values, of length 64
+   */
+  int[] getRegisterHistogram() {
+    final int[] histogram = new int[64];
+    final PairIterator itr = iterator();
+    while (itr.nextAll()) {
+      histogram[itr.getValue()]++;
+    }
+    return histogram;
+  }
+
+  /**
+   * Moves one slot of the register histogram from the old value to the new value, if the
+   * histogram is being maintained. It is not maintained by the direct implementations.
+   * @param oldValue the old actual value of the slot
+   * @param newValue the new actual value of the slot
+   */
+  void updateRegisterHistogram(final int oldValue, final int newValue) { }
+
+  /**
+   * Updates with the coupons in the given range in order, as repeated calls of
+   * couponUpdate(int) would. The HLL mode is final, so the implementation is not replaced.
+   * @param coupons the coupons, none of which may be empty
+   * @param from the index of the first coupon
+   * @param to one past the index of the last coupon
+   */
+  void couponUpdate(final int[] coupons, final int from, final int to) {
+    for (int i = from; i < to; i++) {
+      couponUpdate(coupons[i]);
+    }
+  }
+
   abstract int getCurMin();
 
   @Override
@@ -248,5 +293,6 @@ abstract class AbstractHllArray extends HllSketchImpl {
     else               { host.putKxQ1(kxq1 -= invPow2(oldValue)); }
     if (newValue < 32) { host.putKxQ0(kxq0 += invPow2(newValue)); }
     else               { host.putKxQ1(kxq1 += invPow2(newValue)); }
+    host.updateRegisterHistogram(oldValue, newValue);
   }
 }
@@ -25,6 +25,10 @@ import static org.apache.datasketches.hash.MurmurHash3.hash;
 import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
 import static org.apache.datasketches.hll.HllUtil.KEY_MASK_26;
 
+import java.nio.LongBuffer;
+
+import org.apache.datasketches.Util;
+import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.Memory;
 
 /**
@@ -34,9 +38,23 @@ import org.apache.datasketches.memory.Memory;
  * @author Kevin Lang
  */
 abstract class BaseHllSketch {
+  // number of items hashed at a time by the batch updates
+  static final int BATCH_SIZE = 1024;
 
   abstract void couponUpdate(int coupon);
 
+  /**
+   * Updates with the given coupons in order. The result must be the same as that of calling
+   * {@link #couponUpdate(int)} for each of them.
+   * @param coupons the coupons
+   * @param length the number of coupons, starting at index zero
+   */
+  void couponUpdate(final int[] coupons, final int length) {
+    for (int i = 0; i < length; i++) {
+      couponUpdate(coupons[i]);
+    }
+  }
+
   /**
    * Gets the size in bytes of the current sketch when serialized using
    * <i>toCompactByteArray()</i>.
@@ -55,6 +73,19 @@ abstract class BaseHllSketch {
    */
   public abstract double getCompositeEstimate();
 
+  /**
+   * Returns the improved raw estimate of Otmar Ertl, which is computed from the histogram of the
+   * HLL register values and needs no empirical correction tables. Like the composite estimator
+   * it does not depend on the order of updates, so it also applies after union operations.
+   * In the LIST and SET modes this returns the same value as {@link #getEstimate()}.
+   *
+   * <p>An updatable sketch on the heap builds the histogram on the first call and then maintains
+   * it with each register change, so later calls cost O(64). A sketch in Memory, or a Union after
+   * a merge, recomputes the histogram with one pass over the registers.</p>
+   * @return the improved raw estimate
+   */
+  public abstract double getImprovedRawEstimate();
+
   /**
    * Returns the current mode of the sketch: LIST, SET, HLL
    * @return the current mode of the sketch: LIST, SET, HLL
@@ -374,13 +405,130 @@ abstract class BaseHllSketch {
     couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
   }
 
-  private static final int coupon(final long[] hash) {
-    final int addr26 = (int) ((hash[0] & KEY_MASK_26));
-    final int lz = Long.numberOfLeadingZeros(hash[1]);
+  /**
+   * Present each long in the given range of the array as a potential unique item.
+   * This is equivalent to calling {@link #update(long)} for each of them in order, but the items
+   * are hashed a batch at a time without allocating per item, and in HLL mode the registers are
+   * updated in a tight loop.
+   *
+   * <p>Note: this is different from {@link #update(long[])}, which presents the whole array as
+   * a single item.</p>
+   *
+   * @param data the array of items
+   * @param offset the index of the first item
+   * @param length the number of items
+   */
+  public void update(final long[] data, final int offset, final int length) {
+    Util.checkBounds(offset, length, data.length);
+    if (length == 0) { return; }
+    final int[] coupons = new int[Math.min(length, BATCH_SIZE)];
+    final long[] hashOut = new long[2];
+    for (int done = 0; done < length; ) {
+      final int n = Math.min(coupons.length, length - done);
+      for (int i = 0; i < n; i++) {
+        coupons[i] = coupon(MurmurHash3.hash(data[offset + done + i], DEFAULT_UPDATE_SEED, hashOut));
+      }
+      couponUpdate(coupons, n);
+      done += n;
+    }
+  }
+
+  /**
+   * Present each of the remaining longs of the given buffer as a potential unique item, as
+   * {@link #update(long[], int, int)} does. A ByteBuffer of longs can be given as
+   * <i>byteBuffer.asLongBuffer()</i>. The position of the buffer is advanced to its limit.
+   *
+   * @param data the buffer of items
+   */
+  public void update(final LongBuffer data) {
+    if (data.hasArray()) {
+      final int length = data.remaining();
+      update(data.array(), data.arrayOffset() + data.position(), length);
+      data.position(data.position() + length);
+      return;
+    }
+    final long[] chunk = new long[Math.min(data.remaining(), BATCH_SIZE)];
+    while (data.hasRemaining()) {
+      final int n = Math.min(chunk.length, data.remaining());
+      data.get(chunk, 0, n);
+      update(chunk, 0, n);
+    }
+  }
+
+  /**
+   * Present an item that has already been hashed to the given 64-bit hash. This avoids hashing
+   * the item again when the hash is already known, for example from partitioning.
+   *
+   * <p>The low 26 bits of the hash select the slot, of which the sketch uses the low
+   * <i>lgConfigK</i> bits. The register value is one plus the number of leading zeros of the
+   * upper 38 bits, which limits it to 39, enough for about 2<sup>38</sup> &times; <i>K</i>
+   * distinct items. The hash must be uniformly distributed over all 64 bits, and all sketches
+   * that are merged must be fed hashes from the same function and seed. These sketches are not
+   * compatible with sketches fed through the other update methods.</p>
+   *
+   * @param hash64 the 64-bit hash of the item
+   */
+  public void updateWithHash(final long hash64) {
+    couponUpdate(coupon(hash64));
+  }
+
+  /**
+   * Present an item that has already been hashed to the given 128-bit hash.
+   *
+   * <p>The low 26 bits of <i>hash0</i> select the slot and the register value is one plus the
+   * number of leading zeros of <i>hash1</i>, capped at 63. Given the two longs returned by
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} with the
+   * {@link org.apache.datasketches.Util#DEFAULT_UPDATE_SEED DEFAULT_UPDATE_SEED}, this is
+   * identical to the other update methods, so such sketches can be merged with any other.</p>
+   *
+   * @param hash0 the first 64 bits of the hash of the item
+   * @param hash1 the second 64 bits of the hash of the item
+   */
+  public void updateWithHash(final long hash0, final long hash1) {
+    couponUpdate(coupon(hash0, hash1));
+  }
+
+  /**
+   * Present the items that have already been hashed to the 64-bit hashes in the given range of
+   * the array. This is equivalent to calling {@link #updateWithHash(long)} for each of them in
+   * order, but in HLL mode the registers are updated in a tight loop.
+   *
+   * @param hashes the array of 64-bit hashes
+   * @param offset the index of the first hash
+   * @param length the number of hashes
+   */
+  public void updateWithHash(final long[] hashes, final int offset, final int length) {
+    Util.checkBounds(offset, length, hashes.length);
+    if (length == 0) { return; }
+    final int[] coupons = new int[Math.min(length, BATCH_SIZE)];
+    for (int done = 0; done < length; ) {
+      final int n = Math.min(coupons.length, length - done);
+      for (int i = 0; i < n; i++) {
+        coupons[i] = coupon(hashes[offset + done + i]);
+      }
+      couponUpdate(coupons, n);
+      done += n;
+    }
+  }
+
+  private static final int coupon(final long hash64) {
+    final int addr26 = (int) (hash64 & KEY_MASK_26);
+    //the low 26 bits are the address, so at most 38 leading zeros are counted
+    final int value = Long.numberOfLeadingZeros(hash64 | KEY_MASK_26) + 1;
+    return (value << KEY_BITS_26) | addr26;
+  }
+
+  private static final int coupon(final long hash0, final long hash1) {
+    final int addr26 = (int) ((hash0 & KEY_MASK_26));
+    final int lz = Long.numberOfLeadingZeros(hash1);
     final int value = ((lz > 62 ? 62 : lz) + 1);
     return (value << KEY_BITS_26) | addr26;
   }
 
+  static final int coupon(final long[] hash) {
+    return coupon(hash[0], hash[1]);
+  }
+
 
 
 }
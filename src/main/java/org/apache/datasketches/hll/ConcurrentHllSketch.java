@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllUtil.EMPTY;
+import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * An HLL sketch that many threads can update concurrently without locking.
+ *
+ * <p>The sketch keeps the <i>K</i> registers of an HLL_8 sketch packed eight to a long in an
+ * AtomicLongArray. An update computes the slot and value of its coupon exactly as the
+ * {@link HllSketch} does and raises the register with a compare-and-set loop. Once the sketch has
+ * warmed up almost all updates leave their register unchanged, so they only read the array and
+ * no thread waits on another.</p>
+ *
+ * <p>Unlike the {@link HllSketch}, this sketch starts directly in the dense HLL mode, so it
+ * holds <i>K</i> bytes of registers from the start, and it cannot use the HIP estimator, which
+ * depends on the order of the updates. Its estimates are those of an HLL_8 sketch marked as out of
+ * order, the same as the result of a {@link Union}.</p>
+ *
+ * <p>The queries and the serialization operate on a snapshot of the registers, which is an
+ * ordinary heap HLL_8 {@link HllSketch}. The snapshot is rebuilt only if a register has changed
+ * since it was taken, so repeated queries of a sketch that is not being updated are cheap.
+ * Each register of a snapshot is read atomically and registers only grow, so a snapshot taken
+ * during concurrent updates includes every update that completed before the query started and
+ * possibly some that ran during it.</p>
+ *
+ * <p>The {@link #reset()} method is not safe to call while other threads update the sketch.</p>
+ */
+public final class ConcurrentHllSketch extends BaseHllSketch {
+  private final int lgConfigK;
+  private final int configKmask;
+  // the HLL_8 registers, slot i in bits 8 * (i % 8) to 8 * (i % 8) + 7 of long i / 8
+  private final AtomicLongArray registers;
+  // counts the register changes; a snapshot is current if this has not changed since it was taken
+  private final LongAdder changes = new LongAdder();
+  private volatile Snapshot snapshot;
+
+  /**
+   * Constructs a new concurrent sketch with the default <i>lgConfigK</i>.
+   */
+  public ConcurrentHllSketch() {
+    this(HllSketch.DEFAULT_LG_K);
+  }
+
+  /**
+   * Constructs a new concurrent sketch with the given <i>lgConfigK</i>.
+   * @param lgConfigK The Log2 of K for the target HLL sketch. This value must be
+   * between 4 and 21 inclusively.
+   */
+  public ConcurrentHllSketch(final int lgConfigK) {
+    this.lgConfigK = HllUtil.checkLgK(lgConfigK);
+    configKmask = (1 << lgConfigK) - 1;
+    registers = new AtomicLongArray((1 << lgConfigK) >>> 3);
+  }
+
+  /**
+   * Returns a copy of the current state of this sketch as an HLL sketch of the given type.
+   * The result can be updated, serialized or given to a {@link Union} like any other
+   * HllSketch and is independent of this sketch.
+   * @param tgtHllType the TgtHllType enum
+   * @return a copy of the current state of this sketch
+   */
+  public HllSketch getResult(final TgtHllType tgtHllType) {
+    return getSnapshot().copyAs(tgtHllType);
+  }
+
+  @Override
+  public int getCompactSerializationBytes() {
+    return getSnapshot().getCompactSerializationBytes();
+  }
+
+  @Override
+  public double getCompositeEstimate() {
+    return getSnapshot().getCompositeEstimate();
+  }
+
+  @Override
+  public double getImprovedRawEstimate() {
+    return getSnapshot().getImprovedRawEstimate();
+  }
+
+  @Override
+  CurMode getCurMode() {
+    return getSnapshot().getCurMode();
+  }
+
+  @Override
+  public double getEstimate() {
+    return getSnapshot().getEstimate();
+  }
+
+  @Override
+  public TgtHllType getTgtHllType() {
+    return TgtHllType.HLL_8;
+  }
+
+  @Override
+  public int getLgConfigK() {
+    return lgConfigK;
+  }
+
+  @Override
+  public double getLowerBound(final int numStdDev) {
+    return getSnapshot().getLowerBound(numStdDev);
+  }
+
+  @Override
+  public int getUpdatableSerializationBytes() {
+    return getSnapshot().getUpdatableSerializationBytes();
+  }
+
+  @Override
+  public double getUpperBound(final int numStdDev) {
+    return getSnapshot().getUpperBound(numStdDev);
+  }
+
+  @Override
+  public boolean isCompact() {
+    return false;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return changes.sum() == 0;
+  }
+
+  @Override
+  public boolean isMemory() {
+    return false;
+  }
+
+  @Override
+  public boolean isOffHeap() {
+    return false;
+  }
+
+  @Override
+  boolean isOutOfOrder() {
+    return true;
+  }
+
+  @Override
+  public boolean isSameResource(final Memory mem) {
+    return false;
+  }
+
+  /**
+   * Resets to empty, but does not change the configured value of lgConfigK.
+   * This must not be called while other threads update the sketch.
+   */
+  @Override
+  public void reset() {
+    for (int i = 0; i < registers.length(); i++) {
+      registers.set(i, 0L);
+    }
+    changes.reset();
+    snapshot = null;
+  }
+
+  @Override
+  public byte[] toCompactByteArray() {
+    return getSnapshot().toCompactByteArray();
+  }
+
+  @Override
+  public byte[] toUpdatableByteArray() {
+    return getSnapshot().toUpdatableByteArray();
+  }
+
+  @Override
+  public String toString(final boolean summary, final boolean detail, final boolean auxDetail,
+      final boolean all) {
+    return getSnapshot().toString(summary, detail, auxDetail, all);
+  }
+
+  @Override
+  void couponUpdate(final int coupon) {
+    if (coupon == EMPTY) { return; }
+    final int newValue = coupon >>> KEY_BITS_26;
+    final int slotNo = coupon & configKmask;
+    final int index = slotNo >>> 3;
+    final int shift = (slotNo & 7) << 3;
+    long word = registers.get(index);
+    while (newValue > (int) ((word >>> shift) & 0XFFL)) {
+      final long newWord = (word & ~(0XFFL << shift)) | ((long) newValue << shift);
+      if (registers.compareAndSet(index, word, newWord)) {
+        changes.increment();
+        return;
+      }
+      word = registers.get(index);
+    }
+  }
+
+  /**
+   * Returns the current snapshot, rebuilding it if a register has changed since it was taken.
+   * The returned sketch must not be modified.
+   * @return the current snapshot
+   */
+  private HllSketch getSnapshot() {
+    // read the change count before the registers, so a change that is missed by the copy
+    // always makes the snapshot stale
+    final long version = changes.sum();
+    final Snapshot current = snapshot;
+    if ((current != null) && (current.version == version)) { return current.sketch; }
+    final HllSketch sketch;
+    if (version == 0) {
+      sketch = new HllSketch(lgConfigK, TgtHllType.HLL_8);
+    } else {
+      final Hll8Array hllArr = new Hll8Array(lgConfigK);
+      final byte[] arr = hllArr.hllByteArr;
+      for (int i = 0; i < registers.length(); i++) {
+        final long word = registers.get(i);
+        for (int j = 0; j < 8; j++) {
+          arr[(i << 3) + j] = (byte) (word >>> (j << 3));
+        }
+      }
+      hllArr.putOutOfOrder(true);
+      HllUnionKernels.rebuildCurMinNumKxQ(hllArr);
+      sketch = new HllSketch(hllArr);
+    }
+    snapshot = new Snapshot(version, sketch);
+    return sketch;
+  }
+
+  private static final class Snapshot {
+    final long version;
+    final HllSketch sketch;
+
+    Snapshot(final long version, final HllSketch sketch) {
+      this.version = version;
+      this.sketch = sketch;
+    }
+  }
+
+}
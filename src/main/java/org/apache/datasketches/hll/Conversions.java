@@ -22,16 +22,39 @@ package org.apache.datasketches.hll;
 import static org.apache.datasketches.hll.HllUtil.AUX_TOKEN;
 import static org.apache.datasketches.hll.HllUtil.EMPTY;
 import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
+import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+
+import org.apache.datasketches.Util;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Converters for one TgtHllType to another.  The source can be heap or direct, but the result is
  * always on heap. These conversions only apply to sketches in HLL (dense) mode.
  *
+ * <p>The conversions between HLL_4 and HLL_8 expand or pack eight registers per 64-bit word
+ * instead of going through the slot accessors. As in {@link HllUnionKernels}, the register
+ * arrays are read through Memory, so heap and direct sources share the same code, and the
+ * native byte order is assumed to be little-endian.</p>
+ *
  * @author Lee Rhodes
  */
 class Conversions {
+  private static final long HI_BITS = 0x8080808080808080L;
+  private static final long ONES = 0x0101010101010101L;
+  private static final long NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+  private static final double[] INV_POW2 = new double[64];
+
+  static {
+    for (int v = 0; v < 64; v++) { INV_POW2[v] = Util.invPow2(v); }
+  }
 
   static final Hll4Array convertToHll4(final AbstractHllArray srcAbsHllArr) {
+    if (srcAbsHllArr.getTgtHllType() == HLL_8) {
+      return convertHll8ToHll4(srcAbsHllArr);
+    }
     final int lgConfigK = srcAbsHllArr.getLgConfigK();
     final Hll4Array hll4Array = new Hll4Array(lgConfigK);
     hll4Array.putOutOfOrder(srcAbsHllArr.isOutOfOrder());
@@ -115,6 +138,9 @@ class Conversions {
   }
 
   static final Hll8Array convertToHll8(final AbstractHllArray srcAbsHllArr) {
+    if (srcAbsHllArr.getTgtHllType() == HLL_4) {
+      return convertHll4ToHll8(srcAbsHllArr);
+    }
     final int lgConfigK = srcAbsHllArr.lgConfigK;
     final Hll8Array hll8Array = new Hll8Array(lgConfigK);
     hll8Array.putOutOfOrder(srcAbsHllArr.isOutOfOrder());
@@ -132,4 +158,159 @@ class Conversions {
     return hll8Array;
   }
 
+  /**
+   * Converts an HLL_4 array to HLL_8. The nibbles are expanded to bytes and offset by curMin
+   * eight at a time while counting the zero registers, then the exceptions are copied from the
+   * AuxHashMap.
+   * @param src the HLL_4 array, heap or direct
+   * @return the HLL_8 array on heap
+   */
+  private static Hll8Array convertHll4ToHll8(final AbstractHllArray src) {
+    final int lgConfigK = src.lgConfigK;
+    final int k = 1 << lgConfigK;
+    final Hll8Array hll8Array = new Hll8Array(lgConfigK);
+    hll8Array.putOutOfOrder(src.isOutOfOrder());
+    final byte[] tgtArr = hll8Array.hllByteArr;
+    final WritableMemory tgtMem = WritableMemory.wrap(tgtArr);
+    final Memory srcMem = registers(src);
+    final long srcStart = src.isMemory() ? HLL_BYTE_ARR_START : 0;
+    final long curMinBytes = src.getCurMin() * ONES;
+    int numZeros = 0;
+    for (int i = 0; i < k; i += 8) {
+      final long word = spread4(srcMem.getInt(srcStart + (i >>> 1)) & 0XFFFF_FFFFL) + curMinBytes;
+      numZeros += 8 - Long.bitCount(((word | HI_BITS) - ONES) & HI_BITS);
+      tgtMem.putLong(i, word);
+    }
+    final AuxHashMap auxHashMap = src.getAuxHashMap();
+    if (auxHashMap != null) {
+      final PairIterator itr = auxHashMap.getIterator();
+      while (itr.nextValid()) {
+        tgtArr[itr.getKey()] = (byte) itr.getValue();
+      }
+    }
+    //the exceptions are larger than curMin + 14, so they do not change the count of zeros
+    double kxq0 = k;
+    double kxq1 = 0;
+    for (int i = 0; i < k; i++) {
+      final int v = tgtArr[i];
+      if (v == EMPTY) { continue; }
+      //same operations in the same order as the incremental update from zero
+      kxq0 -= 1.0;
+      if (v < 32) { kxq0 += INV_POW2[v]; }
+      else        { kxq1 += INV_POW2[v]; }
+    }
+    hll8Array.putKxQ0(kxq0);
+    hll8Array.putKxQ1(kxq1);
+    hll8Array.putNumAtCurMin(numZeros);
+    hll8Array.putHipAccum(src.getHipAccum());
+    hll8Array.putRebuildCurMinNumKxQFlag(false);
+    return hll8Array;
+  }
+
+  /**
+   * Converts an HLL_8 array to HLL_4. The first pass computes curMin, numAtCurMin and the KxQ
+   * registers together. The second pass subtracts curMin from eight registers at a time, moves
+   * the registers that do not fit in a nibble to the AuxHashMap and packs the rest to nibbles.
+   * @param src the HLL_8 array, heap or direct
+   * @return the HLL_4 array on heap
+   */
+  private static Hll4Array convertHll8ToHll4(final AbstractHllArray src) {
+    final int lgConfigK = src.lgConfigK;
+    final int k = 1 << lgConfigK;
+    final Hll4Array hll4Array = new Hll4Array(lgConfigK);
+    hll4Array.putOutOfOrder(src.isOutOfOrder());
+    final Memory srcMem = registers(src);
+    final long srcStart = src.isMemory() ? HLL_BYTE_ARR_START : 0;
+
+    //1st pass
+    int curMin = 64;
+    int numAtCurMin = 0;
+    double kxq0 = k;
+    double kxq1 = 0;
+    for (int i = 0; i < k; i += 8) {
+      final long word = srcMem.getLong(srcStart + i);
+      for (int shift = 0; shift < 64; shift += 8) {
+        final int v = (int) (word >>> shift) & 0XFF;
+        if (v != EMPTY) {
+          kxq0 -= 1.0;
+          if (v < 32) { kxq0 += INV_POW2[v]; }
+          else        { kxq1 += INV_POW2[v]; }
+        }
+        if (v > curMin) { continue; }
+        if (v < curMin) {
+          curMin = v;
+          numAtCurMin = 1;
+        } else {
+          numAtCurMin++;
+        }
+      }
+    }
+
+    //2nd pass
+    final WritableMemory tgtMem = WritableMemory.wrap(hll4Array.hllByteArr);
+    final long curMinBytes = curMin * ONES;
+    AuxHashMap auxHashMap = null;
+    for (int i = 0; i < k; i += 8) {
+      //no byte borrows, since every register is at least curMin
+      long word = srcMem.getLong(srcStart + i) - curMinBytes;
+      //the high bit of each byte is set where the byte is at least AUX_TOKEN
+      final long aux = ((word | HI_BITS) - (AUX_TOKEN * ONES)) & HI_BITS;
+      if (aux != 0) {
+        if (auxHashMap == null) {
+          auxHashMap = new HeapAuxHashMap(LG_AUX_ARR_INTS[lgConfigK], lgConfigK);
+          hll4Array.putAuxHashMap(auxHashMap, false);
+        }
+        long bits = aux;
+        while (bits != 0) {
+          final int shift = Long.numberOfTrailingZeros(bits) - 7;
+          auxHashMap.mustAdd(i + (shift >>> 3), ((int) (word >>> shift) & 0XFF) + curMin);
+          bits &= bits - 1;
+        }
+        final long mask = (aux >>> 7) * 0XFF;
+        word = (word & ~mask) | (NIBBLES & mask);
+      }
+      tgtMem.putInt(i >>> 1, pack4(word));
+    }
+
+    hll4Array.putCurMin(curMin);
+    hll4Array.putNumAtCurMin(numAtCurMin);
+    hll4Array.putKxQ0(kxq0);
+    hll4Array.putKxQ1(kxq1);
+    hll4Array.putHipAccum(src.getHipAccum());
+    hll4Array.putRebuildCurMinNumKxQFlag(false);
+    return hll4Array;
+  }
+
+  private static Memory registers(final AbstractHllArray absHllArr) {
+    return absHllArr.isMemory()
+        ? absHllArr.getMemory()
+        : Memory.wrap(((HllArray) absHllArr).hllByteArr);
+  }
+
+  /**
+   * Spreads the eight nibbles in the low 32 bits of the given word to the eight bytes of the
+   * result, least significant first.
+   * @param nibbles the packed nibbles
+   * @return the nibbles, one per byte
+   */
+  static long spread4(final long nibbles) {
+    long x = nibbles;
+    x = (x | (x << 16)) & 0X0000FFFF0000FFFFL;
+    x = (x | (x << 8)) & 0X00FF00FF00FF00FFL;
+    return (x | (x << 4)) & NIBBLES;
+  }
+
+  /**
+   * Packs the low nibbles of the eight bytes of the given word into an int, least significant
+   * first. This is the inverse of {@link #spread4(long)}.
+   * @param bytes the eight values, each less than 16
+   * @return the packed nibbles
+   */
+  static int pack4(final long bytes) {
+    long x = bytes;
+    x = (x | (x >>> 4)) & 0X00FF00FF00FF00FFL;
+    x = (x | (x >>> 8)) & 0X0000FFFF0000FFFFL;
+    return (int) (x | (x >>> 16));
+  }
+
 }
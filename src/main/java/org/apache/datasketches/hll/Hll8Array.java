@@ -71,6 +71,21 @@ class Hll8Array extends HllArray {
     return this;
   }
 
+  @Override
+  void couponUpdate(final int[] coupons, final int from, final int to) {
+    final int configKmask = (1 << lgConfigK) - 1;
+    final byte[] arr = hllByteArr;
+    for (int i = from; i < to; i++) {
+      final int coupon = coupons[i];
+      final int newValue = coupon >>> KEY_BITS_26;
+      final int slotNo = coupon & configKmask;
+      //most coupons do not raise their register once the sketch has warmed up
+      if (newValue > arr[slotNo]) {
+        updateSlotWithKxQ(slotNo, newValue);
+      }
+    }
+  }
+
   @Override
   int getNibble(final int slotNo) {
     throw new SketchesStateException("Improper access.");
@@ -48,6 +48,7 @@ abstract class HllArray extends AbstractHllArray {
   double kxq0;
   double kxq1;
   byte[] hllByteArr = null; //init by sub-classes
+  int[] registerHistogram = null; //built on first request, then maintained incrementally
   final int configKmask;
 
   /**
@@ -79,6 +80,7 @@ abstract class HllArray extends AbstractHllArray {
     kxq0 = that.getKxQ0();
     kxq1 = that.getKxQ1();
     hllByteArr = that.hllByteArr.clone(); //that.hllByteArr should never be null.
+    registerHistogram = (that.registerHistogram == null) ? null : that.registerHistogram.clone();
     final AuxHashMap thatAuxMap = that.getAuxHashMap();
     if (thatAuxMap != null) {
       putAuxHashMap(thatAuxMap.copy(), false);
@@ -184,6 +186,15 @@ abstract class HllArray extends AbstractHllArray {
     return oooFlag;
   }
 
+  @Override
+  int[] getRegisterHistogram() {
+    if (registerHistogram != null) { return registerHistogram; }
+    final int[] histogram = super.getRegisterHistogram();
+    //while a rebuild is pending the registers are still being merged into
+    if (!rebuildCurMinNumKxQ) { registerHistogram = histogram; }
+    return histogram;
+  }
+
   @Override
   boolean isSameResource(final Memory mem) {
     return false;
@@ -236,6 +247,16 @@ abstract class HllArray extends AbstractHllArray {
   @Override
   void putRebuildCurMinNumKxQFlag(final boolean rebuild) {
     rebuildCurMinNumKxQ = rebuild;
+    if (rebuild) { registerHistogram = null; }
+  }
+
+  @Override
+  void updateRegisterHistogram(final int oldValue, final int newValue) {
+    final int[] histogram = registerHistogram;
+    if (histogram != null) {
+      histogram[oldValue]--;
+      histogram[newValue]++;
+    }
   }
 
   @Override
@@ -0,0 +1,447 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.expm1;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static org.apache.datasketches.Util.invPow2;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the intersection and the Jaccard similarity of two HLL sketches directly from their
+ * registers, without building a union sketch.
+ *
+ * <p>The usual alternative is inclusion-exclusion, <i>|A &cap; B| = |A| + |B| - |A &cup; B|</i>,
+ * which subtracts estimates that each have an error proportional to their own size, so it is
+ * very inaccurate when the intersection is small. Instead, this class uses the joint maximum
+ * likelihood estimator described by Otmar Ertl in "New cardinality estimation methods for
+ * HyperLogLog sketches" (2017). Each pair of registers at the same slot of the two sketches is
+ * modeled as the result of three disjoint sets, <i>A - B</i>, <i>B - A</i> and
+ * <i>A &cap; B</i>, whose cardinalities are estimated together by maximizing the likelihood of
+ * all register pairs.</p>
+ *
+ * <p>The registers are read in one pass and reduced to five small histograms of register
+ * values, so the cost of the optimization does not depend on <i>K</i>. The sketches may be of
+ * any TgtHllType, heap or direct, and in any mode. If their <i>lgConfigK</i> differ, the
+ * registers of the larger sketch are folded to the smaller <i>lgConfigK</i>, as in a union.</p>
+ *
+ * <p>The bounds are computed from the observed Fisher information at the maximum and are for a
+ * confidence interval of 95.4%, or +/- 2 standard deviations, as in the theta
+ * JaccardSimilarity. Where one set is nearly contained in the other, the maximum is on the
+ * boundary and the Fisher information understates the spread, so the standard deviation is
+ * never taken to be less than the relative standard error of a single sketch, 1.04/sqrt(K),
+ * times the estimate.</p>
+ */
+public final class HllSimilarity {
+  private static final double[] ZEROS = {0.0, 0.0, 0.0}; // LB, Estimate, UB
+  private static final double[] ONES = {1.0, 1.0, 1.0};
+  private static final int NUM_STD_DEV = 2;
+  //register values range from 0 to 63. A value of 63 corresponds to 62 leading zeros or more.
+  private static final int MAX_VALUE = 63;
+  private static final double MIN_RATE = 1e-12;
+  private static final int MAX_ITERATIONS = 200;
+  private static final double MAX_STEP = 3.0; //in the log of a rate
+  private static final double TOLERANCE = 1e-10;
+
+  private HllSimilarity() {}
+
+  /**
+   * Estimates the cardinality of the intersection of the two given sketches with upper and lower
+   * bounds.
+   * @param sketchA given sketch A
+   * @param sketchB given sketch B
+   * @return a double array {LowerBound, Estimate, UpperBound} of the cardinality of the
+   * intersection. The Upper and Lower bounds are for a confidence interval of 95.4% or +/- 2
+   * standard deviations.
+   */
+  public static double[] intersection(final HllSketch sketchA, final HllSketch sketchB) {
+    if ((sketchA == null) || (sketchB == null) || sketchA.isEmpty() || sketchB.isEmpty()) {
+      return ZEROS.clone();
+    }
+    if (sketchA == sketchB) {
+      return new double[] {sketchA.getLowerBound(NUM_STD_DEV), sketchA.getEstimate(),
+          sketchA.getUpperBound(NUM_STD_DEV)};
+    }
+    final JointEstimate je = jointEstimate(sketchA, sketchB);
+    final double est = je.x * je.k;
+    final double sd = max(sqrt(max(je.cov[2][2], 0)) * je.k, est * je.rse());
+    final double maxUb = min(sketchA.getUpperBound(NUM_STD_DEV), sketchB.getUpperBound(NUM_STD_DEV));
+    return new double[] {max(est - (NUM_STD_DEV * sd), 0), est,
+        min(est + (NUM_STD_DEV * sd), maxUb)};
+  }
+
+  /**
+   * Computes the Jaccard similarity index <i>J(A,B) = |A &cap; B| / |A &cup; B|</i> of the two
+   * given sketches with upper and lower bounds.
+   * @param sketchA given sketch A
+   * @param sketchB given sketch B
+   * @return a double array {LowerBound, Estimate, UpperBound} of the Jaccard index.
+   * The Upper and Lower bounds are for a confidence interval of 95.4% or +/- 2 standard
+   * deviations.
+   */
+  public static double[] jaccard(final HllSketch sketchA, final HllSketch sketchB) {
+    if ((sketchA == null) || (sketchB == null)) { return ZEROS.clone(); }
+    if (sketchA == sketchB) { return ONES.clone(); }
+    if (sketchA.isEmpty() && sketchB.isEmpty()) { return ONES.clone(); }
+    if (sketchA.isEmpty() || sketchB.isEmpty()) { return ZEROS.clone(); }
+    final JointEstimate je = jointEstimate(sketchA, sketchB);
+    final double s = je.a + je.b + je.x;
+    final double est = je.x / s;
+    //delta method with the gradient of x / (a + b + x)
+    final double[] g = {-je.x / (s * s), -je.x / (s * s), (je.a + je.b) / (s * s)};
+    double var = 0;
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) { var += g[i] * je.cov[i][j] * g[j]; }
+    }
+    final double sd = max(sqrt(max(var, 0)), est * je.rse());
+    return new double[] {max(est - (NUM_STD_DEV * sd), 0), est,
+        min(est + (NUM_STD_DEV * sd), 1.0)};
+  }
+
+  /**
+   * The estimated rates per register of A - B, B - A and A &cap; B, and their covariance.
+   */
+  static final class JointEstimate {
+    final int k;
+    final double a;
+    final double b;
+    final double x;
+    final double[][] cov;
+
+    JointEstimate(final int k, final double a, final double b, final double x,
+        final double[][] cov) {
+      this.k = k;
+      this.a = a;
+      this.b = b;
+      this.x = x;
+      this.cov = cov;
+    }
+
+    //the relative standard error of a single sketch, which bounds the spread from below
+    double rse() {
+      return 1.04 / sqrt(k);
+    }
+  }
+
+  static JointEstimate jointEstimate(final HllSketch sketchA, final HllSketch sketchB) {
+    final int lgK = min(sketchA.getLgConfigK(), sketchB.getLgConfigK());
+    final int k = 1 << lgK;
+    final Histograms h = new Histograms();
+    final AbstractHllArray arrA = hllArray(sketchA);
+    final AbstractHllArray arrB = hllArray(sketchB);
+    final byte[] sparseA = (arrA == null) ? sparseRegisters(sketchA, lgK) : null;
+    final byte[] sparseB = (arrB == null) ? sparseRegisters(sketchB, lgK) : null;
+    for (int slot = 0; slot < k; slot++) {
+      final int va = (arrA == null) ? sparseA[slot] : slotValue(arrA, slot, lgK);
+      final int vb = (arrB == null) ? sparseB[slot] : slotValue(arrB, slot, lgK);
+      if (va < vb) {
+        h.aLessB[va]++;
+        h.bGreaterA[vb]++;
+      } else if (va > vb) {
+        h.aGreaterB[va]++;
+        h.bLessA[vb]++;
+      } else {
+        h.equal[va]++;
+      }
+    }
+    h.compile();
+
+    //start from an even split of the smaller sketch
+    final double ea = max(sketchA.getEstimate() / k, MIN_RATE);
+    final double eb = max(sketchB.getEstimate() / k, MIN_RATE);
+    final double x0 = min(ea, eb) / 2;
+    final double[] r = maximize(h, new double[] {ea - x0, eb - x0, x0});
+    return new JointEstimate(k, r[0], r[1], r[2], covariance(h, r));
+  }
+
+  private static AbstractHllArray hllArray(final HllSketch sketch) {
+    return (sketch.getCurMode() == CurMode.HLL) ? (AbstractHllArray) sketch.hllSketchImpl : null;
+  }
+
+  /**
+   * Returns the value of the given slot, folding the slots of a larger lgConfigK onto it.
+   * @param arr the registers
+   * @param slot the slot at the given lgK
+   * @param lgK the target lgK, which is not larger than the lgConfigK of arr
+   * @return the value of the given slot
+   */
+  private static int slotValue(final AbstractHllArray arr, final int slot, final int lgK) {
+    final int srcK = 1 << arr.getLgConfigK();
+    int v = 0;
+    for (int s = slot; s < srcK; s += (1 << lgK)) { v = max(v, arr.getSlotValue(s)); }
+    return v;
+  }
+
+  private static byte[] sparseRegisters(final HllSketch sketch, final int lgK) {
+    final byte[] registers = new byte[1 << lgK];
+    final int mask = (1 << lgK) - 1;
+    final PairIterator itr = sketch.hllSketchImpl.iterator();
+    while (itr.nextValid()) {
+      final int pair = itr.getPair();
+      final int slot = HllUtil.getPairLow26(pair) & mask;
+      registers[slot] = (byte) max(registers[slot], HllUtil.getPairValue(pair));
+    }
+    return registers;
+  }
+
+  /**
+   * Counts of register values by how the registers of a slot compare.
+   */
+  static final class Histograms {
+    final int[] aLessB = new int[MAX_VALUE + 1];    //register of A where it is less than B
+    final int[] bGreaterA = new int[MAX_VALUE + 1]; //register of B where A is less than B
+    final int[] aGreaterB = new int[MAX_VALUE + 1]; //register of A where it is greater than B
+    final int[] bLessA = new int[MAX_VALUE + 1];    //register of B where A is greater than B
+    final int[] equal = new int[MAX_VALUE + 1];     //register of A and B where they are equal
+    int[][] nonZero; //for each histogram, the values with a count
+
+    void compile() {
+      final int[][] hists = {aLessB, bGreaterA, aGreaterB, bLessA, equal};
+      nonZero = new int[5][];
+      for (int i = 0; i < 5; i++) {
+        int n = 0;
+        final int[] idx = new int[MAX_VALUE + 1];
+        for (int v = 0; v <= MAX_VALUE; v++) {
+          if (hists[i][v] > 0) { idx[n++] = v; }
+        }
+        nonZero[i] = Arrays.copyOf(idx, n);
+      }
+    }
+  }
+
+  /**
+   * Computes the log-likelihood of the given rates per register of A - B, B - A and
+   * A &cap; B, and its gradient and Hessian with respect to the rates.
+   * If A is less than B at a slot, the register of B comes from B - A alone and the register of
+   * A from A - B and A &cap; B together, and the two are independent. The other cases follow
+   * by symmetry, except for equal registers.
+   * @param h the histograms
+   * @param r the rates a, b and x
+   * @param grad returns the gradient
+   * @param hess returns the Hessian
+   * @return the log-likelihood
+   */
+  static double logLikelihood(final Histograms h, final double[] r, final double[] grad,
+      final double[][] hess) {
+    Arrays.fill(grad, 0);
+    for (final double[] row : hess) { Arrays.fill(row, 0); }
+    final double[] d = new double[3]; //the value and the first two derivatives of one term
+    double ll = 0;
+    for (final int v : h.nonZero[0]) { ll += single(h.aLessB[v], r[0] + r[2], v, 0, 2, d, grad, hess); }
+    for (final int v : h.nonZero[1]) { ll += single(h.bGreaterA[v], r[1], v, 1, 1, d, grad, hess); }
+    for (final int v : h.nonZero[2]) { ll += single(h.aGreaterB[v], r[0], v, 0, 0, d, grad, hess); }
+    for (final int v : h.nonZero[3]) { ll += single(h.bLessA[v], r[1] + r[2], v, 1, 2, d, grad, hess); }
+    for (final int v : h.nonZero[4]) { ll += equal(h.equal[v], r, v, grad, hess); }
+    return ll;
+  }
+
+  /**
+   * Adds the terms of a register with the given value whose rate is the sum of rate i and rate
+   * j, or just rate i if they are the same. The log of the probability of the value is
+   * -rate for zero, -rate * c + log(1 - exp(-rate * c)) with c = 2^-value up to 62, and
+   * log(1 - exp(-rate * 2^-62)) for the maximum value.
+   */
+  private static double single(final int count, final double rate, final int value, final int i,
+      final int j, final double[] d, final double[] grad, final double[][] hess) {
+    if (value == 0) {
+      d[0] = -rate;
+      d[1] = -1;
+      d[2] = 0;
+    } else {
+      final double c = invPow2(min(value, MAX_VALUE - 1));
+      final double em1 = expm1(rate * c);
+      final double lin = (value == MAX_VALUE) ? 0 : c;
+      d[0] = (-rate * lin) + log(-expm1(-rate * c));
+      d[1] = -lin + (c / em1);
+      d[2] = (-c * c * (em1 + 1)) / (em1 * em1);
+    }
+    grad[i] += count * d[1];
+    hess[i][i] += count * d[2];
+    if (j != i) {
+      grad[j] += count * d[1];
+      hess[j][j] += count * d[2];
+      hess[i][j] += count * d[2];
+      hess[j][i] += count * d[2];
+    }
+    return count * d[0];
+  }
+
+  /**
+   * Adds the terms of a slot where both registers have the given value. With u = 2^-value, the
+   * probability is exp(-(a+b+x)u) * p, where
+   * p = 1 - exp(-(a+x)u) - exp(-(b+x)u) + exp(-(a+b+x)u), which is rearranged into a sum of
+   * non-negative terms for accuracy. For the maximum value u = 2^-62 and the first factor is
+   * one.
+   */
+  private static double equal(final int count, final double[] r, final int value,
+      final double[] grad, final double[][] hess) {
+    final double a = r[0];
+    final double b = r[1];
+    final double x = r[2];
+    if (value == 0) {
+      for (int i = 0; i < 3; i++) { grad[i] -= count; }
+      return -count * (a + b + x);
+    }
+    final double u = invPow2(min(value, MAX_VALUE - 1));
+    final double lin = (value == MAX_VALUE) ? 0 : u;
+    final double qa = exp(-(a + x) * u);
+    final double qb = exp(-(b + x) * u);
+    final double pa = -expm1(-(a + x) * u);
+    final double pb = -expm1(-(b + x) * u);
+    final double e = qa * qb;
+    final double m = expm1(x * u);
+    final double t = e * m;
+    final double p = (pa * pb) + t;
+    //the derivatives of p
+    final double[] pd = {
+      u * ((qa * pb) - t),
+      u * ((qb * pa) - t),
+      u * ((qa * pb) + (qb * pa) + (e * (1 - m)))
+    };
+    final double u2 = u * u;
+    final double[][] pdd = new double[3][3];
+    pdd[0][0] = u2 * (t - (qa * pb));
+    pdd[1][1] = u2 * (t - (qb * pa));
+    pdd[0][1] = u2 * ((qa * qb) + t);
+    pdd[0][2] = u2 * (((qa * qb) - (qa * pb)) - (e * (1 - m)));
+    pdd[1][2] = u2 * (((qa * qb) - (qb * pa)) - (e * (1 - m)));
+    pdd[2][2] = u2 * ((((2 * qa * qb) - (qa * pb)) - (qb * pa)) - (e * (3 - m)));
+    for (int i = 0; i < 3; i++) {
+      grad[i] += count * (-lin + (pd[i] / p));
+      for (int j = i; j < 3; j++) {
+        final double hij = count * ((pdd[i][j] / p) - ((pd[i] * pd[j]) / (p * p)));
+        hess[i][j] += hij;
+        if (j != i) { hess[j][i] += hij; }
+      }
+    }
+    return count * ((-lin * (a + b + x)) + log(p));
+  }
+
+  /**
+   * Maximizes the log-likelihood with Newton's method over the logs of the rates, which keeps
+   * the rates positive. Where the Hessian is not negative definite, the step is a scaled
+   * gradient step instead. Steps are limited and halved until the likelihood increases.
+   * @param h the histograms
+   * @param start the starting rates
+   * @return the rates at the maximum
+   */
+  private static double[] maximize(final Histograms h, final double[] start) {
+    final double minLog = log(MIN_RATE);
+    final double[] grad = new double[3];
+    final double[][] hess = new double[3][3];
+    final double[] theta = new double[3];
+    for (int i = 0; i < 3; i++) { theta[i] = log(max(start[i], MIN_RATE)); }
+    double[] r = rates(theta);
+    double ll = logLikelihood(h, r, grad, hess);
+    for (int iter = 0; iter < MAX_ITERATIONS; iter++) {
+      //the gradient and Hessian with respect to the logs of the rates
+      final double[] g = new double[3];
+      final double[][] ht = new double[3][3];
+      for (int i = 0; i < 3; i++) {
+        g[i] = r[i] * grad[i];
+        for (int j = 0; j < 3; j++) { ht[i][j] = r[i] * r[j] * hess[i][j]; }
+        ht[i][i] += g[i];
+      }
+      final double[] step = new double[3];
+      if (isNegativeDefinite(ht)) {
+        final double[][] inv = invert3(ht);
+        for (int i = 0; i < 3; i++) {
+          for (int j = 0; j < 3; j++) { step[i] -= inv[i][j] * g[j]; }
+        }
+      } else {
+        for (int i = 0; i < 3; i++) { step[i] = g[i] / max(Math.abs(ht[i][i]), 1.0); }
+      }
+      for (int i = 0; i < 3; i++) { step[i] = max(-MAX_STEP, min(MAX_STEP, step[i])); }
+      //backtrack until the likelihood does not decrease
+      double scale = 1.0;
+      double[] nextTheta = null;
+      double nextLl = Double.NEGATIVE_INFINITY;
+      for (int k = 0; k < 40; k++, scale /= 2) {
+        nextTheta = new double[3];
+        for (int i = 0; i < 3; i++) { nextTheta[i] = max(minLog, theta[i] + (scale * step[i])); }
+        nextLl = logLikelihood(h, rates(nextTheta), grad, hess);
+        if (nextLl >= ll) { break; }
+      }
+      if (!(nextLl >= ll)) { break; } //no progress is possible
+      double change = 0;
+      for (int i = 0; i < 3; i++) {
+        change = max(change, Math.abs(nextTheta[i] - theta[i]));
+        theta[i] = nextTheta[i];
+      }
+      r = rates(theta);
+      final double gain = nextLl - ll;
+      ll = nextLl; //grad and hess are those of the accepted point
+      if ((change < TOLERANCE) || (gain <= (TOLERANCE * Math.abs(ll)))) { break; }
+    }
+    return r;
+  }
+
+  private static double[] rates(final double[] theta) {
+    return new double[] {exp(theta[0]), exp(theta[1]), exp(theta[2])};
+  }
+
+  private static boolean isNegativeDefinite(final double[][] m) {
+    final double d1 = m[0][0];
+    final double d2 = (m[0][0] * m[1][1]) - (m[0][1] * m[1][0]);
+    final double d3 = (m[0][0] * ((m[1][1] * m[2][2]) - (m[1][2] * m[2][1])))
+        - (m[0][1] * ((m[1][0] * m[2][2]) - (m[1][2] * m[2][0])))
+        + (m[0][2] * ((m[1][0] * m[2][1]) - (m[1][1] * m[2][0])));
+    return (d1 < 0) && (d2 > 0) && (d3 < 0);
+  }
+
+  /**
+   * Returns the inverse of the observed Fisher information of the rates, which is the negative
+   * Hessian of the log-likelihood at the maximum.
+   */
+  private static double[][] covariance(final Histograms h, final double[] r) {
+    final double[] grad = new double[3];
+    final double[][] hess = new double[3][3];
+    logLikelihood(h, r, grad, hess);
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) { hess[i][j] = -hess[i][j]; }
+    }
+    return invert3(hess);
+  }
+
+  private static double[][] invert3(final double[][] m) {
+    final double c00 = (m[1][1] * m[2][2]) - (m[1][2] * m[2][1]);
+    final double c01 = (m[1][2] * m[2][0]) - (m[1][0] * m[2][2]);
+    final double c02 = (m[1][0] * m[2][1]) - (m[1][1] * m[2][0]);
+    final double det = (m[0][0] * c00) + (m[0][1] * c01) + (m[0][2] * c02);
+    final double[][] inv = new double[3][3];
+    if (!(Math.abs(det) > 0)) { return inv; } //singular, no information about the spread
+    inv[0][0] = c00 / det;
+    inv[1][0] = c01 / det;
+    inv[2][0] = c02 / det;
+    inv[0][1] = ((m[0][2] * m[2][1]) - (m[0][1] * m[2][2])) / det;
+    inv[1][1] = ((m[0][0] * m[2][2]) - (m[0][2] * m[2][0])) / det;
+    inv[2][1] = ((m[0][1] * m[2][0]) - (m[0][0] * m[2][1])) / det;
+    inv[0][2] = ((m[0][1] * m[1][2]) - (m[0][2] * m[1][1])) / det;
+    inv[1][2] = ((m[0][2] * m[1][0]) - (m[0][0] * m[1][2])) / det;
+    inv[2][2] = ((m[0][0] * m[1][1]) - (m[0][1] * m[1][0])) / det;
+    return inv;
+  }
+
+}
@@ -298,6 +298,11 @@ public class HllSketch extends BaseHllSketch {
     return hllSketchImpl.getEstimate();
   }
 
+  @Override
+  public double getImprovedRawEstimate() {
+    return hllSketchImpl.getImprovedRawEstimate();
+  }
+
   double getHipEstimate() {
     return hllSketchImpl.getHipEstimate();
   }
@@ -522,4 +527,16 @@ public class HllSketch extends BaseHllSketch {
     hllSketchImpl = hllSketchImpl.couponUpdate(coupon);
   }
 
+  @Override
+  void couponUpdate(final int[] coupons, final int length) {
+    int i = 0;
+    //LIST and SET modes may be promoted by any coupon
+    while ((i < length) && (hllSketchImpl.getCurMode() != CurMode.HLL)) {
+      couponUpdate(coupons[i++]);
+    }
+    if (i < length) {
+      ((AbstractHllArray) hllSketchImpl).couponUpdate(coupons, i, length);
+    }
+  }
+
 }
@@ -66,6 +66,8 @@ abstract class HllSketchImpl {
 
   abstract double getHipEstimate();
 
+  abstract double getImprovedRawEstimate();
+
   int getLgConfigK() {
     return lgConfigK;
   }
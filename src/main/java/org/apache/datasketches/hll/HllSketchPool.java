@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static java.lang.Math.max;
+import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
+import static org.apache.datasketches.hash.MurmurHash3.hash;
+import static org.apache.datasketches.hll.HllUtil.EMPTY;
+import static org.apache.datasketches.hll.HllUtil.LG_INIT_LIST_SIZE;
+import static org.apache.datasketches.hll.HllUtil.RESIZE_DENOM;
+import static org.apache.datasketches.hll.HllUtil.RESIZE_NUMER;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A pool of HllSketches, one per long key, that all live in one caller supplied
+ * WritableMemory slab. This is intended for applications that keep millions of sketches, for
+ * example one per campaign or segment, most of which only ever see a few items.
+ *
+ * <p>Giving each such sketch its own WritableMemory of
+ * {@link HllSketch#getMaxUpdatableSerializationBytes(int, TgtHllType)} bytes wastes most of that
+ * space while the sketch is still in <i>LIST</i> or <i>SET</i> mode. Instead, this pool keeps the
+ * coupons of every key in a compact record, a small hash set that starts with room for a few
+ * coupons and is moved to a record twice the size whenever it becomes three quarters full.
+ * Only when the key crosses into <i>HLL</i> mode, at the same coupon count at which an HllSketch
+ * would, is it moved to a dense slot of the full size, where it continues as an ordinary off-heap
+ * HllSketch. The compact records freed by these moves are reused for other keys.</p>
+ *
+ * <p>The slab is filled from the front and is never resized. If a new key or a move to a dense
+ * slot does not fit, a SketchesStateException is thrown. The map from keys to records is kept on
+ * the java heap, as is a thin HllSketch wrapper for each key that has a dense slot.</p>
+ *
+ * <p>The estimates are identical to those of an HllSketch with the same <i>lgConfigK</i> and
+ * <i>TgtHllType</i> that is given the same items in the same order. This class is not thread
+ * safe.</p>
+ */
+public final class HllSketchPool {
+  //a compact record is a coupon count, the log2 of its number of slots, then the slots
+  static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+  static final int MIN_LG_SLOTS = LG_INIT_LIST_SIZE;
+  private static final long DENSE_BIT = 1L << 62;
+  private static final long NO_REF = -1L;
+  private static final int LG_INIT_KEYS = 10;
+
+  private final int lgConfigK;
+  private final TgtHllType tgtHllType;
+  private final WritableMemory slab;
+  private final long denseBytes;
+  //the coupon count at which an HllSketch of this configuration enters HLL mode
+  final int hllCouponCount;
+  private final long[] hashOut = new long[2];
+
+  //next free byte of the slab
+  private long slabUsed;
+  //stacks of the offsets of freed compact records, by the log2 of their number of slots
+  private final long[][] freeRecords = new long[32][];
+  private final int[] numFreeRecords = new int[32];
+  private HllSketch[] denseSketches = new HllSketch[16];
+  private int numDense;
+
+  //open addressing map of key -> offset of the compact record, or DENSE_BIT | dense index
+  private long[] keys;
+  private long[] refs;
+  private int numKeys;
+
+  /**
+   * Constructs an empty pool in the given slab.
+   * @param lgConfigK the <i>lgConfigK</i> of every sketch in the pool. This value must be
+   * between 4 and 21 inclusively.
+   * @param tgtHllType the <i>TgtHllType</i> of every sketch in the pool
+   * @param slab the WritableMemory that holds all the sketches of the pool. Its previous contents
+   * are ignored.
+   */
+  public HllSketchPool(final int lgConfigK, final TgtHllType tgtHllType, final WritableMemory slab) {
+    this.lgConfigK = HllUtil.checkLgK(lgConfigK);
+    this.tgtHllType = tgtHllType;
+    if (slab.isReadOnly()) {
+      throw new SketchesArgumentException("The slab must be writable.");
+    }
+    this.slab = slab;
+    //keep the dense slots 8-byte aligned
+    denseBytes = ((HllSketch.getMaxUpdatableSerializationBytes(lgConfigK, tgtHllType) + 7L) >>> 3) << 3;
+    //see CouponList and CouponHashSet: a full LIST goes straight to HLL when lgConfigK < 8,
+    //otherwise the SET goes to HLL when more than 3/4 full at 2^(lgConfigK - 3) slots
+    hllCouponCount = (lgConfigK < 8) ? 1 << LG_INIT_LIST_SIZE
+        : ((RESIZE_NUMER << (lgConfigK - 3)) / RESIZE_DENOM) + 1;
+    keys = new long[1 << LG_INIT_KEYS];
+    refs = new long[1 << LG_INIT_KEYS];
+    Arrays.fill(refs, NO_REF);
+  }
+
+  /**
+   * Present the given long as a potential unique item to the sketch of the given key, creating
+   * that sketch if required. This is equivalent to {@link HllSketch#update(long)}.
+   * @param key the key of the sketch
+   * @param item the item to be presented to the sketch of the key
+   */
+  public void update(final long key, final long item) {
+    hash(item, DEFAULT_UPDATE_SEED, hashOut);
+    couponUpdate(key, BaseHllSketch.coupon(hashOut));
+  }
+
+  /**
+   * Returns the cardinality estimate of the sketch of the given key, which is zero if the key
+   * has not been seen.
+   * @param key the key of the sketch
+   * @return the cardinality estimate of the sketch of the given key
+   */
+  public double getEstimate(final long key) {
+    final int index = findIndex(key);
+    if (refs[index] == NO_REF) { return 0; }
+    final long ref = refs[index];
+    if ((ref & DENSE_BIT) != 0) {
+      return denseSketches[(int) (ref & ~DENSE_BIT)].getEstimate();
+    }
+    //the estimator of the LIST and SET modes, see AbstractCoupons
+    final int couponCount = slab.getInt(ref);
+    final double est = CubicInterpolation.usingXAndYTables(CouponMapping.xArr,
+        CouponMapping.yArr, couponCount);
+    return max(est, couponCount);
+  }
+
+  /**
+   * Returns the sketch of the given key, or null if the key has not been seen.
+   *
+   * <p>If the key has a dense slot, this is an off-heap HllSketch that operates directly on the
+   * slot, and updates to it are seen by the pool. Otherwise this is an on-heap copy of the
+   * compact record in <i>LIST</i> or <i>SET</i> mode. In both cases it can be given to a {@link Union}.</p>
+   * @param key the key of the sketch
+   * @return the sketch of the given key, or null
+   */
+  public HllSketch getSketch(final long key) {
+    final int index = findIndex(key);
+    if (refs[index] == NO_REF) { return null; }
+    final long ref = refs[index];
+    if ((ref & DENSE_BIT) != 0) {
+      return denseSketches[(int) (ref & ~DENSE_BIT)];
+    }
+    final HllSketch sketch = new HllSketch(lgConfigK, tgtHllType);
+    replayCoupons(ref, sketch);
+    return sketch;
+  }
+
+  /**
+   * Returns true if the given key has been seen.
+   * @param key the key of the sketch
+   * @return true if the given key has been seen.
+   */
+  public boolean contains(final long key) {
+    return refs[findIndex(key)] != NO_REF;
+  }
+
+  /**
+   * Returns the number of keys in the pool.
+   * @return the number of keys in the pool.
+   */
+  public int getNumKeys() {
+    return numKeys;
+  }
+
+  /**
+   * Returns the number of keys that have been moved to a dense slot.
+   * @return the number of keys that have been moved to a dense slot.
+   */
+  public int getNumDenseKeys() {
+    return numDense;
+  }
+
+  /**
+   * Returns the number of bytes of the slab that are in use, including freed compact records
+   * that are waiting to be reused.
+   * @return the number of bytes of the slab that are in use.
+   */
+  public long getSlabBytesUsed() {
+    return slabUsed;
+  }
+
+  /**
+   * Gets the <i>lgConfigK</i> of every sketch in the pool.
+   * @return the <i>lgConfigK</i> of every sketch in the pool.
+   */
+  public int getLgConfigK() {
+    return lgConfigK;
+  }
+
+  /**
+   * Gets the <i>TgtHllType</i> of every sketch in the pool.
+   * @return the <i>TgtHllType</i> of every sketch in the pool.
+   */
+  public TgtHllType getTgtHllType() {
+    return tgtHllType;
+  }
+
+  /**
+   * Removes all keys and makes the whole slab available again. Sketches previously returned by
+   * {@link #getSketch(long)} must not be used after this.
+   */
+  public void reset() {
+    Arrays.fill(refs, NO_REF);
+    numKeys = 0;
+    Arrays.fill(denseSketches, 0, numDense, null);
+    numDense = 0;
+    Arrays.fill(numFreeRecords, 0);
+    slabUsed = 0;
+  }
+
+  void couponUpdate(final long key, final int coupon) {
+    int index = findIndex(key);
+    if (refs[index] == NO_REF) {
+      if ((4L * (numKeys + 1)) > (3L * keys.length)) {
+        growMap();
+        index = findIndex(key);
+      }
+      final long offset = allocateRecord(MIN_LG_SLOTS);
+      keys[index] = key;
+      refs[index] = offset;
+      numKeys++;
+    }
+    final long ref = refs[index];
+    if ((ref & DENSE_BIT) != 0) {
+      denseSketches[(int) (ref & ~DENSE_BIT)].couponUpdate(coupon);
+      return;
+    }
+    final int lgSlots = slab.getInt(ref + Integer.BYTES);
+    final long slotOffset = findSlot(ref, lgSlots, coupon);
+    if (slab.getInt(slotOffset) == coupon) { return; } //duplicate
+    final int couponCount = slab.getInt(ref) + 1;
+    if (couponCount == hllCouponCount) {
+      refs[index] = promote(ref, coupon);
+      return;
+    }
+    if ((RESIZE_DENOM * couponCount) > (RESIZE_NUMER << lgSlots)) {
+      refs[index] = grow(ref, lgSlots, coupon);
+      return;
+    }
+    slab.putInt(slotOffset, coupon);
+    slab.putInt(ref, couponCount);
+  }
+
+  /**
+   * Moves the compact record at the given offset and the given new coupon to a new dense slot,
+   * where the sketch enters <i>HLL</i> mode, and frees the record.
+   * @param recordOffset the offset of the compact record
+   * @param coupon the new coupon
+   * @return the new reference of the key
+   */
+  private long promote(final long recordOffset, final int coupon) {
+    checkRoom(denseBytes, "dense slot");
+    final HllSketch sketch =
+        new HllSketch(lgConfigK, tgtHllType, slab.writableRegion(slabUsed, denseBytes));
+    slabUsed += denseBytes;
+    //the HLL state at promotion does not depend on the order of the coupons
+    replayCoupons(recordOffset, sketch);
+    sketch.couponUpdate(coupon);
+    freeRecord(recordOffset);
+    if (numDense == denseSketches.length) {
+      denseSketches = Arrays.copyOf(denseSketches, 2 * denseSketches.length);
+    }
+    denseSketches[numDense] = sketch;
+    return DENSE_BIT | numDense++;
+  }
+
+  /**
+   * Moves the compact record at the given offset and the given new coupon to a new compact
+   * record with twice the slots, and frees the old record.
+   * @param recordOffset the offset of the compact record
+   * @param lgSlots the log2 of the number of slots of the compact record
+   * @param coupon the new coupon
+   * @return the offset of the new compact record
+   */
+  private long grow(final long recordOffset, final int lgSlots, final int coupon) {
+    final long newOffset = allocateRecord(lgSlots + 1);
+    final int slots = 1 << lgSlots;
+    for (int i = 0; i < slots; i++) {
+      final int couponAtIdx = slab.getInt(slotOffset(recordOffset, i));
+      if (couponAtIdx != EMPTY) {
+        slab.putInt(findSlot(newOffset, lgSlots + 1, couponAtIdx), couponAtIdx);
+      }
+    }
+    slab.putInt(findSlot(newOffset, lgSlots + 1, coupon), coupon);
+    slab.putInt(newOffset, slab.getInt(recordOffset) + 1);
+    freeRecord(recordOffset);
+    return newOffset;
+  }
+
+  private void replayCoupons(final long recordOffset, final HllSketch sketch) {
+    final int slots = 1 << slab.getInt(recordOffset + Integer.BYTES);
+    for (int i = 0; i < slots; i++) {
+      final int coupon = slab.getInt(slotOffset(recordOffset, i));
+      if (coupon != EMPTY) { sketch.couponUpdate(coupon); }
+    }
+  }
+
+  /**
+   * Returns the offset of the slot of the given coupon in the given compact record, or of the
+   * empty slot where it would be inserted. Like CouponHashSet, the low bits of the coupon are
+   * used as the starting slot.
+   * @param recordOffset the offset of the compact record
+   * @param lgSlots the log2 of the number of slots of the compact record
+   * @param coupon the given coupon
+   * @return the offset of the slot of the given coupon or of an empty slot
+   */
+  private long findSlot(final long recordOffset, final int lgSlots, final int coupon) {
+    final int mask = (1 << lgSlots) - 1;
+    int slot = coupon & mask;
+    while (true) {
+      final long offset = slotOffset(recordOffset, slot);
+      final int couponAtIdx = slab.getInt(offset);
+      if ((couponAtIdx == EMPTY) || (couponAtIdx == coupon)) { return offset; }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private static long slotOffset(final long recordOffset, final int slot) {
+    return recordOffset + RECORD_HEADER_BYTES + ((long) slot * Integer.BYTES);
+  }
+
+  static long recordBytes(final int lgSlots) {
+    return RECORD_HEADER_BYTES + ((long) Integer.BYTES << lgSlots);
+  }
+
+  private long allocateRecord(final int lgSlots) {
+    final long bytes = recordBytes(lgSlots);
+    final long offset;
+    if (numFreeRecords[lgSlots] > 0) {
+      offset = freeRecords[lgSlots][--numFreeRecords[lgSlots]];
+    } else {
+      checkRoom(bytes, "compact record");
+      offset = slabUsed;
+      slabUsed += bytes;
+    }
+    slab.clear(offset, bytes);
+    slab.putInt(offset + Integer.BYTES, lgSlots);
+    return offset;
+  }
+
+  private void freeRecord(final long recordOffset) {
+    final int lgSlots = slab.getInt(recordOffset + Integer.BYTES);
+    if (freeRecords[lgSlots] == null) {
+      freeRecords[lgSlots] = new long[16];
+    } else if (numFreeRecords[lgSlots] == freeRecords[lgSlots].length) {
+      freeRecords[lgSlots] = Arrays.copyOf(freeRecords[lgSlots], 2 * numFreeRecords[lgSlots]);
+    }
+    freeRecords[lgSlots][numFreeRecords[lgSlots]++] = recordOffset;
+  }
+
+  private void checkRoom(final long bytes, final String what) {
+    if ((slabUsed + bytes) > slab.getCapacity()) {
+      throw new SketchesStateException("The slab has no room for another " + what + " of "
+          + bytes + " bytes.");
+    }
+  }
+
+  /**
+   * Returns the index of the given key, or of the empty entry where it would be inserted.
+   * @param key the given key
+   * @return the index of the given key or of an empty entry
+   */
+  private int findIndex(final long key) {
+    final int mask = keys.length - 1;
+    int index = (int) mix(key) & mask;
+    while ((refs[index] != NO_REF) && (keys[index] != key)) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private void growMap() {
+    final long[] oldKeys = keys;
+    final long[] oldRefs = refs;
+    keys = new long[2 * oldKeys.length];
+    refs = new long[2 * oldRefs.length];
+    Arrays.fill(refs, NO_REF);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldRefs[i] == NO_REF) { continue; }
+      final int index = findIndex(oldKeys[i]);
+      keys[index] = oldKeys[i];
+      refs[index] = oldRefs[i];
+    }
+  }
+
+  //the finalization mix of MurmurHash3
+  private static long mix(final long key) {
+    long k = key;
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.MapHandle;
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * A read-only store of compact HllSketch images in one file, each keyed by a long id, that is
+ * memory-mapped instead of read onto the java heap. This is intended for query-time scans that
+ * union thousands of persisted sketches out of millions.
+ *
+ * <p>The file is written by {@link HllSketchStoreWriter}, which only appends. It starts with a
+ * header of {@value #FILE_HEADER_BYTES} bytes, followed by one record per appended sketch:</p>
+ *
+ * <pre>
+ *  Record:
+ *   bytes 0 - 7    the id, a long
+ *   bytes 8 - 11   the number of bytes of the image, an int
+ *   bytes 12 - 15  unused
+ *   bytes 16 -     the compact image, padded with zeros to a multiple of 8 bytes
+ * </pre>
+ *
+ * <p>All values are little-endian. Opening the store makes one pass over the record headers to
+ * build the index from ids to records, which is kept on the java heap. If an id was appended
+ * more than once, the last record wins. An incomplete record at the end of the file, as left by
+ * an interrupted append, is ignored. The images themselves are not read until they are wrapped,
+ * so {@link #wrap(long)} returns an HllSketch that operates directly on the mapped file and
+ * {@link #unionAll(long[], Union)} merges the mapped images in file order without copying
+ * them.</p>
+ *
+ * <p>Records appended after the store was opened are not seen until it is opened again.
+ * The sketches returned by this store must not be used after {@link #close()}.
+ * This class is not thread safe.</p>
+ */
+public final class HllSketchStore implements AutoCloseable {
+  /**
+   * The number of bytes of the file header.
+   */
+  public static final int FILE_HEADER_BYTES = 8;
+  static final int FILE_MAGIC = 0x53_4C_4C_48; //"HLLS" in little-endian byte order
+  static final int FILE_VERSION = 1;
+  static final int RECORD_HEADER_BYTES = 16;
+  private static final long NO_RECORD = -1L;
+  private static final int LG_INIT_IDS = 10;
+
+  private final MapHandle handle;
+  private final Memory mem;
+
+  //open addressing map of id -> offset of the record
+  private long[] ids;
+  private long[] offsets;
+  private int numIds;
+
+  private HllSketchStore(final MapHandle handle) {
+    this.handle = handle;
+    mem = handle.get();
+    ids = new long[1 << LG_INIT_IDS];
+    offsets = new long[1 << LG_INIT_IDS];
+    Arrays.fill(offsets, NO_RECORD);
+    buildIndex();
+  }
+
+  /**
+   * Memory-maps the given store file read-only and indexes its records.
+   * @param file a file written by {@link HllSketchStoreWriter}
+   * @return the store of the given file
+   * @throws IOException if the file cannot be mapped
+   */
+  public static HllSketchStore open(final File file) throws IOException {
+    if (file.length() < FILE_HEADER_BYTES) {
+      throw new SketchesArgumentException("Not an HllSketchStore file: " + file);
+    }
+    final MapHandle handle = Memory.map(file);
+    try {
+      final Memory mem = handle.get();
+      if ((mem.getInt(0) != FILE_MAGIC) || (mem.getInt(Integer.BYTES) != FILE_VERSION)) {
+        throw new SketchesArgumentException("Not an HllSketchStore file: " + file);
+      }
+      return new HllSketchStore(handle);
+    } catch (final RuntimeException e) {
+      handle.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the sketch with the given id, or null if there is none. The returned sketch is
+   * read-only and operates directly on the mapped file.
+   * @param id the id of the sketch
+   * @return the sketch with the given id, or null
+   */
+  public HllSketch wrap(final long id) {
+    final long offset = offsets[findIndex(id)];
+    return (offset == NO_RECORD) ? null : wrapRecord(offset);
+  }
+
+  /**
+   * Returns true if there is a sketch with the given id.
+   * @param id the id of the sketch
+   * @return true if there is a sketch with the given id.
+   */
+  public boolean contains(final long id) {
+    return offsets[findIndex(id)] != NO_RECORD;
+  }
+
+  /**
+   * Returns the number of distinct ids in the store.
+   * @return the number of distinct ids in the store.
+   */
+  public int getNumSketches() {
+    return numIds;
+  }
+
+  /**
+   * Returns the number of bytes of the mapped file.
+   * @return the number of bytes of the mapped file.
+   */
+  public long getFileBytes() {
+    return mem.getCapacity();
+  }
+
+  /**
+   * Updates the given union with the sketches of the given ids. The records are visited in the
+   * order they appear in the file, so the mapped pages are read sequentially, and each image is
+   * given to the union directly from the mapped file. Ids without a sketch and repeated ids are
+   * skipped.
+   * @param ids the ids of the sketches to union
+   * @param union the union to update
+   */
+  public void unionAll(final long[] ids, final Union union) {
+    final long[] recordOffsets = new long[ids.length];
+    int numRecords = 0;
+    for (int i = 0; i < ids.length; i++) {
+      final long offset = offsets[findIndex(ids[i])];
+      if (offset != NO_RECORD) { recordOffsets[numRecords++] = offset; }
+    }
+    Arrays.sort(recordOffsets, 0, numRecords);
+    long prevOffset = NO_RECORD;
+    for (int i = 0; i < numRecords; i++) {
+      final long offset = recordOffsets[i];
+      if (offset == prevOffset) { continue; }
+      union.update(wrapRecord(offset));
+      prevOffset = offset;
+    }
+  }
+
+  /**
+   * Returns a new union of the sketches of the given ids.
+   * See {@link #unionAll(long[], Union)}.
+   * @param ids the ids of the sketches to union
+   * @param lgMaxK the <i>lgMaxK</i> of the new union
+   * @return a new union of the sketches of the given ids
+   */
+  public Union unionAll(final long[] ids, final int lgMaxK) {
+    final Union union = new Union(lgMaxK);
+    unionAll(ids, union);
+    return union;
+  }
+
+  /**
+   * Unmaps the file. The sketches returned by this store must not be used after this.
+   */
+  @Override
+  public void close() {
+    handle.close();
+  }
+
+  private HllSketch wrapRecord(final long offset) {
+    final int imageBytes = mem.getInt(offset + Long.BYTES);
+    return HllSketch.wrap(mem.region(offset + RECORD_HEADER_BYTES, imageBytes));
+  }
+
+  private void buildIndex() {
+    final long fileBytes = mem.getCapacity();
+    long offset = FILE_HEADER_BYTES;
+    while ((offset + RECORD_HEADER_BYTES) <= fileBytes) {
+      final long id = mem.getLong(offset);
+      final int imageBytes = mem.getInt(offset + Long.BYTES);
+      final long recordBytes = recordBytes(imageBytes);
+      if ((imageBytes <= 0) || ((offset + recordBytes) > fileBytes)) { break; } //incomplete
+      int index = findIndex(id);
+      if (offsets[index] == NO_RECORD) {
+        if ((4L * (numIds + 1)) > (3L * ids.length)) {
+          growIndex();
+          index = findIndex(id);
+        }
+        ids[index] = id;
+        numIds++;
+      }
+      offsets[index] = offset;
+      offset += recordBytes;
+    }
+  }
+
+  static long recordBytes(final int imageBytes) {
+    return RECORD_HEADER_BYTES + ((((long) imageBytes) + 7L) & ~7L);
+  }
+
+  /**
+   * Returns the index of the given id, or of the empty entry where it would be inserted.
+   * @param id the given id
+   * @return the index of the given id or of an empty entry
+   */
+  private int findIndex(final long id) {
+    final int mask = ids.length - 1;
+    int index = (int) mix(id) & mask;
+    while ((offsets[index] != NO_RECORD) && (ids[index] != id)) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private void growIndex() {
+    final long[] oldIds = ids;
+    final long[] oldOffsets = offsets;
+    ids = new long[2 * oldIds.length];
+    offsets = new long[2 * oldOffsets.length];
+    Arrays.fill(offsets, NO_RECORD);
+    for (int i = 0; i < oldIds.length; i++) {
+      if (oldOffsets[i] == NO_RECORD) { continue; }
+      final int index = findIndex(oldIds[i]);
+      ids[index] = oldIds[i];
+      offsets[index] = oldOffsets[i];
+    }
+  }
+
+  //the finalization mix of MurmurHash3
+  private static long mix(final long id) {
+    long k = id;
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+}
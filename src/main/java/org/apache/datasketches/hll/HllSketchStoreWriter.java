@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllSketchStore.FILE_HEADER_BYTES;
+import static org.apache.datasketches.hll.HllSketchStore.FILE_MAGIC;
+import static org.apache.datasketches.hll.HllSketchStore.FILE_VERSION;
+import static org.apache.datasketches.hll.HllSketchStore.RECORD_HEADER_BYTES;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.datasketches.SketchesArgumentException;
+
+/**
+ * Appends compact HllSketch images to a file that can be read with {@link HllSketchStore}.
+ * Records are only ever appended. Appending a sketch with an id that is already in the file
+ * replaces it for readers that open the file afterwards. See {@link HllSketchStore} for the
+ * file layout.
+ *
+ * <p>If the file ends in an incomplete record, left by an interrupted append, the file is
+ * truncated to the end of the last complete record when it is opened, so that the records
+ * appended afterwards are read correctly.</p>
+ *
+ * <p>This class is not thread safe, and a file must not have more than one writer at a
+ * time.</p>
+ */
+public final class HllSketchStoreWriter implements AutoCloseable {
+  private final FileChannel channel;
+  private long fileBytes;
+  private ByteBuffer buf = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+
+  /**
+   * Opens the given file for appending, creating it with an empty store if it does not exist.
+   * An incomplete record at the end of the file is removed.
+   * @param file the store file
+   * @throws IOException if the file cannot be opened or written
+   */
+  public HllSketchStoreWriter(final File file) throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      fileBytes = channel.size();
+      buf.clear().limit(FILE_HEADER_BYTES);
+      if (fileBytes == 0) {
+        buf.putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+        writeFully();
+      } else {
+        while (buf.hasRemaining() && (channel.read(buf, buf.position()) > 0)) { }
+        buf.flip();
+        if ((buf.remaining() < FILE_HEADER_BYTES) || (buf.getInt() != FILE_MAGIC)
+            || (buf.getInt() != FILE_VERSION)) {
+          throw new SketchesArgumentException("Not an HllSketchStore file: " + file);
+        }
+        final long endOfRecords = findEndOfRecords();
+        if (endOfRecords < fileBytes) {
+          channel.truncate(endOfRecords);
+          fileBytes = endOfRecords;
+        }
+      }
+    } catch (final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Appends the compact image of the given sketch with the given id.
+   * @param id the id of the sketch
+   * @param sketch the sketch to append
+   * @throws IOException if the file cannot be written
+   */
+  public void append(final long id, final HllSketch sketch) throws IOException {
+    final byte[] image = sketch.toCompactByteArray();
+    final int recordBytes = (int) HllSketchStore.recordBytes(image.length);
+    if (buf.capacity() < recordBytes) {
+      buf = ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    buf.clear();
+    buf.putLong(id).putInt(image.length).putInt(0).put(image);
+    while (buf.position() < recordBytes) { buf.put((byte) 0); }
+    buf.flip();
+    writeFully();
+  }
+
+  /**
+   * Forces the appended records to the storage device.
+   * @throws IOException if the file cannot be written
+   */
+  public void flush() throws IOException {
+    channel.force(false);
+  }
+
+  /**
+   * Closes the file.
+   * @throws IOException if the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Walks the record headers the same way as the reader and returns the end of the last
+   * complete record.
+   * @return the end of the last complete record
+   * @throws IOException if the file cannot be read
+   */
+  private long findEndOfRecords() throws IOException {
+    long offset = FILE_HEADER_BYTES;
+    while ((offset + RECORD_HEADER_BYTES) <= fileBytes) {
+      buf.clear().limit(RECORD_HEADER_BYTES);
+      while (buf.hasRemaining() && (channel.read(buf, offset + buf.position()) > 0)) { }
+      buf.flip();
+      if (buf.remaining() < RECORD_HEADER_BYTES) { break; }
+      final int imageBytes = buf.getInt(Long.BYTES);
+      final long recordBytes = HllSketchStore.recordBytes(imageBytes);
+      if ((imageBytes <= 0) || ((offset + recordBytes) > fileBytes)) { break; } //incomplete
+      offset += recordBytes;
+    }
+    return offset;
+  }
+
+  private void writeFully() throws IOException {
+    while (buf.hasRemaining()) {
+      fileBytes += channel.write(buf, fileBytes);
+    }
+  }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Sliding window distinct counts over a ring of time buckets, such as the number of distinct
+ * users in the last 5, 15 or 60 minutes. Time is supplied by the caller with each call, in any
+ * unit, and is divided into buckets of a fixed width. The window of a query is a number of the
+ * most recent buckets, up to the configured number of buckets, and always includes the current
+ * bucket, which may be partially filled.
+ *
+ * <p>Merging every bucket of the window for each query would cost O(window) merges. Instead, each
+ * completed bucket is also merged into cached unions of aligned blocks of 2, 4, 8, ... buckets as
+ * soon as such a block is complete, which costs fewer than two merges per bucket on average.
+ * Any window is then the union of the current bucket and at most 2 log2(window) of these cached
+ * unions, so the cost of a query grows only logarithmically with the window.</p>
+ *
+ * <p>All buckets and cached unions are HLL_8 union operators, each in a WritableMemory of
+ * {@link Union#getMaxSerializationBytes(int)} bytes that is allocated by the constructor.
+ * Expired buckets and cached unions are reset in place and reused, so rotating the buckets does
+ * not reallocate them.</p>
+ *
+ * <p>The clock is not expected to go backwards. An update or query with a time before the
+ * current bucket applies to the current bucket. This class is not thread safe.</p>
+ */
+public final class HllSlidingWindow {
+  private final int lgConfigK;
+  private final int numBuckets;
+  private final long bucketWidth;
+  private final int numLevels;
+
+  //levels[0] holds the completed buckets, levels[L] holds the unions of aligned blocks of 2^L
+  //completed buckets. The block j of level L is in slot j mod levels[L].length.
+  private final Union[][] levels;
+  private final Union scratch;
+  private Union current;
+  private long currentBucket;
+  private boolean started;
+
+  /**
+   * Constructs an empty sliding window.
+   * @param lgConfigK the <i>lgConfigK</i> of the buckets. This value must be between 4 and 21
+   * inclusively.
+   * @param numBuckets the number of buckets of the longest window, including the current bucket.
+   * It must be at least 1.
+   * @param bucketWidth the width of each bucket in the units of the caller's clock. It must be at
+   * least 1.
+   */
+  public HllSlidingWindow(final int lgConfigK, final int numBuckets, final long bucketWidth) {
+    this.lgConfigK = HllUtil.checkLgK(lgConfigK);
+    if (numBuckets < 1) {
+      throw new SketchesArgumentException("numBuckets must be at least 1: " + numBuckets);
+    }
+    if (bucketWidth < 1) {
+      throw new SketchesArgumentException("bucketWidth must be at least 1: " + bucketWidth);
+    }
+    this.numBuckets = numBuckets;
+    this.bucketWidth = bucketWidth;
+    //the completed buckets of the longest window
+    final int numCompleted = numBuckets - 1;
+    numLevels = (numCompleted == 0) ? 0 : 64 - Long.numberOfLeadingZeros(numCompleted);
+    levels = new Union[numLevels][];
+    for (int lvl = 0; lvl < numLevels; lvl++) {
+      levels[lvl] = new Union[(numCompleted >>> lvl) + 1];
+      for (int i = 0; i < levels[lvl].length; i++) {
+        levels[lvl][i] = newDirectUnion(lgConfigK);
+      }
+    }
+    current = newDirectUnion(lgConfigK);
+    scratch = newDirectUnion(lgConfigK);
+  }
+
+  /**
+   * Present the given long as a potential unique item at the given time.
+   * @param time the time of the item
+   * @param datum The given long datum.
+   */
+  public void update(final long time, final long datum) {
+    advance(time);
+    current.update(datum);
+  }
+
+  /**
+   * Present the given String as a potential unique item at the given time.
+   * The string is converted to a byte array using UTF8 encoding.
+   * If the string is null or empty no update attempt is made and the method returns.
+   * @param time the time of the item
+   * @param datum The given String.
+   */
+  public void update(final long time, final String datum) {
+    advance(time);
+    current.update(datum);
+  }
+
+  /**
+   * Present the given byte array as a potential unique item at the given time.
+   * If the byte array is null or empty no update attempt is made and the method returns.
+   * @param time the time of the item
+   * @param data The given byte array.
+   */
+  public void update(final long time, final byte[] data) {
+    advance(time);
+    current.update(data);
+  }
+
+  /**
+   * Moves the current bucket forward to the bucket of the given time, completing the buckets
+   * in between. This is done by every update and query, but it may also be called on its own.
+   * @param time the current time
+   */
+  public void advance(final long time) {
+    final long bucket = Math.floorDiv(time, bucketWidth);
+    if (!started) {
+      started = true;
+      currentBucket = bucket;
+      return;
+    }
+    if (bucket <= currentBucket) { return; }
+    if ((bucket - currentBucket) >= numBuckets) {
+      //everything has expired
+      resetAll();
+      currentBucket = bucket;
+      return;
+    }
+    while (currentBucket < bucket) {
+      completeCurrentBucket();
+    }
+  }
+
+  /**
+   * Returns the cardinality estimate of the given number of most recent buckets, including the
+   * current bucket.
+   * @param time the current time
+   * @param windowBuckets the number of buckets of the window, from 1 to <i>numBuckets</i>
+   * @return the cardinality estimate of the window
+   */
+  public double getEstimate(final long time, final int windowBuckets) {
+    return windowUnion(time, windowBuckets).getEstimate();
+  }
+
+  /**
+   * Returns the union of the given number of most recent buckets, including the current bucket,
+   * as a new sketch on the java heap.
+   * @param time the current time
+   * @param windowBuckets the number of buckets of the window, from 1 to <i>numBuckets</i>
+   * @param tgtHllType the TgtHllType of the result
+   * @return the union of the window
+   */
+  public HllSketch getResult(final long time, final int windowBuckets,
+      final TgtHllType tgtHllType) {
+    return windowUnion(time, windowBuckets).getResult(tgtHllType);
+  }
+
+  /**
+   * Gets the <i>lgConfigK</i> of the buckets.
+   * @return the <i>lgConfigK</i> of the buckets.
+   */
+  public int getLgConfigK() {
+    return lgConfigK;
+  }
+
+  /**
+   * Gets the number of buckets of the longest window.
+   * @return the number of buckets of the longest window.
+   */
+  public int getNumBuckets() {
+    return numBuckets;
+  }
+
+  /**
+   * Gets the width of each bucket in the units of the caller's clock.
+   * @return the width of each bucket.
+   */
+  public long getBucketWidth() {
+    return bucketWidth;
+  }
+
+  /**
+   * Removes all items and forgets the current time.
+   */
+  public void reset() {
+    resetAll();
+    started = false;
+  }
+
+  private Union windowUnion(final long time, final int windowBuckets) {
+    if ((windowBuckets < 1) || (windowBuckets > numBuckets)) {
+      throw new SketchesArgumentException("windowBuckets must be from 1 to " + numBuckets + ": "
+          + windowBuckets);
+    }
+    advance(time);
+    scratch.reset();
+    //cover the completed buckets of the window with the largest aligned blocks
+    final long end = currentBucket;
+    long bucket = currentBucket - windowBuckets + 1;
+    while (bucket < end) {
+      int lvl = Math.min(Long.numberOfTrailingZeros(bucket), numLevels - 1);
+      while ((bucket + (1L << lvl)) > end) { lvl--; }
+      scratch.update(block(lvl, bucket >> lvl));
+      bucket += 1L << lvl;
+    }
+    scratch.update(current);
+    return scratch;
+  }
+
+  private void completeCurrentBucket() {
+    final long bucket = currentBucket++;
+    if (numLevels == 0) {
+      current.reset();
+      return;
+    }
+    //the slot of the completed bucket holds a bucket that has expired, which is recycled
+    final Union[] buckets = levels[0];
+    final int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+    final Union expired = buckets[slot];
+    buckets[slot] = current;
+    expired.reset();
+    current = expired;
+    //merge each block that the completed bucket completes
+    for (int lvl = 1; lvl < numLevels; lvl++) {
+      if (((bucket + 1) & ((1L << lvl) - 1)) != 0) { break; }
+      final long blockIndex = bucket >> lvl;
+      final Union block = block(lvl, blockIndex);
+      block.reset();
+      block.update(block(lvl - 1, 2 * blockIndex));
+      block.update(block(lvl - 1, (2 * blockIndex) + 1));
+    }
+  }
+
+  private static Union newDirectUnion(final int lgConfigK) {
+    return new Union(lgConfigK, WritableMemory.allocate(Union.getMaxSerializationBytes(lgConfigK)));
+  }
+
+  private Union block(final int lvl, final long blockIndex) {
+    final Union[] blocks = levels[lvl];
+    return blocks[(int) Math.floorMod(blockIndex, (long) blocks.length)];
+  }
+
+  private void resetAll() {
+    for (int lvl = 0; lvl < numLevels; lvl++) {
+      for (int i = 0; i < levels[lvl].length; i++) { levels[lvl][i].reset(); }
+    }
+    current.reset();
+  }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.Util.invPow2;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Word-at-a-time kernels for the union of dense sketches into an HLL_8 target.
+ *
+ * <p>These process eight registers per 64-bit word using SIMD-within-a-register (SWAR)
+ * arithmetic instead of reading and writing one slot at a time. All register values are less
+ * than 64, so the high bit of every byte is free to hold the borrow of a per-byte comparison.
+ * Heap arrays are accessed through a Memory wrapper, so heap and direct sketches share the same
+ * code.</p>
+ *
+ * <p>The word reads assume the native byte order is little-endian, as does the rest of the
+ * serialization code.</p>
+ */
+final class HllUnionKernels {
+  private static final long HI_BITS = 0x8080808080808080L;
+  private static final long LANE_6_LO = 0x003F003F003F003FL;
+  private static final long LANE_6_HI = 0x0FC00FC00FC00FC0L;
+
+  //the contributions of a register value to kxq0 and kxq1, as in the incremental update
+  private static final double[] KXQ0_DELTA = new double[256];
+  private static final double[] KXQ1_DELTA = new double[256];
+
+  static {
+    for (int v = 1; v < 64; v++) {
+      if (v < 32) { KXQ0_DELTA[v] = invPow2(v) - 1.0; }
+      else        { KXQ1_DELTA[v] = invPow2(v) - 1.0; }
+    }
+  }
+
+  private HllUnionKernels() {}
+
+  /**
+   * Merges the registers of an HLL_8 source into an HLL_8 target, folding the source slots onto
+   * the target slots if the source lgK is larger.
+   * @param src the Memory holding the source register array
+   * @param srcStart the offset in bytes of the source register array
+   * @param srcLgK the lgConfigK of the source, which must not be less than tgtLgK
+   * @param tgt the WritableMemory holding the target register array
+   * @param tgtStart the offset in bytes of the target register array
+   * @param tgtLgK the lgConfigK of the target
+   */
+  static void mergeHll8(final Memory src, final long srcStart, final int srcLgK,
+      final WritableMemory tgt, final long tgtStart, final int tgtLgK) {
+    assert srcLgK >= tgtLgK;
+    final int srcK = 1 << srcLgK;
+    final int tgtKmask = (1 << tgtLgK) - 1;
+    for (int i = 0; i < srcK; i += 8) {
+      final long tgtOffset = tgtStart + (i & tgtKmask);
+      final long srcWord = src.getLong(srcStart + i);
+      final long tgtWord = tgt.getLong(tgtOffset);
+      tgt.putLong(tgtOffset, maxBytes(srcWord, tgtWord));
+    }
+  }
+
+  /**
+   * Merges the registers of an HLL_6 source into an HLL_8 target, folding the source slots onto
+   * the target slots if the source lgK is larger. Each group of eight 6-bit registers occupies
+   * six bytes, which are spread into the eight bytes of a word before the merge.
+   * @param src the Memory holding the source register array
+   * @param srcStart the offset in bytes of the source register array
+   * @param srcLgK the lgConfigK of the source, which must not be less than tgtLgK
+   * @param tgt the WritableMemory holding the target register array
+   * @param tgtStart the offset in bytes of the target register array
+   * @param tgtLgK the lgConfigK of the target
+   */
+  static void mergeHll6(final Memory src, final long srcStart, final int srcLgK,
+      final WritableMemory tgt, final long tgtStart, final int tgtLgK) {
+    assert srcLgK >= tgtLgK;
+    final int srcK = 1 << srcLgK;
+    final int tgtKmask = (1 << tgtLgK) - 1;
+    long srcOffset = srcStart;
+    for (int i = 0; i < srcK; i += 8, srcOffset += 6) {
+      final long tgtOffset = tgtStart + (i & tgtKmask);
+      final long packed = (src.getInt(srcOffset) & 0XFFFF_FFFFL)
+          | ((src.getShort(srcOffset + 4) & 0XFFFFL) << 32);
+      final long tgtWord = tgt.getLong(tgtOffset);
+      tgt.putLong(tgtOffset, maxBytes(spread6(packed), tgtWord));
+    }
+  }
+
+  /**
+   * Recomputes curMin, numAtCurMin, kxq0 and kxq1 of an HLL_8 array from its registers and
+   * stores them. The sums are accumulated in slot order, so the results are identical to those
+   * of the incremental updates.
+   * @param absHllArr the HLL_8 array to rebuild
+   */
+  static void rebuildCurMinNumKxQ(final AbstractHllArray absHllArr) {
+    final int lgK = absHllArr.getLgConfigK();
+    final Memory mem;
+    final long start;
+    if (absHllArr.isMemory()) {
+      mem = absHllArr.getMemory();
+      start = PreambleUtil.HLL_BYTE_ARR_START;
+    } else {
+      mem = Memory.wrap(((HllArray) absHllArr).hllByteArr);
+      start = 0;
+    }
+    final int k = 1 << lgK;
+    int curMin = 64;
+    int numAtCurMin = 0;
+    double kxq0 = k;
+    double kxq1 = 0;
+    for (int i = 0; i < k; i += 8) {
+      final long word = mem.getLong(start + i);
+      for (int shift = 0; shift < 64; shift += 8) {
+        final int v = (int) (word >>> shift) & 0XFF;
+        kxq0 += KXQ0_DELTA[v];
+        kxq1 += KXQ1_DELTA[v];
+        if (v > curMin) { continue; }
+        if (v < curMin) {
+          curMin = v;
+          numAtCurMin = 1;
+        } else {
+          numAtCurMin++;
+        }
+      }
+    }
+    absHllArr.putKxQ0(kxq0);
+    absHllArr.putKxQ1(kxq1);
+    absHllArr.putCurMin(curMin);
+    absHllArr.putNumAtCurMin(numAtCurMin);
+    absHllArr.putRebuildCurMinNumKxQFlag(false);
+  }
+
+  /**
+   * Returns the byte-wise maximum of two words whose bytes are all less than 128.
+   * @param a the first word
+   * @param b the second word
+   * @return the byte-wise maximum
+   */
+  static long maxBytes(final long a, final long b) {
+    //each byte of (a | 0x80) - b is at least one, so no byte borrows from its neighbor, and
+    //its high bit is set exactly where the byte of a is at least the byte of b.
+    final long aGeB = ((a | HI_BITS) - b) & HI_BITS;
+    final long mask = (aGeB >>> 7) * 0XFF;
+    return (a & mask) | (b & ~mask);
+  }
+
+  /**
+   * Spreads eight packed 6-bit values in the low 48 bits of the given word to the eight bytes
+   * of the result, least significant first.
+   * @param packed the packed values
+   * @return the values, one per byte
+   */
+  static long spread6(final long packed) {
+    //first move each 12-bit pair of values into its own 16-bit lane
+    final long lanes12 = (packed & 0XFFFL)
+        | ((packed & 0XFFF000L) << 4)
+        | ((packed & 0XFFF000000L) << 8)
+        | ((packed & 0XFFF000000000L) << 12);
+    //then move the upper value of each pair into the upper byte of its lane
+    return (lanes12 & LANE_6_LO) | ((lanes12 & LANE_6_HI) << 2);
+  }
+
+}
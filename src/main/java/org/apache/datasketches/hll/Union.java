@@ -19,12 +19,14 @@
 
 package org.apache.datasketches.hll;
 
-import static org.apache.datasketches.Util.invPow2;
 import static org.apache.datasketches.hll.HllUtil.EMPTY;
 import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
 import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
 import static org.apache.datasketches.hll.TgtHllType.HLL_8;
 
+import java.util.Arrays;
+
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -48,12 +50,25 @@ import org.apache.datasketches.memory.WritableMemory;
  * <p>Second, the user cannot specify the {@link TgtHllType} as an input parameter to the union.
  * Instead, it is specified for the sketch returned with {@link #getResult(TgtHllType)}.
  *
+ * <p>Third, once its internal sketch is in <i>HLL</i> mode, an on-heap union operator does not
+ * apply the coupons of sources in <i>LIST</i> or <i>SET</i> mode immediately. It collects them
+ * in a buffer and applies them to the internal sketch in batches, sorted by slot address and with
+ * duplicates removed. This makes the union of
+ * many small sketches considerably faster. The buffer is applied before any query, so this is
+ * not visible in the results, except that the HIP estimate, which depends on the order of
+ * updates, may differ slightly from the one obtained by applying the coupons in their
+ * original order.
+ *
  * @author Lee Rhodes
  * @author Kevin Lang
  */
 public class Union extends BaseHllSketch {
+  static final int PENDING_COUPONS_SIZE = 1 << 12;
   final int lgMaxK;
   private final HllSketch gadget;
+  //coupons from LIST and SET mode sources that are not yet applied to the heap HLL mode gadget
+  private int[] pendingCoupons = null; //allocated on first use
+  private int numPendingCoupons = 0;
 
   /**
    * Construct this Union operator with the default maximum log-base-2 of <i>K</i>.
@@ -141,22 +156,33 @@ public class Union extends BaseHllSketch {
 
   @Override
   public double getCompositeEstimate() {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.hllSketchImpl.getCompositeEstimate();
   }
 
+  @Override
+  public double getImprovedRawEstimate() {
+    flushPendingCoupons();
+    checkRebuildCurMinNumKxQ(gadget);
+    return gadget.hllSketchImpl.getImprovedRawEstimate();
+  }
+
   @Override
   CurMode getCurMode() {
+    flushPendingCoupons();
     return gadget.getCurMode();
   }
 
   @Override
   public int getCompactSerializationBytes() {
+    flushPendingCoupons();
     return gadget.getCompactSerializationBytes();
   }
 
   @Override
   public double getEstimate() {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.getEstimate();
   }
@@ -173,6 +199,7 @@ public class Union extends BaseHllSketch {
 
   @Override
   public double getLowerBound(final int numStdDev) {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.getLowerBound(numStdDev);
   }
@@ -202,6 +229,7 @@ public class Union extends BaseHllSketch {
    * @return the result of this union operator with the specified TgtHllType
    */
   public HllSketch getResult(final TgtHllType tgtHllType) {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.copyAs(tgtHllType);
   }
@@ -213,11 +241,13 @@ public class Union extends BaseHllSketch {
 
   @Override
   public int getUpdatableSerializationBytes() {
+    flushPendingCoupons();
     return gadget.getUpdatableSerializationBytes();
   }
 
   @Override
   public double getUpperBound(final int numStdDev) {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.getUpperBound(numStdDev);
   }
@@ -229,7 +259,7 @@ public class Union extends BaseHllSketch {
 
   @Override
   public boolean isEmpty() {
-    return gadget.isEmpty();
+    return (numPendingCoupons == 0) && gadget.isEmpty();
   }
 
   @Override
@@ -244,6 +274,7 @@ public class Union extends BaseHllSketch {
 
   @Override
   boolean isOutOfOrder() {
+    flushPendingCoupons();
     return gadget.isOutOfOrder();
   }
 
@@ -253,6 +284,7 @@ public class Union extends BaseHllSketch {
   }
 
   boolean isRebuildCurMinNumKxQFlag() {
+    flushPendingCoupons();
     return gadget.hllSketchImpl.isRebuildCurMinNumKxQFlag();
   }
 
@@ -266,6 +298,7 @@ public class Union extends BaseHllSketch {
    */
   @Override
   public void reset() {
+    numPendingCoupons = 0;
     gadget.reset();
   }
 
@@ -278,12 +311,14 @@ public class Union extends BaseHllSketch {
    */
   @Override
   public byte[] toCompactByteArray() {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.toCompactByteArray();
   }
 
   @Override
   public byte[] toUpdatableByteArray() {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.toUpdatableByteArray();
   }
@@ -291,6 +326,7 @@ public class Union extends BaseHllSketch {
   @Override
   public String toString(final boolean summary, final boolean hllDetail,
       final boolean auxDetail, final boolean all) {
+    flushPendingCoupons();
     checkRebuildCurMinNumKxQ(gadget);
     return gadget.toString(summary, hllDetail, auxDetail, all);
   }
@@ -300,15 +336,80 @@ public class Union extends BaseHllSketch {
    * @param sketch the given sketch.
    */
   public void update(final HllSketch sketch) {
+    if ((sketch == null) || sketch.isEmpty()) { return; }
+    if ((sketch.getCurMode() != CurMode.HLL) && (gadget.getCurMode() == CurMode.HLL)
+        && !gadget.isMemory() && bufferCoupons(sketch)) {
+      return;
+    }
+    flushPendingCoupons();
     gadget.hllSketchImpl = unionImpl(sketch, gadget, lgMaxK);
   }
 
+  /**
+   * Update this union operator with the current state of the given union operator, without
+   * first copying that state to a result sketch. The given union is not changed.
+   * @param source the given union operator
+   */
+  void update(final Union source) {
+    source.flushPendingCoupons();
+    checkRebuildCurMinNumKxQ(source.gadget);
+    update(source.gadget);
+  }
+
   @Override
   void couponUpdate(final int coupon) {
     if (coupon == EMPTY) { return; }
     gadget.hllSketchImpl = gadget.hllSketchImpl.couponUpdate(coupon);
   }
 
+  /**
+   * Appends the coupons of the given LIST or SET mode source to the pending coupons, first
+   * applying the pending coupons if there is not enough room.
+   * @param source the given source in LIST or SET mode
+   * @return false if the source has too many coupons to be buffered at all.
+   */
+  private boolean bufferCoupons(final HllSketch source) {
+    final AbstractCoupons coupons = (AbstractCoupons) source.hllSketchImpl;
+    final int count = coupons.getCouponCount();
+    if (count > (PENDING_COUPONS_SIZE - numPendingCoupons)) {
+      flushPendingCoupons();
+      if (count > PENDING_COUPONS_SIZE) { return false; }
+    }
+    if (pendingCoupons == null) { pendingCoupons = new int[PENDING_COUPONS_SIZE]; }
+    final int[] arr = coupons.getCouponIntArr();
+    if (arr != null) {
+      for (int i = 0; i < arr.length; i++) {
+        if (arr[i] != EMPTY) { pendingCoupons[numPendingCoupons++] = arr[i]; }
+      }
+    } else {
+      final PairIterator itr = coupons.iterator();
+      while (itr.nextValid()) { pendingCoupons[numPendingCoupons++] = itr.getPair(); }
+    }
+    return true;
+  }
+
+  /**
+   * Applies the pending coupons to the gadget in one batch. The coupons are sorted by slot address
+   * and only the largest value of each slot is kept. Since the values are independent of the
+   * addresses this order does not bias the HIP estimator.
+   */
+  private void flushPendingCoupons() {
+    final int n = numPendingCoupons;
+    if (n == 0) { return; }
+    numPendingCoupons = 0;
+    final int[] arr = pendingCoupons;
+    //rotate the 6-bit value below the 26-bit address so that equal addresses sort together
+    for (int i = 0; i < n; i++) { arr[i] = Integer.rotateLeft(arr[i], 6); }
+    Arrays.sort(arr, 0, n);
+    int j = 0;
+    for (int i = 0; i < n; i++) {
+      //within a run of equal addresses the values are ascending, keep the last one
+      if (((i + 1) < n) && ((arr[i] >>> 6) == (arr[i + 1] >>> 6))) { continue; }
+      arr[j++] = Integer.rotateRight(arr[i], 6);
+    }
+    gadget.couponUpdate(arr, j);
+  }
+
   // Union operator logic
 
   /**
@@ -479,130 +580,33 @@ public class Union extends BaseHllSketch {
 
   private static final void mergeHlltoHLLmode(final HllSketch src, final HllSketch tgt,
       final int srcLgK, final int tgtLgK, final boolean srcIsMem, final boolean tgtIsMem) {
-      final int sw = (tgtIsMem ? 1 : 0) | (srcIsMem ? 2 : 0)
-          | ((srcLgK > tgtLgK) ? 4 : 0) | ((src.getTgtHllType() != HLL_8) ? 8 : 0);
-      switch (sw) {
-        case 0: { //HLL_8, srcLgK=tgtLgK, src=heap, tgt=heap
-          final int srcK = 1 << srcLgK;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final byte tgtV = tgtArr[i];
-            tgtArr[i] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
-        }
-        case 1: { //HLL_8, srcLgK=tgtLgK, src=heap, tgt=mem
-          final int srcK = 1 << srcLgK;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + i);
-            tgtMem.putByte(HLL_BYTE_ARR_START + i, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 2: { //HLL_8, srcLgK=tgtLgK, src=mem,  tgt=heap
-          final int srcK = 1 << srcLgK;
-          final Memory srcMem = src.getMemory();
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final byte tgtV = tgtArr[i];
-            tgtArr[i] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
-        }
-        case 3: { //HLL_8, srcLgK=tgtLgK, src=mem,  tgt=mem
-          final int srcK = 1 << srcLgK;
-          final Memory srcMem = src.getMemory();
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + i);
-            tgtMem.putByte(HLL_BYTE_ARR_START + i, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 4: { //HLL_8, srcLgK>tgtLgK, src=heap, tgt=heap
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtArr[j];
-            tgtArr[j] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
+      final TgtHllType srcType = src.getTgtHllType();
+      if (srcType == HLL_4) {
+        //HLL_4 registers are offsets from curMin plus exceptions, so they are merged by slot
+        final int srcK = 1 << srcLgK;
+        final int tgtKmask = (srcLgK > tgtLgK) ? (1 << tgtLgK) - 1 : srcK - 1;
+        final AbstractHllArray srcAbsHllArr = (AbstractHllArray)(src.hllSketchImpl);
+        final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
+        for (int i = 0; i < srcK; i++) {
+          final int srcV = srcAbsHllArr.getSlotValue(i);
+          final int j = i & tgtKmask;
+          tgtAbsHllArr.updateSlotNoKxQ(j, srcV);
         }
-        case 5: { //HLL_8, srcLgK>tgtLgK, src=heap, tgt=mem
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + j);
-            tgtMem.putByte(HLL_BYTE_ARR_START + j, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 6: { //HLL_8, srcLgK>tgtLgK, src=mem,  tgt=heap
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final Memory srcMem = src.getMemory();
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtArr[j];
-            tgtArr[j] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
-        }
-        case 7: { //HLL_8, srcLgK>tgtLgK, src=mem,  tgt=mem
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final Memory srcMem = src.getMemory();
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + j);
-            tgtMem.putByte(HLL_BYTE_ARR_START + j, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 8: case 9: case 10: case 11:
-        {
-          //!HLL_8, srcLgK=tgtLgK, src=heap/mem, tgt=heap/mem
-          final int srcK = 1 << srcLgK;
-          final AbstractHllArray srcAbsHllArr = (AbstractHllArray)(src.hllSketchImpl);
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          for (int i = 0; i < srcK; i++) {
-            final int srcV = srcAbsHllArr.getSlotValue(i);
-            tgtAbsHllArr.updateSlotNoKxQ(i, srcV);
-          }
-          break;
-        }
-        case 12: case 13: case 14: case 15:
-        {
-          //!HLL_8, srcLgK>tgtLgK, src=heap/mem, tgt=heap/mem
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final AbstractHllArray srcAbsHllArr = (AbstractHllArray)(src.hllSketchImpl);
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          for (int i = 0; i < srcK; i++) {
-            final int srcV = srcAbsHllArr.getSlotValue(i);
-            final int j = i & tgtKmask;
-            tgtAbsHllArr.updateSlotNoKxQ(j, srcV);
-          }
-          break;
+      } else {
+        //HLL_6, HLL_8: word at a time, heap or memory
+        final Memory srcMem = srcIsMem
+            ? src.getMemory()
+            : Memory.wrap(((HllArray) src.hllSketchImpl).hllByteArr);
+        final long srcStart = srcIsMem ? HLL_BYTE_ARR_START : 0;
+        final WritableMemory tgtMem = tgtIsMem
+            ? tgt.getWritableMemory()
+            : WritableMemory.wrap(((HllArray) tgt.hllSketchImpl).hllByteArr);
+        final long tgtStart = tgtIsMem ? HLL_BYTE_ARR_START : 0;
+        final int tgtArrLgK = tgt.getLgConfigK();
+        if (srcType == HLL_8) {
+          HllUnionKernels.mergeHll8(srcMem, srcStart, srcLgK, tgtMem, tgtStart, tgtArrLgK);
+        } else {
+          HllUnionKernels.mergeHll6(srcMem, srcStart, srcLgK, tgtMem, tgtStart, tgtArrLgK);
         }
       }
       tgt.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
@@ -638,31 +642,7 @@ public class Union extends BaseHllSketch {
     final TgtHllType tgtHllType = sketch.getTgtHllType();
     final boolean rebuild = hllSketchImpl.isRebuildCurMinNumKxQFlag();
     if ( !rebuild || (curMode != CurMode.HLL) || (tgtHllType != HLL_8) ) { return; }
-    final AbstractHllArray absHllArr = (AbstractHllArray)(hllSketchImpl);
-    int curMin = 64;
-    int numAtCurMin = 0;
-    double kxq0 = 1 << absHllArr.getLgConfigK();
-    double kxq1 = 0;
-    final PairIterator itr = absHllArr.iterator();
-    while (itr.nextAll()) {
-      final int v = itr.getValue();
-      if (v > 0) {
-        if (v < 32) { kxq0 += invPow2(v) - 1.0; }
-        else        { kxq1 += invPow2(v) - 1.0; }
-      }
-      if (v > curMin) { continue; }
-      if (v < curMin) {
-        curMin = v;
-        numAtCurMin = 1;
-      } else {
-        numAtCurMin++;
-      }
-    }
-    absHllArr.putKxQ0(kxq0);
-    absHllArr.putKxQ1(kxq1);
-    absHllArr.putCurMin(curMin);
-    absHllArr.putNumAtCurMin(numAtCurMin);
-    absHllArr.putRebuildCurMinNumKxQFlag(false);
+    HllUnionKernels.rebuildCurMinNumKxQ((AbstractHllArray)(hllSketchImpl));
     //HipAccum is not affected
   }
 
@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.datasketches.SketchesArgumentException;
+
+/**
+ * A thread-safe KLL floats sketch for many concurrent writers and readers.
+ *
+ * <p>Each writer thread fills its own local level-zero buffer without any synchronization.
+ * When a local buffer is full it is queued for propagation and the writer continues with a fresh
+ * buffer. A single background task at a time drains the queue and bulk-updates a shared
+ * KllFloatsSketch with the queued buffers, so the executor never has more than one thread of
+ * this sketch waiting for the shared sketch, and yields its thread after a few buffers. Readers
+ * query an
+ * immutable sorted view of the shared sketch, which is rebuilt only when new data has been
+ * propagated since the last query, so readers never block writers.</p>
+ *
+ * <p>As with the concurrent theta sketch, the shared sketch lags behind the writers: items in a
+ * partially filled local buffer are not visible to readers until the buffer fills up or its
+ * writer thread calls {@link #flush()}, and handed off buffers become visible once they have
+ * been propagated, which can be awaited with {@link #awaitPropagation()}.
+ * The local buffers add at most <i>numWriterThreads * localBufferSize</i> items of lag, which
+ * for a fixed buffer size becomes insignificant relative to <i>n</i> as the stream grows.</p>
+ *
+ * <p>If more than {@link #MAX_PENDING_BUFFERS} full buffers are waiting for propagation, writers
+ * propagate their full buffers themselves until the backlog shrinks, which bounds the memory
+ * held by pending buffers. If the executor rejects the task, for example because it was shut
+ * down, the writer that handed off the buffer propagates the queued buffers itself.</p>
+ */
+public final class ConcurrentKllFloatsSketch {
+
+  /**
+   * The default size of the local buffer of each writer thread
+   */
+  public static final int DEFAULT_LOCAL_BUFFER_SIZE = 1024;
+
+  /**
+   * The number of full buffers that may wait for propagation before writers propagate their
+   * buffers themselves
+   */
+  public static final int MAX_PENDING_BUFFERS = 64;
+
+  // the number of buffers a background task propagates before it yields its thread
+  static final int MAX_BUFFERS_PER_RUN = 16;
+
+  private final KllFloatsSketch shared_; // guarded by lock_
+  private final Object lock_ = new Object();
+  private final int localBufferSize_;
+  private final Executor executor_;
+  private final ThreadLocal<LocalBuffer> localBuffer_;
+  private final ConcurrentLinkedQueue<LocalBuffer> fullBuffers_ = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<LocalBuffer> freeBuffers_ = new ConcurrentLinkedQueue<>();
+  // true while a task that drains fullBuffers_ is scheduled or running
+  private final AtomicBoolean draining_ = new AtomicBoolean(false);
+  private final Runnable drainTask_;
+  private final AtomicLong pendingPropagations_ = new AtomicLong();
+  private volatile long version_; // incremented after every propagation, written under lock_
+  private volatile Snapshot snapshot_;
+
+  /**
+   * Constructs a concurrent sketch with the default k, the default local buffer size and
+   * background propagation on the common ForkJoinPool.
+   */
+  public ConcurrentKllFloatsSketch() {
+    this(KllFloatsSketch.DEFAULT_K);
+  }
+
+  /**
+   * Constructs a concurrent sketch with the given k, the default local buffer size and
+   * background propagation on the common ForkJoinPool.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   */
+  public ConcurrentKllFloatsSketch(final int k) {
+    this(k, DEFAULT_LOCAL_BUFFER_SIZE, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a concurrent sketch.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param localBufferSize the number of items each writer thread buffers before handing them to
+   * the shared sketch. Must be at least 1.
+   * @param executor the executor that runs the propagation of full local buffers into the shared
+   * sketch. The propagations of one sketch run as one task at a time, so any executor may be
+   * used.
+   */
+  public ConcurrentKllFloatsSketch(final int k, final int localBufferSize,
+      final Executor executor) {
+    KllFloatsSketch.checkK(k);
+    if (localBufferSize < 1) {
+      throw new SketchesArgumentException("localBufferSize must be at least 1: " + localBufferSize);
+    }
+    if (executor == null) {
+      throw new SketchesArgumentException("executor must not be null");
+    }
+    shared_ = new KllFloatsSketch(k);
+    localBufferSize_ = localBufferSize;
+    executor_ = executor;
+    localBuffer_ = new ThreadLocal<LocalBuffer>() {
+      @Override
+      protected LocalBuffer initialValue() {
+        return new LocalBuffer();
+      }
+    };
+    drainTask_ = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          drain(MAX_BUFFERS_PER_RUN);
+        } finally {
+          schedule();
+        }
+      }
+    };
+    snapshot_ = new Snapshot(0, shared_.getSortedView());
+  }
+
+  /**
+   * Updates this sketch with the given data item. This only touches the local buffer of the
+   * calling thread, except when the buffer is full and is handed off for propagation.
+   *
+   * @param value an item from a stream of items. NaNs are ignored.
+   */
+  public void update(final float value) {
+    if (Float.isNaN(value)) { return; }
+    final LocalBuffer local = localBuffer_.get();
+    local.items[local.count++] = value;
+    if (local.count == localBufferSize_) {
+      handOff(local);
+    }
+  }
+
+  /**
+   * Hands the partially filled local buffer of the calling thread to the shared sketch.
+   * Writer threads should call this before they finish, otherwise their last buffered items
+   * are never propagated.
+   */
+  public void flush() {
+    final LocalBuffer local = localBuffer_.get();
+    if (local.count > 0) {
+      handOff(local);
+    }
+  }
+
+  /**
+   * Waits until all handed off local buffers have been propagated into the shared sketch.
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public void awaitPropagation() throws InterruptedException {
+    synchronized (lock_) {
+      while (pendingPropagations_.get() > 0) {
+        lock_.wait();
+      }
+    }
+  }
+
+  /**
+   * Returns the parameter k
+   * @return parameter k
+   */
+  public int getK() {
+    return shared_.getK();
+  }
+
+  /**
+   * Returns the configured size of the local buffer of each writer thread
+   * @return the configured size of the local buffer of each writer thread
+   */
+  public int getLocalBufferSize() {
+    return localBufferSize_;
+  }
+
+  /**
+   * Returns the number of items propagated into the shared sketch so far
+   * @return the number of items propagated into the shared sketch so far
+   */
+  public long getN() {
+    return getSortedView().getN();
+  }
+
+  /**
+   * Returns true if no items have been propagated into the shared sketch yet
+   * @return true if no items have been propagated into the shared sketch yet
+   */
+  public boolean isEmpty() {
+    return getN() == 0;
+  }
+
+  /**
+   * Returns an immutable sorted view of the shared sketch. Consecutive calls return the same
+   * view until more data has been propagated. All of the query methods of this class answer
+   * from this view, so to answer several queries from one consistent state, query the view.
+   * @return an immutable sorted view of the shared sketch
+   */
+  public KllFloatsSortedView getSortedView() {
+    final Snapshot snapshot = snapshot_;
+    if (snapshot.version == version_) {
+      return snapshot.view;
+    }
+    synchronized (lock_) {
+      if (snapshot_.version != version_) {
+        snapshot_ = new Snapshot(version_, shared_.getSortedView());
+      }
+      return snapshot_.view;
+    }
+  }
+
+  /**
+   * Returns a heap copy of the shared sketch, for example to serialize or merge it.
+   * @return a heap copy of the shared sketch
+   */
+  public KllFloatsSketch getResult() {
+    final KllFloatsSketch result = new KllFloatsSketch(shared_.getK());
+    synchronized (lock_) {
+      result.merge(shared_);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the min value propagated so far. If the sketch is empty this returns NaN.
+   * @return the min value propagated so far
+   */
+  public float getMinValue() {
+    return getSortedView().getMinValue();
+  }
+
+  /**
+   * Returns the max value propagated so far. If the sketch is empty this returns NaN.
+   * @return the max value propagated so far
+   */
+  public float getMaxValue() {
+    return getSortedView().getMaxValue();
+  }
+
+  /**
+   * Returns an approximation to the value of the data item that would be preceded by the given
+   * fraction of a hypothetical sorted version of the propagated stream.
+   * See {@link KllFloatsSketch#getQuantile(double)}.
+   *
+   * @param fraction the specified fractional position in the hypothetical sorted stream.
+   * @return the approximation to the value at the given fraction
+   */
+  public float getQuantile(final double fraction) {
+    return getSortedView().getQuantile(fraction);
+  }
+
+  /**
+   * Returns approximations to the values at the given fractions.
+   * See {@link KllFloatsSketch#getQuantiles(double[])}.
+   *
+   * @param fractions given array of fractional positions in the hypothetical sorted stream.
+   * @return array of approximations to the given fractions in the same order as given fractions
+   * array.
+   */
+  public float[] getQuantiles(final double[] fractions) {
+    return getSortedView().getQuantiles(fractions);
+  }
+
+  /**
+   * Returns an approximation to the normalized (fractional) rank of the given value.
+   * See {@link KllFloatsSketch#getRank(float)}.
+   *
+   * @param value to be ranked
+   * @return an approximate rank of the given value
+   */
+  public double getRank(final float value) {
+    return getSortedView().getRank(value);
+  }
+
+  /**
+   * Returns an approximation to the Cumulative Distribution Function (CDF) of the propagated
+   * stream. See {@link KllFloatsSketch#getCDF(float[])}.
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing float values
+   * @return an array of m+1 double values, which are a consecutive approximation to the CDF
+   */
+  public double[] getCDF(final float[] splitPoints) {
+    return getSortedView().getCDF(splitPoints);
+  }
+
+  /**
+   * Returns an approximation to the Probability Mass Function (PMF) of the propagated stream.
+   * See {@link KllFloatsSketch#getPMF(float[])}.
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing float values
+   * @return an array of m+1 doubles each of which is an approximation to the fraction of the
+   * stream values that fall into one of the intervals.
+   */
+  public double[] getPMF(final float[] splitPoints) {
+    return getSortedView().getPMF(splitPoints);
+  }
+
+  private void handOff(final LocalBuffer local) {
+    if (pendingPropagations_.get() >= MAX_PENDING_BUFFERS) {
+      // the propagation does not keep up, so this writer propagates and keeps its own buffer
+      synchronized (lock_) {
+        try {
+          shared_.update(local.items, 0, local.count);
+          version_++;
+        } finally {
+          local.count = 0;
+        }
+      }
+      return;
+    }
+    final LocalBuffer free = freeBuffers_.poll();
+    localBuffer_.set(free != null ? free : new LocalBuffer());
+    pendingPropagations_.incrementAndGet();
+    fullBuffers_.add(local);
+    schedule();
+  }
+
+  private void schedule() {
+    while (!fullBuffers_.isEmpty() && draining_.compareAndSet(false, true)) {
+      try {
+        executor_.execute(drainTask_);
+        return;
+      } catch (final RejectedExecutionException e) {
+        // fall through and propagate on this thread, so that no items are lost
+      }
+      drain(Integer.MAX_VALUE);
+    }
+  }
+
+  private void drain(final int maxBuffers) {
+    try {
+      synchronized (lock_) {
+        LocalBuffer buffer;
+        for (int i = 0; (i < maxBuffers) && ((buffer = fullBuffers_.poll()) != null); i++) {
+          try {
+            shared_.update(buffer.items, 0, buffer.count);
+            version_++;
+          } finally {
+            buffer.count = 0;
+            freeBuffers_.offer(buffer);
+            if (pendingPropagations_.decrementAndGet() == 0) {
+              lock_.notifyAll();
+            }
+          }
+        }
+      }
+    } finally {
+      draining_.set(false);
+    }
+  }
+
+  private final class LocalBuffer {
+    final float[] items = new float[localBufferSize_];
+    int count;
+  }
+
+  private static final class Snapshot {
+    final long version;
+    final KllFloatsSortedView view;
+
+    Snapshot(final long version, final KllFloatsSortedView view) {
+      this.version = version;
+      this.view = view;
+    }
+  }
+
+}
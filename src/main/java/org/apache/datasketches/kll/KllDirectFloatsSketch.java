@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static org.apache.datasketches.kll.KllPreambleUtil.DATA_START;
+import static org.apache.datasketches.kll.KllPreambleUtil.FAMILY_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.FLAGS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.K_SHORT;
+import static org.apache.datasketches.kll.KllPreambleUtil.LEVEL_ZERO_SORTED_BIT_MASK;
+import static org.apache.datasketches.kll.KllPreambleUtil.MIN_K_SHORT;
+import static org.apache.datasketches.kll.KllPreambleUtil.M_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.NUM_LEVELS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.N_LONG;
+import static org.apache.datasketches.kll.KllPreambleUtil.PREAMBLE_INTS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.PREAMBLE_INTS_FULL;
+import static org.apache.datasketches.kll.KllPreambleUtil.SERIAL_VERSION_UPDATABLE;
+import static org.apache.datasketches.kll.KllPreambleUtil.SER_VER_BYTE;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.Family;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Implements the KllFloatsSketch on a WritableMemory holding the updatable form.
+ * Updates, compactions and merges are done directly in the Memory.
+ */
+final class KllDirectFloatsSketch extends KllDirectFloatsSketchR {
+  private WritableMemory wmem_;
+  private MemoryRequestServer memReqSvr_;
+
+  private KllDirectFloatsSketch(final WritableMemory wmem, final MemoryRequestServer memReqSvr) {
+    super(wmem);
+    wmem_ = wmem;
+    memReqSvr_ = memReqSvr;
+  }
+
+  /**
+   * Initializes the given Memory to an empty sketch and wraps it.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param dstMem the destination Memory
+   * @param memReqSvr the MemoryRequestServer used to obtain more space, may be null
+   * @return a new direct sketch
+   */
+  static KllDirectFloatsSketch newInstance(final int k, final WritableMemory dstMem,
+      final MemoryRequestServer memReqSvr) {
+    checkK(k);
+    final long minBytes = KllPreambleUtil.getUpdatableSizeBytes(1, k, Float.BYTES);
+    if (dstMem.getCapacity() < minBytes) {
+      throw new SketchesArgumentException("Destination Memory too small: "
+          + dstMem.getCapacity() + " < " + minBytes);
+    }
+    insertPreamble(dstMem, k, DEFAULT_M);
+    dstMem.putLong(N_LONG, 0);
+    dstMem.putShort(MIN_K_SHORT, (short) k);
+    dstMem.putByte(NUM_LEVELS_BYTE, (byte) 1);
+    dstMem.putInt(DATA_START, k);
+    dstMem.putInt(DATA_START + Integer.BYTES, k);
+    dstMem.putFloat(DATA_START + (2 * Integer.BYTES), Float.NaN);
+    dstMem.putFloat(DATA_START + (2 * Integer.BYTES) + Float.BYTES, Float.NaN);
+    return new KllDirectFloatsSketch(dstMem, memReqSvr);
+  }
+
+  /**
+   * Wraps the given Memory, which must hold the updatable form of a sketch.
+   * @param srcMem the WritableMemory holding the updatable form of a sketch
+   * @param memReqSvr the MemoryRequestServer used to obtain more space, may be null
+   * @return a direct sketch operating on the given Memory
+   */
+  static KllDirectFloatsSketch wrapInstance(final WritableMemory srcMem,
+      final MemoryRequestServer memReqSvr) {
+    KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    if (!KllPreambleUtil.isUpdatableFormat(srcMem)) {
+      throw new SketchesArgumentException(
+          "Memory does not hold the updatable form of a sketch, use heapify() or wrap()");
+    }
+    return new KllDirectFloatsSketch(srcMem, memReqSvr);
+  }
+
+  /**
+   * Writes the first preamble long of the updatable form with the flags cleared.
+   * @param wmem the destination Memory
+   * @param k the configured k
+   * @param m the configured m
+   */
+  static void insertPreamble(final WritableMemory wmem, final int k, final int m) {
+    wmem.putByte(PREAMBLE_INTS_BYTE, (byte) PREAMBLE_INTS_FULL);
+    wmem.putByte(SER_VER_BYTE, SERIAL_VERSION_UPDATABLE);
+    wmem.putByte(FAMILY_BYTE, (byte) Family.KLL.getID());
+    wmem.putByte(FLAGS_BYTE, (byte) 0);
+    wmem.putShort(K_SHORT, (short) k);
+    wmem.putByte(M_BYTE, (byte) m);
+  }
+
+  @Override
+  void setMinK(final int minK) {
+    wmem_.putShort(MIN_K_SHORT, (short) minK);
+  }
+
+  @Override
+  void setN(final long n) {
+    wmem_.putLong(N_LONG, n);
+  }
+
+  @Override
+  void setMinValue(final float minValue) {
+    wmem_.putFloat(getMinMaxOffset(), minValue);
+  }
+
+  @Override
+  void setMaxValue(final float maxValue) {
+    wmem_.putFloat(getMinMaxOffset() + Float.BYTES, maxValue);
+  }
+
+  @Override
+  void setLevelZeroSorted(final boolean sorted) {
+    final int flags = getFlags();
+    wmem_.putByte(FLAGS_BYTE, (byte) (sorted
+        ? flags | LEVEL_ZERO_SORTED_BIT_MASK
+        : flags & ~LEVEL_ZERO_SORTED_BIT_MASK));
+  }
+
+  @Override
+  void setLevelsArrayAt(final int index, final int value) {
+    wmem_.putInt(DATA_START + ((long) index * Integer.BYTES), value);
+  }
+
+  @Override
+  void setItemsArrayAt(final int index, final float value) {
+    wmem_.putFloat(getItemsOffset() + ((long) index * Float.BYTES), value);
+  }
+
+  @Override
+  void setItemsArrayRange(final int index, final float[] src, final int srcOffset,
+      final int length) {
+    wmem_.putFloatArray(getItemsOffset() + ((long) index * Float.BYTES), src, srcOffset, length);
+  }
+
+  @Override
+  void moveItemsArrayRange(final int srcIndex, final int dstIndex, final int length) {
+    // copyTo() handles overlapping ranges, but rejects a copy onto itself
+    if ((length == 0) || (srcIndex == dstIndex)) { return; }
+    final long itemsOffset = getItemsOffset();
+    wmem_.copyTo(itemsOffset + ((long) srcIndex * Float.BYTES), wmem_,
+        itemsOffset + ((long) dstIndex * Float.BYTES), (long) length * Float.BYTES);
+  }
+
+  @Override
+  void sortItemsArrayRange(final int fromIndex, final int toIndex) {
+    // only level zero is ever sorted, so this copy is small
+    final float[] items = new float[toIndex - fromIndex];
+    final long offset = getItemsOffset() + ((long) fromIndex * Float.BYTES);
+    wmem_.getFloatArray(offset, items, 0, items.length);
+    Arrays.sort(items);
+    wmem_.putFloatArray(offset, items, 0, items.length);
+  }
+
+  @Override
+  void growItemsAtBottom(final int numLevels, final int[] levels, final int deltaCap) {
+    final float minValue = getMinValue();
+    final float maxValue = getMaxValue();
+    final long oldItemsOffset = getItemsOffset();
+    final int oldLevelZero = getLevelsArrayAt(0);
+    final int oldCapacity = getLevelsArrayAt(getNumLevels());
+    ensureCapacity(numLevels, levels[numLevels],
+        oldItemsOffset + ((long) oldCapacity * Float.BYTES));
+    // the items move up past the longer levels array first, then the header is written below
+    final long newItemsOffset = DATA_START + ((long) (numLevels + 1) * Integer.BYTES)
+        + (2 * Float.BYTES);
+    wmem_.copyTo(oldItemsOffset + ((long) oldLevelZero * Float.BYTES), wmem_,
+        newItemsOffset + ((long) (oldLevelZero + deltaCap) * Float.BYTES),
+        (long) (oldCapacity - oldLevelZero) * Float.BYTES);
+    putLevelsAndMinMax(numLevels, levels, minValue, maxValue);
+  }
+
+  @Override
+  void setLevelsAndCapacity(final int numLevels, final int[] levels) {
+    final float minValue = getMinValue();
+    final float maxValue = getMaxValue();
+    ensureCapacity(numLevels, levels[numLevels], DATA_START);
+    putLevelsAndMinMax(numLevels, levels, minValue, maxValue);
+  }
+
+  @Override
+  void setLevelsAndItems(final int numLevels, final int[] levels, final float[] items) {
+    setLevelsAndCapacity(numLevels, levels);
+    // the free space at the bottom of level zero does not need to be written
+    setItemsArrayRange(levels[0], items, levels[0], levels[numLevels] - levels[0]);
+  }
+
+  // Direct supporting methods
+
+  @Override
+  boolean isReadOnly() {
+    return false;
+  }
+
+  private void putLevelsAndMinMax(final int numLevels, final int[] levels, final float minValue,
+      final float maxValue) {
+    wmem_.putByte(NUM_LEVELS_BYTE, (byte) numLevels);
+    long offset = DATA_START;
+    wmem_.putIntArray(offset, levels, 0, numLevels + 1);
+    offset += (numLevels + 1) * Integer.BYTES;
+    wmem_.putFloat(offset, minValue);
+    offset += Float.BYTES;
+    wmem_.putFloat(offset, maxValue);
+  }
+
+  /**
+   * Makes sure that the Memory can hold the updatable form with the given number of levels and
+   * capacity, moving to a larger Memory if needed.
+   * @param numLevels the number of levels
+   * @param capacity the total capacity of the levels
+   * @param keepBytes the number of leading bytes that must be kept if the Memory is replaced
+   */
+  private void ensureCapacity(final int numLevels, final int capacity, final long keepBytes) {
+    final long needBytes = KllPreambleUtil.getUpdatableSizeBytes(numLevels, capacity, Float.BYTES);
+    if (needBytes <= wmem_.getCapacity()) { return; }
+    if (memReqSvr_ == null) {
+      memReqSvr_ = wmem_.getMemoryRequestServer();
+      if (memReqSvr_ == null) { memReqSvr_ = new DefaultMemoryRequestServer(); }
+    }
+    final WritableMemory newMem = memReqSvr_.request(needBytes);
+    wmem_.copyTo(0, newMem, 0, keepBytes);
+    memReqSvr_.requestClose(wmem_, newMem);
+    wmem_ = newMem;
+    mem_ = newMem;
+  }
+
+}
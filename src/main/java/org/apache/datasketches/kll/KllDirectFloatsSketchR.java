@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static org.apache.datasketches.kll.KllPreambleUtil.DATA_START;
+import static org.apache.datasketches.kll.KllPreambleUtil.DATA_START_SINGLE_ITEM;
+import static org.apache.datasketches.kll.KllPreambleUtil.EMPTY_BIT_MASK;
+import static org.apache.datasketches.kll.KllPreambleUtil.FLAGS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.K_SHORT;
+import static org.apache.datasketches.kll.KllPreambleUtil.LEVEL_ZERO_SORTED_BIT_MASK;
+import static org.apache.datasketches.kll.KllPreambleUtil.MIN_K_SHORT;
+import static org.apache.datasketches.kll.KllPreambleUtil.NUM_LEVELS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.N_LONG;
+import static org.apache.datasketches.kll.KllPreambleUtil.SINGLE_ITEM_BIT_MASK;
+
+import java.nio.FloatBuffer;
+
+import org.apache.datasketches.SketchesReadOnlyException;
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * Implements the KllFloatsSketch read-only on a Memory image. The image may be in either the
+ * compact or the updatable form. Nothing is copied to the heap until a query needs it.
+ */
+class KllDirectFloatsSketchR extends KllFloatsSketch {
+  Memory mem_;
+  final boolean updatable_;
+
+  KllDirectFloatsSketchR(final Memory mem) {
+    super(mem.getShort(K_SHORT) & 0xffff, DEFAULT_M);
+    mem_ = mem;
+    updatable_ = KllPreambleUtil.isUpdatableFormat(mem);
+  }
+
+  /**
+   * Wraps the given Memory image of a sketch read-only.
+   * @param srcMem the Memory image of a sketch in either the compact or the updatable form
+   * @return a read-only sketch operating on the given Memory
+   */
+  static KllDirectFloatsSketchR wrapInstance(final Memory srcMem) {
+    KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    return new KllDirectFloatsSketchR(srcMem);
+  }
+
+  @Override
+  public long getN() {
+    if (updatable_) { return mem_.getLong(N_LONG); }
+    final int flags = getFlags();
+    if ((flags & EMPTY_BIT_MASK) > 0) { return 0; }
+    if ((flags & SINGLE_ITEM_BIT_MASK) > 0) { return 1; }
+    return mem_.getLong(N_LONG);
+  }
+
+  @Override
+  public float getMinValue() {
+    if (isCompactEmpty()) { return Float.NaN; }
+    return mem_.getFloat(getMinMaxOffset());
+  }
+
+  @Override
+  public float getMaxValue() {
+    if (isCompactEmpty()) { return Float.NaN; }
+    return isCompactSingleItem()
+        ? mem_.getFloat(DATA_START_SINGLE_ITEM)
+        : mem_.getFloat(getMinMaxOffset() + Float.BYTES);
+  }
+
+  @Override
+  public boolean isDirect() {
+    return true;
+  }
+
+  @Override
+  public boolean isSameResource(final Memory that) {
+    return mem_.isSameResource(that);
+  }
+
+  @Override
+  public void update(final float value) {
+    if (isReadOnly()) {
+      throw new SketchesReadOnlyException("Call to update() on read-only buffer");
+    }
+    super.update(value);
+  }
+
+  @Override
+  public void update(final float[] values, final int offset, final int length) {
+    if (isReadOnly()) {
+      throw new SketchesReadOnlyException("Call to update() on read-only buffer");
+    }
+    super.update(values, offset, length);
+  }
+
+  @Override
+  public void update(final FloatBuffer values) {
+    // checked before any item is taken from the buffer, so that its position is not changed
+    if (isReadOnly()) {
+      throw new SketchesReadOnlyException("Call to update() on read-only buffer");
+    }
+    super.update(values);
+  }
+
+  @Override
+  public void merge(final KllFloatsSketch other) {
+    if (isReadOnly()) {
+      throw new SketchesReadOnlyException("Call to merge() on read-only buffer");
+    }
+    super.merge(other);
+  }
+
+  @Override
+  int getMinK() {
+    if (updatable_ || isCompactFull()) { return mem_.getShort(MIN_K_SHORT) & 0xffff; }
+    return getK();
+  }
+
+  @Override
+  void setMinK(final int minK) {
+    throw new SketchesReadOnlyException("Call to setMinK() on read-only buffer");
+  }
+
+  @Override
+  void setN(final long n) {
+    throw new SketchesReadOnlyException("Call to setN() on read-only buffer");
+  }
+
+  @Override
+  void setMinValue(final float minValue) {
+    throw new SketchesReadOnlyException("Call to setMinValue() on read-only buffer");
+  }
+
+  @Override
+  void setMaxValue(final float maxValue) {
+    throw new SketchesReadOnlyException("Call to setMaxValue() on read-only buffer");
+  }
+
+  @Override
+  boolean isLevelZeroSorted() {
+    return (getFlags() & LEVEL_ZERO_SORTED_BIT_MASK) > 0;
+  }
+
+  @Override
+  void setLevelZeroSorted(final boolean sorted) {
+    throw new SketchesReadOnlyException("Call to setLevelZeroSorted() on read-only buffer");
+  }
+
+  @Override
+  int getNumLevels() {
+    if (updatable_ || isCompactFull()) { return mem_.getByte(NUM_LEVELS_BYTE) & 0xff; }
+    return 1;
+  }
+
+  @Override
+  int[] getLevels() {
+    final int numLevels = getNumLevels();
+    final int[] levels = new int[numLevels + 1];
+    if (updatable_) {
+      mem_.getIntArray(DATA_START, levels, 0, numLevels + 1);
+    } else {
+      for (int i = 0; i <= numLevels; i++) {
+        levels[i] = getLevelsArrayAt(i);
+      }
+    }
+    return levels;
+  }
+
+  @Override
+  int getLevelsArrayAt(final int index) {
+    if (updatable_) { return mem_.getInt(DATA_START + ((long) index * Integer.BYTES)); }
+    final int flags = getFlags();
+    final int k = getK();
+    if ((flags & EMPTY_BIT_MASK) > 0) { return k; }
+    if ((flags & SINGLE_ITEM_BIT_MASK) > 0) { return (index == 0) ? k - 1 : k; }
+    final int numLevels = getNumLevels();
+    // the last integer of the levels array is not serialized in the compact form
+    if (index == numLevels) { return KllHelper.computeTotalCapacity(k, DEFAULT_M, numLevels); }
+    return mem_.getInt(DATA_START + ((long) index * Integer.BYTES));
+  }
+
+  @Override
+  void setLevelsArrayAt(final int index, final int value) {
+    throw new SketchesReadOnlyException("Call to setLevelsArrayAt() on read-only buffer");
+  }
+
+  @Override
+  float[] getItems() {
+    final int numLevels = getNumLevels();
+    final int levelZero = getLevelsArrayAt(0);
+    final int capacity = getLevelsArrayAt(numLevels);
+    final float[] items = new float[capacity];
+    if (!isCompactEmpty()) {
+      mem_.getFloatArray(getItemsOffset() + ((long) levelZero * Float.BYTES), items, levelZero,
+          capacity - levelZero);
+    }
+    return items;
+  }
+
+  @Override
+  float getItemsArrayAt(final int index) {
+    return mem_.getFloat(getItemsOffset() + ((long) index * Float.BYTES));
+  }
+
+  @Override
+  void setItemsArrayAt(final int index, final float value) {
+    throw new SketchesReadOnlyException("Call to setItemsArrayAt() on read-only buffer");
+  }
+
+  @Override
+  void setItemsArrayRange(final int index, final float[] src, final int srcOffset,
+      final int length) {
+    throw new SketchesReadOnlyException("Call to setItemsArrayRange() on read-only buffer");
+  }
+
+  @Override
+  void getItemsArrayRange(final int index, final float[] dst, final int dstOffset,
+      final int length) {
+    mem_.getFloatArray(getItemsOffset() + ((long) index * Float.BYTES), dst, dstOffset, length);
+  }
+
+  @Override
+  void moveItemsArrayRange(final int srcIndex, final int dstIndex, final int length) {
+    throw new SketchesReadOnlyException("Call to moveItemsArrayRange() on read-only buffer");
+  }
+
+  @Override
+  void sortItemsArrayRange(final int fromIndex, final int toIndex) {
+    throw new SketchesReadOnlyException("Call to sortItemsArrayRange() on read-only buffer");
+  }
+
+  @Override
+  void growItemsAtBottom(final int numLevels, final int[] levels, final int deltaCap) {
+    throw new SketchesReadOnlyException("Call to growItemsAtBottom() on read-only buffer");
+  }
+
+  @Override
+  void setLevelsAndCapacity(final int numLevels, final int[] levels) {
+    throw new SketchesReadOnlyException("Call to setLevelsAndCapacity() on read-only buffer");
+  }
+
+  @Override
+  void setLevelsAndItems(final int numLevels, final int[] levels, final float[] items) {
+    throw new SketchesReadOnlyException("Call to setLevelsAndItems() on read-only buffer");
+  }
+
+  @Override
+  void sortLevelZero() {
+    // if read-only, level zero cannot be sorted in place, so the quantile calculator sorts a copy
+    if (!isReadOnly()) { super.sortLevelZero(); }
+  }
+
+  // Direct supporting methods
+
+  boolean isReadOnly() {
+    return true;
+  }
+
+  final int getFlags() {
+    return mem_.getByte(FLAGS_BYTE) & 0xff;
+  }
+
+  private boolean isCompactEmpty() {
+    return !updatable_ && ((getFlags() & EMPTY_BIT_MASK) > 0);
+  }
+
+  private boolean isCompactSingleItem() {
+    return !updatable_ && ((getFlags() & SINGLE_ITEM_BIT_MASK) > 0);
+  }
+
+  private boolean isCompactFull() {
+    return !updatable_ && ((getFlags() & (EMPTY_BIT_MASK | SINGLE_ITEM_BIT_MASK)) == 0);
+  }
+
+  /**
+   * Returns the offset of the min value. In the compact single item form this is the offset of
+   * the single item, which is both the min and the max value.
+   * @return the offset of the min value
+   */
+  final long getMinMaxOffset() {
+    if (isCompactSingleItem()) { return DATA_START_SINGLE_ITEM; }
+    // the compact form does not serialize the last integer of the levels array
+    final int numLevelInts = updatable_ ? getNumLevels() + 1 : getNumLevels();
+    return DATA_START + ((long) numLevelInts * Integer.BYTES);
+  }
+
+  /**
+   * Returns the offset of the virtual items[0], such that item i is at this offset plus
+   * i * Float.BYTES. The compact forms only store the items from levels[0] upwards, so this may
+   * point below the actual start of the stored items.
+   * @return the offset of the virtual items[0]
+   */
+  final long getItemsOffset() {
+    if (updatable_) { return getMinMaxOffset() + (2 * Float.BYTES); }
+    final long levelZeroOffset = ((long) getLevelsArrayAt(0)) * Float.BYTES;
+    if (isCompactSingleItem()) { return DATA_START_SINGLE_ITEM - levelZeroOffset; }
+    return (getMinMaxOffset() + (2 * Float.BYTES)) - levelZeroOffset;
+  }
+
+}
@@ -25,23 +25,21 @@ import org.apache.datasketches.QuantilesHelper;
 
 /**
  * Data structure for answering quantile queries based on the samples from KllSketch
- * @author Kevin Lang
- * @author Alexander Saydakov
  */
-final class KllFloatsQuantileCalculator {
+final class KllDoublesQuantileCalculator {
 
   private long n_;
-  private float[] items_;
+  private double[] items_;
   private long[] weights_;
   private int[] levels_;
   private int numLevels_;
 
   // assumes that all levels are sorted including level 0
-  KllFloatsQuantileCalculator(final float[] items, final int[] levels, final int numLevels,
+  KllDoublesQuantileCalculator(final double[] items, final int[] levels, final int numLevels,
       final long n) {
     n_ = n;
     final int numItems = levels[numLevels] - levels[0];
-    items_ = new float[numItems];
+    items_ = new double[numItems];
     weights_ = new long[numItems + 1]; // one more is intentional
     levels_ = new int[numLevels + 1];
     populateFromSketch(items, levels, numLevels, numItems);
@@ -49,19 +47,19 @@ final class KllFloatsQuantileCalculator {
     QuantilesHelper.convertToPrecedingCummulative(weights_);
   }
 
-  float getQuantile(final double phi) {
+  double getQuantile(final double phi) {
     final long pos = QuantilesHelper.posOfPhi(phi, n_);
     return approximatelyAnswerPositonalQuery(pos);
   }
 
-  private float approximatelyAnswerPositonalQuery(final long pos) {
+  private double approximatelyAnswerPositonalQuery(final long pos) {
     assert pos >= 0;
     assert pos < n_;
     final int index = QuantilesHelper.chunkContainingPos(weights_, pos);
     return items_[index];
   }
 
-  private void populateFromSketch(final float[] srcItems, final int[] srcLevels,
+  private void populateFromSketch(final double[] srcItems, final int[] srcLevels,
       final int numLevels, final int numItems) {
     final int offset = srcLevels[0];
     System.arraycopy(srcItems, offset, items_, 0, numItems);
@@ -84,19 +82,19 @@ final class KllFloatsQuantileCalculator {
     numLevels_ = dstLevel;
   }
 
-  private static void blockyTandemMergeSort(final float[] items, final long[] weights,
+  private static void blockyTandemMergeSort(final double[] items, final long[] weights,
       final int[] levels, final int numLevels) {
     if (numLevels == 1) { return; }
 
     // duplicate the input in preparation for the "ping-pong" copy reduction strategy.
-    final float[] itemsTmp = Arrays.copyOf(items, items.length);
+    final double[] itemsTmp = Arrays.copyOf(items, items.length);
     final long[] weightsTmp = Arrays.copyOf(weights, items.length); // don't need the extra one here
 
     blockyTandemMergeSortRecursion(itemsTmp, weightsTmp, items, weights, levels, 0, numLevels);
   }
 
-  private static void blockyTandemMergeSortRecursion(final float[] itemsSrc, final long[] weightsSrc,
-      final float[] itemsDst, final long[] weightsDst, final int[] levels, final int startingLevel,
+  private static void blockyTandemMergeSortRecursion(final double[] itemsSrc, final long[] weightsSrc,
+      final double[] itemsDst, final long[] weightsDst, final int[] levels, final int startingLevel,
       final int numLevels) {
     if (numLevels == 1) { return; }
     final int numLevels1 = numLevels / 2;
@@ -114,8 +112,8 @@ final class KllFloatsQuantileCalculator {
         startingLevel2, numLevels2);
   }
 
-  private static void tandemMerge(final float[] itemsSrc, final long[] weightsSrc,
-      final float[] itemsDst, final long[] weightsDst,
+  private static void tandemMerge(final double[] itemsSrc, final long[] weightsSrc,
+      final double[] itemsDst, final long[] weightsDst,
       final int[] levelStarts, final int startingLevel1, final int numLevels1,
       final int startingLevel2, final int numLevels2) {
     final int fromIndex1 = levelStarts[startingLevel1];
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.datasketches.SketchesArgumentException;
+
+/**
+ * Merges many KllFloatsSketches into one in a single pass.
+ *
+ * <p>Instead of merging the inputs one at a time, which compacts and reallocates the result for
+ * every input, the retained items of all inputs are gathered into one work buffer, level by
+ * level. The sorted levels above level zero are combined by a tree of pairwise merges of the
+ * sorted runs from each input, which can optionally run on a ForkJoinPool. The combined levels
+ * are then compacted until they fit the capacity of the result sketch.</p>
+ */
+final class KllFloatsMultiwayMerge {
+
+  // below this many items a tree merge is not worth forking
+  static final int MIN_PARALLEL_ITEMS = 1 << 14;
+
+  private KllFloatsMultiwayMerge() {}
+
+  /**
+   * Merges the given sketches into a new heap sketch.
+   * @param sketches the sketches to merge. Null and empty sketches are ignored.
+   * @param pool the ForkJoinPool to run the tree merges on, or null to run them in the calling
+   * thread
+   * @return a new heap sketch with the k of the first non-null sketch, or the default k if there
+   * is none
+   */
+  static KllFloatsSketch mergeAll(final Collection<KllFloatsSketch> sketches,
+      final ForkJoinPool pool) {
+    final List<KllFloatsSketch> inputs = new ArrayList<>(sketches.size());
+    int k = 0;
+    int m = 0;
+    int minK = Integer.MAX_VALUE;
+    int maxNumLevels = 1;
+    long totalN = 0;
+    int totalRetained = 0;
+    float minValue = Float.NaN;
+    float maxValue = Float.NaN;
+    for (final KllFloatsSketch sketch : sketches) {
+      if (sketch == null) { continue; }
+      if (k == 0) {
+        k = sketch.getK();
+        m = sketch.getM();
+        minK = k;
+      } else if (sketch.getM() != m) {
+        throw new SketchesArgumentException("incompatible M: " + m + " and " + sketch.getM());
+      }
+      if (sketch.isEmpty()) { continue; }
+      inputs.add(sketch);
+      if (sketch.isEstimationMode()) { minK = min(minK, sketch.getMinK()); }
+      maxNumLevels = max(maxNumLevels, sketch.getNumLevels());
+      totalN += sketch.getN();
+      totalRetained += sketch.getNumRetained();
+      final float sketchMin = sketch.getMinValue();
+      final float sketchMax = sketch.getMaxValue();
+      if (Float.isNaN(minValue) || (sketchMin < minValue)) { minValue = sketchMin; }
+      if (Float.isNaN(maxValue) || (sketchMax > maxValue)) { maxValue = sketchMax; }
+    }
+    final KllFloatsSketch result = new KllFloatsSketch(k == 0 ? KllFloatsSketch.DEFAULT_K : k);
+    if (inputs.isEmpty()) { return result; }
+
+    // gather all items level by level, remembering where each input's run of a level starts
+    final int numInputs = inputs.size();
+    final float[] workbuf = new float[totalRetained];
+    final int ub = max(KllHelper.ubOnNumLevels(totalN), maxNumLevels);
+    int[] inLevels = new int[ub + 2];
+    int[] outLevels = new int[ub + 2];
+    final int[][] runStarts = new int[maxNumLevels][numInputs + 1];
+    final float[][] inputItems = new float[numInputs][];
+    final int[][] inputLevels = new int[numInputs][];
+    for (int i = 0; i < numInputs; i++) {
+      inputItems[i] = inputs.get(i).getItems();
+      inputLevels[i] = inputs.get(i).getLevels();
+    }
+    int pos = 0;
+    for (int lvl = 0; lvl < maxNumLevels; lvl++) {
+      inLevels[lvl] = pos;
+      for (int i = 0; i < numInputs; i++) {
+        runStarts[lvl][i] = pos;
+        if (lvl < inputs.get(i).getNumLevels()) {
+          final int[] levels = inputLevels[i];
+          final int pop = levels[lvl + 1] - levels[lvl];
+          System.arraycopy(inputItems[i], levels[lvl], workbuf, pos, pop);
+          pos += pop;
+        }
+      }
+      runStarts[lvl][numInputs] = pos;
+    }
+    inLevels[maxNumLevels] = pos;
+    assert pos == totalRetained;
+
+    // merge the sorted runs of every level above level zero
+    final List<MergeRunsTask> tasks = new ArrayList<>();
+    if (maxNumLevels > 1) {
+      // duplicate the input in preparation for the "ping-pong" copy reduction strategy
+      final float[] tmpbuf = Arrays.copyOf(workbuf, totalRetained);
+      for (int lvl = 1; lvl < maxNumLevels; lvl++) {
+        tasks.add(new MergeRunsTask(tmpbuf, workbuf, runStarts[lvl], 0, numInputs, pool != null));
+      }
+    }
+    if (pool == null) {
+      for (final MergeRunsTask task : tasks) { task.compute(); }
+    } else {
+      pool.invoke(new RecursiveAction() {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected void compute() {
+          invokeAll(tasks);
+        }
+      });
+    }
+
+    // compact until the items fit the capacity of the result
+    int numLevels = maxNumLevels;
+    int[] compressed;
+    while (true) {
+      compressed = KllHelper.generalCompress(k, m, numLevels, workbuf, inLevels, workbuf,
+          outLevels, false, null);
+      numLevels = compressed[0];
+      if (compressed[2] <= compressed[1]) { break; }
+      final int[] swap = inLevels;
+      inLevels = outLevels;
+      outLevels = swap;
+    }
+    final int finalCapacity = compressed[1];
+    final int finalPop = compressed[2];
+
+    final float[] items = new float[finalCapacity];
+    final int freeSpaceAtBottom = finalCapacity - finalPop;
+    System.arraycopy(workbuf, outLevels[0], items, freeSpaceAtBottom, finalPop);
+    final int theShift = freeSpaceAtBottom - outLevels[0];
+    final int[] levels = new int[numLevels + 1];
+    for (int lvl = 0; lvl < (numLevels + 1); lvl++) { // includes the "extra" index
+      levels[lvl] = outLevels[lvl] + theShift;
+    }
+    result.setLevelsAndItems(numLevels, levels, items);
+    result.setLevelZeroSorted(false);
+    result.setN(totalN);
+    result.setMinValue(minValue);
+    result.setMaxValue(maxValue);
+    result.setMinK(minK);
+    return result;
+  }
+
+  /**
+   * Merges the sorted runs [lo, hi) of one level into dst by recursive pairwise merges,
+   * ping-ponging between two buffers that both start out holding the runs at the same positions.
+   */
+  private static final class MergeRunsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final float[] src;
+    private final float[] dst;
+    private final int[] runStarts;
+    private final int lo;
+    private final int hi;
+    private final boolean parallel;
+
+    MergeRunsTask(final float[] src, final float[] dst, final int[] runStarts, final int lo,
+        final int hi, final boolean parallel) {
+      this.src = src;
+      this.dst = dst;
+      this.runStarts = runStarts;
+      this.lo = lo;
+      this.hi = hi;
+      this.parallel = parallel;
+    }
+
+    @Override
+    protected void compute() {
+      if ((hi - lo) <= 1) { return; } // a single run is already in place in both buffers
+      final int mid = (lo + hi) >>> 1;
+      // swap roles of src and dst so that the merged halves end up in src
+      final MergeRunsTask left = new MergeRunsTask(dst, src, runStarts, lo, mid, parallel);
+      final MergeRunsTask right = new MergeRunsTask(dst, src, runStarts, mid, hi, parallel);
+      if (parallel && ((runStarts[hi] - runStarts[lo]) >= MIN_PARALLEL_ITEMS)) {
+        invokeAll(left, right);
+      } else {
+        left.compute();
+        right.compute();
+      }
+      KllHelper.mergeSortedArrays(
+          src, runStarts[lo], runStarts[mid] - runStarts[lo],
+          src, runStarts[mid], runStarts[hi] - runStarts[mid],
+          dst, runStarts[lo]);
+    }
+  }
+
+}
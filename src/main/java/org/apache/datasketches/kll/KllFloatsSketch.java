@@ -27,15 +27,38 @@ import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.pow;
 import static java.lang.Math.round;
-
+import static org.apache.datasketches.kll.KllPreambleUtil.DATA_START;
+import static org.apache.datasketches.kll.KllPreambleUtil.DATA_START_SINGLE_ITEM;
+import static org.apache.datasketches.kll.KllPreambleUtil.EMPTY_BIT_MASK;
+import static org.apache.datasketches.kll.KllPreambleUtil.FAMILY_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.FLAGS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.K_SHORT;
+import static org.apache.datasketches.kll.KllPreambleUtil.LEVEL_ZERO_SORTED_BIT_MASK;
+import static org.apache.datasketches.kll.KllPreambleUtil.MIN_K_SHORT;
+import static org.apache.datasketches.kll.KllPreambleUtil.M_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.NUM_LEVELS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.N_LONG;
+import static org.apache.datasketches.kll.KllPreambleUtil.PREAMBLE_INTS_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.PREAMBLE_INTS_FULL;
+import static org.apache.datasketches.kll.KllPreambleUtil.PREAMBLE_INTS_SMALL;
+import static org.apache.datasketches.kll.KllPreambleUtil.SERIAL_VERSION_1;
+import static org.apache.datasketches.kll.KllPreambleUtil.SERIAL_VERSION_2;
+import static org.apache.datasketches.kll.KllPreambleUtil.SER_VER_BYTE;
+import static org.apache.datasketches.kll.KllPreambleUtil.SINGLE_ITEM_BIT_MASK;
+
+import java.nio.FloatBuffer;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
-import org.apache.datasketches.ByteArrayUtil;
 import org.apache.datasketches.Family;
 import org.apache.datasketches.QuantilesHelper;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.Util;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implementation of a very compact quantiles sketch with lazy compaction scheme
@@ -177,49 +200,13 @@ public class KllFloatsSketch {
    * The default value of K.
    */
   public static final int DEFAULT_K = 200;
-  private static final int DEFAULT_M = 8;
+  static final int DEFAULT_M = 8;
   static final int MIN_K = DEFAULT_M;
   static final int MAX_K = (1 << 16) - 1; // serialized as an unsigned short
+  // number of items copied at a time from a buffer that is not backed by an array
+  static final int BULK_UPDATE_CHUNK = 1024;
 
-  /* Serialized sketch layout, more than one item:
-   *  Adr:
-   *      ||    7    |   6   |    5   |    4   |    3   |    2    |    1   |      0       |
-   *  0   || unused  |   M   |--------K--------|  Flags |  FamID  | SerVer | PreambleInts |
-   *      ||   15    |   14  |   13   |   12   |   11   |   10    |    9   |      8       |
-   *  1   ||---------------------------------N_LONG---------------------------------------|
-   *      ||   23    |   22  |   21   |   20   |   19   |    18   |   17   |      16      |
-   *  2   ||<--------------data----------------| unused |numLevels|-------min K-----------|
-   *
-   * Serialized sketch layout, Empty and Single Item:
-   *  Adr:
-   *      ||    7    |   6   |    5   |    4   |    3   |    2    |    1   |      0       |
-   *  0   || unused  |   M   |--------K--------|  Flags |  FamID  | SerVer | PreambleInts |
-   *      ||   15    |   14  |   13   |   12   |   11   |   10    |    9   |      8       |
-   *  1   ||                                   |-------------------data-------------------|
-   */
-
-  // Preamble byte addresses
-  private static final int PREAMBLE_INTS_BYTE = 0;
-  private static final int SER_VER_BYTE       = 1;
-  private static final int FAMILY_BYTE        = 2;
-  private static final int FLAGS_BYTE         = 3;
-  private static final int K_SHORT            = 4;  // to 5
-  private static final int M_BYTE             = 6;
-  //                                            7 is reserved for future use
-  private static final int N_LONG             = 8;  // to 15
-  private static final int MIN_K_SHORT        = 16; // to 17
-  private static final int NUM_LEVELS_BYTE    = 18;
-  //                                            19 is reserved for future use
-  private static final int DATA_START         = 20; // if using items larger than 4 bytes, use 24
-  private static final int DATA_START_SINGLE_ITEM = 8;
-
-  // Other static values
-  private static final byte serialVersionUID1  = 1;
-  private static final byte serialVersionUID2  = 2;
-  private static final int PREAMBLE_INTS_SMALL = 2; // for empty and single item
-  private static final int PREAMBLE_INTS_FULL  = 5; // if using items larger than 4 bytes, use 6
-
-  private enum Flags { IS_EMPTY, IS_LEVEL_ZERO_SORTED, IS_SINGLE_ITEM }
+  // The serialized forms are described in KllPreambleUtil
 
   /*
    * Data is stored in items_.
@@ -234,10 +221,14 @@ public class KllFloatsSketch {
    *  so there is room for least 1 more item in level zero.
    * 3) There are no gaps except at the bottom, so if levels_[0] = 0,
    *  the sketch is exactly filled to capacity and must be compacted.
+   *
+   * The direct sketches keep the same state in Memory, so all access to the state other than
+   * k and m goes through the restricted accessors at the end of this class.
    */
 
   private final int k_; // configured value of K
   private final int m_; // configured minimum buffer "width", Must always be DEFAULT_M for now.
+  private final SplittableRandom random_; // null means ThreadLocalRandom
 
   private int minK_;      // for error estimation after merging with different k
   private long n_;        // number of items input into this sketch
@@ -264,39 +255,75 @@ public class KllFloatsSketch {
    * @param k parameter that controls size of the sketch and accuracy of estimates
    */
   public KllFloatsSketch(final int k) {
-    this(k, DEFAULT_M);
+    this(k, (SplittableRandom) null);
   }
 
   /**
-   * Heap constructor.
-   * @param k configured size of sketch. Range [m, 2^16]
-   * @param m minimum level size. Default is 8.
+   * Heap constructor with a given parameter <em>k</em> and source of randomness for the
+   * compactions. A sketch given a SplittableRandom created with a fixed seed is bit-reproducible:
+   * the same sequence of updates and merges always produces the same sketch.
+   * Sketches that are not given a source of randomness, including heapified and direct
+   * sketches, use ThreadLocalRandom.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param random source of randomness for the compactions of this sketch. It is not shared
+   * with other sketches. If null, ThreadLocalRandom is used.
    */
-  private KllFloatsSketch(final int k, final int m) {
-    checkK(k);
-    k_ = k;
-    minK_ = k;
-    m_ = m;
+  public KllFloatsSketch(final int k, final SplittableRandom random) {
+    this(k, DEFAULT_M, random);
     numLevels_ = 1;
     levels_ = new int[] {k, k};
     items_ = new float[k];
     minValue_ = Float.NaN;
     maxValue_ = Float.NaN;
     isLevelZeroSorted_ = false;
+  }
 
+  /**
+   * Base constructor that allocates no heap state. The direct sketches call this directly,
+   * because they keep everything except k and m in Memory.
+   * @param k configured size of sketch. Range [m, 2^16]
+   * @param m minimum level size. Default is 8.
+   */
+  KllFloatsSketch(final int k, final int m) {
+    this(k, m, null);
+  }
+
+  private KllFloatsSketch(final int k, final int m, final SplittableRandom random) {
+    checkK(k);
+    random_ = random;
+    k_ = k;
+    minK_ = k;
+    m_ = m;
   }
 
   /**
-   * Off-heap constructor.
-   * @param mem Memory object that contains data serilized by this sketch.
+   * Heapify constructor.
+   * @param mem Memory object that contains data serialized by this sketch.
    */
   private KllFloatsSketch(final Memory mem) {
     m_ = DEFAULT_M;
+    random_ = null;
     k_ = mem.getShort(K_SHORT) & 0xffff;
     final int flags = mem.getByte(FLAGS_BYTE) & 0xff;
-    final boolean isEmpty = (flags & (1 << Flags.IS_EMPTY.ordinal())) > 0;
-    final boolean isSingleItem = (flags & (1 << Flags.IS_SINGLE_ITEM.ordinal())) > 0;
-    if (isEmpty) {
+    final boolean isEmpty = (flags & EMPTY_BIT_MASK) > 0;
+    final boolean isSingleItem = (flags & SINGLE_ITEM_BIT_MASK) > 0;
+    if (KllPreambleUtil.isUpdatableFormat(mem)) {
+      n_ = mem.getLong(N_LONG);
+      minK_ = mem.getShort(MIN_K_SHORT) & 0xffff;
+      numLevels_ = mem.getByte(NUM_LEVELS_BYTE) & 0xff;
+      levels_ = new int[numLevels_ + 1];
+      int offset = DATA_START;
+      mem.getIntArray(offset, levels_, 0, numLevels_ + 1);
+      offset += (numLevels_ + 1) * Integer.BYTES;
+      minValue_ = mem.getFloat(offset);
+      offset += Float.BYTES;
+      maxValue_ = mem.getFloat(offset);
+      offset += Float.BYTES;
+      items_ = new float[levels_[numLevels_]];
+      mem.getFloatArray(offset + ((long) levels_[0] * Float.BYTES), items_, levels_[0],
+          getNumRetained());
+      isLevelZeroSorted_ = (flags & LEVEL_ZERO_SORTED_BIT_MASK) > 0;
+    } else if (isEmpty) {
       numLevels_ = 1;
       levels_ = new int[] {k_, k_};
       isLevelZeroSorted_ = false;
@@ -337,52 +364,141 @@ public class KllFloatsSketch {
         minValue_ = items_[levels_[0]];
         maxValue_ = items_[levels_[0]];
       }
-      isLevelZeroSorted_ = (flags & (1 << Flags.IS_LEVEL_ZERO_SORTED.ordinal())) > 0;
+      isLevelZeroSorted_ = (flags & LEVEL_ZERO_SORTED_BIT_MASK) > 0;
     }
   }
 
   /**
    * Factory heapify takes the sketch image in Memory and instantiates an on-heap sketch.
    * The resulting sketch will not retain any link to the source Memory.
+   * The image may be in either the compact form of {@link #toByteArray()} or the updatable form
+   * of {@link #toUpdatableByteArray()}.
    * @param mem a Memory image of a sketch serialized by this sketch.
    * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
    * @return a heap-based sketch based on the given Memory.
    */
   public static KllFloatsSketch heapify(final Memory mem) {
-    final int preambleInts = mem.getByte(PREAMBLE_INTS_BYTE) & 0xff;
-    final int serialVersion = mem.getByte(SER_VER_BYTE) & 0xff;
-    final int family = mem.getByte(FAMILY_BYTE) & 0xff;
-    final int flags = mem.getByte(FLAGS_BYTE) & 0xff;
-    final int m = mem.getByte(M_BYTE) & 0xff;
-    if (m != DEFAULT_M) {
-      throw new SketchesArgumentException(
-          "Possible corruption: M must be " + DEFAULT_M + ": " + m);
-    }
-    final boolean isEmpty = (flags & (1 << Flags.IS_EMPTY.ordinal())) > 0;
-    final boolean isSingleItem = (flags & (1 << Flags.IS_SINGLE_ITEM.ordinal())) > 0;
-    if (isEmpty || isSingleItem) {
-      if (preambleInts != PREAMBLE_INTS_SMALL) {
-        throw new SketchesArgumentException("Possible corruption: preambleInts must be "
-            + PREAMBLE_INTS_SMALL + " for an empty or single item sketch: " + preambleInts);
-      }
-    } else {
-      if (preambleInts != PREAMBLE_INTS_FULL) {
-        throw new SketchesArgumentException("Possible corruption: preambleInts must be "
-            + PREAMBLE_INTS_FULL + " for a sketch with more than one item: " + preambleInts);
-      }
-    }
-    if ((serialVersion != serialVersionUID1) && (serialVersion != serialVersionUID2)) {
-      throw new SketchesArgumentException(
-          "Possible corruption: serial version mismatch: expected " + serialVersionUID1 + " or "
-              + serialVersionUID2 + ", got " + serialVersion);
-    }
-    if (family != Family.KLL.getID()) {
-      throw new SketchesArgumentException(
-      "Possible corruption: family mismatch: expected " + Family.KLL.getID() + ", got " + family);
-    }
+    KllPreambleUtil.checkPreamble(mem, DEFAULT_M, 0);
     return new KllFloatsSketch(mem);
   }
 
+  /**
+   * Creates a new direct sketch with the given <em>k</em> in the given destination Memory.
+   * All updates, compactions and queries operate directly on the Memory, which holds the
+   * updatable form of the sketch. When the sketch needs more space than the Memory has,
+   * it requests a larger Memory from the given MemoryRequestServer and copies itself over.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param dstMem the destination Memory, which will be initialized to an empty sketch.
+   * It must be at least {@link #getMaxUpdatableSerializedSizeBytes(int, long)
+   * getMaxUpdatableSerializedSizeBytes(k, 0)} bytes.
+   * @param memReqSvr the MemoryRequestServer used to obtain more space. If null, the server of
+   * the given Memory is used, if any, otherwise a DefaultMemoryRequestServer.
+   * @return a new direct sketch
+   */
+  public static KllFloatsSketch newDirectInstance(final int k, final WritableMemory dstMem,
+      final MemoryRequestServer memReqSvr) {
+    return KllDirectFloatsSketch.newInstance(k, dstMem, memReqSvr);
+  }
+
+  /**
+   * Wraps the given Memory, which must hold the updatable form of a sketch, such as a Memory
+   * initialized by {@link #newDirectInstance(int, WritableMemory, MemoryRequestServer)} or filled
+   * from {@link #toUpdatableByteArray()}. The resulting sketch can be updated and merged into,
+   * and all changes are made to the Memory.
+   * @param srcMem a WritableMemory holding the updatable form of a sketch
+   * @param memReqSvr the MemoryRequestServer used to obtain more space. If null, the server of
+   * the given Memory is used, if any, otherwise a DefaultMemoryRequestServer.
+   * @return a direct sketch that operates on the given Memory
+   */
+  public static KllFloatsSketch writableWrap(final WritableMemory srcMem,
+      final MemoryRequestServer memReqSvr) {
+    return KllDirectFloatsSketch.wrapInstance(srcMem, memReqSvr);
+  }
+
+  /**
+   * Wraps the given Memory read-only. The image may be in either the compact form of
+   * {@link #toByteArray()} or the updatable form. Queries read the items directly from the
+   * Memory, nothing is deserialized up front. Any attempt to update the sketch or to merge into
+   * it throws a SketchesReadOnlyException.
+   * @param srcMem a Memory image of a sketch
+   * @return a read-only sketch that operates on the given Memory
+   */
+  public static KllFloatsSketch wrap(final Memory srcMem) {
+    return KllDirectFloatsSketchR.wrapInstance(srcMem);
+  }
+
+  // Header-only readers.
+  // These read single fields of a sketch image in Memory, in either the compact or the updatable
+  // form, without heapifying or wrapping it and without allocating anything. They are meant for
+  // filtering large numbers of stored sketches before materializing any of them.
+
+  /**
+   * Returns true if the sketch image in the given Memory is empty.
+   * @param srcMem a Memory image of a sketch
+   * @return true if the sketch is empty
+   */
+  public static boolean isEmpty(final Memory srcMem) {
+    KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    return KllPreambleUtil.extractIsEmpty(srcMem);
+  }
+
+  /**
+   * Returns the length of the input stream of the sketch image in the given Memory.
+   * @param srcMem a Memory image of a sketch
+   * @return stream length
+   */
+  public static long getN(final Memory srcMem) {
+    KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    return KllPreambleUtil.extractN(srcMem);
+  }
+
+  /**
+   * Returns the parameter k of the sketch image in the given Memory.
+   * @param srcMem a Memory image of a sketch
+   * @return parameter k
+   */
+  public static int getK(final Memory srcMem) {
+    KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    return KllPreambleUtil.extractK(srcMem);
+  }
+
+  /**
+   * Returns the number of levels of the sketch image in the given Memory.
+   * @param srcMem a Memory image of a sketch
+   * @return the number of levels
+   */
+  public static int getNumLevels(final Memory srcMem) {
+    KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    return KllPreambleUtil.extractNumLevels(srcMem);
+  }
+
+  /**
+   * Returns the min value of the sketch image in the given Memory.
+   * If the sketch is empty this returns NaN.
+   * @param srcMem a Memory image of a sketch
+   * @return the min value of the stream
+   */
+  public static float getMinValue(final Memory srcMem) {
+    KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    if (KllPreambleUtil.extractIsEmpty(srcMem)) { return Float.NaN; }
+    return srcMem.getFloat(KllPreambleUtil.extractMinMaxOffset(srcMem));
+  }
+
+  /**
+   * Returns the max value of the sketch image in the given Memory.
+   * If the sketch is empty this returns NaN.
+   * @param srcMem a Memory image of a sketch
+   * @return the max value of the stream
+   */
+  public static float getMaxValue(final Memory srcMem) {
+    final int flags = KllPreambleUtil.checkPreamble(srcMem, DEFAULT_M, 0);
+    if (KllPreambleUtil.extractIsEmpty(srcMem)) { return Float.NaN; }
+    final long offset = KllPreambleUtil.extractMinMaxOffset(srcMem);
+    final boolean isCompactSingleItem = !KllPreambleUtil.isUpdatableFormat(srcMem)
+        && ((flags & SINGLE_ITEM_BIT_MASK) > 0);
+    return srcMem.getFloat(isCompactSingleItem ? offset : offset + Float.BYTES);
+  }
+
   // public functions
 
   /**
@@ -417,7 +533,6 @@ public class KllFloatsSketch {
   public int getK() {
     return k_;
   }
-
   /**
    * Gets the approximate value of <em>k</em> to use given epsilon, the normalized rank error.
    * @param epsilon the normalized rank error between zero and one.
@@ -492,7 +607,7 @@ public class KllFloatsSketch {
    * @see KllFloatsSketch
    */
   public double getNormalizedRankError(final boolean pmf) {
-    return getNormalizedRankError(minK_, pmf);
+    return getNormalizedRankError(getMinK(), pmf);
   }
 
   /**
@@ -531,7 +646,7 @@ public class KllFloatsSketch {
    * @return the number of retained items (samples) in the sketch
    */
   public int getNumRetained() {
-    return levels_[numLevels_] - levels_[0];
+    return getLevelsArrayAt(getNumLevels()) - getLevelsArrayAt(0);
   }
 
   /**
@@ -549,6 +664,20 @@ public class KllFloatsSketch {
     return getSerializedSizeBytes(numLevels, maxNumItems);
   }
 
+  /**
+   * Returns upper bound on the size of the updatable form of a sketch given a parameter
+   * <em>k</em> and stream length. This is the size a direct sketch can grow to, so a Memory of
+   * this size will never need to be replaced while updating a direct sketch.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param n stream length
+   * @return upper bound on the size of the updatable form
+   */
+  public static int getMaxUpdatableSerializedSizeBytes(final int k, final long n) {
+    final int numLevels = KllHelper.ubOnNumLevels(n);
+    final int maxNumItems = KllHelper.computeTotalCapacity(k, DEFAULT_M, numLevels);
+    return (int) KllPreambleUtil.getUpdatableSizeBytes(numLevels, maxNumItems, Float.BYTES);
+  }
+
   /**
    * Returns an approximation to the Probability Mass Function (PMF) of the input stream
    * given a set of splitPoints (values).
@@ -594,13 +723,12 @@ public class KllFloatsSketch {
    */
   public float getQuantile(final double fraction) {
     if (isEmpty()) { return Float.NaN; }
-    if (fraction == 0.0) { return minValue_; }
-    if (fraction == 1.0) { return maxValue_; }
+    if (fraction == 0.0) { return getMinValue(); }
+    if (fraction == 1.0) { return getMaxValue(); }
     if ((fraction < 0.0) || (fraction > 1.0)) {
       throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
     }
-    final KllFloatsQuantileCalculator quant = getQuantileCalculator();
-    return quant.getQuantile(fraction);
+    return getSortedView().getQuantile(fraction);
   }
 
   /**
@@ -611,7 +739,7 @@ public class KllFloatsSketch {
    * exists with a confidence of at least 99%. Returns NaN if the sketch is empty.
    */
   public float getQuantileUpperBound(final double fraction) {
-    return getQuantile(min(1.0, fraction + getNormalizedRankError(minK_, false)));
+    return getQuantile(min(1.0, fraction + getNormalizedRankError(getMinK(), false)));
   }
 
   /**
@@ -622,7 +750,7 @@ public class KllFloatsSketch {
    * exists with a confidence of at least 99%. Returns NaN if the sketch is empty.
    */
   public float getQuantileLowerBound(final double fraction) {
-    return getQuantile(max(0, fraction - getNormalizedRankError(minK_, false)));
+    return getQuantile(max(0, fraction - getNormalizedRankError(getMinK(), false)));
   }
 
   /**
@@ -645,20 +773,20 @@ public class KllFloatsSketch {
    */
   public float[] getQuantiles(final double[] fractions) {
     if (isEmpty()) { return null; }
-    KllFloatsQuantileCalculator quant = null;
+    KllFloatsSortedView view = null;
     final float[] quantiles = new float[fractions.length];
     for (int i = 0; i < fractions.length; i++) {
       final double fraction = fractions[i];
       if ((fraction < 0.0) || (fraction > 1.0)) {
         throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
       }
-      if      (fraction == 0.0) { quantiles[i] = minValue_; }
-      else if (fraction == 1.0) { quantiles[i] = maxValue_; }
+      if      (fraction == 0.0) { quantiles[i] = getMinValue(); }
+      else if (fraction == 1.0) { quantiles[i] = getMaxValue(); }
       else {
-        if (quant == null) {
-          quant = getQuantileCalculator();
+        if (view == null) {
+          view = getSortedView();
         }
-        quantiles[i] = quant.getQuantile(fraction);
+        quantiles[i] = view.getQuantile(fraction);
       }
     }
     return quantiles;
@@ -683,6 +811,7 @@ public class KllFloatsSketch {
     return getQuantiles(QuantilesHelper.getEvenlySpacedRanks(numEvenlySpaced));
   }
 
+
   /**
    * Returns an approximation to the normalized (fractional) rank of the given value from 0 to 1,
    * inclusive.
@@ -697,23 +826,47 @@ public class KllFloatsSketch {
    */
   public double getRank(final float value) {
     if (isEmpty()) { return Double.NaN; }
+    final int numLevels = getNumLevels();
+    final int[] levels = getLevels();
+    final boolean isLevelZeroSorted = isLevelZeroSorted();
     int level = 0;
     int weight = 1;
     long total = 0;
-    while (level < numLevels_) {
-      final int fromIndex = levels_[level];
-      final int toIndex = levels_[level + 1]; // exclusive
+    while (level < numLevels) {
+      final int fromIndex = levels[level];
+      final int toIndex = levels[level + 1]; // exclusive
       for (int i = fromIndex; i < toIndex; i++) {
-        if (items_[i] < value) {
+        if (getItemsArrayAt(i) < value) {
           total += weight;
-        } else if ((level > 0) || isLevelZeroSorted_) {
+        } else if ((level > 0) || isLevelZeroSorted) {
           break; // levels above 0 are sorted, no point comparing further
         }
       }
       level++;
       weight *= 2;
     }
-    return (double) total / n_;
+    return (double) total / getN();
+  }
+
+  /**
+   * Returns an immutable sorted view of the items retained by this sketch. The view answers
+   * quantile, rank, CDF and PMF queries by binary search, so when many queries are made against
+   * a sketch that is no longer being updated it is much faster to build the view once and query
+   * it than to query the sketch each time.
+   *
+   * <p>The view reflects the current state of this sketch and is not affected by later updates.
+   *
+   * @return a sorted view of the items retained by this sketch
+   */
+  public KllFloatsSortedView getSortedView() {
+    sortLevelZero(); // sort in the sketch to reuse if possible
+    final float[] items = getItems();
+    final int[] levels = getLevels();
+    if (!isLevelZeroSorted()) { // read-only, so sort the copy
+      Arrays.sort(items, levels[0], levels[1]);
+    }
+    return new KllFloatsSortedView(items, levels, getNumLevels(), getN(), getMinValue(),
+        getMaxValue());
   }
 
   /**
@@ -722,7 +875,7 @@ public class KllFloatsSketch {
    */
   public int getSerializedSizeBytes() {
     if (isEmpty()) { return N_LONG; }
-    return getSerializedSizeBytes(numLevels_, getNumRetained());
+    return getSerializedSizeBytes(getNumLevels(), getNumRetained());
   }
 
   /**
@@ -730,7 +883,7 @@ public class KllFloatsSketch {
    * @return empty flag
    */
   public boolean isEmpty() {
-    return n_ == 0;
+    return getN() == 0;
   }
 
   /**
@@ -738,14 +891,32 @@ public class KllFloatsSketch {
    * @return estimation mode flag
    */
   public boolean isEstimationMode() {
-    return numLevels_ > 1;
+    return getNumLevels() > 1;
+  }
+
+  /**
+   * Returns true if this sketch operates on a Memory rather than on the heap.
+   * @return true if this sketch operates on a Memory
+   */
+  public boolean isDirect() {
+    return false;
+  }
+
+  /**
+   * Returns true if the backing resource of this sketch is identical with the backing resource
+   * of the given Memory. This is always false for a heap sketch.
+   * @param that the given Memory
+   * @return true if the backing resource of this sketch is the same as that of the given Memory
+   */
+  public boolean isSameResource(final Memory that) {
+    return false;
   }
 
   /**
    * @return the iterator for this class
    */
   public KllFloatsSketchIterator iterator() {
-    return new KllFloatsSketchIterator(items_, levels_, numLevels_);
+    return new KllFloatsSketchIterator(getItems(), getLevels(), getNumLevels());
   }
 
   /**
@@ -757,64 +928,158 @@ public class KllFloatsSketch {
     if (m_ != other.m_) {
       throw new SketchesArgumentException("incompatible M: " + m_ + " and " + other.m_);
     }
-    final long finalN = n_ + other.n_;
+    final long finalN = getN() + other.getN();
     //update this sketch with level0 items from the other sketch
-    for (int i = other.levels_[0]; i < other.levels_[1]; i++) {
-      update(other.items_[i]);
+    final int otherLevelZeroEnd = other.getLevelsArrayAt(1);
+    for (int i = other.getLevelsArrayAt(0); i < otherLevelZeroEnd; i++) {
+      update(other.getItemsArrayAt(i));
     }
-    if (other.numLevels_ >= 2) { //now merge other levels if they exist
+    if (other.getNumLevels() >= 2) { //now merge other levels if they exist
       mergeHigherLevels(other, finalN);
     }
     //update min, max values, n
-    if (Float.isNaN(minValue_) || (other.minValue_ < minValue_)) { minValue_ = other.minValue_; }
-    if (Float.isNaN(maxValue_) || (other.maxValue_ > maxValue_)) { maxValue_ = other.maxValue_; }
-    n_ = finalN;
+    final float otherMin = other.getMinValue();
+    final float otherMax = other.getMaxValue();
+    if (Float.isNaN(getMinValue()) || (otherMin < getMinValue())) { setMinValue(otherMin); }
+    if (Float.isNaN(getMaxValue()) || (otherMax > getMaxValue())) { setMaxValue(otherMax); }
+    setN(finalN);
 
     assertCorrectTotalWeight();
     if (other.isEstimationMode()) {
-      minK_ = min(minK_, other.minK_);
+      setMinK(min(getMinK(), other.getMinK()));
     }
   }
 
+  /**
+   * Merges all of the given sketches into a new heap sketch. This gives a result of the same
+   * accuracy as merging them one at a time into a new sketch with the k of the first sketch,
+   * but is much faster for many sketches: the retained items of all sketches are combined level
+   * by level in a tree of sorted merges and compacted once, instead of compacting and
+   * reallocating the result for every input.
+   *
+   * @param sketches the sketches to merge. Null and empty sketches are ignored.
+   * @return a new heap sketch with the k of the first non-null sketch, or the default k if there
+   * is none
+   */
+  public static KllFloatsSketch mergeAll(final Collection<KllFloatsSketch> sketches) {
+    return KllFloatsMultiwayMerge.mergeAll(sketches, null);
+  }
+
+  /**
+   * Merges all of the given sketches into a new heap sketch, running the sorted merges of the
+   * retained items in parallel on the given ForkJoinPool.
+   *
+   * @param sketches the sketches to merge. Null and empty sketches are ignored.
+   * @param pool the ForkJoinPool to run the merges on. If null, they run in the calling thread.
+   * @return a new heap sketch with the k of the first non-null sketch, or the default k if there
+   * is none
+   * @see #mergeAll(Collection)
+   */
+  public static KllFloatsSketch mergeAll(final Collection<KllFloatsSketch> sketches,
+      final ForkJoinPool pool) {
+    return KllFloatsMultiwayMerge.mergeAll(sketches, pool);
+  }
+
   /**
    * Returns serialized sketch in a byte array form.
    * @return serialized sketch in a byte array form.
    */
   public byte[] toByteArray() {
     final byte[] bytes = new byte[getSerializedSizeBytes()];
-    final boolean isSingleItem = n_ == 1;
-    bytes[PREAMBLE_INTS_BYTE] = (byte) (isEmpty() || isSingleItem ? PREAMBLE_INTS_SMALL : PREAMBLE_INTS_FULL);
-    bytes[SER_VER_BYTE] = isSingleItem ? serialVersionUID2 : serialVersionUID1;
-    bytes[FAMILY_BYTE] = (byte) Family.KLL.getID();
-    bytes[FLAGS_BYTE] = (byte) (
-        (isEmpty() ? 1 << Flags.IS_EMPTY.ordinal() : 0)
-      | (isLevelZeroSorted_ ? 1 << Flags.IS_LEVEL_ZERO_SORTED.ordinal() : 0)
-      | (isSingleItem ? 1 << Flags.IS_SINGLE_ITEM.ordinal() : 0)
-    );
-    ByteArrayUtil.putShortLE(bytes, K_SHORT, (short) k_);
-    bytes[M_BYTE] = (byte) m_;
-    if (isEmpty()) { return bytes; }
-    int offset = DATA_START_SINGLE_ITEM;
+    toByteArray(WritableMemory.wrap(bytes), 0);
+    return bytes;
+  }
+
+  /**
+   * Serializes this sketch in the compact form of {@link #toByteArray()} into the given
+   * destination Memory, starting at the given offset. Only the retained items are written.
+   * For a heap sketch nothing is allocated, so a single large buffer can be reused to serialize
+   * many sketches.
+   * @param dst the destination Memory
+   * @param offset the offset in bytes into the destination Memory where the image starts.
+   * There must be at least {@link #getSerializedSizeBytes()} bytes from there to the end of the
+   * destination Memory.
+   * @return the number of bytes written, which is {@link #getSerializedSizeBytes()}
+   */
+  public int toByteArray(final WritableMemory dst, final long offset) {
+    final int sizeBytes = getSerializedSizeBytes();
+    Util.checkBounds(offset, sizeBytes, dst.getCapacity());
+    final long n = getN();
+    final boolean isEmpty = n == 0;
+    final boolean isSingleItem = n == 1;
+    dst.putByte(offset + PREAMBLE_INTS_BYTE,
+        (byte) (isEmpty || isSingleItem ? PREAMBLE_INTS_SMALL : PREAMBLE_INTS_FULL));
+    dst.putByte(offset + SER_VER_BYTE, isSingleItem ? SERIAL_VERSION_2 : SERIAL_VERSION_1);
+    dst.putByte(offset + FAMILY_BYTE, (byte) Family.KLL.getID());
+    dst.putByte(offset + FLAGS_BYTE, (byte) (
+        (isEmpty ? EMPTY_BIT_MASK : 0)
+      | (isLevelZeroSorted() ? LEVEL_ZERO_SORTED_BIT_MASK : 0)
+      | (isSingleItem ? SINGLE_ITEM_BIT_MASK : 0)
+    ));
+    dst.putShort(offset + K_SHORT, (short) k_);
+    dst.putByte(offset + M_BYTE, (byte) m_);
+    dst.putByte(offset + M_BYTE + 1, (byte) 0);
+    if (isEmpty) { return sizeBytes; }
+    final int numLevels = getNumLevels();
+    final int levelZero = getLevelsArrayAt(0);
+    long pos = offset + DATA_START_SINGLE_ITEM;
     if (!isSingleItem) {
-      ByteArrayUtil.putLongLE(bytes, N_LONG, n_);
-      ByteArrayUtil.putShortLE(bytes, MIN_K_SHORT, (short) minK_);
-      bytes[NUM_LEVELS_BYTE] = (byte) numLevels_;
-      offset = DATA_START;
+      dst.putLong(offset + N_LONG, n);
+      dst.putShort(offset + MIN_K_SHORT, (short) getMinK());
+      dst.putByte(offset + NUM_LEVELS_BYTE, (byte) numLevels);
+      dst.putByte(offset + NUM_LEVELS_BYTE + 1, (byte) 0);
+      pos = offset + DATA_START;
       // the last integer in levels_ is not serialized because it can be derived
-      for (int i = 0; i < numLevels_; i++) {
-        ByteArrayUtil.putIntLE(bytes, offset, levels_[i]);
-        offset += Integer.BYTES;
+      for (int i = 0; i < numLevels; i++) {
+        dst.putInt(pos, getLevelsArrayAt(i));
+        pos += Integer.BYTES;
       }
-      ByteArrayUtil.putFloatLE(bytes, offset, minValue_);
-      offset += Float.BYTES;
-      ByteArrayUtil.putFloatLE(bytes, offset, maxValue_);
-      offset += Float.BYTES;
+      dst.putFloat(pos, getMinValue());
+      pos += Float.BYTES;
+      dst.putFloat(pos, getMaxValue());
+      pos += Float.BYTES;
     }
     final int numItems = getNumRetained();
-    for (int i = 0; i < numItems; i++) {
-      ByteArrayUtil.putFloatLE(bytes, offset, items_[levels_[0] + i]);
-      offset += Float.BYTES;
+    if (isDirect()) {
+      // the direct sketches would copy their whole items array for getItems()
+      for (int i = 0; i < numItems; i++) {
+        dst.putFloat(pos, getItemsArrayAt(levelZero + i));
+        pos += Float.BYTES;
+      }
+    } else {
+      dst.putFloatArray(pos, getItems(), levelZero, numItems);
     }
+    return sizeBytes;
+  }
+
+  /**
+   * Returns the sketch in the updatable form as a byte array. This form holds the complete
+   * levels and items arrays, so a direct sketch can be continued from it by copying it into a
+   * WritableMemory and calling {@link #writableWrap(WritableMemory, MemoryRequestServer)}.
+   * It can also be heapified.
+   * @return the updatable form of this sketch in a byte array
+   */
+  public byte[] toUpdatableByteArray() {
+    final int numLevels = getNumLevels();
+    final int[] levels = getLevels();
+    final int capacity = levels[numLevels];
+    final byte[] bytes =
+        new byte[(int) KllPreambleUtil.getUpdatableSizeBytes(numLevels, capacity, Float.BYTES)];
+    final WritableMemory wmem = WritableMemory.wrap(bytes);
+    KllDirectFloatsSketch.insertPreamble(wmem, k_, m_);
+    wmem.putByte(FLAGS_BYTE, (byte) (isLevelZeroSorted() ? LEVEL_ZERO_SORTED_BIT_MASK : 0));
+    wmem.putLong(N_LONG, getN());
+    wmem.putShort(MIN_K_SHORT, (short) getMinK());
+    wmem.putByte(NUM_LEVELS_BYTE, (byte) numLevels);
+    int offset = DATA_START;
+    wmem.putIntArray(offset, levels, 0, numLevels + 1);
+    offset += (numLevels + 1) * Integer.BYTES;
+    wmem.putFloat(offset, getMinValue());
+    offset += Float.BYTES;
+    wmem.putFloat(offset, getMaxValue());
+    offset += Float.BYTES;
+    wmem.putFloatArray(offset + ((long) levels[0] * Float.BYTES), getItems(), levels[0],
+        capacity - levels[0]);
     return bytes;
   }
 
@@ -832,31 +1097,34 @@ public class KllFloatsSketch {
   public String toString(final boolean withLevels, final boolean withData) {
     final String epsPct = String.format("%.3f%%", getNormalizedRankError(false) * 100);
     final String epsPMFPct = String.format("%.3f%%", getNormalizedRankError(true) * 100);
+    final int numLevels = getNumLevels();
+    final int[] levels = getLevels();
     final StringBuilder sb = new StringBuilder();
     sb.append(Util.LS).append("### KLL sketch summary:").append(Util.LS);
     sb.append("   K                    : ").append(k_).append(Util.LS);
-    sb.append("   min K                : ").append(minK_).append(Util.LS);
+    sb.append("   min K                : ").append(getMinK()).append(Util.LS);
     sb.append("   M                    : ").append(m_).append(Util.LS);
-    sb.append("   N                    : ").append(n_).append(Util.LS);
+    sb.append("   N                    : ").append(getN()).append(Util.LS);
     sb.append("   Epsilon              : ").append(epsPct).append(Util.LS);
     sb.append("   Epsison PMF          : ").append(epsPMFPct).append(Util.LS);
     sb.append("   Empty                : ").append(isEmpty()).append(Util.LS);
     sb.append("   Estimation Mode      : ").append(isEstimationMode()).append(Util.LS);
-    sb.append("   Levels               : ").append(numLevels_).append(Util.LS);
-    sb.append("   Sorted               : ").append(isLevelZeroSorted_).append(Util.LS);
-    sb.append("   Buffer Capacity Items: ").append(items_.length).append(Util.LS);
+    sb.append("   Direct               : ").append(isDirect()).append(Util.LS);
+    sb.append("   Levels               : ").append(numLevels).append(Util.LS);
+    sb.append("   Sorted               : ").append(isLevelZeroSorted()).append(Util.LS);
+    sb.append("   Buffer Capacity Items: ").append(levels[numLevels]).append(Util.LS);
     sb.append("   Retained Items       : ").append(getNumRetained()).append(Util.LS);
     sb.append("   Storage Bytes        : ").append(getSerializedSizeBytes()).append(Util.LS);
-    sb.append("   Min Value            : ").append(minValue_).append(Util.LS);
-    sb.append("   Max Value            : ").append(maxValue_).append(Util.LS);
+    sb.append("   Min Value            : ").append(getMinValue()).append(Util.LS);
+    sb.append("   Max Value            : ").append(getMaxValue()).append(Util.LS);
     sb.append("### End sketch summary").append(Util.LS);
 
     if (withLevels) {
       sb.append("### KLL sketch levels:").append(Util.LS)
       .append("   level, offset: nominal capacity, actual size").append(Util.LS);
-      for (int i = 0; i < numLevels_; i++) {
-        sb.append("   ").append(i).append(", ").append(levels_[i]).append(": ")
-        .append(KllHelper.levelCapacity(k_, numLevels_, i, m_))
+      for (int i = 0; i < numLevels; i++) {
+        sb.append("   ").append(i).append(", ").append(levels[i]).append(": ")
+        .append(KllHelper.levelCapacity(k_, numLevels, i, m_))
         .append(", ").append(safeLevelSize(i)).append(Util.LS);
       }
       sb.append("### End sketch levels").append(Util.LS);
@@ -865,14 +1133,14 @@ public class KllFloatsSketch {
     if (withData) {
       sb.append("### KLL sketch data:").append(Util.LS);
       int level = 0;
-      while (level < numLevels_) {
-        final int fromIndex = levels_[level];
-        final int toIndex = levels_[level + 1]; // exclusive
+      while (level < numLevels) {
+        final int fromIndex = levels[level];
+        final int toIndex = levels[level + 1]; // exclusive
         if (fromIndex < toIndex) {
           sb.append(" level ").append(level).append(":").append(Util.LS);
         }
         for (int i = fromIndex; i < toIndex; i++) {
-          sb.append("   ").append(items_[i]).append(Util.LS);
+          sb.append("   ").append(getItemsArrayAt(i)).append(Util.LS);
         }
         level++;
       }
@@ -890,21 +1158,107 @@ public class KllFloatsSketch {
   public void update(final float value) {
     if (Float.isNaN(value)) { return; }
     if (isEmpty()) {
-      minValue_ = value;
-      maxValue_ = value;
+      setMinValue(value);
+      setMaxValue(value);
     } else {
-      if (value < minValue_) { minValue_ = value; }
-      if (value > maxValue_) { maxValue_ = value; }
+      if (value < getMinValue()) { setMinValue(value); }
+      if (value > getMaxValue()) { setMaxValue(value); }
     }
-    if (levels_[0] == 0) {
+    if (getLevelsArrayAt(0) == 0) {
       compressWhileUpdating();
     }
-    n_++;
-    isLevelZeroSorted_ = false;
-    final int nextPos = levels_[0] - 1;
-    assert levels_[0] >= 0;
-    levels_[0] = nextPos;
-    items_[nextPos] = value;
+    setN(getN() + 1);
+    setLevelZeroSorted(false);
+    final int nextPos = getLevelsArrayAt(0) - 1;
+    assert getLevelsArrayAt(0) >= 0;
+    setLevelsArrayAt(0, nextPos);
+    setItemsArrayAt(nextPos, value);
+  }
+
+  /**
+   * Updates this sketch with a range of the given array of data items. This is equivalent to
+   * calling {@link #update(float)} for each item in the range, but the min and max values are
+   * computed once for the whole range and level zero is filled with bulk copies, so compaction
+   * runs only when level zero is full.
+   *
+   * @param values an array of items from a stream of items. NaNs are ignored.
+   * @param offset the index of the first item to use
+   * @param length the number of items to use
+   */
+  public void update(final float[] values, final int offset, final int length) {
+    Util.checkBounds(offset, length, values.length);
+    float batchMin = Float.NaN;
+    float batchMax = Float.NaN;
+    int numNaNs = 0;
+    for (int i = offset; i < (offset + length); i++) {
+      final float value = values[i];
+      if (Float.isNaN(value)) {
+        numNaNs++;
+      } else if (Float.isNaN(batchMin)) {
+        batchMin = value;
+        batchMax = value;
+      } else {
+        if (value < batchMin) { batchMin = value; }
+        if (value > batchMax) { batchMax = value; }
+      }
+    }
+    if (numNaNs == length) { return; }
+    float[] src = values;
+    int srcPos = offset;
+    int remaining = length;
+    if (numNaNs > 0) {
+      src = new float[length - numNaNs];
+      int j = 0;
+      for (int i = offset; i < (offset + length); i++) {
+        if (!Float.isNaN(values[i])) { src[j++] = values[i]; }
+      }
+      srcPos = 0;
+      remaining = j;
+    }
+    if (isEmpty()) {
+      setMinValue(batchMin);
+      setMaxValue(batchMax);
+    } else {
+      if (batchMin < getMinValue()) { setMinValue(batchMin); }
+      if (batchMax > getMaxValue()) { setMaxValue(batchMax); }
+    }
+    while (remaining > 0) {
+      if (getLevelsArrayAt(0) == 0) {
+        compressWhileUpdating();
+      }
+      final int levelZeroStart = getLevelsArrayAt(0);
+      final int take = min(levelZeroStart, remaining);
+      final int nextPos = levelZeroStart - take;
+      setItemsArrayRange(nextPos, src, srcPos, take);
+      setLevelsArrayAt(0, nextPos);
+      setN(getN() + take);
+      srcPos += take;
+      remaining -= take;
+    }
+    setLevelZeroSorted(false);
+  }
+
+  /**
+   * Updates this sketch with the remaining items of the given buffer, from its position to its
+   * limit. On return the position of the buffer equals its limit.
+   * This is equivalent to calling {@link #update(float)} for each item.
+   *
+   * @param values a buffer of items from a stream of items. NaNs are ignored.
+   * @see #update(float[], int, int)
+   */
+  public void update(final FloatBuffer values) {
+    final int length = values.remaining();
+    if (values.hasArray()) {
+      update(values.array(), values.arrayOffset() + values.position(), length);
+      values.position(values.limit());
+      return;
+    }
+    final float[] chunk = new float[min(length, BULK_UPDATE_CHUNK)];
+    while (values.hasRemaining()) {
+      final int len = min(values.remaining(), chunk.length);
+      values.get(chunk, 0, len);
+      update(chunk, 0, len);
+    }
   }
 
   // Restricted Methods
@@ -913,28 +1267,25 @@ public class KllFloatsSketch {
    * Checks the validity of the given value k
    * @param k must be greater than 7 and less than 65536.
    */
-  private static void checkK(final int k) {
+  static void checkK(final int k) {
     if ((k < MIN_K) || (k > MAX_K)) {
       throw new SketchesArgumentException(
           "K must be >= " + MIN_K + " and <= " + MAX_K + ": " + k);
     }
   }
 
-  private KllFloatsQuantileCalculator getQuantileCalculator() {
-    sortLevelZero(); // sort in the sketch to reuse if possible
-    return new KllFloatsQuantileCalculator(items_, levels_, numLevels_, n_);
-  }
-
   private double[] getPmfOrCdf(final float[] splitPoints, final boolean isCdf) {
     if (isEmpty()) { return null; }
     KllHelper.validateValues(splitPoints);
     final double[] buckets = new double[splitPoints.length + 1];
+    final int numLevels = getNumLevels();
+    final int[] levels = getLevels();
     int level = 0;
     int weight = 1;
-    while (level < numLevels_) {
-      final int fromIndex = levels_[level];
-      final int toIndex = levels_[level + 1]; // exclusive
-      if ((level == 0) && !isLevelZeroSorted_) {
+    while (level < numLevels) {
+      final int fromIndex = levels[level];
+      final int toIndex = levels[level + 1]; // exclusive
+      if ((level == 0) && !isLevelZeroSorted()) {
         incrementBucketsUnsortedLevel(fromIndex, toIndex, weight, splitPoints, buckets);
       } else {
         incrementBucketsSortedLevel(fromIndex, toIndex, weight, splitPoints, buckets);
@@ -943,15 +1294,16 @@ public class KllFloatsSketch {
       weight *= 2;
     }
     // normalize and, if CDF, convert to cumulative
+    final long n = getN();
     if (isCdf) {
       double subtotal = 0;
       for (int i = 0; i < buckets.length; i++) {
         subtotal += buckets[i];
-        buckets[i] = subtotal / n_;
+        buckets[i] = subtotal / n;
       }
     } else {
       for (int i = 0; i < buckets.length; i++) {
-        buckets[i] /= n_;
+        buckets[i] /= n;
       }
     }
     return buckets;
@@ -960,9 +1312,10 @@ public class KllFloatsSketch {
   private void incrementBucketsUnsortedLevel(final int fromIndex, final int toIndex,
       final int weight, final float[] splitPoints, final double[] buckets) {
     for (int i = fromIndex; i < toIndex; i++) {
+      final float item = getItemsArrayAt(i);
       int j;
       for (j = 0; j < splitPoints.length; j++) {
-        if (items_[i] < splitPoints[j]) {
+        if (item < splitPoints[j]) {
           break;
         }
       }
@@ -975,7 +1328,7 @@ public class KllFloatsSketch {
     int i = fromIndex;
     int j = 0;
     while ((i <  toIndex) && (j < splitPoints.length)) {
-      if (items_[i] < splitPoints[j]) {
+      if (getItemsArrayAt(i) < splitPoints[j]) {
         buckets[j] += weight; // this sample goes into this bucket
         i++; // move on to next sample and see whether it also goes into this bucket
       } else {
@@ -992,20 +1345,22 @@ public class KllFloatsSketch {
 
   // The following code is only valid in the special case of exactly reaching capacity while updating.
   // It cannot be used while merging, while reducing k, or anything else.
+  // It works in place through the item accessors, so that the direct sketches compact in their
+  // Memory. Only level zero, which must be sorted first, is ever copied out.
   private void compressWhileUpdating() {
     final int level = findLevelToCompact();
 
     // It is important to do add the new top level right here. Be aware that this operation
     // grows the buffer and shifts the data and also the boundaries of the data and grows the
     // levels array and increments numLevels_
-    if (level == (numLevels_ - 1)) {
+    if (level == (getNumLevels() - 1)) {
       addEmptyTopLevelToCompletelyFullSketch();
     }
 
-    final int rawBeg = levels_[level];
-    final int rawLim = levels_[level + 1];
+    final int rawBeg = getLevelsArrayAt(level);
+    final int rawLim = getLevelsArrayAt(level + 1);
     // +2 is OK because we already added a new top level if necessary
-    final int popAbove = levels_[level + 2] - rawLim;
+    final int popAbove = getLevelsArrayAt(level + 2) - rawLim;
     final int rawPop = rawLim - rawBeg;
     final boolean oddPop = KllHelper.isOdd(rawPop);
     final int adjBeg = oddPop ? rawBeg + 1 : rawBeg;
@@ -1014,43 +1369,104 @@ public class KllFloatsSketch {
 
     // level zero might not be sorted, so we must sort it if we wish to compact it
     if (level == 0) {
-      Arrays.sort(items_, adjBeg, adjBeg + adjPop);
+      sortItemsArrayRange(adjBeg, adjBeg + adjPop);
     }
     if (popAbove == 0) {
-      KllHelper.randomlyHalveUp(items_, adjBeg, adjPop);
+      randomlyHalveUp(adjBeg, adjPop);
     } else {
-      KllHelper.randomlyHalveDown(items_, adjBeg, adjPop);
-      KllHelper.mergeSortedArrays(items_, adjBeg, halfAdjPop, items_, rawLim, popAbove,
-          items_, adjBeg + halfAdjPop);
+      randomlyHalveDown(adjBeg, adjPop);
+      mergeSortedRuns(adjBeg, halfAdjPop, rawLim, popAbove, adjBeg + halfAdjPop);
     }
-    levels_[level + 1] -= halfAdjPop;          // adjust boundaries of the level above
+    final int levelAbove = rawLim - halfAdjPop; // adjust boundaries of the level above
+    setLevelsArrayAt(level + 1, levelAbove);
+    final int newLevel;
     if (oddPop) {
-      levels_[level] = levels_[level + 1] - 1; // the current level now contains one item
-      items_[levels_[level]] = items_[rawBeg]; // namely this leftover guy
+      newLevel = levelAbove - 1; // the current level now contains one item
+      setItemsArrayAt(newLevel, getItemsArrayAt(rawBeg)); // namely this leftover guy
     } else {
-      levels_[level] = levels_[level + 1];     // the current level is now empty
+      newLevel = levelAbove;     // the current level is now empty
     }
+    setLevelsArrayAt(level, newLevel);
 
     // verify that we freed up halfAdjPop array slots just below the current level
-    assert levels_[level] == (rawBeg + halfAdjPop);
+    assert newLevel == (rawBeg + halfAdjPop);
 
     // finally, we need to shift up the data in the levels below
     // so that the freed-up space can be used by level zero
     if (level > 0) {
-      final int amount = rawBeg - levels_[0];
-      System.arraycopy(items_, levels_[0], items_, levels_[0] + halfAdjPop, amount);
+      final int levelZero = getLevelsArrayAt(0);
+      moveItemsArrayRange(levelZero, levelZero + halfAdjPop, rawBeg - levelZero);
       for (int lvl = 0; lvl < level; lvl++) {
-        levels_[lvl] += halfAdjPop;
+        setLevelsArrayAt(lvl, getLevelsArrayAt(lvl) + halfAdjPop);
       }
     }
   }
 
+  // The following three mirror the array versions in KllHelper, including their use of random_,
+  // but work on the items of this sketch through the item accessors.
+
+  private void randomlyHalveDown(final int start, final int length) {
+    assert KllHelper.isEven(length);
+    final int halfLength = length / 2;
+    int j = start + KllHelper.randomBit(random_);
+    for (int i = start; i < (start + halfLength); i++) {
+      setItemsArrayAt(i, getItemsArrayAt(j));
+      j += 2;
+    }
+  }
+
+  private void randomlyHalveUp(final int start, final int length) {
+    assert KllHelper.isEven(length);
+    final int halfLength = length / 2;
+    int j = (start + length) - 1 - KllHelper.randomBit(random_);
+    for (int i = (start + length) - 1; i >= (start + halfLength); i--) {
+      setItemsArrayAt(i, getItemsArrayAt(j));
+      j -= 2;
+    }
+  }
+
+  /**
+   * Merges the sorted run A with the sorted run B that directly follows the destination. Since
+   * the destination then never overtakes run B, the rest of run B is already in place once run A
+   * is exhausted.
+   * @param startA the index of run A
+   * @param lenA the length of run A
+   * @param startB the index of run B, which must equal startC + lenA
+   * @param lenB the length of run B
+   * @param startC the index of the destination, which must not overlap run A
+   */
+  private void mergeSortedRuns(final int startA, final int lenA, final int startB, final int lenB,
+      final int startC) {
+    assert startB == (startC + lenA);
+    final int limA = startA + lenA;
+    final int limB = startB + lenB;
+    int a = startA;
+    int b = startB;
+    int c = startC;
+    float itemA = getItemsArrayAt(a);
+    float itemB = getItemsArrayAt(b);
+    while (true) {
+      if (itemA < itemB) {
+        setItemsArrayAt(c++, itemA);
+        if (++a == limA) { return; }
+        itemA = getItemsArrayAt(a);
+      } else {
+        setItemsArrayAt(c++, itemB);
+        if (++b == limB) { break; }
+        itemB = getItemsArrayAt(b);
+      }
+    }
+    moveItemsArrayRange(a, c, limA - a);
+  }
+
   private int findLevelToCompact() {
+    final int numLevels = getNumLevels();
+    final int[] levels = getLevels();
     int level = 0;
     while (true) {
-      assert level < numLevels_;
-      final int pop = levels_[level + 1] - levels_[level];
-      final int cap = KllHelper.levelCapacity(k_, numLevels_, level, m_);
+      assert level < numLevels;
+      final int pop = levels[level + 1] - levels[level];
+      final int cap = KllHelper.levelCapacity(k_, numLevels, level, m_);
       if (pop >= cap) {
         return level;
       }
@@ -1059,41 +1475,40 @@ public class KllFloatsSketch {
   }
 
   private void addEmptyTopLevelToCompletelyFullSketch() {
-    final int curTotalCap = levels_[numLevels_];
+    final int numLevels = getNumLevels();
+    final int curTotalCap = getLevelsArrayAt(numLevels);
 
     // make sure that we are following a certain growth scheme
-    assert levels_[0] == 0;
-    assert items_.length == curTotalCap;
+    assert getLevelsArrayAt(0) == 0;
 
-    // note that merging MIGHT over-grow levels_, in which case we might not have to grow it here
-    if (levels_.length < (numLevels_ + 2)) {
-      levels_ = KllHelper.growIntArray(levels_, numLevels_ + 2);
+    // the current levels are not changed in place, growItemsAtBottom() needs them
+    final int[] levels = new int[numLevels + 2];
+    for (int i = 0; i <= numLevels; i++) {
+      levels[i] = getLevelsArrayAt(i);
     }
 
-    final int deltaCap = KllHelper.levelCapacity(k_, numLevels_ + 1, 0, m_);
+    final int deltaCap = KllHelper.levelCapacity(k_, numLevels + 1, 0, m_);
     final int newTotalCap = curTotalCap + deltaCap;
 
-    final float[] newBuf = new float[newTotalCap];
-
-    // copy (and shift) the current data into the new buffer
-    System.arraycopy(items_, levels_[0], newBuf, levels_[0] + deltaCap, curTotalCap);
-    items_ = newBuf;
-
     // this loop includes the old "extra" index at the top
-    for (int i = 0; i <= numLevels_; i++) {
-      levels_[i] += deltaCap;
+    for (int i = 0; i <= numLevels; i++) {
+      levels[i] += deltaCap;
     }
 
-    assert levels_[numLevels_] == newTotalCap;
+    assert levels[numLevels] == newTotalCap;
 
-    numLevels_++;
-    levels_[numLevels_] = newTotalCap; // initialize the new "extra" index at the top
+    levels[numLevels + 1] = newTotalCap; // initialize the new "extra" index at the top
+    growItemsAtBottom(numLevels + 1, levels, deltaCap);
   }
 
-  private void sortLevelZero() {
-    if (!isLevelZeroSorted_) {
-      Arrays.sort(items_, levels_[0], levels_[1]);
-      isLevelZeroSorted_ = true;
+  /**
+   * Sorts level zero in place so that subsequent queries can reuse it.
+   * A read-only sketch cannot do this and leaves level zero as it is.
+   */
+  void sortLevelZero() {
+    if (!isLevelZeroSorted()) {
+      sortItemsArrayRange(getLevelsArrayAt(0), getLevelsArrayAt(1));
+      setLevelZeroSorted(true);
     }
   }
 
@@ -1104,13 +1519,13 @@ public class KllFloatsSketch {
     final int[] worklevels = new int[ub + 2]; // ub+1 does not work
     final int[] outlevels  = new int[ub + 2];
 
-    final int provisionalNumLevels = max(numLevels_, other.numLevels_);
+    final int provisionalNumLevels = max(getNumLevels(), other.getNumLevels());
 
     populateWorkArrays(other, workbuf, worklevels, provisionalNumLevels);
 
     // notice that workbuf is being used as both the input and output here
     final int[] result = KllHelper.generalCompress(k_, m_, provisionalNumLevels, workbuf,
-        worklevels, workbuf, outlevels, isLevelZeroSorted_);
+        worklevels, workbuf, outlevels, isLevelZeroSorted(), random_);
     final int finalNumLevels = result[0];
     final int finalCapacity = result[1];
     final int finalPop = result[2];
@@ -1118,30 +1533,32 @@ public class KllFloatsSketch {
     assert (finalNumLevels <= ub); // can sometimes be much bigger
 
     // now we need to transfer the results back into the "self" sketch
-    final float[] newbuf = finalCapacity == items_.length ? items_ : new float[finalCapacity];
     final int freeSpaceAtBottom = finalCapacity - finalPop;
-    System.arraycopy(workbuf, outlevels[0], newbuf, freeSpaceAtBottom, finalPop);
     final int theShift = freeSpaceAtBottom - outlevels[0];
 
-    if (levels_.length < (finalNumLevels + 1)) {
-      levels_ = new int[finalNumLevels + 1];
+    int[] levels = getLevels();
+    if (levels.length < (finalNumLevels + 1)) {
+      levels = new int[finalNumLevels + 1];
     }
 
     for (int lvl = 0; lvl < (finalNumLevels + 1); lvl++) { // includes the "extra" index
-      levels_[lvl] = outlevels[lvl] + theShift;
+      levels[lvl] = outlevels[lvl] + theShift;
     }
 
-    items_ = newbuf;
-    numLevels_ = finalNumLevels;
+    setLevelsAndCapacity(finalNumLevels, levels);
+    setItemsArrayRange(freeSpaceAtBottom, workbuf, outlevels[0], finalPop);
   }
 
   private void populateWorkArrays(final KllFloatsSketch other, final float[] workbuf,
       final int[] worklevels, final int provisionalNumLevels) {
+    final int[] levels = getLevels();
+    final int[] otherLevels = other.getLevels();
     worklevels[0] = 0;
 
-    // Note: the level zero data from "other" was already inserted into "self"
+    // The levels are copied one at a time, so that the direct sketches do not copy their whole
+    // items array. Note: the level zero data from "other" was already inserted into "self"
     final int selfPopZero = safeLevelSize(0);
-    System.arraycopy(items_, levels_[0], workbuf, worklevels[0], selfPopZero);
+    getItemsArrayRange(levels[0], workbuf, worklevels[0], selfPopZero);
     worklevels[1] = worklevels[0] + selfPopZero;
 
     for (int lvl = 1; lvl < provisionalNumLevels; lvl++) {
@@ -1150,29 +1567,33 @@ public class KllFloatsSketch {
       worklevels[lvl + 1] = worklevels[lvl] + selfPop + otherPop;
 
       if ((selfPop > 0) && (otherPop == 0)) {
-        System.arraycopy(items_, levels_[lvl], workbuf, worklevels[lvl], selfPop);
+        getItemsArrayRange(levels[lvl], workbuf, worklevels[lvl], selfPop);
       } else if ((selfPop == 0) && (otherPop > 0)) {
-        System.arraycopy(other.items_, other.levels_[lvl], workbuf, worklevels[lvl], otherPop);
+        other.getItemsArrayRange(otherLevels[lvl], workbuf, worklevels[lvl], otherPop);
       } else if ((selfPop > 0) && (otherPop > 0)) {
-        KllHelper.mergeSortedArrays(items_, levels_[lvl], selfPop, other.items_,
-            other.levels_[lvl], otherPop, workbuf, worklevels[lvl]);
+        // the level of other goes to the top of its destination, which the merge never overtakes
+        final float[] selfLevel = new float[selfPop];
+        getItemsArrayRange(levels[lvl], selfLevel, 0, selfPop);
+        other.getItemsArrayRange(otherLevels[lvl], workbuf, worklevels[lvl] + selfPop, otherPop);
+        KllHelper.mergeSortedArrays(selfLevel, 0, selfPop, workbuf, worklevels[lvl] + selfPop,
+            otherPop, workbuf, worklevels[lvl]);
       }
     }
   }
 
   private int safeLevelSize(final int level) {
-    if (level >= numLevels_) { return 0; }
-    return levels_[level + 1] - levels_[level];
+    if (level >= getNumLevels()) { return 0; }
+    return getLevelsArrayAt(level + 1) - getLevelsArrayAt(level);
   }
 
   private int getNumRetainedAboveLevelZero() {
-    if (numLevels_ == 1) { return 0; }
-    return levels_[numLevels_] - levels_[1];
+    final int numLevels = getNumLevels();
+    if (numLevels == 1) { return 0; }
+    return getLevelsArrayAt(numLevels) - getLevelsArrayAt(1);
   }
 
   private void assertCorrectTotalWeight() {
-    final long total = KllHelper.sumTheSampleWeights(numLevels_, levels_);
-    assert total == n_;
+    assert KllHelper.sumTheSampleWeights(getNumLevels(), getLevels()) == getN();
   }
 
   private static int getSerializedSizeBytes(final int numLevels, final int numRetained) {
@@ -1184,18 +1605,137 @@ public class KllFloatsSketch {
     return DATA_START + (numLevels * Integer.BYTES) + ((numRetained + 2) * Float.BYTES);
   }
 
-  // for testing
+  // Restricted accessors to the state of the sketch.
+  // The direct sketches override all of these to operate on their Memory.
+  // For the heap sketch the arrays returned are the live arrays; for the direct sketches they
+  // are copies, so changes must be stored back with setLevelsAndItems(). The updating code uses
+  // the accessors of single items and ranges of items instead, which the direct sketches
+  // implement in their Memory.
 
-  float[] getItems() {
-    return items_;
+  int getM() {
+    return m_;
   }
 
-  int[] getLevels() {
-    return levels_;
+  int getMinK() {
+    return minK_;
+  }
+
+  void setMinK(final int minK) {
+    minK_ = minK;
+  }
+
+  void setN(final long n) {
+    n_ = n;
+  }
+
+  void setMinValue(final float minValue) {
+    minValue_ = minValue;
+  }
+
+  void setMaxValue(final float maxValue) {
+    maxValue_ = maxValue;
+  }
+
+  boolean isLevelZeroSorted() {
+    return isLevelZeroSorted_;
+  }
+
+  void setLevelZeroSorted(final boolean sorted) {
+    isLevelZeroSorted_ = sorted;
   }
 
   int getNumLevels() {
     return numLevels_;
   }
 
+  int[] getLevels() {
+    return levels_;
+  }
+
+  int getLevelsArrayAt(final int index) {
+    return levels_[index];
+  }
+
+  void setLevelsArrayAt(final int index, final int value) {
+    levels_[index] = value;
+  }
+
+  float[] getItems() {
+    return items_;
+  }
+
+  float getItemsArrayAt(final int index) {
+    return items_[index];
+  }
+
+  void setItemsArrayAt(final int index, final float value) {
+    items_[index] = value;
+  }
+
+  void setItemsArrayRange(final int index, final float[] src, final int srcOffset,
+      final int length) {
+    System.arraycopy(src, srcOffset, items_, index, length);
+  }
+
+  void getItemsArrayRange(final int index, final float[] dst, final int dstOffset,
+      final int length) {
+    System.arraycopy(items_, index, dst, dstOffset, length);
+  }
+
+  /**
+   * Moves a range of items within the items array. The source and destination may overlap.
+   * @param srcIndex the index of the first item to move
+   * @param dstIndex the index the first item is moved to
+   * @param length the number of items to move
+   */
+  void moveItemsArrayRange(final int srcIndex, final int dstIndex, final int length) {
+    System.arraycopy(items_, srcIndex, items_, dstIndex, length);
+  }
+
+  /**
+   * Sorts a range of items in place.
+   * @param fromIndex the index of the first item to sort
+   * @param toIndex the index after the last item to sort
+   */
+  void sortItemsArrayRange(final int fromIndex, final int toIndex) {
+    Arrays.sort(items_, fromIndex, toIndex);
+  }
+
+  /**
+   * Stores a new level structure whose items are those of the current structure moved up by
+   * deltaCap slots, leaving deltaCap free slots at the bottom.
+   * @param numLevels the new number of levels
+   * @param levels the new levels array, which must not be the current one
+   * @param deltaCap the number of slots added at the bottom
+   */
+  void growItemsAtBottom(final int numLevels, final int[] levels, final int deltaCap) {
+    final float[] items = new float[levels[numLevels]];
+    System.arraycopy(items_, 0, items, deltaCap, items_.length);
+    setLevelsAndItems(numLevels, levels, items);
+  }
+
+  /**
+   * Stores a new level structure and makes room for levels[numLevels] items. The retained items
+   * must be written with setItemsArrayRange() afterwards.
+   * @param numLevels the new number of levels
+   * @param levels the new levels array
+   */
+  void setLevelsAndCapacity(final int numLevels, final int[] levels) {
+    final int capacity = levels[numLevels];
+    setLevelsAndItems(numLevels, levels, items_.length == capacity ? items_ : new float[capacity]);
+  }
+
+  /**
+   * Stores a new level structure. The levels array must have at least numLevels + 1 entries and
+   * the length of the items array must equal levels[numLevels].
+   * @param numLevels the new number of levels
+   * @param levels the new levels array
+   * @param items the new items array
+   */
+  void setLevelsAndItems(final int numLevels, final int[] levels, final float[] items) {
+    numLevels_ = numLevels;
+    levels_ = levels;
+    items_ = items;
+  }
+
 }
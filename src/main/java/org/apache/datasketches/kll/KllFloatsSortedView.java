@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.QuantilesHelper;
+import org.apache.datasketches.SketchesArgumentException;
+
+/**
+ * An immutable sorted view of the retained items of a KllFloatsSketch. All retained items are
+ * merged into a single sorted array together with the cumulative weights of the items preceding
+ * each one, so that quantile, rank, CDF and PMF queries are answered by binary search in
+ * O(log(retained items)) time without touching the sketch again.
+ *
+ * <p>Building the view costs about as much as a single getQuantile() call on the sketch.
+ * It reflects the state of the sketch at the time it was built and is not affected by
+ * later updates, so it is best suited to many queries against a sketch that is no longer
+ * changing. It is safe to query from multiple threads.</p>
+ */
+public final class KllFloatsSortedView {
+
+  private final long n_;
+  private final float minValue_;
+  private final float maxValue_;
+  private final float[] items_;
+  private final long[] weights_; // cumulative weights preceding each item, n_ at the end
+
+  // assumes that all levels are sorted including level 0
+  KllFloatsSortedView(final float[] items, final int[] levels, final int numLevels,
+      final long n, final float minValue, final float maxValue) {
+    n_ = n;
+    minValue_ = minValue;
+    maxValue_ = maxValue;
+    final int numItems = levels[numLevels] - levels[0];
+    items_ = new float[numItems];
+    weights_ = new long[numItems + 1]; // one more is intentional
+    final int[] viewLevels = new int[numLevels + 1];
+    final int numViewLevels = populateFromSketch(items, levels, numLevels, numItems, viewLevels);
+    blockyTandemMergeSort(items_, weights_, viewLevels, numViewLevels);
+    QuantilesHelper.convertToPrecedingCummulative(weights_);
+  }
+
+  /**
+   * Returns the length of the input stream seen by the sketch when this view was built.
+   * @return the length of the input stream
+   */
+  public long getN() {
+    return n_;
+  }
+
+  /**
+   * Returns true if the sketch was empty when this view was built.
+   * @return true if the view is empty
+   */
+  public boolean isEmpty() {
+    return n_ == 0;
+  }
+
+  /**
+   * Returns the number of items retained by the sketch when this view was built.
+   * @return the number of retained items
+   */
+  public int getNumRetained() {
+    return items_.length;
+  }
+
+  /**
+   * Returns the min value of the stream. If the view is empty this returns NaN.
+   * @return the min value of the stream
+   */
+  public float getMinValue() {
+    return minValue_;
+  }
+
+  /**
+   * Returns the max value of the stream. If the view is empty this returns NaN.
+   * @return the max value of the stream
+   */
+  public float getMaxValue() {
+    return maxValue_;
+  }
+
+  /**
+   * Returns an approximation to the value of the data item that would be preceded by the given
+   * fraction of a hypothetical sorted version of the input stream.
+   * This gives the same result as {@link KllFloatsSketch#getQuantile(double)}.
+   *
+   * <p>If the view is empty this returns NaN.
+   *
+   * @param fraction the specified fractional position in the hypothetical sorted stream.
+   * If fraction = 0.0, the true minimum value of the stream is returned.
+   * If fraction = 1.0, the true maximum value of the stream is returned.
+   * @return the approximation to the value at the given fraction
+   */
+  public float getQuantile(final double fraction) {
+    if (isEmpty()) { return Float.NaN; }
+    if ((fraction < 0.0) || (fraction > 1.0)) {
+      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
+    }
+    if (fraction == 0.0) { return minValue_; }
+    if (fraction == 1.0) { return maxValue_; }
+    final long pos = QuantilesHelper.posOfPhi(fraction, n_);
+    return approximatelyAnswerPositonalQuery(pos);
+  }
+
+  /**
+   * Returns approximations to the values at the given fractions.
+   * This gives the same result as {@link KllFloatsSketch#getQuantiles(double[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param fractions given array of fractional positions in the hypothetical sorted stream.
+   * These fractions must be in the interval [0.0, 1.0], inclusive.
+   * @return array of approximations to the given fractions in the same order as given fractions
+   * array.
+   */
+  public float[] getQuantiles(final double[] fractions) {
+    if (isEmpty()) { return null; }
+    final float[] quantiles = new float[fractions.length];
+    for (int i = 0; i < fractions.length; i++) {
+      quantiles[i] = getQuantile(fractions[i]);
+    }
+    return quantiles;
+  }
+
+  /**
+   * Returns an approximation to the normalized (fractional) rank of the given value from 0 to 1,
+   * inclusive. This gives the same result as {@link KllFloatsSketch#getRank(float)}.
+   *
+   * <p>If the view is empty this returns NaN.
+   *
+   * @param value to be ranked
+   * @return an approximate rank of the given value
+   */
+  public double getRank(final float value) {
+    if (isEmpty()) { return Double.NaN; }
+    return (double) weights_[lowerBound(value)] / n_;
+  }
+
+  /**
+   * Returns an approximation to the Cumulative Distribution Function (CDF) of the input stream
+   * given a set of split points.
+   * This gives the same result as {@link KllFloatsSketch#getCDF(float[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing float values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 double values, which are a consecutive approximation to the CDF
+   * of the input stream given the splitPoints.
+   */
+  public double[] getCDF(final float[] splitPoints) {
+    return getPmfOrCdf(splitPoints, true);
+  }
+
+  /**
+   * Returns an approximation to the Probability Mass Function (PMF) of the input stream
+   * given a set of split points.
+   * This gives the same result as {@link KllFloatsSketch#getPMF(float[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing float values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 doubles each of which is an approximation
+   * to the fraction of the input stream values (the mass) that fall into one of those intervals.
+   */
+  public double[] getPMF(final float[] splitPoints) {
+    return getPmfOrCdf(splitPoints, false);
+  }
+
+  private double[] getPmfOrCdf(final float[] splitPoints, final boolean isCdf) {
+    if (isEmpty()) { return null; }
+    KllHelper.validateValues(splitPoints);
+    final double[] buckets = new double[splitPoints.length + 1];
+    long prevWeight = 0;
+    for (int j = 0; j < splitPoints.length; j++) {
+      final long weight = weights_[lowerBound(splitPoints[j])];
+      buckets[j] = isCdf ? (double) weight / n_ : (double) (weight - prevWeight) / n_;
+      prevWeight = weight;
+    }
+    buckets[splitPoints.length] = isCdf ? 1.0 : (double) (n_ - prevWeight) / n_;
+    return buckets;
+  }
+
+  // returns the index of the first item that is not less than the given value
+  private int lowerBound(final float value) {
+    int lo = 0;
+    int hi = items_.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (items_[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private float approximatelyAnswerPositonalQuery(final long pos) {
+    assert pos >= 0;
+    assert pos < n_;
+    final int index = QuantilesHelper.chunkContainingPos(weights_, pos);
+    return items_[index];
+  }
+
+  /**
+   * Copies the retained items and their weights into this view, skipping empty levels.
+   * @param srcItems the items array of the sketch
+   * @param srcLevels the levels array of the sketch
+   * @param numLevels the number of levels of the sketch
+   * @param numItems the number of retained items
+   * @param dstLevels receives the boundaries of the non-empty levels within the items of this view
+   * @return the number of non-empty levels
+   */
+  private int populateFromSketch(final float[] srcItems, final int[] srcLevels,
+      final int numLevels, final int numItems, final int[] dstLevels) {
+    final int offset = srcLevels[0];
+    System.arraycopy(srcItems, offset, items_, 0, numItems);
+    int srcLevel = 0;
+    int dstLevel = 0;
+    long weight = 1;
+    while (srcLevel < numLevels) {
+      final int fromIndex = srcLevels[srcLevel] - offset;
+      final int toIndex = srcLevels[srcLevel + 1] - offset; // exclusive
+      if (fromIndex < toIndex) { // skip empty levels
+        Arrays.fill(weights_, fromIndex, toIndex, weight);
+        dstLevels[dstLevel] = fromIndex;
+        dstLevels[dstLevel + 1] = toIndex;
+        dstLevel++;
+      }
+      srcLevel++;
+      weight *= 2;
+    }
+    weights_[numItems] = 0;
+    return dstLevel;
+  }
+
+  private static void blockyTandemMergeSort(final float[] items, final long[] weights,
+      final int[] levels, final int numLevels) {
+    if (numLevels <= 1) { return; }
+
+    // duplicate the input in preparation for the "ping-pong" copy reduction strategy.
+    final float[] itemsTmp = Arrays.copyOf(items, items.length);
+    final long[] weightsTmp = Arrays.copyOf(weights, items.length); // don't need the extra one here
+
+    blockyTandemMergeSortRecursion(itemsTmp, weightsTmp, items, weights, levels, 0, numLevels);
+  }
+
+  private static void blockyTandemMergeSortRecursion(final float[] itemsSrc, final long[] weightsSrc,
+      final float[] itemsDst, final long[] weightsDst, final int[] levels, final int startingLevel,
+      final int numLevels) {
+    if (numLevels == 1) { return; }
+    final int numLevels1 = numLevels / 2;
+    final int numLevels2 = numLevels - numLevels1;
+    assert numLevels1 >= 1;
+    assert numLevels2 >= numLevels1;
+    final int startingLevel1 = startingLevel;
+    final int startingLevel2 = startingLevel + numLevels1;
+    // swap roles of src and dst
+    blockyTandemMergeSortRecursion(itemsDst, weightsDst, itemsSrc, weightsSrc, levels,
+        startingLevel1, numLevels1);
+    blockyTandemMergeSortRecursion(itemsDst, weightsDst, itemsSrc, weightsSrc, levels,
+        startingLevel2, numLevels2);
+    tandemMerge(itemsSrc, weightsSrc, itemsDst, weightsDst, levels, startingLevel1, numLevels1,
+        startingLevel2, numLevels2);
+  }
+
+  private static void tandemMerge(final float[] itemsSrc, final long[] weightsSrc,
+      final float[] itemsDst, final long[] weightsDst,
+      final int[] levelStarts, final int startingLevel1, final int numLevels1,
+      final int startingLevel2, final int numLevels2) {
+    final int fromIndex1 = levelStarts[startingLevel1];
+    final int toIndex1 = levelStarts[startingLevel1 + numLevels1]; // exclusive
+    final int fromIndex2 = levelStarts[startingLevel2];
+    final int toIndex2 = levelStarts[startingLevel2 + numLevels2]; // exclusive
+    int iSrc1 = fromIndex1;
+    int iSrc2 = fromIndex2;
+    int iDst = fromIndex1;
+
+    while ((iSrc1 < toIndex1) && (iSrc2 < toIndex2)) {
+      if (itemsSrc[iSrc1] < itemsSrc[iSrc2]) {
+        itemsDst[iDst] = itemsSrc[iSrc1];
+        weightsDst[iDst] = weightsSrc[iSrc1];
+        iSrc1++;
+      } else {
+        itemsDst[iDst] = itemsSrc[iSrc2];
+        weightsDst[iDst] = weightsSrc[iSrc2];
+        iSrc2++;
+      }
+      iDst++;
+    }
+    if (iSrc1 < toIndex1) {
+      System.arraycopy(itemsSrc, iSrc1, itemsDst, iDst, toIndex1 - iSrc1);
+      System.arraycopy(weightsSrc, iSrc1, weightsDst, iDst, toIndex1 - iSrc1);
+    } else if (iSrc2 < toIndex2) {
+      System.arraycopy(itemsSrc, iSrc2, itemsDst, iDst, toIndex2 - iSrc2);
+      System.arraycopy(weightsSrc, iSrc2, weightsDst, iDst, toIndex2 - iSrc2);
+    }
+  }
+
+}
@@ -22,7 +22,9 @@ package org.apache.datasketches.kll;
 import static org.apache.datasketches.Util.floorPowerOf2;
 
 import java.util.Arrays;
-import java.util.Random;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.datasketches.SketchesArgumentException;
 
@@ -33,7 +35,15 @@ import org.apache.datasketches.SketchesArgumentException;
  */
 class KllHelper {
 
-  private static final Random random = new Random();
+  /**
+   * Returns a random bit, 0 or 1, for choosing which half of a level survives a compaction.
+   * @param random the random source of the sketch being compacted. If null, ThreadLocalRandom is
+   * used, which avoids contention between threads compacting different sketches.
+   * @return a random bit
+   */
+  static int randomBit(final SplittableRandom random) {
+    return random == null ? ThreadLocalRandom.current().nextInt(2) : random.nextInt(2);
+  }
 
   static boolean isEven(final int value) {
     return (value & 1) == 0;
@@ -60,6 +70,57 @@ class KllHelper {
     }
   }
 
+  /**
+   * Checks the sequential validity of the given array of double values.
+   * They must be unique, monotonically increasing and not NaN.
+   * @param values the given array of values
+   */
+  static final void validateValues(final double[] values) {
+    for (int i = 0; i < values.length ; i++) {
+      if (Double.isNaN(values[i])) {
+        throw new SketchesArgumentException("Values must not be NaN");
+      }
+      if ((i < (values.length - 1)) && (values[i] >= values[i + 1])) {
+        throw new SketchesArgumentException(
+          "Values must be unique and monotonically increasing");
+      }
+    }
+  }
+
+  /**
+   * Checks the sequential validity of the given array of long values.
+   * They must be unique and monotonically increasing.
+   * @param values the given array of values
+   */
+  static final void validateValues(final long[] values) {
+    for (int i = 0; i < (values.length - 1); i++) {
+      if (values[i] >= values[i + 1]) {
+        throw new SketchesArgumentException(
+          "Values must be unique and monotonically increasing");
+      }
+    }
+  }
+
+  /**
+   * Checks the sequential validity of the given array of values.
+   * They must be unique, monotonically increasing according to the given comparator and not null.
+   * @param <T> the item type
+   * @param values the given array of values
+   * @param comparator the comparator of the items
+   */
+  static final <T> void validateValues(final T[] values, final Comparator<? super T> comparator) {
+    for (int i = 0; i < values.length ; i++) {
+      if (values[i] == null) {
+        throw new SketchesArgumentException("Values must not be null");
+      }
+      if ((i < (values.length - 1)) && (values[i + 1] != null)
+          && (comparator.compare(values[i], values[i + 1]) >= 0)) {
+        throw new SketchesArgumentException(
+          "Values must be unique and monotonically increasing");
+      }
+    }
+  }
+
   /**
    * Copy the old array into a new larger array.
    * @param oldArr the given old array with data
@@ -227,6 +288,7 @@ class KllHelper {
    * @param outBuf the same array as inBuf
    * @param outLevels the same size as inLevels
    * @param isLevelZeroSorted true if this.level 0 is sorted
+   * @param random the random source of the sketch, or null to use ThreadLocalRandom
    * @return int array of: {numLevels, targetItemCount, currentItemCount)
    */
   static int[] generalCompress(
@@ -237,7 +299,157 @@ class KllHelper {
       final int[] inLevels,
       final float[] outBuf,
       final int[] outLevels,
-      final boolean isLevelZeroSorted) {
+      final boolean isLevelZeroSorted,
+      final SplittableRandom random) {
+    assert numLevelsIn > 0; // things are too weird if zero levels are allowed
+    int numLevels = numLevelsIn;
+    int currentItemCount = inLevels[numLevels] - inLevels[0]; // decreases with each compaction
+    int targetItemCount = computeTotalCapacity(k, m, numLevels); // increases if we add levels
+    boolean doneYet = false;
+    outLevels[0] = 0;
+    int curLevel = -1;
+    while (!doneYet) {
+      curLevel++; // start out at level 0
+
+      // If we are at the current top level, add an empty level above it for convenience,
+      // but do not increment numLevels until later
+      if (curLevel == (numLevels - 1)) {
+        inLevels[curLevel + 2] = inLevels[curLevel + 1];
+      }
+
+      final int rawBeg = inLevels[curLevel];
+      final int rawLim = inLevels[curLevel + 1];
+      final int rawPop = rawLim - rawBeg;
+
+      if ((currentItemCount < targetItemCount) || (rawPop < levelCapacity(k, numLevels, curLevel, m))) {
+        // copy level over as is
+        // because inBuf and outBuf could be the same, make sure we are not moving data upwards!
+        assert (rawBeg >= outLevels[curLevel]);
+        System.arraycopy(inBuf, rawBeg, outBuf, outLevels[curLevel], rawPop);
+        outLevels[curLevel + 1] = outLevels[curLevel] + rawPop;
+      }
+      else {
+        // The sketch is too full AND this level is too full, so we compact it
+        // Note: this can add a level and thus change the sketch's capacity
+
+        final int popAbove = inLevels[curLevel + 2] - rawLim;
+        final boolean oddPop = isOdd(rawPop);
+        final int adjBeg = oddPop ? 1 + rawBeg : rawBeg;
+        final int adjPop = oddPop ? rawPop - 1 : rawPop;
+        final int halfAdjPop = adjPop / 2;
+
+        if (oddPop) { // copy one guy over
+          outBuf[outLevels[curLevel]] = inBuf[rawBeg];
+          outLevels[curLevel + 1] = outLevels[curLevel] + 1;
+        } else { // copy zero guys over
+          outLevels[curLevel + 1] = outLevels[curLevel];
+        }
+
+        // level zero might not be sorted, so we must sort it if we wish to compact it
+        if ((curLevel == 0) && !isLevelZeroSorted) {
+          Arrays.sort(inBuf, adjBeg, adjBeg + adjPop);
+        }
+
+        if (popAbove == 0) { // Level above is empty, so halve up
+          randomlyHalveUp(inBuf, adjBeg, adjPop, random);
+        } else { // Level above is nonempty, so halve down, then merge up
+          randomlyHalveDown(inBuf, adjBeg, adjPop, random);
+          mergeSortedArrays(inBuf, adjBeg, halfAdjPop, inBuf, rawLim, popAbove, inBuf, adjBeg + halfAdjPop);
+        }
+
+        // track the fact that we just eliminated some data
+        currentItemCount -= halfAdjPop;
+
+        // Adjust the boundaries of the level above
+        inLevels[curLevel + 1] = inLevels[curLevel + 1] - halfAdjPop;
+
+        // Increment numLevels if we just compacted the old top level
+        // This creates some more capacity (the size of the new bottom level)
+        if (curLevel == (numLevels - 1)) {
+          numLevels++;
+          targetItemCount += levelCapacity(k, numLevels, 0, m);
+        }
+
+      } // end of code for compacting a level
+
+      // determine whether we have processed all levels yet (including any new levels that we created)
+
+      if (curLevel == (numLevels - 1)) { doneYet = true; }
+
+    } // end of loop over levels
+
+    assert (outLevels[numLevels] - outLevels[0]) == currentItemCount;
+
+    return new int[] {numLevels, targetItemCount, currentItemCount};
+  }
+
+  static void randomlyHalveDown(final float[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = randomBit(random);
+    //final int offset = deterministicOffset(); // for validation
+    int j = start + offset;
+    for (int i = start; i < (start + half_length); i++) {
+      buf[i] = buf[j];
+      j += 2;
+    }
+  }
+
+  static void randomlyHalveUp(final float[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = randomBit(random);
+    //final int offset = deterministicOffset(); // for validation
+    int j = (start + length) - 1 - offset;
+    for (int i = (start + length) - 1; i >= (start + half_length); i--) {
+      buf[i] = buf[j];
+      j -= 2;
+    }
+  }
+
+  // double versions
+
+  static void mergeSortedArrays(final double[] bufA, final int startA, final int lenA,
+      final double[] bufB, final int startB, final int lenB, final double[] bufC, final int startC) {
+    final int lenC = lenA + lenB;
+    final int limA = startA + lenA;
+    final int limB = startB + lenB;
+    final int limC = startC + lenC;
+
+    int a = startA;
+    int b = startB;
+
+    for (int c = startC; c < limC; c++) {
+      if (a == limA) {
+        bufC[c] = bufB[b];
+        b++;
+      } else if (b == limB) {
+        bufC[c] = bufA[a];
+        a++;
+      } else if (bufA[a] < bufB[b]) {
+        bufC[c] = bufA[a];
+        a++;
+      } else {
+        bufC[c] = bufB[b];
+        b++;
+      }
+    }
+    assert a == limA;
+    assert b == limB;
+  }
+
+  static int[] generalCompress(
+      final int k,
+      final int m,
+      final int numLevelsIn,
+      final double[] inBuf,
+      final int[] inLevels,
+      final double[] outBuf,
+      final int[] outLevels,
+      final boolean isLevelZeroSorted,
+      final SplittableRandom random) {
     assert numLevelsIn > 0; // things are too weird if zero levels are allowed
     int numLevels = numLevelsIn;
     int currentItemCount = inLevels[numLevels] - inLevels[0]; // decreases with each compaction
@@ -288,9 +500,9 @@ class KllHelper {
         }
 
         if (popAbove == 0) { // Level above is empty, so halve up
-          randomlyHalveUp(inBuf, adjBeg, adjPop);
+          randomlyHalveUp(inBuf, adjBeg, adjPop, random);
         } else { // Level above is nonempty, so halve down, then merge up
-          randomlyHalveDown(inBuf, adjBeg, adjPop);
+          randomlyHalveDown(inBuf, adjBeg, adjPop, random);
           mergeSortedArrays(inBuf, adjBeg, halfAdjPop, inBuf, rawLim, popAbove, inBuf, adjBeg + halfAdjPop);
         }
 
@@ -320,10 +532,314 @@ class KllHelper {
     return new int[] {numLevels, targetItemCount, currentItemCount};
   }
 
-  static void randomlyHalveDown(final float[] buf, final int start, final int length) {
+  static void randomlyHalveDown(final double[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = randomBit(random);
+    //final int offset = deterministicOffset(); // for validation
+    int j = start + offset;
+    for (int i = start; i < (start + half_length); i++) {
+      buf[i] = buf[j];
+      j += 2;
+    }
+  }
+
+  static void randomlyHalveUp(final double[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = randomBit(random);
+    //final int offset = deterministicOffset(); // for validation
+    int j = (start + length) - 1 - offset;
+    for (int i = (start + length) - 1; i >= (start + half_length); i--) {
+      buf[i] = buf[j];
+      j -= 2;
+    }
+  }
+
+  // long versions
+
+  static void mergeSortedArrays(final long[] bufA, final int startA, final int lenA,
+      final long[] bufB, final int startB, final int lenB, final long[] bufC, final int startC) {
+    final int lenC = lenA + lenB;
+    final int limA = startA + lenA;
+    final int limB = startB + lenB;
+    final int limC = startC + lenC;
+
+    int a = startA;
+    int b = startB;
+
+    for (int c = startC; c < limC; c++) {
+      if (a == limA) {
+        bufC[c] = bufB[b];
+        b++;
+      } else if (b == limB) {
+        bufC[c] = bufA[a];
+        a++;
+      } else if (bufA[a] < bufB[b]) {
+        bufC[c] = bufA[a];
+        a++;
+      } else {
+        bufC[c] = bufB[b];
+        b++;
+      }
+    }
+    assert a == limA;
+    assert b == limB;
+  }
+
+  static int[] generalCompress(
+      final int k,
+      final int m,
+      final int numLevelsIn,
+      final long[] inBuf,
+      final int[] inLevels,
+      final long[] outBuf,
+      final int[] outLevels,
+      final boolean isLevelZeroSorted,
+      final SplittableRandom random) {
+    assert numLevelsIn > 0; // things are too weird if zero levels are allowed
+    int numLevels = numLevelsIn;
+    int currentItemCount = inLevels[numLevels] - inLevels[0]; // decreases with each compaction
+    int targetItemCount = computeTotalCapacity(k, m, numLevels); // increases if we add levels
+    boolean doneYet = false;
+    outLevels[0] = 0;
+    int curLevel = -1;
+    while (!doneYet) {
+      curLevel++; // start out at level 0
+
+      // If we are at the current top level, add an empty level above it for convenience,
+      // but do not increment numLevels until later
+      if (curLevel == (numLevels - 1)) {
+        inLevels[curLevel + 2] = inLevels[curLevel + 1];
+      }
+
+      final int rawBeg = inLevels[curLevel];
+      final int rawLim = inLevels[curLevel + 1];
+      final int rawPop = rawLim - rawBeg;
+
+      if ((currentItemCount < targetItemCount) || (rawPop < levelCapacity(k, numLevels, curLevel, m))) {
+        // copy level over as is
+        // because inBuf and outBuf could be the same, make sure we are not moving data upwards!
+        assert (rawBeg >= outLevels[curLevel]);
+        System.arraycopy(inBuf, rawBeg, outBuf, outLevels[curLevel], rawPop);
+        outLevels[curLevel + 1] = outLevels[curLevel] + rawPop;
+      }
+      else {
+        // The sketch is too full AND this level is too full, so we compact it
+        // Note: this can add a level and thus change the sketch's capacity
+
+        final int popAbove = inLevels[curLevel + 2] - rawLim;
+        final boolean oddPop = isOdd(rawPop);
+        final int adjBeg = oddPop ? 1 + rawBeg : rawBeg;
+        final int adjPop = oddPop ? rawPop - 1 : rawPop;
+        final int halfAdjPop = adjPop / 2;
+
+        if (oddPop) { // copy one guy over
+          outBuf[outLevels[curLevel]] = inBuf[rawBeg];
+          outLevels[curLevel + 1] = outLevels[curLevel] + 1;
+        } else { // copy zero guys over
+          outLevels[curLevel + 1] = outLevels[curLevel];
+        }
+
+        // level zero might not be sorted, so we must sort it if we wish to compact it
+        if ((curLevel == 0) && !isLevelZeroSorted) {
+          Arrays.sort(inBuf, adjBeg, adjBeg + adjPop);
+        }
+
+        if (popAbove == 0) { // Level above is empty, so halve up
+          randomlyHalveUp(inBuf, adjBeg, adjPop, random);
+        } else { // Level above is nonempty, so halve down, then merge up
+          randomlyHalveDown(inBuf, adjBeg, adjPop, random);
+          mergeSortedArrays(inBuf, adjBeg, halfAdjPop, inBuf, rawLim, popAbove, inBuf, adjBeg + halfAdjPop);
+        }
+
+        // track the fact that we just eliminated some data
+        currentItemCount -= halfAdjPop;
+
+        // Adjust the boundaries of the level above
+        inLevels[curLevel + 1] = inLevels[curLevel + 1] - halfAdjPop;
+
+        // Increment numLevels if we just compacted the old top level
+        // This creates some more capacity (the size of the new bottom level)
+        if (curLevel == (numLevels - 1)) {
+          numLevels++;
+          targetItemCount += levelCapacity(k, numLevels, 0, m);
+        }
+
+      } // end of code for compacting a level
+
+      // determine whether we have processed all levels yet (including any new levels that we created)
+
+      if (curLevel == (numLevels - 1)) { doneYet = true; }
+
+    } // end of loop over levels
+
+    assert (outLevels[numLevels] - outLevels[0]) == currentItemCount;
+
+    return new int[] {numLevels, targetItemCount, currentItemCount};
+  }
+
+  static void randomlyHalveDown(final long[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = randomBit(random);
+    //final int offset = deterministicOffset(); // for validation
+    int j = start + offset;
+    for (int i = start; i < (start + half_length); i++) {
+      buf[i] = buf[j];
+      j += 2;
+    }
+  }
+
+  static void randomlyHalveUp(final long[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = randomBit(random);
+    //final int offset = deterministicOffset(); // for validation
+    int j = (start + length) - 1 - offset;
+    for (int i = (start + length) - 1; i >= (start + half_length); i--) {
+      buf[i] = buf[j];
+      j -= 2;
+    }
+  }
+
+  // generic versions, ordered by the given comparator
+
+  @SuppressWarnings("unchecked")
+  static <T> void mergeSortedArrays(final Object[] bufA, final int startA, final int lenA,
+      final Object[] bufB, final int startB, final int lenB, final Object[] bufC, final int startC,
+      final Comparator<? super T> comparator) {
+    final int lenC = lenA + lenB;
+    final int limA = startA + lenA;
+    final int limB = startB + lenB;
+    final int limC = startC + lenC;
+
+    int a = startA;
+    int b = startB;
+
+    for (int c = startC; c < limC; c++) {
+      if (a == limA) {
+        bufC[c] = bufB[b];
+        b++;
+      } else if (b == limB) {
+        bufC[c] = bufA[a];
+        a++;
+      } else if (comparator.compare((T) bufA[a], (T) bufB[b]) < 0) {
+        bufC[c] = bufA[a];
+        a++;
+      } else {
+        bufC[c] = bufB[b];
+        b++;
+      }
+    }
+    assert a == limA;
+    assert b == limB;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> int[] generalCompress(
+      final int k,
+      final int m,
+      final int numLevelsIn,
+      final Object[] inBuf,
+      final int[] inLevels,
+      final Object[] outBuf,
+      final int[] outLevels,
+      final boolean isLevelZeroSorted,
+      final Comparator<? super T> comparator,
+      final SplittableRandom random) {
+    assert numLevelsIn > 0; // things are too weird if zero levels are allowed
+    int numLevels = numLevelsIn;
+    int currentItemCount = inLevels[numLevels] - inLevels[0]; // decreases with each compaction
+    int targetItemCount = computeTotalCapacity(k, m, numLevels); // increases if we add levels
+    boolean doneYet = false;
+    outLevels[0] = 0;
+    int curLevel = -1;
+    while (!doneYet) {
+      curLevel++; // start out at level 0
+
+      // If we are at the current top level, add an empty level above it for convenience,
+      // but do not increment numLevels until later
+      if (curLevel == (numLevels - 1)) {
+        inLevels[curLevel + 2] = inLevels[curLevel + 1];
+      }
+
+      final int rawBeg = inLevels[curLevel];
+      final int rawLim = inLevels[curLevel + 1];
+      final int rawPop = rawLim - rawBeg;
+
+      if ((currentItemCount < targetItemCount) || (rawPop < levelCapacity(k, numLevels, curLevel, m))) {
+        // copy level over as is
+        // because inBuf and outBuf could be the same, make sure we are not moving data upwards!
+        assert (rawBeg >= outLevels[curLevel]);
+        System.arraycopy(inBuf, rawBeg, outBuf, outLevels[curLevel], rawPop);
+        outLevels[curLevel + 1] = outLevels[curLevel] + rawPop;
+      }
+      else {
+        // The sketch is too full AND this level is too full, so we compact it
+        // Note: this can add a level and thus change the sketch's capacity
+
+        final int popAbove = inLevels[curLevel + 2] - rawLim;
+        final boolean oddPop = isOdd(rawPop);
+        final int adjBeg = oddPop ? 1 + rawBeg : rawBeg;
+        final int adjPop = oddPop ? rawPop - 1 : rawPop;
+        final int halfAdjPop = adjPop / 2;
+
+        if (oddPop) { // copy one guy over
+          outBuf[outLevels[curLevel]] = inBuf[rawBeg];
+          outLevels[curLevel + 1] = outLevels[curLevel] + 1;
+        } else { // copy zero guys over
+          outLevels[curLevel + 1] = outLevels[curLevel];
+        }
+
+        // level zero might not be sorted, so we must sort it if we wish to compact it
+        if ((curLevel == 0) && !isLevelZeroSorted) {
+          Arrays.sort((T[]) inBuf, adjBeg, adjBeg + adjPop, comparator);
+        }
+
+        if (popAbove == 0) { // Level above is empty, so halve up
+          randomlyHalveUp(inBuf, adjBeg, adjPop, random);
+        } else { // Level above is nonempty, so halve down, then merge up
+          randomlyHalveDown(inBuf, adjBeg, adjPop, random);
+          mergeSortedArrays(inBuf, adjBeg, halfAdjPop, inBuf, rawLim, popAbove, inBuf, adjBeg + halfAdjPop,
+              comparator);
+        }
+
+        // track the fact that we just eliminated some data
+        currentItemCount -= halfAdjPop;
+
+        // Adjust the boundaries of the level above
+        inLevels[curLevel + 1] = inLevels[curLevel + 1] - halfAdjPop;
+
+        // Increment numLevels if we just compacted the old top level
+        // This creates some more capacity (the size of the new bottom level)
+        if (curLevel == (numLevels - 1)) {
+          numLevels++;
+          targetItemCount += levelCapacity(k, numLevels, 0, m);
+        }
+
+      } // end of code for compacting a level
+
+      // determine whether we have processed all levels yet (including any new levels that we created)
+
+      if (curLevel == (numLevels - 1)) { doneYet = true; }
+
+    } // end of loop over levels
+
+    assert (outLevels[numLevels] - outLevels[0]) == currentItemCount;
+
+    return new int[] {numLevels, targetItemCount, currentItemCount};
+  }
+
+  static void randomlyHalveDown(final Object[] buf, final int start, final int length,
+      final SplittableRandom random) {
     assert isEven(length);
     final int half_length = length / 2;
-    final int offset = random.nextInt(2);
+    final int offset = randomBit(random);
     //final int offset = deterministicOffset(); // for validation
     int j = start + offset;
     for (int i = start; i < (start + half_length); i++) {
@@ -332,10 +848,11 @@ class KllHelper {
     }
   }
 
-  static void randomlyHalveUp(final float[] buf, final int start, final int length) {
+  static void randomlyHalveUp(final Object[] buf, final int start, final int length,
+      final SplittableRandom random) {
     assert isEven(length);
     final int half_length = length / 2;
-    final int offset = random.nextInt(2);
+    final int offset = randomBit(random);
     //final int offset = deterministicOffset(); // for validation
     int j = (start + length) - 1 - offset;
     for (int i = (start + length) - 1; i >= (start + half_length); i--) {
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import org.apache.datasketches.Family;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * This class defines the serialized data structure and provides access methods for the key fields
+ * shared by the KLL sketches.
+ *
+ * <p>There are two serialized forms. The compact form, produced by <i>toByteArray()</i>, stores
+ * only the retained items and omits the last entry of the levels array, which can be derived.
+ * Empty and single item sketches use a shorter preamble.</p>
+ *
+ * <pre>
+ * Serialized sketch layout, more than one item:
+ *  Adr:
+ *      ||    7    |   6   |    5   |    4   |    3   |    2    |    1   |      0       |
+ *  0   || unused  |   M   |--------K--------|  Flags |  FamID  | SerVer | PreambleInts |
+ *      ||   15    |   14  |   13   |   12   |   11   |   10    |    9   |      8       |
+ *  1   ||---------------------------------N_LONG---------------------------------------|
+ *      ||   23    |   22  |   21   |   20   |   19   |    18   |   17   |      16      |
+ *  2   ||<--------------data----------------| unused |numLevels|-------min K-----------|
+ *
+ * Serialized sketch layout, Empty and Single Item:
+ *  Adr:
+ *      ||    7    |   6   |    5   |    4   |    3   |    2    |    1   |      0       |
+ *  0   || unused  |   M   |--------K--------|  Flags |  FamID  | SerVer | PreambleInts |
+ *      ||   15    |   14  |   13   |   12   |   11   |   10    |    9   |      8       |
+ *  1   ||                                   |-------------------data-------------------|
+ * </pre>
+ *
+ * <p>The item type of the sketch is recorded in the flags byte. The floats sketch sets none of
+ * the item type bits, so images from before the other item types existed remain valid. The
+ * doubles and longs sketches store 8-byte items in the same layout, and the items sketch stores
+ * the min, max and retained items as serialized by its ArrayOfItemsSerDe.</p>
+ *
+ * <p>The updatable form (serial version 3) is the one a direct sketch updates in place.
+ * It always uses the full preamble, even when empty, and the data section holds all
+ * <i>numLevels + 1</i> entries of the levels array, followed by the min and max values and
+ * then the entire items array including the free space at the bottom of level zero.
+ * The total item capacity is the last entry of the levels array.</p>
+ *
+ * <pre>
+ * Updatable sketch data section, starting at byte 20:
+ *   levels[0], ..., levels[numLevels]   (numLevels + 1) ints
+ *   min value, max value                two items
+ *   items[0], ..., items[capacity - 1]  capacity items
+ * </pre>
+ */
+final class KllPreambleUtil {
+
+  private KllPreambleUtil() {}
+
+  // Preamble byte addresses
+  static final int PREAMBLE_INTS_BYTE = 0;
+  static final int SER_VER_BYTE       = 1;
+  static final int FAMILY_BYTE        = 2;
+  static final int FLAGS_BYTE         = 3;
+  static final int K_SHORT            = 4;  // to 5
+  static final int M_BYTE             = 6;
+  //                                    7 is reserved for future use
+  static final int N_LONG             = 8;  // to 15
+  static final int MIN_K_SHORT        = 16; // to 17
+  static final int NUM_LEVELS_BYTE    = 18;
+  //                                    19 is reserved for future use
+  static final int DATA_START         = 20; // if using items larger than 4 bytes, use 24
+  static final int DATA_START_SINGLE_ITEM = 8;
+
+  // Other static values
+  static final byte SERIAL_VERSION_1 = 1;
+  static final byte SERIAL_VERSION_2 = 2; // single item
+  static final byte SERIAL_VERSION_UPDATABLE = 3;
+  static final int PREAMBLE_INTS_SMALL = 2; // for empty and single item
+  static final int PREAMBLE_INTS_FULL  = 5; // if using items larger than 4 bytes, use 6
+
+  // Flag bit masks
+  static final int EMPTY_BIT_MASK = 1;
+  static final int LEVEL_ZERO_SORTED_BIT_MASK = 2;
+  static final int SINGLE_ITEM_BIT_MASK = 4;
+  // The item type. None of these bits is set for the floats sketch.
+  static final int DOUBLES_SKETCH_BIT_MASK = 8;
+  static final int LONGS_SKETCH_BIT_MASK = 16;
+  static final int ITEMS_SKETCH_BIT_MASK = 32;
+  static final int ITEM_TYPE_BIT_MASK =
+      DOUBLES_SKETCH_BIT_MASK | LONGS_SKETCH_BIT_MASK | ITEMS_SKETCH_BIT_MASK;
+
+  /**
+   * Returns the number of bytes of the updatable form given the number of levels and the total
+   * item capacity.
+   * @param numLevels the number of levels
+   * @param capacity the total item capacity, which is the last entry of the levels array
+   * @param itemBytes the size of one item in bytes
+   * @return the number of bytes of the updatable form
+   */
+  static long getUpdatableSizeBytes(final int numLevels, final int capacity, final int itemBytes) {
+    return DATA_START + ((long) (numLevels + 1) * Integer.BYTES)
+        + ((long) (capacity + 2) * itemBytes);
+  }
+
+  /**
+   * Checks the preamble of a KLL sketch image in Memory and returns the flags.
+   * @param mem the Memory image of a sketch
+   * @param expectedM the expected value of M
+   * @param expectedItemType the expected item type bit, or zero for the floats sketch
+   * @return the flags byte
+   */
+  static int checkPreamble(final Memory mem, final int expectedM, final int expectedItemType) {
+    final int preambleInts = mem.getByte(PREAMBLE_INTS_BYTE) & 0xff;
+    final int serialVersion = mem.getByte(SER_VER_BYTE) & 0xff;
+    final int family = mem.getByte(FAMILY_BYTE) & 0xff;
+    final int flags = mem.getByte(FLAGS_BYTE) & 0xff;
+    final int m = mem.getByte(M_BYTE) & 0xff;
+    if (m != expectedM) {
+      throw new SketchesArgumentException(
+          "Possible corruption: M must be " + expectedM + ": " + m);
+    }
+    final boolean isEmpty = (flags & EMPTY_BIT_MASK) > 0;
+    final boolean isSingleItem = (flags & SINGLE_ITEM_BIT_MASK) > 0;
+    if (serialVersion == SERIAL_VERSION_UPDATABLE) {
+      if (preambleInts != PREAMBLE_INTS_FULL) {
+        throw new SketchesArgumentException("Possible corruption: preambleInts must be "
+            + PREAMBLE_INTS_FULL + " for an updatable sketch: " + preambleInts);
+      }
+    } else if (isEmpty || isSingleItem) {
+      if (preambleInts != PREAMBLE_INTS_SMALL) {
+        throw new SketchesArgumentException("Possible corruption: preambleInts must be "
+            + PREAMBLE_INTS_SMALL + " for an empty or single item sketch: " + preambleInts);
+      }
+    } else {
+      if (preambleInts != PREAMBLE_INTS_FULL) {
+        throw new SketchesArgumentException("Possible corruption: preambleInts must be "
+            + PREAMBLE_INTS_FULL + " for a sketch with more than one item: " + preambleInts);
+      }
+    }
+    if ((serialVersion != SERIAL_VERSION_1) && (serialVersion != SERIAL_VERSION_2)
+        && (serialVersion != SERIAL_VERSION_UPDATABLE)) {
+      throw new SketchesArgumentException(
+          "Possible corruption: serial version mismatch: expected " + SERIAL_VERSION_1 + ", "
+              + SERIAL_VERSION_2 + " or " + SERIAL_VERSION_UPDATABLE + ", got " + serialVersion);
+    }
+    if (family != Family.KLL.getID()) {
+      throw new SketchesArgumentException(
+      "Possible corruption: family mismatch: expected " + Family.KLL.getID() + ", got " + family);
+    }
+    if ((flags & ITEM_TYPE_BIT_MASK) != expectedItemType) {
+      throw new SketchesArgumentException(
+          "Possible corruption: item type mismatch: expected flags " + expectedItemType + ", got "
+              + (flags & ITEM_TYPE_BIT_MASK));
+    }
+    return flags;
+  }
+
+  static boolean isUpdatableFormat(final Memory mem) {
+    return (mem.getByte(SER_VER_BYTE) & 0xff) == SERIAL_VERSION_UPDATABLE;
+  }
+
+  // The following extract fields from an image in either form without deserializing it.
+  // The preamble is assumed to have been checked.
+
+  static boolean extractIsEmpty(final Memory mem) {
+    if (isUpdatableFormat(mem)) { return mem.getLong(N_LONG) == 0; }
+    return (mem.getByte(FLAGS_BYTE) & EMPTY_BIT_MASK) > 0;
+  }
+
+  static long extractN(final Memory mem) {
+    if (isUpdatableFormat(mem)) { return mem.getLong(N_LONG); }
+    final int flags = mem.getByte(FLAGS_BYTE) & 0xff;
+    if ((flags & EMPTY_BIT_MASK) > 0) { return 0; }
+    if ((flags & SINGLE_ITEM_BIT_MASK) > 0) { return 1; }
+    return mem.getLong(N_LONG);
+  }
+
+  static int extractK(final Memory mem) {
+    return mem.getShort(K_SHORT) & 0xffff;
+  }
+
+  static int extractNumLevels(final Memory mem) {
+    if (isUpdatableFormat(mem)
+        || ((mem.getByte(FLAGS_BYTE) & (EMPTY_BIT_MASK | SINGLE_ITEM_BIT_MASK)) == 0)) {
+      return mem.getByte(NUM_LEVELS_BYTE) & 0xff;
+    }
+    return 1;
+  }
+
+  /**
+   * Returns the offset of the min value, which is followed by the max value. In the compact
+   * single item form this is the offset of the single item, which is both the min and the max.
+   * Not valid for the compact empty form.
+   * @param mem the Memory image of a sketch
+   * @return the offset of the min value
+   */
+  static long extractMinMaxOffset(final Memory mem) {
+    final boolean updatable = isUpdatableFormat(mem);
+    if (!updatable && ((mem.getByte(FLAGS_BYTE) & SINGLE_ITEM_BIT_MASK) > 0)) {
+      return DATA_START_SINGLE_ITEM;
+    }
+    // the compact form does not serialize the last integer of the levels array
+    final int numLevels = mem.getByte(NUM_LEVELS_BYTE) & 0xff;
+    return DATA_START + ((long) (updatable ? numLevels + 1 : numLevels) * Integer.BYTES);
+  }
+
+}
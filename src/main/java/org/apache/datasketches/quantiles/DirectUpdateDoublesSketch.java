@@ -178,7 +178,8 @@ final class DirectUpdateDoublesSketch extends DirectUpdateDoublesSketchR {
               true,
               k_,
               DoublesSketchAccessor.wrap(this, true),
-              getBitPattern()
+              getBitPattern(),
+              random_
       );
 
       assert newBitPattern == computeBitPattern(k_, newN); // internal consistency check
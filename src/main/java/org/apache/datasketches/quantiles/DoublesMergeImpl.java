@@ -23,6 +23,8 @@ import static org.apache.datasketches.Util.checkIfPowerOf2;
 import static org.apache.datasketches.quantiles.PreambleUtil.EMPTY_FLAG_MASK;
 import static org.apache.datasketches.quantiles.PreambleUtil.FLAGS_BYTE;
 
+import java.util.SplittableRandom;
+
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.WritableMemory;
 
@@ -101,7 +103,8 @@ final class DoublesMergeImpl {
                 false,
                 tgtK,
                 tgtSketchBuf,
-                newTgtBitPattern
+                newTgtBitPattern,
+                tgt.random_
         );
       }
     }
@@ -183,7 +186,8 @@ final class DoublesMergeImpl {
                 srcSketchBuf.setLevel(srcLvl),
                 downScratchKAcc,
                 tgtK,
-                downFactor
+                downFactor,
+                tgt.random_
         );
         newTgtBitPattern = DoublesUpdateImpl.inPlacePropagateCarry(
                 srcLvl + lgDownFactor,    //starting level
@@ -192,7 +196,8 @@ final class DoublesMergeImpl {
                 false,                    //do mergeInto version
                 tgtK,
                 tgtSketchBuf,
-                newTgtBitPattern
+                newTgtBitPattern,
+                tgt.random_
         );
 
         tgt.putBitPattern(newTgtBitPattern); //off-heap is a no-op
@@ -224,8 +229,9 @@ final class DoublesMergeImpl {
           final DoublesBufferAccessor bufA, // input
           final DoublesBufferAccessor bufC, // output
           final int kC, // number of items that should be in the output
-          final int stride) {
-    final int randomOffset = DoublesSketch.rand.nextInt(stride);
+          final int stride,
+          final SplittableRandom random) {
+    final int randomOffset = Util.randomInt(random, stride);
     for (int a = randomOffset, c = 0; c < kC; a += stride, c++ ) {
       bufC.set(c, bufA.get(a));
     }
@@ -24,8 +24,6 @@ import static java.lang.Math.min;
 import static org.apache.datasketches.Util.ceilingPowerOf2;
 import static org.apache.datasketches.quantiles.Util.checkIsCompactMemory;
 
-import java.util.Random;
-
 import org.apache.datasketches.Family;
 import org.apache.datasketches.QuantilesHelper;
 import org.apache.datasketches.SketchesArgumentException;
@@ -142,13 +140,6 @@ public abstract class DoublesSketch {
   static final int MIN_K = 2;
   static final int MAX_K = 1 << 15;
 
-  /**
-   * Setting the seed makes the results of the sketch deterministic if the input values are
-   * received in exactly the same order. This is only useful when performing test comparisons,
-   * otherwise is not recommended.
-   */
-  static Random rand = new Random();
-
   /**
    * Parameter that controls space usage of sketch and accuracy of estimates.
    */
@@ -159,10 +150,6 @@ public abstract class DoublesSketch {
     k_ = k;
   }
 
-  synchronized static void setRandom(final long seed) {
-    DoublesSketch.rand = new Random(seed);
-  }
-
   /**
    * Returns a new builder
    * @return a new builder
@@ -224,8 +211,7 @@ public abstract class DoublesSketch {
     if      (fraction == 0.0) { return getMinValue(); }
     else if (fraction == 1.0) { return getMaxValue(); }
     else {
-      final DoublesAuxiliary aux = new DoublesAuxiliary(this);
-      return aux.getQuantile(fraction);
+      return getSortedView().getQuantile(fraction);
     }
   }
 
@@ -271,17 +257,17 @@ public abstract class DoublesSketch {
    */
   public double[] getQuantiles(final double[] fRanks) {
     if (isEmpty()) { return null; }
-    DoublesAuxiliary aux = null;
+    DoublesSortedView view = null;
     final double[] quantiles = new double[fRanks.length];
     for (int i = 0; i < fRanks.length; i++) {
       final double fRank = fRanks[i];
       if      (fRank == 0.0) { quantiles[i] = getMinValue(); }
       else if (fRank == 1.0) { quantiles[i] = getMaxValue(); }
       else {
-        if (aux == null) {
-          aux = new DoublesAuxiliary(this);
+        if (view == null) {
+          view = getSortedView();
         }
-        quantiles[i] = aux.getQuantile(fRank);
+        quantiles[i] = view.getQuantile(fRank);
       }
     }
     return quantiles;
@@ -398,6 +384,20 @@ public abstract class DoublesSketch {
     return DoublesPmfCdfImpl.getPMFOrCDF(this, splitPoints, true);
   }
 
+  /**
+   * Returns an immutable sorted view of the items retained by this sketch. The view answers
+   * quantile, rank, CDF and PMF queries by binary search, so when many queries are made against
+   * a sketch that is no longer being updated it is much faster to build the view once and query
+   * it than to query the sketch each time.
+   *
+   * <p>The view reflects the current state of this sketch and is not affected by later updates.
+   *
+   * @return a sorted view of the items retained by this sketch
+   */
+  public DoublesSortedView getSortedView() {
+    return new DoublesSortedView(this);
+  }
+
   /**
    * Returns the configured value of K
    * @return the configured value of K
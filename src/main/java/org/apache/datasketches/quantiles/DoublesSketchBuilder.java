@@ -22,6 +22,8 @@ package org.apache.datasketches.quantiles;
 import static org.apache.datasketches.quantiles.Util.LS;
 import static org.apache.datasketches.quantiles.Util.TAB;
 
+import java.util.SplittableRandom;
+
 import org.apache.datasketches.memory.WritableMemory;
 
 /**
@@ -31,12 +33,14 @@ import org.apache.datasketches.memory.WritableMemory;
  */
 public class DoublesSketchBuilder {
   private int bK = PreambleUtil.DEFAULT_K;
+  private SplittableRandom bRandom = null;
 
   /**
    * Constructor for a new DoublesSketchBuilder. The default configuration is
    * <ul>
    * <li>k: 128. This produces a normalized rank error of about 1.7%</li>
    * <li>Memory: null</li>
+   * <li>Random: null, which means ThreadLocalRandom is used</li>
    * </ul>
    */
   public DoublesSketchBuilder() {}
@@ -63,12 +67,36 @@ public class DoublesSketchBuilder {
     return bK;
   }
 
+  /**
+   * Sets the source of randomness used by the compactions of sketches built by this builder.
+   * Each built sketch receives its own split of the given source, so a builder configured with a
+   * seeded SplittableRandom produces sketches whose results are reproducible when the input values
+   * are received in exactly the same order. This is mainly useful for testing.
+   * If null, the default, each sketch uses ThreadLocalRandom.
+   * @param random the source of randomness, or null
+   * @return this builder
+   */
+  public DoublesSketchBuilder setRandom(final SplittableRandom random) {
+    bRandom = random;
+    return this;
+  }
+
+  /**
+   * Gets the configured source of randomness, or null if ThreadLocalRandom is used.
+   * @return the configured source of randomness, or null
+   */
+  public SplittableRandom getRandom() {
+    return bRandom;
+  }
+
   /**
    * Returns an UpdateDoublesSketch with the current configuration of this Builder.
    * @return a UpdateDoublesSketch
    */
   public UpdateDoublesSketch build() {
-    return HeapUpdateDoublesSketch.newInstance(bK);
+    final UpdateDoublesSketch sketch = HeapUpdateDoublesSketch.newInstance(bK);
+    sketch.random_ = splitRandom();
+    return sketch;
   }
 
   /**
@@ -78,7 +106,13 @@ public class DoublesSketchBuilder {
    * @return an UpdateDoublesSketch
    */
   public UpdateDoublesSketch build(final WritableMemory dstMem) {
-    return DirectUpdateDoublesSketch.newInstance(bK, dstMem);
+    final UpdateDoublesSketch sketch = DirectUpdateDoublesSketch.newInstance(bK, dstMem);
+    sketch.random_ = splitRandom();
+    return sketch;
+  }
+
+  private SplittableRandom splitRandom() {
+    return bRandom == null ? null : bRandom.split();
   }
 
   /**
@@ -89,6 +123,7 @@ public class DoublesSketchBuilder {
     final StringBuilder sb = new StringBuilder();
     sb.append("QuantileSketchBuilder configuration:").append(LS);
     sb.append("K     : ").append(TAB).append(bK).append(LS);
+    sb.append("Random: ").append(TAB).append(bRandom == null ? "ThreadLocalRandom" : "seeded").append(LS);
     return sb.toString();
   }
 
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.quantiles;
+
+import org.apache.datasketches.QuantilesHelper;
+import org.apache.datasketches.SketchesArgumentException;
+
+/**
+ * An immutable sorted view of the retained items of a DoublesSketch. All retained items are
+ * merged into a single sorted array together with the cumulative weights of the items preceding
+ * each one, so that quantile, rank, CDF and PMF queries are answered by binary search in
+ * O(log(retained items)) time without touching the sketch again.
+ *
+ * <p>Building the view costs about as much as a single getQuantile() call on the sketch.
+ * It reflects the state of the sketch at the time it was built and is not affected by
+ * later updates, so it is best suited to many queries against a sketch that is no longer
+ * changing. It is safe to query from multiple threads.</p>
+ */
+public final class DoublesSortedView {
+  private final long n_;
+  private final double minValue_;
+  private final double maxValue_;
+  private final double[] items_;
+  private final long[] cumWts_; // cumulative weights preceding each item, n_ at the end
+
+  DoublesSortedView(final DoublesSketch sketch) {
+    final DoublesAuxiliary aux = new DoublesAuxiliary(sketch);
+    n_ = aux.auxN_;
+    minValue_ = sketch.getMinValue();
+    maxValue_ = sketch.getMaxValue();
+    items_ = aux.auxSamplesArr_;
+    cumWts_ = aux.auxCumWtsArr_;
+  }
+
+  /**
+   * Returns the length of the input stream seen by the sketch when this view was built.
+   * @return the length of the input stream
+   */
+  public long getN() {
+    return n_;
+  }
+
+  /**
+   * Returns true if the sketch was empty when this view was built.
+   * @return true if the view is empty
+   */
+  public boolean isEmpty() {
+    return n_ == 0;
+  }
+
+  /**
+   * Returns the number of items retained by the sketch when this view was built.
+   * @return the number of retained items
+   */
+  public int getRetainedItems() {
+    return items_.length;
+  }
+
+  /**
+   * Returns the min value of the stream. If the view is empty this returns Double.NaN.
+   * @return the min value of the stream
+   */
+  public double getMinValue() {
+    return minValue_;
+  }
+
+  /**
+   * Returns the max value of the stream. If the view is empty this returns Double.NaN.
+   * @return the max value of the stream
+   */
+  public double getMaxValue() {
+    return maxValue_;
+  }
+
+  /**
+   * Returns an approximation to the value of the data item that would be preceded by the given
+   * fraction of a hypothetical sorted version of the input stream.
+   * This gives the same result as {@link DoublesSketch#getQuantile(double)}.
+   *
+   * <p>If the view is empty this returns Double.NaN.
+   *
+   * @param fraction the specified fractional position in the hypothetical sorted stream.
+   * If fraction = 0.0, the true minimum value of the stream is returned.
+   * If fraction = 1.0, the true maximum value of the stream is returned.
+   * @return the approximation to the value at the given fraction
+   */
+  public double getQuantile(final double fraction) {
+    if (isEmpty()) { return Double.NaN; }
+    if ((fraction < 0.0) || (fraction > 1.0)) {
+      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
+    }
+    if      (fraction == 0.0) { return minValue_; }
+    else if (fraction == 1.0) { return maxValue_; }
+    final long pos = QuantilesHelper.posOfPhi(fraction, n_);
+    return items_[QuantilesHelper.chunkContainingPos(cumWts_, pos)];
+  }
+
+  /**
+   * Returns approximations to the values at the given fractional ranks.
+   * This gives the same result as {@link DoublesSketch#getQuantiles(double[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param fRanks the given array of fractional (or normalized) ranks in the hypothetical
+   * sorted stream of all the input values seen so far.
+   * These fRanks must all be in the interval [0.0, 1.0] inclusively.
+   * @return array of approximate quantiles of the given fRanks in the same order as in the given
+   * fRanks array.
+   */
+  public double[] getQuantiles(final double[] fRanks) {
+    if (isEmpty()) { return null; }
+    final double[] quantiles = new double[fRanks.length];
+    for (int i = 0; i < fRanks.length; i++) {
+      quantiles[i] = getQuantile(fRanks[i]);
+    }
+    return quantiles;
+  }
+
+  /**
+   * Returns an approximation to the normalized (fractional) rank of the given value from 0 to 1
+   * inclusive. This gives the same result as {@link DoublesSketch#getRank(double)}.
+   *
+   * <p>If the view is empty this returns NaN.
+   *
+   * @param value to be ranked
+   * @return an approximate rank of the given value
+   */
+  public double getRank(final double value) {
+    if (isEmpty()) { return Double.NaN; }
+    return (double) cumWts_[lowerBound(value)] / n_;
+  }
+
+  /**
+   * Returns an approximation to the Cumulative Distribution Function (CDF) of the input stream
+   * given a set of split points.
+   * This gives the same result as {@link DoublesSketch#getCDF(double[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing double values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 double values, which are a consecutive approximation to the CDF
+   * of the input stream given the splitPoints.
+   */
+  public double[] getCDF(final double[] splitPoints) {
+    return getPmfOrCdf(splitPoints, true);
+  }
+
+  /**
+   * Returns an approximation to the Probability Mass Function (PMF) of the input stream
+   * given a set of split points.
+   * This gives the same result as {@link DoublesSketch#getPMF(double[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing double values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 doubles each of which is an approximation
+   * to the fraction of the input stream values (the mass) that fall into one of those intervals.
+   */
+  public double[] getPMF(final double[] splitPoints) {
+    return getPmfOrCdf(splitPoints, false);
+  }
+
+  private double[] getPmfOrCdf(final double[] splitPoints, final boolean isCdf) {
+    if (isEmpty()) { return null; }
+    Util.checkSplitPointsOrder(splitPoints);
+    final double[] buckets = new double[splitPoints.length + 1];
+    long prevWeight = 0;
+    for (int j = 0; j < splitPoints.length; j++) {
+      final long weight = cumWts_[lowerBound(splitPoints[j])];
+      buckets[j] = isCdf ? (double) weight / n_ : (double) (weight - prevWeight) / n_;
+      prevWeight = weight;
+    }
+    buckets[splitPoints.length] = isCdf ? 1.0 : (double) (n_ - prevWeight) / n_;
+    return buckets;
+  }
+
+  // returns the index of the first item that is not less than the given value
+  private int lowerBound(final double value) {
+    int lo = 0;
+    int hi = items_.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (items_[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+}
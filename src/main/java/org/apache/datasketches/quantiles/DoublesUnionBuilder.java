@@ -19,6 +19,8 @@
 
 package org.apache.datasketches.quantiles;
 
+import java.util.SplittableRandom;
+
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
 
@@ -29,12 +31,14 @@ import org.apache.datasketches.memory.WritableMemory;
  */
 public class DoublesUnionBuilder {
   private int bMaxK = PreambleUtil.DEFAULT_K;
+  private SplittableRandom bRandom = null;
 
   /**
    * Constructor for a new DoublesUnionBuilder. The default configuration is
    * <ul>
    * <li>k: 128. This produces a normalized rank error of about 1.7%</li>
    * <li>Memory: null</li>
+   * <li>Random: null, which means ThreadLocalRandom is used</li>
    * </ul>
    */
   public DoublesUnionBuilder() {}
@@ -62,12 +66,36 @@ public class DoublesUnionBuilder {
     return bMaxK;
   }
 
+  /**
+   * Sets the source of randomness used by the compactions of unions built by this builder.
+   * Each built union receives its own split of the given source, so a builder configured with a
+   * seeded SplittableRandom produces unions whose results are reproducible when the input
+   * sketches are received in exactly the same order. This is mainly useful for testing.
+   * If null, the default, each union uses ThreadLocalRandom.
+   * @param random the source of randomness, or null
+   * @return this builder
+   */
+  public DoublesUnionBuilder setRandom(final SplittableRandom random) {
+    bRandom = random;
+    return this;
+  }
+
+  /**
+   * Gets the configured source of randomness, or null if ThreadLocalRandom is used.
+   * @return the configured source of randomness, or null
+   */
+  public SplittableRandom getRandom() {
+    return bRandom;
+  }
+
   /**
    * Returns a new empty Union object with the current configuration of this Builder.
    * @return a Union object
    */
   public DoublesUnion build() {
-    return DoublesUnionImpl.heapInstance(bMaxK);
+    final DoublesUnionImpl union = DoublesUnionImpl.heapInstance(bMaxK);
+    union.random_ = splitRandom();
+    return union;
   }
 
   /**
@@ -77,7 +105,13 @@ public class DoublesUnionBuilder {
    * @return a Union object
    */
   public DoublesUnion build(final WritableMemory dstMem) {
-    return DoublesUnionImpl.directInstance(bMaxK, dstMem);
+    final DoublesUnionImpl union = DoublesUnionImpl.directInstance(bMaxK, dstMem);
+    union.random_ = splitRandom();
+    return union;
+  }
+
+  private SplittableRandom splitRandom() {
+    return bRandom == null ? null : bRandom.split();
   }
 
   /**
@@ -21,6 +21,8 @@ package org.apache.datasketches.quantiles;
 
 import static org.apache.datasketches.quantiles.DoublesUtil.copyToHeap;
 
+import java.util.SplittableRandom;
+
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
 
@@ -32,6 +34,9 @@ import org.apache.datasketches.memory.WritableMemory;
  */
 final class DoublesUnionImpl extends DoublesUnionImplR {
 
+  // source of randomness for the compactions of the gadget, null means ThreadLocalRandom
+  SplittableRandom random_;
+
   private DoublesUnionImpl(final int maxK) {
     super(maxK);
   }
@@ -115,18 +120,19 @@ final class DoublesUnionImpl extends DoublesUnionImplR {
 
   @Override
   public void update(final DoublesSketch sketchIn) {
-    gadget_ = updateLogic(maxK_, gadget_, sketchIn);
+    gadget_ = updateLogic(maxK_, gadget_, sketchIn, random_);
   }
 
   @Override
   public void update(final Memory mem) {
-    gadget_ = updateLogic(maxK_, gadget_, DoublesSketch.wrap(mem));
+    gadget_ = updateLogic(maxK_, gadget_, DoublesSketch.wrap(mem), random_);
   }
 
   @Override
   public void update(final double dataItem) {
     if (gadget_ == null) {
       gadget_ = HeapUpdateDoublesSketch.newInstance(maxK_);
+      gadget_.random_ = random_;
     }
     gadget_.update(dataItem);
   }
@@ -144,10 +150,16 @@ final class DoublesUnionImpl extends DoublesUnionImplR {
     gadget_ = null;
   }
 
+  static UpdateDoublesSketch updateLogic(final int myMaxK, final UpdateDoublesSketch myQS,
+                                         final DoublesSketch other) {
+    return updateLogic(myMaxK, myQS, other, null);
+  }
+
   //@formatter:off
   @SuppressWarnings("null")
   static UpdateDoublesSketch updateLogic(final int myMaxK, final UpdateDoublesSketch myQS,
-                                         final DoublesSketch other) {
+                                         final DoublesSketch other, final SplittableRandom random) {
+    if (myQS != null) { myQS.random_ = random; }
     int sw1 = ((myQS  == null) ? 0 :  myQS.isEmpty() ? 4 : 8);
     sw1 |=    ((other == null) ? 0 : other.isEmpty() ? 1 : 2);
     int outCase = 0; //0=null, 1=NOOP, 2=copy, 3=merge
@@ -171,6 +183,7 @@ final class DoublesUnionImpl extends DoublesUnionImplR {
         assert other != null;
         if (!other.isEstimationMode()) { //other is exact, stream items in
           ret = HeapUpdateDoublesSketch.newInstance(myMaxK);
+          ret.random_ = random;
           // exact mode, only need copy base buffer
           final DoublesSketchAccessor otherAccessor = DoublesSketchAccessor.wrap(other);
           for (int i = 0; i < otherAccessor.numItems(); ++i) {
@@ -181,6 +194,7 @@ final class DoublesUnionImpl extends DoublesUnionImplR {
           ret = (myMaxK < other.getK())
               ? other.downSampleInternal(other, myMaxK, null) //null mem
               : DoublesUtil.copyToHeap(other); //copy required because caller has handle
+          ret.random_ = random;
         }
         break;
       }
@@ -209,14 +223,17 @@ final class DoublesUnionImpl extends DoublesUnionImplR {
               } else { //myQS is empty and on heap
                 ret = DoublesUtil.copyToHeap(other);
               }
+              ret.random_ = random;
             }
             else { //Not Empty: myQS has data, downsample to tmp
               final UpdateDoublesSketch tmp = DoublesSketch.builder().setK(other.getK()).build();
+              tmp.random_ = random;
 
               DoublesMergeImpl.downSamplingMergeInto(myQS, tmp); //myData -> tmp
               ret = (myQS.isDirect())
                   ? DoublesSketch.builder().setK(other.getK()).build(myQS.getMemory())
                   : DoublesSketch.builder().setK(other.getK()).build();
+              ret.random_ = random;
 
               DoublesMergeImpl.mergeInto(tmp, ret);
               DoublesMergeImpl.mergeInto(other, ret);
@@ -227,6 +244,7 @@ final class DoublesUnionImpl extends DoublesUnionImplR {
       }
       case 4: { //myQS = null,  other = empty; create empty-heap(myMaxK)
         ret = HeapUpdateDoublesSketch.newInstance(myMaxK);
+        ret.random_ = random;
         break;
       }
       //default: //This cannot happen and cannot be tested
@@ -19,6 +19,8 @@
 
 package org.apache.datasketches.quantiles;
 
+import java.util.SplittableRandom;
+
 /**
  * The doubles update algorithms for quantiles.
  *
@@ -93,6 +95,7 @@ final class DoublesUpdateImpl {
    * @param k the target value of k
    * @param tgtSketchBuf the given DoublesSketchAccessor
    * @param bitPattern the current bitPattern, prior to this call
+   * @param random the random source of the target sketch, or null to use ThreadLocalRandom
    * @return The updated bit pattern.  The updated combined buffer is output as a side effect.
    */
   static long inPlacePropagateCarry(
@@ -102,12 +105,13 @@ final class DoublesUpdateImpl {
           final boolean doUpdateVersion,
           final int k,
           final DoublesSketchAccessor tgtSketchBuf,
-          final long bitPattern) {
+          final long bitPattern,
+          final SplittableRandom random) {
     final int endingLevel = Util.lowestZeroBitStartingAt(bitPattern, startingLevel);
     tgtSketchBuf.setLevel(endingLevel);
     if (doUpdateVersion) { // update version of computation
       // its is okay for optSrcKBuf to be null in this case
-      zipSize2KBuffer(size2KBuf, tgtSketchBuf);
+      zipSize2KBuffer(size2KBuf, tgtSketchBuf, random);
     } else { // mergeInto version of computation
       assert (optSrcKBuf != null);
       tgtSketchBuf.putArray(optSrcKBuf.getArray(0, k), 0, 0, k);
@@ -120,7 +124,7 @@ final class DoublesUpdateImpl {
               currLevelBuf, // target level: lvl
               tgtSketchBuf, // target level: endingLevel
               size2KBuf);
-      zipSize2KBuffer(size2KBuf, tgtSketchBuf);
+      zipSize2KBuffer(size2KBuf, tgtSketchBuf, random);
     } // end of loop over lower levels
 
     // update bit pattern with binary-arithmetic ripple carry
@@ -129,8 +133,9 @@ final class DoublesUpdateImpl {
 
   private static void zipSize2KBuffer(
           final DoublesBufferAccessor bufIn,
-          final DoublesBufferAccessor bufOut) {
-    final int randomOffset = DoublesSketch.rand.nextBoolean() ? 1 : 0;
+          final DoublesBufferAccessor bufOut,
+          final SplittableRandom random) {
+    final int randomOffset = Util.randomInt(random, 2);
     final int limOut = bufOut.numItems();
     for (int idxIn = randomOffset, idxOut = 0; idxOut < limOut; idxIn += 2, idxOut++) {
       bufOut.set(idxOut, bufIn.get(idxIn));
@@ -19,6 +19,7 @@
 
 package org.apache.datasketches.quantiles;
 
+import static org.apache.datasketches.Util.checkBounds;
 import static org.apache.datasketches.quantiles.PreambleUtil.COMPACT_FLAG_MASK;
 import static org.apache.datasketches.quantiles.PreambleUtil.EMPTY_FLAG_MASK;
 import static org.apache.datasketches.quantiles.PreambleUtil.MAX_DOUBLE;
@@ -219,35 +220,7 @@ final class HeapUpdateDoublesSketch extends UpdateDoublesSketch {
     combinedBuffer_[curBBCount] = dataItem;
 
     if (newBBCount == (k_ << 1)) { //Propagate
-
-      // make sure there will be enough space (levels) for the propagation
-      final int spaceNeeded = DoublesUpdateImpl.getRequiredItemCapacity(k_, newN);
-
-      if (spaceNeeded > combBufItemCap) {
-        // copies base buffer plus old levels, adds space for new level
-        growCombinedBuffer(combBufItemCap, spaceNeeded);
-      }
-
-      // sort only the (full) base buffer via accessor which modifies the underlying base buffer,
-      // then use as one of the inputs to propagate-carry
-      final DoublesSketchAccessor bbAccessor = DoublesSketchAccessor.wrap(this, true);
-      bbAccessor.sort();
-
-      final long newBitPattern = DoublesUpdateImpl.inPlacePropagateCarry(
-              0, // starting level
-              null,
-              bbAccessor,
-              true,
-              k_,
-              DoublesSketchAccessor.wrap(this, true),
-              bitPattern_
-      );
-
-      assert newBitPattern == computeBitPattern(k_, newN); // internal consistency check
-      assert newBitPattern == (bitPattern_ + 1);
-
-      bitPattern_ = newBitPattern;
-      baseBufferCount_ = 0;
+      propagateFullBaseBuffer(newN);
     } else {
       //bitPattern unchanged
       baseBufferCount_ = newBBCount;
@@ -255,6 +228,114 @@ final class HeapUpdateDoublesSketch extends UpdateDoublesSketch {
     n_ = newN;
   }
 
+  /**
+   * Updates this sketch with a range of the given array of double data items. The min and max
+   * values are computed once for the whole range and the base buffer is filled with bulk copies,
+   * so propagation runs only when the base buffer is full.
+   *
+   * @param dataItems an array of items from a stream of items.  NaNs are ignored.
+   * @param offset the index of the first item to use
+   * @param length the number of items to use
+   */
+  @Override
+  public void update(final double[] dataItems, final int offset, final int length) {
+    checkBounds(offset, length, dataItems.length);
+    double batchMin = Double.NaN;
+    double batchMax = Double.NaN;
+    int numNaNs = 0;
+    for (int i = offset; i < (offset + length); i++) {
+      final double dataItem = dataItems[i];
+      if (Double.isNaN(dataItem)) {
+        numNaNs++;
+      } else if (Double.isNaN(batchMin)) {
+        batchMin = dataItem;
+        batchMax = dataItem;
+      } else {
+        if (dataItem < batchMin) { batchMin = dataItem; }
+        if (dataItem > batchMax) { batchMax = dataItem; }
+      }
+    }
+    if (numNaNs == length) { return; }
+    double[] src = dataItems;
+    int srcPos = offset;
+    int remaining = length;
+    if (numNaNs > 0) {
+      src = new double[length - numNaNs];
+      int j = 0;
+      for (int i = offset; i < (offset + length); i++) {
+        if (!Double.isNaN(dataItems[i])) { src[j++] = dataItems[i]; }
+      }
+      srcPos = 0;
+      remaining = j;
+    }
+
+    if (n_ == 0) {
+      putMaxValue(batchMax);
+      putMinValue(batchMin);
+    } else {
+      if (batchMax > getMaxValue()) { putMaxValue(batchMax); }
+      if (batchMin < getMinValue()) { putMinValue(batchMin); }
+    }
+
+    final int fullBBCount = k_ << 1;
+    while (remaining > 0) {
+      final int curBBCount = baseBufferCount_;
+      final int take = Math.min(fullBBCount - curBBCount, remaining);
+      final int newBBCount = curBBCount + take;
+      final long newN = n_ + take;
+      while (newBBCount > combinedBuffer_.length) {
+        growBaseBuffer(); //only changes combinedBuffer when it is only a base buffer
+      }
+      System.arraycopy(src, srcPos, combinedBuffer_, curBBCount, take);
+      if (newBBCount == fullBBCount) {
+        propagateFullBaseBuffer(newN);
+      } else {
+        baseBufferCount_ = newBBCount;
+      }
+      n_ = newN;
+      srcPos += take;
+      remaining -= take;
+    }
+  }
+
+  /**
+   * Sorts the full base buffer and propagates it into the levels above it.
+   * @param newN the value of n including the items in the full base buffer
+   */
+  private void propagateFullBaseBuffer(final long newN) {
+    final int combBufItemCap = combinedBuffer_.length;
+
+    // make sure there will be enough space (levels) for the propagation
+    final int spaceNeeded = DoublesUpdateImpl.getRequiredItemCapacity(k_, newN);
+
+    if (spaceNeeded > combBufItemCap) {
+      // copies base buffer plus old levels, adds space for new level
+      growCombinedBuffer(combBufItemCap, spaceNeeded);
+    }
+
+    // sort only the (full) base buffer via accessor which modifies the underlying base buffer,
+    // then use as one of the inputs to propagate-carry
+    final DoublesSketchAccessor bbAccessor = DoublesSketchAccessor.wrap(this, true);
+    bbAccessor.sort();
+
+    final long newBitPattern = DoublesUpdateImpl.inPlacePropagateCarry(
+            0, // starting level
+            null,
+            bbAccessor,
+            true,
+            k_,
+            DoublesSketchAccessor.wrap(this, true),
+            bitPattern_,
+            random_
+    );
+
+    assert newBitPattern == computeBitPattern(k_, newN); // internal consistency check
+    assert newBitPattern == (bitPattern_ + 1);
+
+    bitPattern_ = newBitPattern;
+    baseBufferCount_ = 0;
+  }
+
   /**
    * Loads the Combined Buffer, min and max from the given source Memory.
    * The resulting Combined Buffer is always in non-compact form and must be pre-allocated.
@@ -168,7 +168,8 @@ final class ItemsMergeImpl {
             sourceLevels, (2 + srcLvl) * sourceK,
             downBuf, 0,
             targetK,
-            downFactor);
+            downFactor,
+            tgt);
         ItemsUpdateImpl.inPlacePropagateCarry(
             srcLvl + lgDownFactor,
             (T[]) downBuf, 0,
@@ -205,8 +206,9 @@ final class ItemsMergeImpl {
       final T[] bufSrc, final int startSrc, // input
       final T[] bufC, final int startC, // output
       final int kC, // number of items that should be in the output
-      final int stride) {
-    final int randomOffset = ItemsSketch.rand.nextInt(stride);
+      final int stride,
+      final ItemsSketch<?> tgt) {
+    final int randomOffset = tgt.randomInt(stride);
     final int limC = startC + kC;
     for (int a = startSrc + randomOffset, c = startC; c < limC; a += stride, c++ ) {
       bufC[c] = bufSrc[a];
@@ -35,6 +35,7 @@ import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 import org.apache.datasketches.ArrayOfItemsSerDe;
 import org.apache.datasketches.QuantilesHelper;
@@ -118,12 +119,19 @@ public final class ItemsSketch<T> {
   Object[] combinedBuffer_;
 
   /**
-   * Setting the seed makes the results of the sketch deterministic if the input values are
-   * received in exactly the same order. This is only useful when performing test comparisons,
-   * otherwise is not recommended.
+   * The source of randomness shared by the sketches that were not given their own. Seeding it
+   * still makes the results of those sketches reproducible, as before. A sketch given its own
+   * source of randomness does not use it.
+   * @deprecated give each sketch its own source of randomness with
+   * {@link #getInstance(int, Comparator, SplittableRandom)} instead. This shared instance will be
+   * removed.
    */
+  @Deprecated
   public static final Random rand = new Random();
 
+  // source of randomness for the compactions of this sketch, null means the shared rand
+  SplittableRandom random_;
+
   private ItemsSketch(final int k, final Comparator<? super T> comparator) {
     Util.checkK(k);
     k_ = k;
@@ -149,8 +157,26 @@ public final class ItemsSketch<T> {
    * @return a GenericQuantileSketch
    */
   public static <T> ItemsSketch<T> getInstance(final int k, final Comparator<? super T> comparator) {
+    return getInstance(k, comparator, null);
+  }
+
+  /**
+   * Obtains a new instance of an ItemsSketch that uses the given source of randomness for its
+   * compactions. Given a seeded SplittableRandom the results of the sketch are reproducible
+   * when the input values are received in exactly the same order.
+   * @param <T> type of item
+   * @param k Parameter that controls space usage of sketch and accuracy of estimates.
+   * Must be greater than 2 and less than 65536 and a power of 2.
+   * @param comparator to compare items
+   * @param random the source of randomness owned by this sketch, or null to use the shared
+   * {@link #rand}
+   * @return a GenericQuantileSketch
+   */
+  public static <T> ItemsSketch<T> getInstance(final int k, final Comparator<? super T> comparator,
+      final SplittableRandom random) {
     final ItemsSketch<T> qs = new ItemsSketch<>(k, comparator);
     final int bufAlloc = 2 * Math.min(DoublesSketch.MIN_K, k); //the min is important
+    qs.random_ = random;
     qs.n_ = 0;
     qs.combinedBufferItemCapacity_ = bufAlloc;
     qs.combinedBuffer_ = new Object[bufAlloc];
@@ -225,7 +251,8 @@ public final class ItemsSketch<T> {
    * @return a copy of the given sketch
    */
   static <T> ItemsSketch<T> copy(final ItemsSketch<T> sketch) {
-    final ItemsSketch<T> qsCopy = ItemsSketch.getInstance(sketch.k_, sketch.comparator_);
+    final ItemsSketch<T> qsCopy = ItemsSketch.getInstance(sketch.k_, sketch.comparator_,
+        sketch.random_ == null ? null : sketch.random_.split());
     qsCopy.n_ = sketch.n_;
     qsCopy.minValue_ = sketch.getMinValue();
     qsCopy.maxValue_ = sketch.getMaxValue();
@@ -660,7 +687,8 @@ public final class ItemsSketch<T> {
    * @return the new sketch.
    */
   public ItemsSketch<T> downSample(final int newK) {
-    final ItemsSketch<T> newSketch = ItemsSketch.getInstance(newK, comparator_);
+    final ItemsSketch<T> newSketch = ItemsSketch.getInstance(newK, comparator_,
+        random_ == null ? null : random_.split());
     ItemsMergeImpl.downSamplingMergeInto(this, newSketch);
     return newSketch;
   }
@@ -735,6 +763,20 @@ public final class ItemsSketch<T> {
     return comparator_;
   }
 
+  /**
+   * Returns a random int for a compaction of this sketch. A sketch without its own source of
+   * randomness draws from the shared {@link #rand} exactly as it did before per-sketch sources
+   * existed, so that seeding rand reproduces the earlier results.
+   * @param bound the upper bound (exclusive), must be positive
+   * @return a random int between 0 (inclusive) and the given bound (exclusive)
+   */
+  @SuppressWarnings("deprecation")
+  int randomInt(final int bound) {
+    if (random_ != null) { return random_.nextInt(bound); }
+    if (bound == 2) { return rand.nextBoolean() ? 1 : 0; }
+    return rand.nextInt(bound);
+  }
+
   /**
    * Loads the Combined Buffer, min and max from the given items array.
    * The Combined Buffer is always in non-compact form and must be pre-allocated.
@@ -19,6 +19,11 @@
 
 package org.apache.datasketches.quantiles;
 
+import static org.apache.datasketches.Util.checkBounds;
+
+import java.nio.DoubleBuffer;
+import java.util.SplittableRandom;
+
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
 
@@ -26,6 +31,12 @@ import org.apache.datasketches.memory.WritableMemory;
  * @author Jon Malkin
  */
 public abstract class UpdateDoublesSketch extends DoublesSketch {
+  // number of items copied at a time from a buffer that is not backed by an array
+  static final int BULK_UPDATE_CHUNK = 1024;
+
+  // source of randomness for the compactions of this sketch, null means ThreadLocalRandom
+  SplittableRandom random_;
+
   UpdateDoublesSketch(final int k) {
     super(k);
   }
@@ -47,6 +58,44 @@ public abstract class UpdateDoublesSketch extends DoublesSketch {
    */
   public abstract void update(double dataItem);
 
+  /**
+   * Updates this sketch with a range of the given array of double data items. This is equivalent
+   * to calling {@link #update(double)} for each item in the range.
+   *
+   * @param dataItems an array of items from a stream of items.  NaNs are ignored.
+   * @param offset the index of the first item to use
+   * @param length the number of items to use
+   */
+  public void update(final double[] dataItems, final int offset, final int length) {
+    checkBounds(offset, length, dataItems.length);
+    for (int i = offset; i < (offset + length); i++) {
+      update(dataItems[i]);
+    }
+  }
+
+  /**
+   * Updates this sketch with the remaining items of the given buffer, from its position to its
+   * limit. On return the position of the buffer equals its limit.
+   * This is equivalent to calling {@link #update(double)} for each item.
+   *
+   * @param dataItems a buffer of items from a stream of items.  NaNs are ignored.
+   * @see #update(double[], int, int)
+   */
+  public void update(final DoubleBuffer dataItems) {
+    final int length = dataItems.remaining();
+    if (dataItems.hasArray()) {
+      update(dataItems.array(), dataItems.arrayOffset() + dataItems.position(), length);
+      dataItems.position(dataItems.limit());
+      return;
+    }
+    final double[] chunk = new double[Math.min(length, BULK_UPDATE_CHUNK)];
+    while (dataItems.hasRemaining()) {
+      final int len = Math.min(dataItems.remaining(), chunk.length);
+      dataItems.get(chunk, 0, len);
+      update(chunk, 0, len);
+    }
+  }
+
   /**
    * Resets this sketch to the empty state, but retains the original value of k.
    */
@@ -37,6 +37,9 @@ import static org.apache.datasketches.quantiles.PreambleUtil.ORDERED_FLAG_MASK;
 import static org.apache.datasketches.quantiles.PreambleUtil.READ_ONLY_FLAG_MASK;
 import static org.apache.datasketches.quantiles.PreambleUtil.extractFlags;
 
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
@@ -315,6 +318,18 @@ final class Util {
     }
   }
 
+  /**
+   * Returns a random int between 0 (inclusive) and the given bound (exclusive), used to choose
+   * which items survive a compaction or down-sampling.
+   * @param random the random source of the sketch being compacted. If null, ThreadLocalRandom is
+   * used, which avoids contention between threads compacting different sketches.
+   * @param bound the upper bound (exclusive), must be positive
+   * @return a random int between 0 (inclusive) and the given bound (exclusive)
+   */
+  static int randomInt(final SplittableRandom random, final int bound) {
+    return random == null ? ThreadLocalRandom.current().nextInt(bound) : random.nextInt(bound);
+  }
+
   /**
    * Checks that the given fractional rank: <i>0 &le; frank &le; 1.0</i>.
    * @param frank the given fractional rank.
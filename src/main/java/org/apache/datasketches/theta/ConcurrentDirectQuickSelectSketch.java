@@ -21,9 +21,10 @@ package org.apache.datasketches.theta;
 
 import static org.apache.datasketches.theta.PreambleUtil.THETA_LONG;
 
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.datasketches.ResizeFactor;
 import org.apache.datasketches.memory.WritableMemory;
@@ -41,8 +42,8 @@ import org.apache.datasketches.memory.WritableMemory;
 class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
     implements ConcurrentSharedThetaSketch {
 
-  // The propagation thread
-  private ExecutorService executorService_;
+  // Runs the background propagation tasks of this sketch
+  private final ConcurrentPropagationService propagationService_;
 
   // A flag to coordinate between several eager propagation threads
   private final AtomicBoolean sharedPropagationInProgress_;
@@ -57,6 +58,10 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
   //  propagation mode
   private final long exactLimit_;
 
+  // The number of times, and the total nanoseconds, that writers could not hand off a full buffer
+  private final LongAdder writerStallCount_ = new LongAdder();
+  private final LongAdder writerStallNanos_ = new LongAdder();
+
   // An epoch defines an interval between two resets. A propagation invoked at epoch i cannot
   // affect the sketch at epoch j > i.
   private volatile long epoch_;
@@ -68,9 +73,10 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
    * @param seed       <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
    * @param maxConcurrencyError the max error value including error induced by concurrency.
    * @param dstMem     the given Memory object destination. It cannot be null.
+   * @param executor   the Executor that runs the background propagation of this sketch.
    */
   ConcurrentDirectQuickSelectSketch(final int lgNomLongs, final long seed,
-      final double maxConcurrencyError, final WritableMemory dstMem) {
+      final double maxConcurrencyError, final WritableMemory dstMem, final Executor executor) {
     super(lgNomLongs, seed, 1.0F, //p
       ResizeFactor.X1, //rf,
       null, dstMem, false); //unionGadget
@@ -81,11 +87,11 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
-    initBgPropagationService();
+    propagationService_ = new ConcurrentPropagationService(executor);
   }
 
   ConcurrentDirectQuickSelectSketch(final UpdateSketch sketch, final long seed,
-      final double maxConcurrencyError, final WritableMemory dstMem) {
+      final double maxConcurrencyError, final WritableMemory dstMem, final Executor executor) {
     super(sketch.getLgNomLongs(), seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         null, //mem Req Svr
@@ -96,7 +102,7 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
-    initBgPropagationService();
+    propagationService_ = new ConcurrentPropagationService(executor);
     for (final long hashIn : sketch.getCache()) {
       propagate(hashIn);
     }
@@ -186,19 +192,33 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
 
   @Override
   public void awaitBgPropagationTermination() {
-    try {
-      executorService_.shutdown();
-      while (!executorService_.awaitTermination(1, TimeUnit.MILLISECONDS)) {
-        Thread.sleep(1);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        propagationService_.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        break;
+      } catch (final InterruptedException e) {
+        interrupted = true;
       }
-    } catch (final InterruptedException e) {
-      e.printStackTrace();
     }
+    if (interrupted) { Thread.currentThread().interrupt(); }
+  }
+
+  @Override
+  public void close() {
+    propagationService_.close();
+    awaitBgPropagationTermination();
   }
 
   @Override
-  public void initBgPropagationService() {
-    executorService_ = ConcurrentPropagationService.getExecutorService(Thread.currentThread().getId());
+  public boolean isClosed() {
+    return propagationService_.isClosed();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    return propagationService_.awaitQuiescence(timeout, unit);
   }
 
   @Override
@@ -222,7 +242,7 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
     // otherwise, be nonblocking, let background thread do the work
     final ConcurrentBackgroundThetaPropagation job = new ConcurrentBackgroundThetaPropagation(
         this, localPropagationInProgress, sketchIn, singleHash, epoch);
-    executorService_.execute(job);
+    propagationService_.execute(job);
     return true;
   }
 
@@ -241,6 +261,22 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
     volatileThetaLong_ = getThetaLong();
   }
 
+  @Override
+  public void recordWriterStall(final long nanos) {
+    writerStallCount_.increment();
+    writerStallNanos_.add(nanos);
+  }
+
+  @Override
+  public long getWriterStallCount() {
+    return writerStallCount_.sum();
+  }
+
+  @Override
+  public long getWriterStallNanos() {
+    return writerStallNanos_.sum();
+  }
+
   @Override
   public boolean validateEpoch(final long epoch) {
     return epoch_ == epoch;
@@ -256,13 +292,11 @@ class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
   private void advanceEpoch() {
     awaitBgPropagationTermination();
     startEagerPropagation();
-    ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
     //noinspection NonAtomicOperationOnVolatileField
     // this increment of a volatile field is done within the scope of the propagation
     // synchronization and hence is done by a single thread.
     epoch_++;
     endPropagation(null, true);
-    initBgPropagationService();
   }
 
 }
@@ -19,9 +19,10 @@
 
 package org.apache.datasketches.theta;
 
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.datasketches.ResizeFactor;
 
@@ -38,8 +39,8 @@ import org.apache.datasketches.ResizeFactor;
 class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
     implements ConcurrentSharedThetaSketch {
 
-  // The propagation thread
-  private volatile ExecutorService executorService_;
+  // Runs the background propagation tasks of this sketch
+  private final ConcurrentPropagationService propagationService_;
 
   //A flag to coordinate between several eager propagation threads
   private final AtomicBoolean sharedPropagationInProgress_;
@@ -54,6 +55,10 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
   //  propagation mode
   private final long exactLimit_;
 
+  // The number of times, and the total nanoseconds, that writers could not hand off a full buffer
+  private final LongAdder writerStallCount_ = new LongAdder();
+  private final LongAdder writerStallNanos_ = new LongAdder();
+
   // An epoch defines an interval between two resets. A propagation invoked at epoch i cannot
   // affect the sketch at epoch j > i.
   private volatile long epoch_;
@@ -64,10 +69,11 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
    * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLogs">See lgNomLongs</a>.
    * @param seed       <a href="{@docRoot}/resources/dictionary.html#seed">See seed</a>
    * @param maxConcurrencyError the max error value including error induced by concurrency
+   * @param executor   the Executor that runs the background propagation of this sketch.
    *
    */
   ConcurrentHeapQuickSelectSketch(final int lgNomLongs, final long seed,
-      final double maxConcurrencyError) {
+      final double maxConcurrencyError, final Executor executor) {
     super(lgNomLongs, seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         false); //unionGadget
@@ -78,11 +84,11 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
-    initBgPropagationService();
+    propagationService_ = new ConcurrentPropagationService(executor);
   }
 
   ConcurrentHeapQuickSelectSketch(final UpdateSketch sketch, final long seed,
-      final double maxConcurrencyError) {
+      final double maxConcurrencyError, final Executor executor) {
     super(sketch.getLgNomLongs(), seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         false); //unionGadget
@@ -91,7 +97,7 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
-    initBgPropagationService();
+    propagationService_ = new ConcurrentPropagationService(executor);
     for (final long hashIn : sketch.getCache()) {
       propagate(hashIn);
     }
@@ -181,19 +187,33 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
 
   @Override
   public void awaitBgPropagationTermination() {
-    try {
-      executorService_.shutdown();
-      while (!executorService_.awaitTermination(1, TimeUnit.MILLISECONDS)) {
-        Thread.sleep(1);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        propagationService_.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        break;
+      } catch (final InterruptedException e) {
+        interrupted = true;
       }
-    } catch (final InterruptedException e) {
-      e.printStackTrace();
     }
+    if (interrupted) { Thread.currentThread().interrupt(); }
+  }
+
+  @Override
+  public void close() {
+    propagationService_.close();
+    awaitBgPropagationTermination();
   }
 
   @Override
-  public void initBgPropagationService() {
-    executorService_ = ConcurrentPropagationService.getExecutorService(Thread.currentThread().getId());
+  public boolean isClosed() {
+    return propagationService_.isClosed();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    return propagationService_.awaitQuiescence(timeout, unit);
   }
 
   @Override
@@ -217,7 +237,7 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
     // otherwise, be nonblocking, let background thread do the work
     final ConcurrentBackgroundThetaPropagation job = new ConcurrentBackgroundThetaPropagation(
         this, localPropagationInProgress, sketchIn, singleHash, epoch);
-    executorService_.execute(job);
+    propagationService_.execute(job);
     return true;
   }
 
@@ -236,6 +256,22 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
     volatileThetaLong_ = getThetaLong();
   }
 
+  @Override
+  public void recordWriterStall(final long nanos) {
+    writerStallCount_.increment();
+    writerStallNanos_.add(nanos);
+  }
+
+  @Override
+  public long getWriterStallCount() {
+    return writerStallCount_.sum();
+  }
+
+  @Override
+  public long getWriterStallNanos() {
+    return writerStallNanos_.sum();
+  }
+
   @Override
   public boolean validateEpoch(final long epoch) {
     return epoch_ == epoch;
@@ -251,14 +287,12 @@ class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
   private void advanceEpoch() {
     awaitBgPropagationTermination();
     startEagerPropagation();
-    ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
     //noinspection NonAtomicOperationOnVolatileField
     // this increment of a volatile field is done within the scope of the propagation
     // synchronization and hence is done by a single thread
     // Ignore a FindBugs warning
     epoch_++;
     endPropagation(null, true);
-    initBgPropagationService();
   }
 
 }
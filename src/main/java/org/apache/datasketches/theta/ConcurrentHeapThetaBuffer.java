@@ -24,6 +24,7 @@ import static org.apache.datasketches.theta.UpdateReturnState.ConcurrentPropagat
 import static org.apache.datasketches.theta.UpdateReturnState.RejectedOverTheta;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.datasketches.HashOperations;
 import org.apache.datasketches.ResizeFactor;
@@ -41,6 +42,12 @@ import org.apache.datasketches.ResizeFactor;
  * Propagation is done either synchronously by the updating thread, or asynchronously by a
  * background propagation thread.
  *
+ * <p>A full buffer is handed off as a compact sketch and the buffer is reset, so the writing
+ * thread continues while the compact sketch is propagated. Up to a configured number of these
+ * propagations may be in flight at once. Only when that many are still in flight does the writing
+ * thread wait, first spinning briefly, then yielding, then parking with an exponential backoff.
+ * Each such stall is counted by the shared sketch.</p>
+ *
  * <p>This is a buffer, not a sketch, and it extends the <i>HeapQuickSelectSketch</i>
  * in order to leverage some of the sketch machinery to make its work simple. However, if this
  * buffer receives a query, like <i>getEstimate()</i>, the correct answer does not come from the super
@@ -63,13 +70,27 @@ final class ConcurrentHeapThetaBuffer extends HeapQuickSelectSketch {
   // A flag to indicate if we expect the propagated data to be ordered
   private final boolean propagateOrderedCompact;
 
-  // Propagation flag is set to true while propagation is in progress (or pending).
-  // It is the synchronization primitive to coordinate the work with the propagation thread.
-  private final AtomicBoolean localPropagationInProgress;
+  // One propagation flag per propagation that may be in flight at once. A flag is set to true
+  // while its propagation is in progress (or pending). They are the synchronization primitives to
+  // coordinate the work with the propagation threads. Only this buffer's thread sets them.
+  private final AtomicBoolean[] localPropagationsInProgress;
+
+  // Backoff while waiting for a propagation flag: spin, then yield, then park for
+  // MIN_PARK_NANOS doubling up to MAX_PARK_NANOS.
+  static final int SPIN_TRIES = 64;
+  static final int YIELD_TRIES = 16;
+  static final long MIN_PARK_NANOS = 1_000L;
+  static final long MAX_PARK_NANOS = 1_000_000L;
 
   ConcurrentHeapThetaBuffer(final int lgNomLongs, final long seed,
       final ConcurrentSharedThetaSketch shared, final boolean propagateOrderedCompact,
       final int maxNumLocalThreads) {
+    this(lgNomLongs, seed, shared, propagateOrderedCompact, maxNumLocalThreads, 1);
+  }
+
+  ConcurrentHeapThetaBuffer(final int lgNomLongs, final long seed,
+      final ConcurrentSharedThetaSketch shared, final boolean propagateOrderedCompact,
+      final int maxNumLocalThreads, final int maxPropagationsInFlight) {
     super(computeLogBufferSize(lgNomLongs, shared.getExactLimit(), maxNumLocalThreads),
       seed, 1.0F, //p
       ResizeFactor.X1, //rf
@@ -78,7 +99,10 @@ final class ConcurrentHeapThetaBuffer extends HeapQuickSelectSketch {
     this.shared = shared;
     isExactMode = true;
     this.propagateOrderedCompact = propagateOrderedCompact;
-    localPropagationInProgress = new AtomicBoolean(false);
+    localPropagationsInProgress = new AtomicBoolean[maxPropagationsInFlight];
+    for (int i = 0; i < maxPropagationsInFlight; i++) {
+      localPropagationsInProgress[i] = new AtomicBoolean(false);
+    }
   }
 
   private static int computeLogBufferSize(final int lgNomLongs, final long exactSize,
@@ -94,10 +118,7 @@ final class ConcurrentHeapThetaBuffer extends HeapQuickSelectSketch {
    * @param hash to be propagated
    */
   private boolean propagateToSharedSketch(final long hash) {
-    //noinspection StatementWithEmptyBody
-    while (localPropagationInProgress.get()) {
-    } //busy wait until previous propagation completed
-    localPropagationInProgress.set(true);
+    final AtomicBoolean localPropagationInProgress = acquirePropagationFlag();
     final boolean res = shared.propagate(localPropagationInProgress, null, hash);
     //in this case the parent empty_ and curCount_ were not touched
     thetaLong_ = shared.getVolatileTheta();
@@ -108,18 +129,50 @@ final class ConcurrentHeapThetaBuffer extends HeapQuickSelectSketch {
    * Propagates the content of the buffer as a sketch to the shared sketch
    */
   private void propagateToSharedSketch() {
-    //noinspection StatementWithEmptyBody
-    while (localPropagationInProgress.get()) {
-    } //busy wait until previous propagation completed
-
+    final AtomicBoolean localPropagationInProgress = acquirePropagationFlag();
     final CompactSketch compactSketch = compact(propagateOrderedCompact, null);
-    localPropagationInProgress.set(true);
     shared.propagate(localPropagationInProgress, compactSketch,
         ConcurrentSharedThetaSketch.NOT_SINGLE_HASH);
     super.reset();
     thetaLong_ = shared.getVolatileTheta();
   }
 
+  /**
+   * Returns a propagation flag whose previous propagation has completed, after setting it.
+   * If all of them are still in progress this waits, with backoff, and records the stall.
+   * @return a propagation flag that is now set
+   */
+  private AtomicBoolean acquirePropagationFlag() {
+    AtomicBoolean flag = freePropagationFlag();
+    if (flag == null) {
+      final long startNanos = System.nanoTime();
+      int tries = 0;
+      while ((flag = freePropagationFlag()) == null) {
+        backoff(tries++);
+      }
+      shared.recordWriterStall(System.nanoTime() - startNanos);
+    }
+    flag.set(true);
+    return flag;
+  }
+
+  private AtomicBoolean freePropagationFlag() {
+    for (final AtomicBoolean flag : localPropagationsInProgress) {
+      if (!flag.get()) { return flag; }
+    }
+    return null;
+  }
+
+  static void backoff(final int tries) {
+    if (tries < SPIN_TRIES) { return; }
+    if (tries < (SPIN_TRIES + YIELD_TRIES)) {
+      Thread.yield();
+      return;
+    }
+    final int shift = Math.min(tries - SPIN_TRIES - YIELD_TRIES, 10);
+    LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << shift, MAX_PARK_NANOS));
+  }
+
   //Public Sketch overrides proxies to shared concurrent sketch
 
   @Override
@@ -180,7 +233,9 @@ final class ConcurrentHeapThetaBuffer extends HeapQuickSelectSketch {
   public void reset() {
     super.reset();
     isExactMode = true;
-    localPropagationInProgress.set(false);
+    for (final AtomicBoolean flag : localPropagationsInProgress) {
+      flag.set(false);
+    }
   }
 
   //Restricted UpdateSketch overrides
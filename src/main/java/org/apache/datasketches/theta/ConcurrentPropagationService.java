@@ -19,51 +19,133 @@
 
 package org.apache.datasketches.theta;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Pool of threads to serve <i>all</i> propagation tasks in the system.
+ * Runs the background propagation tasks of one concurrent shared sketch on an underlying
+ * Executor. The tasks of one sketch run one at a time and in order, since background propagation
+ * into the shared sketch is not otherwise synchronized. At most {@link #MAX_TASKS_PER_RUN} tasks
+ * run before the sketch yields its thread of the underlying Executor, so a hot sketch cannot
+ * starve the other sketches that share the Executor.
+ *
+ * <p>Unless an Executor is given to the builder, all sketches with the same number of pool
+ * threads share a default work-stealing pool of daemon threads.</p>
+ *
+ * <p>Once closed, or if the underlying Executor rejects a task, the tasks run on the thread that
+ * hands them off.</p>
  *
  * @author eshcar
  */
-final class ConcurrentPropagationService {
+final class ConcurrentPropagationService implements Executor {
 
-  static int NUM_POOL_THREADS = 3; // Default: 3 threads
-  private static volatile ConcurrentPropagationService instance = null; // Singleton
-  private static ExecutorService[] propagationExecutorService = null;
+  static final int NUM_POOL_THREADS = 3; // Default: 3 threads
+  static final int MAX_TASKS_PER_RUN = 16;
+  // the default pools by parallelism
+  private static final ConcurrentHashMap<Integer, ExecutorService> defaultExecutors =
+      new ConcurrentHashMap<>();
 
+  private final Executor executor;
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  // true while a run of this sketch's tasks is scheduled or running
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  // the number of tasks handed off that have not yet completed
+  private final AtomicLong pending = new AtomicLong();
+  private volatile boolean closed = false;
 
-  private ConcurrentPropagationService() {
-    propagationExecutorService = new ExecutorService[NUM_POOL_THREADS];
+  ConcurrentPropagationService(final Executor executor) {
+    this.executor = executor;
   }
 
-  //Factory: Get the singleton
-  private static ConcurrentPropagationService getInstance() {
-    if (instance == null) {
-      synchronized (ConcurrentPropagationService.class) {
-        if (instance == null) {
-          instance = new ConcurrentPropagationService();
-        }
-      }
+  /**
+   * Returns the default work-stealing pool with the given parallelism. The pool is shared by all
+   * sketches built with the same number of pool threads and its threads are daemon threads that
+   * exit when idle.
+   * @param numPoolThreads the parallelism of the pool
+   * @return the default work-stealing pool
+   */
+  static ExecutorService getDefaultExecutor(final int numPoolThreads) {
+    return defaultExecutors.computeIfAbsent(numPoolThreads, Executors::newWorkStealingPool);
+  }
+
+  @Override
+  public void execute(final Runnable task) {
+    pending.incrementAndGet();
+    tasks.add(task);
+    schedule();
+  }
+
+  /**
+   * Stops handing tasks to the underlying Executor. Tasks already handed to it still run there.
+   */
+  void close() {
+    closed = true;
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Waits until all tasks handed off so far have completed.
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return true if all tasks completed, false if the timeout elapsed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean awaitQuiescence(final long timeout, final TimeUnit unit) throws InterruptedException {
+    final long startNanos = System.nanoTime();
+    final long timeoutNanos = unit.toNanos(timeout);
+    int tries = 0;
+    while (pending.get() != 0) {
+      if (Thread.interrupted()) { throw new InterruptedException(); }
+      if ((System.nanoTime() - startNanos) >= timeoutNanos) { return false; }
+      ConcurrentHeapThetaBuffer.backoff(tries++);
     }
-    return instance;
+    return true;
   }
 
-  public static ExecutorService getExecutorService(final long id) {
-    return getInstance().initExecutorService((int) id % NUM_POOL_THREADS);
+  private void schedule() {
+    while (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+      if (!closed) {
+        try {
+          executor.execute(this::runTasks);
+          return;
+        } catch (final RejectedExecutionException e) {
+          // fall through and run the tasks on this thread
+        }
+      }
+      runTasks(Integer.MAX_VALUE);
+    }
   }
 
-  @SuppressWarnings("static-access")
-  public static ExecutorService resetExecutorService(final long id) {
-    return getInstance().propagationExecutorService[(int) id % NUM_POOL_THREADS] = null;
+  private void runTasks() {
+    try {
+      runTasks(MAX_TASKS_PER_RUN);
+    } finally {
+      schedule();
+    }
   }
 
-  @SuppressWarnings("static-method")
-  private ExecutorService initExecutorService(final int i) {
-    if (propagationExecutorService[i] == null) {
-      propagationExecutorService[i] = Executors.newSingleThreadExecutor();
+  private void runTasks(final int maxTasks) {
+    try {
+      Runnable task;
+      for (int i = 0; (i < maxTasks) && ((task = tasks.poll()) != null); i++) {
+        try {
+          task.run();
+        } finally {
+          pending.decrementAndGet();
+        }
+      }
+    } finally {
+      scheduled.set(false);
     }
-    return propagationExecutorService[i];
   }
 }
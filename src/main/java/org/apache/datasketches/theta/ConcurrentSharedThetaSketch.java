@@ -30,7 +30,7 @@ import org.apache.datasketches.memory.WritableMemory;
  *
  * @author eshcar
  */
-interface ConcurrentSharedThetaSketch {
+interface ConcurrentSharedThetaSketch extends ConcurrentThetaSketch {
 
   long NOT_SINGLE_HASH = -1L;
   double MIN_ERROR = 0.0000001;
@@ -73,11 +73,6 @@ interface ConcurrentSharedThetaSketch {
    */
   void awaitBgPropagationTermination();
 
-  /**
-   * Init background (lazy) propagation service
-   */
-  void initBgPropagationService();
-
   /**
    * (Eager) Propagates the given sketch or hash value into this sketch
    * @param localPropagationInProgress the flag to be updated when propagation is done
@@ -106,6 +101,13 @@ interface ConcurrentSharedThetaSketch {
    */
   void updateVolatileTheta();
 
+  /**
+   * Records that a writer thread stalled for the given time, because it could not hand off a
+   * full local buffer
+   * @param nanos the time the writer thread stalled, in nanoseconds
+   */
+  void recordWriterStall(long nanos);
+
   /**
    * Validates the shared sketch is in the context of the given epoch
    *
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The public view of a concurrent shared theta sketch, as returned by
+ * {@link UpdateSketchBuilder#buildShared()} and its variants. The shared sketch is returned as an
+ * UpdateSketch and can be cast to this interface to reach the concurrency specific methods.
+ *
+ * <p>Background propagation runs on the Executor given by
+ * {@link UpdateSketchBuilder#setPropagationExecutor(java.util.concurrent.Executor)}, or else on a
+ * default work-stealing pool of daemon threads. Closing the sketch detaches it from that Executor.
+ * </p>
+ */
+public interface ConcurrentThetaSketch extends AutoCloseable {
+
+  /**
+   * Waits until all propagation handed off to this sketch so far has completed, or the timeout
+   * elapses, whichever happens first. The Executor itself is not affected.
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return true if all propagation completed, false if the timeout elapsed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+  /**
+   * Stops handing propagation to the Executor and waits for the propagation already handed to it
+   * to complete. The sketch remains usable: local buffers that fill up afterwards propagate on
+   * their own threads. The Executor is not shut down, since it may be shared.
+   */
+  @Override
+  void close();
+
+  /**
+   * Returns true if this sketch has been closed.
+   * @return true if this sketch has been closed
+   */
+  boolean isClosed();
+
+  /**
+   * Returns the number of times, since this shared sketch was built, that a writer thread had a
+   * full local buffer but could not hand it off, because the maximum number of its earlier buffers
+   * were still being propagated into this sketch. See
+   * {@link UpdateSketchBuilder#setMaxLocalPropagationsInFlight(int)}.
+   * @return the number of times a writer thread stalled
+   */
+  long getWriterStallCount();
+
+  /**
+   * Returns the total time, in nanoseconds, that writer threads spent stalled as counted by
+   * {@link #getWriterStallCount()}.
+   * @return the total time writer threads spent stalled, in nanoseconds
+   */
+  long getWriterStallNanos();
+
+}
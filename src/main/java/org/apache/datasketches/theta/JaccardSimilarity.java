@@ -24,10 +24,19 @@ import static java.lang.Math.min;
 import static org.apache.datasketches.BoundsOnRatiosInThetaSketchedSets.getEstimateOfBoverA;
 import static org.apache.datasketches.BoundsOnRatiosInThetaSketchedSets.getLowerBoundForBoverA;
 import static org.apache.datasketches.BoundsOnRatiosInThetaSketchedSets.getUpperBoundForBoverA;
+import static org.apache.datasketches.Util.LONG_MAX_VALUE_AS_DOUBLE;
 import static org.apache.datasketches.Util.MAX_LG_NOM_LONGS;
 import static org.apache.datasketches.Util.MIN_LG_NOM_LONGS;
 import static org.apache.datasketches.Util.ceilingPowerOf2;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.datasketches.BoundsOnRatiosInSampledSets;
+import org.apache.datasketches.Util;
+import org.apache.datasketches.memory.Memory;
+
 /**
  * Jaccard similarity of two Theta Sketches.
  *
@@ -36,6 +45,8 @@ import static org.apache.datasketches.Util.ceilingPowerOf2;
 public final class JaccardSimilarity {
   private static final double[] ZEROS = {0.0, 0.0, 0.0}; // LB, Estimate, UB
   private static final double[] ONES = {1.0, 1.0, 1.0};
+  //below this many pairs a block of rows of the matrix is not worth forking
+  static final int MIN_PARALLEL_PAIRS = 1 << 10;
 
   /**
    * Computes the Jaccard similarity index with upper and lower bounds. The Jaccard similarity index
@@ -58,6 +69,9 @@ public final class JaccardSimilarity {
     if (sketchA == sketchB) { return ONES.clone(); }
     if (sketchA.isEmpty() && sketchB.isEmpty()) { return ONES.clone(); }
     if (sketchA.isEmpty() || sketchB.isEmpty()) { return ZEROS.clone(); }
+    if (isOrderedCompact(sketchA) && isOrderedCompact(sketchB)) {
+      return jaccardOrdered((CompactSketch) sketchA, (CompactSketch) sketchB);
+    }
 
     final int countA = sketchA.getRetainedEntries(true);
     final int countB = sketchB.getRetainedEntries(true);
@@ -95,6 +109,160 @@ public final class JaccardSimilarity {
     return new double[] {lb, est, ub};
   }
 
+  /**
+   * Computes the Jaccard similarity index of two ordered compact sketches, on the heap or in
+   * Memory, with one merge of their sorted hash arrays and no allocation. The union and the
+   * intersection below the smaller theta are only counted, never built. The result is the same
+   * as that of the general path through a Union and an Intersection.
+   */
+  private static double[] jaccardOrdered(final CompactSketch sketchA, final CompactSketch sketchB) {
+    Util.checkSeedHashes(sketchA.getSeedHash(), sketchB.getSeedHash());
+    final long thetaLongA = sketchA.getThetaLong();
+    final long thetaLongB = sketchB.getThetaLong();
+    final long minThetaLong = min(thetaLongA, thetaLongB);
+    final int countA = sketchA.getRetainedEntries(true);
+    final int countB = sketchB.getRetainedEntries(true);
+    //a heap sketch is read from its cache, a direct sketch from its Memory
+    final Memory memA = sketchA.getMemory();
+    final Memory memB = sketchB.getMemory();
+    final long[] cacheA = (memA == null) ? sketchA.getCache() : null;
+    final long[] cacheB = (memB == null) ? sketchB.getCache() : null;
+    final long offsetA = (memA == null) ? 0 : (long) sketchA.getCurrentPreambleLongs() << 3;
+    final long offsetB = (memB == null) ? 0 : (long) sketchB.getCurrentPreambleLongs() << 3;
+
+    int countU = 0;
+    int countI = 0;
+    int i = 0;
+    int j = 0;
+    long hashA = (countA > 0) ? hashAt(cacheA, memA, offsetA, 0) : Long.MAX_VALUE;
+    long hashB = (countB > 0) ? hashAt(cacheB, memB, offsetB, 0) : Long.MAX_VALUE;
+    while ((hashA < minThetaLong) || (hashB < minThetaLong)) {
+      countU++;
+      if (hashA == hashB) {
+        countI++;
+        hashA = (++i < countA) ? hashAt(cacheA, memA, offsetA, i) : Long.MAX_VALUE;
+        hashB = (++j < countB) ? hashAt(cacheB, memB, offsetB, j) : Long.MAX_VALUE;
+      } else if (hashA < hashB) {
+        hashA = (++i < countA) ? hashAt(cacheA, memA, offsetA, i) : Long.MAX_VALUE;
+      } else {
+        hashB = (++j < countB) ? hashAt(cacheB, memB, offsetB, j) : Long.MAX_VALUE;
+      }
+    }
+
+    //Check for identical data
+    if ((countU == countA) && (countU == countB) && (thetaLongA == thetaLongB)) {
+      return ONES.clone();
+    }
+    //The bounds on the ratio of the intersection over the union, see
+    //BoundsOnRatiosInThetaSketchedSets
+    if (countU == 0) { return new double[] {0.0, 0.5, 1.0}; }
+    final double f = minThetaLong / LONG_MAX_VALUE_AS_DOUBLE;
+    final double lb = BoundsOnRatiosInSampledSets.getLowerBoundForBoverA(countU, countI, f);
+    final double est = (double) countI / countU;
+    final double ub = BoundsOnRatiosInSampledSets.getUpperBoundForBoverA(countU, countI, f);
+    return new double[] {lb, est, ub};
+  }
+
+  private static long hashAt(final long[] cache, final Memory mem, final long offset,
+      final int index) {
+    return (cache != null) ? cache[index] : mem.getLong(offset + ((long) index << 3));
+  }
+
+  private static boolean isOrderedCompact(final Sketch sketch) {
+    return sketch.isCompact() && sketch.isOrdered();
+  }
+
+  /**
+   * Computes the Jaccard similarity index estimate of every pair of the given sketches, using the
+   * common ForkJoinPool. See {@link #jaccardMatrix(List, ForkJoinPool)}.
+   * @param sketches the given sketches
+   * @return the symmetric matrix of the Jaccard similarity index estimates
+   */
+  public static double[][] jaccardMatrix(final List<Sketch> sketches) {
+    return jaccardMatrix(sketches, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Computes the Jaccard similarity index estimate of every pair of the given sketches.
+   * Entry [i][j] of the result is the estimate of {@link #jaccard(Sketch, Sketch)} for sketches
+   * i and j, so the matrix is symmetric and its diagonal is 1.0.
+   *
+   * <p>Any sketch that is not an ordered compact sketch is compacted and ordered once up front,
+   * so that every pair is computed by one merge of two sorted hash arrays. The rows of the
+   * matrix are divided among the tasks of the given pool.</p>
+   * @param sketches the given sketches, none of which may be null
+   * @param pool the ForkJoinPool to compute the pairs on, or null to compute them in the calling
+   * thread
+   * @return the symmetric matrix of the Jaccard similarity index estimates
+   */
+  public static double[][] jaccardMatrix(final List<Sketch> sketches, final ForkJoinPool pool) {
+    final int n = sketches.size();
+    final Sketch[] ordered = new Sketch[n];
+    for (int i = 0; i < n; i++) {
+      final Sketch sketch = sketches.get(i);
+      ordered[i] = isOrderedCompact(sketch) ? sketch : sketch.compact(true, null);
+    }
+    final double[][] matrix = new double[n][n];
+    final MatrixRowsTask task = new MatrixRowsTask(ordered, matrix, 0, n, pool != null);
+    if (pool == null) {
+      task.compute();
+    } else {
+      pool.invoke(task);
+    }
+    return matrix;
+  }
+
+  /**
+   * Fills the rows [lo, hi) of the upper triangle of the matrix and their mirror images.
+   */
+  private static final class MatrixRowsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Sketch[] sketches;
+    private final double[][] matrix;
+    private final int lo;
+    private final int hi;
+    private final boolean parallel;
+
+    MatrixRowsTask(final Sketch[] sketches, final double[][] matrix, final int lo, final int hi,
+        final boolean parallel) {
+      this.sketches = sketches;
+      this.matrix = matrix;
+      this.lo = lo;
+      this.hi = hi;
+      this.parallel = parallel;
+    }
+
+    @Override
+    protected void compute() {
+      final int n = sketches.length;
+      //row i has n - 1 - i pairs
+      final long pairs = ((long) (hi - lo) * ((2L * n) - lo - hi - 1)) / 2;
+      if (parallel && ((hi - lo) > 1) && (pairs >= MIN_PARALLEL_PAIRS)) {
+        //split the rows so that both halves have about the same number of pairs
+        final int mid = splitRows(n, lo, hi);
+        invokeAll(new MatrixRowsTask(sketches, matrix, lo, mid, true),
+            new MatrixRowsTask(sketches, matrix, mid, hi, true));
+        return;
+      }
+      for (int i = lo; i < hi; i++) {
+        matrix[i][i] = 1.0;
+        for (int j = i + 1; j < n; j++) {
+          final double est = jaccard(sketches[i], sketches[j])[1];
+          matrix[i][j] = est;
+          matrix[j][i] = est;
+        }
+      }
+    }
+
+    private static int splitRows(final int n, final int lo, final int hi) {
+      //the number of pairs of the rows [i, n) is (n - i)(n - i - 1) / 2
+      final double tailLo = n - lo;
+      final double tailHi = n - hi;
+      final double tailMid = Math.sqrt(((tailLo * tailLo) + (tailHi * tailHi)) / 2.0);
+      return min(max(n - (int) Math.round(tailMid), lo + 1), hi - 1);
+    }
+  }
+
   /**
    * Returns true if the two given sketches have exactly the same hash values and the same
    * theta values. Thus, they are equivalent.
@@ -27,6 +27,8 @@ import static org.apache.datasketches.Util.MIN_LG_NOM_LONGS;
 import static org.apache.datasketches.Util.TAB;
 import static org.apache.datasketches.Util.ceilingPowerOf2;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.ResizeFactor;
 import org.apache.datasketches.SketchesArgumentException;
@@ -242,6 +244,21 @@ public class SetOperationBuilder {
     return (Union) build(Family.UNION, dstMem);
   }
 
+  /**
+   * Convenience method, returns the union of the given sketches as an ordered CompactSketch on
+   * the heap, computed by a new Union with the current configuration of this Builder. The ordered
+   * compact sketches, on or off the heap, are merged in parallel on the given pool, each task
+   * merging a disjoint range of the hash space.
+   * See {@link Union#update(Iterable, ForkJoinPool)}.
+   * @param sketches the sketches to union. Nulls and empty sketches are ignored.
+   * @param pool the ForkJoinPool to merge on, or null to merge in the calling thread
+   * @return the result ordered CompactSketch on the heap
+   */
+  public CompactSketch parallelUnion(final Iterable<? extends Sketch> sketches,
+      final ForkJoinPool pool) {
+    return buildUnion().union(sketches, pool);
+  }
+
   /**
    * Convenience method, returns a configured SetOperation Intersection with
    * <a href="{@docRoot}/resources/dictionary.html#defaultNomEntries">Default Nominal Entries</a>
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * A k-way merge of the hashes of ordered compact sketches, used by the batch union. It returns the
+ * smallest distinct hashes of all the sketches within a given hash range, without touching the
+ * hashes beyond the ones it returns, apart from one look-ahead hash per sketch.
+ *
+ * <p>The sketches may be on the Java heap or in Memory. The merge itself holds no mutable state,
+ * so disjoint hash ranges may be merged concurrently.</p>
+ */
+final class ThetaMultiwayMerge {
+  // the minimum number of retained hashes per hash range of a parallel merge
+  static final int MIN_PARALLEL_HASHES = 1 << 12;
+  // the number of hash ranges per thread of the pool, to balance the load
+  static final int RANGES_PER_THREAD = 4;
+  private static final long[] EMPTY_HASHES = new long[0];
+
+  private final int numSources;
+  private final long[][] caches; // null for a sketch in Memory
+  private final Memory[] mems;
+  private final int[] dataOffsets; // offset in bytes of the first hash, for a sketch in Memory
+  private final int[] counts;
+
+  /**
+   * @param orderedSketches non-empty, ordered compact sketches
+   */
+  ThetaMultiwayMerge(final List<? extends Sketch> orderedSketches) {
+    numSources = orderedSketches.size();
+    caches = new long[numSources][];
+    mems = new Memory[numSources];
+    dataOffsets = new int[numSources];
+    counts = new int[numSources];
+    for (int s = 0; s < numSources; s++) {
+      final Sketch sketch = orderedSketches.get(s);
+      counts[s] = sketch.getRetainedEntries(true);
+      if (sketch.hasMemory()) {
+        mems[s] = ((CompactSketch) sketch).getMemory();
+        dataOffsets[s] = (mems[s].getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+      } else {
+        caches[s] = sketch.getCache(); //not a copy
+      }
+    }
+  }
+
+  /**
+   * Returns, in ascending order, up to <i>limit</i> of the smallest distinct hashes of all the
+   * sketches that are in the range [lo, hi).
+   * @param lo the inclusive lower bound of the hash range
+   * @param hi the exclusive upper bound of the hash range
+   * @param limit the maximum number of hashes to return
+   * @return the smallest distinct hashes in the range
+   */
+  long[] merge(final long lo, final long hi, final int limit) {
+    final long[] heapVals = new long[numSources];
+    final int[] heapSrcs = new int[numSources];
+    final int[] pos = new int[numSources];
+    int size = 0;
+    long total = 0;
+    for (int s = 0; s < numSources; s++) {
+      final int p = lowerBound(s, lo);
+      if ((p < counts[s]) && (getHash(s, p) < hi)) {
+        pos[s] = p;
+        heapVals[size] = getHash(s, p);
+        heapSrcs[size] = s;
+        size++;
+        total += counts[s] - p;
+      }
+    }
+    for (int i = (size >>> 1) - 1; i >= 0; i--) {
+      siftDown(heapVals, heapSrcs, i, size);
+    }
+
+    final long[] out = new long[(int) Math.min(limit, total)];
+    int count = 0;
+    long prev = 0; //hashes are always positive
+    while (size > 0) {
+      final long hash = heapVals[0];
+      if (hash != prev) {
+        if (count == limit) { break; }
+        out[count++] = hash;
+        prev = hash;
+      }
+      final int s = heapSrcs[0];
+      final int p = ++pos[s];
+      final long next;
+      if ((p < counts[s]) && ((next = getHash(s, p)) < hi)) {
+        heapVals[0] = next;
+      } else {
+        size--;
+        heapVals[0] = heapVals[size];
+        heapSrcs[0] = heapSrcs[size];
+      }
+      siftDown(heapVals, heapSrcs, 0, size);
+    }
+    return (count == out.length) ? out : Arrays.copyOf(out, count);
+  }
+
+  /**
+   * Returns the same result as <i>merge(0, hi, limit)</i>. If a pool is given, the hash range is
+   * split into disjoint ranges, which are merged on the pool, and the partial results are then
+   * concatenated in the order of the ranges.
+   *
+   * <p>The range to split ends at the smallest <i>limit</i>-th hash of any one sketch, if that is
+   * below <i>hi</i>, since the result cannot extend past it. While the ranges are merged, a range
+   * that starts beyond the <i>limit</i>-th hash of an already merged range is skipped.</p>
+   *
+   * @param hi the exclusive upper bound of the hash range
+   * @param limit the maximum number of hashes to return
+   * @param pool the ForkJoinPool to merge the ranges on, or null to merge in the calling thread
+   * @return the smallest distinct hashes below hi
+   */
+  long[] merge(final long hi, final int limit, final ForkJoinPool pool) {
+    if (pool == null) { return merge(0, hi, limit); }
+    long bound = hi;
+    for (int s = 0; s < numSources; s++) {
+      if (counts[s] >= limit) { bound = Math.min(bound, getHash(s, limit - 1) + 1); }
+    }
+    long total = 0;
+    for (int s = 0; s < numSources; s++) {
+      total += lowerBound(s, bound);
+    }
+    final int numRanges = (int) Math.min((long) pool.getParallelism() * RANGES_PER_THREAD,
+        Math.min(total / MIN_PARALLEL_HASHES, bound));
+    if (numRanges <= 1) { return merge(0, bound, limit); }
+
+    final long[][] parts = new long[numRanges][];
+    pool.invoke(new RangesTask(this, parts, new AtomicLong(bound), bound, limit, 0, numRanges));
+    long partsLength = 0;
+    for (final long[] part : parts) { partsLength += part.length; }
+    final long[] out = new long[(int) Math.min(limit, partsLength)];
+    int count = 0;
+    for (int r = 0; (r < numRanges) && (count < out.length); r++) {
+      final int n = Math.min(parts[r].length, out.length - count);
+      System.arraycopy(parts[r], 0, out, count, n);
+      count += n;
+    }
+    return out;
+  }
+
+  private long getHash(final int s, final int p) {
+    final long[] cache = caches[s];
+    return (cache != null) ? cache[p] : mems[s].getLong(dataOffsets[s] + ((long) p << 3));
+  }
+
+  // returns the index of the first hash that is not less than the given value
+  private int lowerBound(final int s, final long value) {
+    if ((counts[s] == 0) || (getHash(s, 0) >= value)) { return 0; }
+    int lo = 0;
+    int hi = counts[s];
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (getHash(s, mid) < value) { lo = mid + 1; } else { hi = mid; }
+    }
+    return lo;
+  }
+
+  private static void siftDown(final long[] heapVals, final int[] heapSrcs, final int index,
+      final int size) {
+    final long val = heapVals[index];
+    final int src = heapSrcs[index];
+    int i = index;
+    int child;
+    while ((child = (i << 1) + 1) < size) {
+      if (((child + 1) < size) && (heapVals[child + 1] < heapVals[child])) { child++; }
+      if (heapVals[child] >= val) { break; }
+      heapVals[i] = heapVals[child];
+      heapSrcs[i] = heapSrcs[child];
+      i = child;
+    }
+    heapVals[i] = val;
+    heapSrcs[i] = src;
+  }
+
+  /**
+   * Merges the hash ranges [from, to) of the equal division of [0, bound) into numRanges ranges.
+   */
+  private static final class RangesTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final ThetaMultiwayMerge merge;
+    private final long[][] parts;
+    private final AtomicLong cut; // no hash at or above this can be in the result
+    private final long bound;
+    private final int limit;
+    private final int from;
+    private final int to;
+
+    RangesTask(final ThetaMultiwayMerge merge, final long[][] parts, final AtomicLong cut,
+        final long bound, final int limit, final int from, final int to) {
+      this.merge = merge;
+      this.parts = parts;
+      this.cut = cut;
+      this.bound = bound;
+      this.limit = limit;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if ((to - from) > 1) {
+        final int mid = (from + to) >>> 1;
+        invokeAll(new RangesTask(merge, parts, cut, bound, limit, from, mid),
+            new RangesTask(merge, parts, cut, bound, limit, mid, to));
+        return;
+      }
+      final int numRanges = parts.length;
+      final long width = bound / numRanges;
+      final long lo = from * width;
+      final long hi = (to == numRanges) ? bound : to * width;
+      if (lo >= cut.get()) {
+        parts[from] = EMPTY_HASHES;
+        return;
+      }
+      final long[] part = merge.merge(lo, hi, limit);
+      if (part.length == limit) {
+        final long partCut = part[limit - 1] + 1;
+        cut.accumulateAndGet(partCut, Math::min);
+      }
+      parts[from] = part;
+    }
+  }
+
+}
@@ -19,6 +19,8 @@
 
 package org.apache.datasketches.theta;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -98,6 +100,33 @@ public abstract class Union extends SetOperation {
   public abstract CompactSketch union(Sketch sketchA, Sketch sketchB, boolean dstOrdered,
       WritableMemory dstMem);
 
+  /**
+   * Performs a Union operation with <i>this</i> union and all of the given sketches, and returns
+   * the result as an ordered CompactSketch on the heap. See {@link #update(Iterable)}.
+   *
+   * @param sketches the sketches to union. Nulls and empty sketches are ignored.
+   * @return the result ordered CompactSketch on the heap.
+   */
+  public CompactSketch union(final Iterable<? extends Sketch> sketches) {
+    update(sketches);
+    return getResult();
+  }
+
+  /**
+   * Performs a Union operation with <i>this</i> union and all of the given sketches, and returns
+   * the result as an ordered CompactSketch on the heap. See
+   * {@link #update(Iterable, ForkJoinPool)}.
+   *
+   * @param sketches the sketches to union. Nulls and empty sketches are ignored.
+   * @param pool the ForkJoinPool to merge the ordered compact sketches on, or null to merge them
+   * in the calling thread
+   * @return the result ordered CompactSketch on the heap.
+   */
+  public CompactSketch union(final Iterable<? extends Sketch> sketches, final ForkJoinPool pool) {
+    update(sketches, pool);
+    return getResult();
+  }
+
 
   /**
    * Perform a Union operation with <i>this</i> union and the given on-heap sketch of the Theta Family.
@@ -110,6 +139,43 @@ public abstract class Union extends SetOperation {
    */
   public abstract void update(Sketch sketchIn);
 
+  /**
+   * Perform a Union operation with <i>this</i> union and all of the given sketches of the Theta
+   * Family. The result is the same as calling {@link #update(Sketch)} with each of them, but this is
+   * much faster when there are many sketches and they are ordered compact sketches, on or off the
+   * Java heap.
+   *
+   * <p>The minimum theta of all the sketches is found first. The ordered compact sketches are then
+   * merged together, reading only the hashes that can remain in this union, which are the
+   * <i>k</i> smallest distinct hashes below that theta. The hash table of this union is never
+   * rebuilt during the merge. Any other sketches are then applied as with {@link #update(Sketch)},
+   * with the lowered theta.</p>
+   *
+   * <p>This method can be repeatedly called. Null and empty sketches are ignored.</p>
+   *
+   * @param sketches the sketches to union
+   */
+  public void update(final Iterable<? extends Sketch> sketches) {
+    update(sketches, null);
+  }
+
+  /**
+   * Perform a Union operation with <i>this</i> union and all of the given sketches of the Theta
+   * Family, merging the ordered compact sketches in parallel on the given pool. The result is the
+   * same as with {@link #update(Iterable)}.
+   *
+   * <p>The hashes of a theta sketch are uniform in [0, theta), so the merge is split into disjoint
+   * hash ranges, one task per range. Each task finds the start of its range in every ordered
+   * compact sketch by binary search and merges only that range. The partial results are then
+   * concatenated and cut back to <i>k</i> with a common theta. Other sketches are applied
+   * afterwards in the calling thread. Small inputs are merged in the calling thread.</p>
+   *
+   * @param sketches the sketches to union
+   * @param pool the ForkJoinPool to merge the ordered compact sketches on, or null to merge them
+   * in the calling thread
+   */
+  public abstract void update(Iterable<? extends Sketch> sketches, ForkJoinPool pool);
+
   /**
    * Perform a Union operation with <i>this</i> union and the given Memory image of any sketch of the
    * Theta Family. The input image may be from earlier versions of the Theta Compact Sketch,
@@ -40,6 +40,10 @@ import static org.apache.datasketches.theta.PreambleUtil.extractUnionThetaLong;
 import static org.apache.datasketches.theta.PreambleUtil.insertUnionThetaLong;
 import static org.apache.datasketches.theta.SingleItemSketch.otherCheckForSingleItem;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.HashOperations;
 import org.apache.datasketches.ResizeFactor;
@@ -337,6 +341,45 @@ final class UnionImpl extends Union {
     }
   }
 
+  @Override
+  public void update(final Iterable<? extends Sketch> sketches, final ForkJoinPool pool) {
+    if (sketches == null) { return; }
+    final List<Sketch> ordered = new ArrayList<>();
+    final List<Sketch> others = new ArrayList<>();
+    long thetaLong = min(unionThetaLong_, gadget_.getThetaLong());
+    for (final Sketch sketchIn : sketches) {
+      if ((sketchIn == null) || sketchIn.isEmpty()) { continue; }
+      Util.checkSeedHashes(seedHash_, sketchIn.getSeedHash());
+      if (!(sketchIn instanceof SingleItemSketch)) {
+        Sketch.checkSketchAndMemoryFlags(sketchIn);
+        thetaLong = min(thetaLong, sketchIn.getThetaLong()); //Theta rule
+      }
+      unionEmpty_ = false;
+      if (sketchIn.isOrdered()) { ordered.add(sketchIn); } else { others.add(sketchIn); }
+    }
+    if (ordered.isEmpty() && others.isEmpty()) { return; }
+
+    if (!ordered.isEmpty()) {
+      //only the k smallest distinct hashes below theta can remain after a pull back to k
+      final int k = 1 << gadget_.getLgNomLongs();
+      final long[] hashes = new ThetaMultiwayMerge(ordered).merge(thetaLong, k + 1, pool);
+      final int numHashes = min(hashes.length, k);
+      if (hashes.length > k) { thetaLong = hashes[k]; }
+      for (int i = 0; i < numHashes; i++) {
+        gadget_.hashUpdate(hashes[i]); //backdoor update, hash function is bypassed
+      }
+    }
+    unionThetaLong_ = min(thetaLong, gadget_.getThetaLong());
+    if (gadget_.hasMemory()) {
+      final WritableMemory wmem = (WritableMemory)gadget_.getMemory();
+      PreambleUtil.insertUnionThetaLong(wmem, unionThetaLong_);
+      PreambleUtil.clearEmpty(wmem);
+    }
+    for (final Sketch sketchIn : others) {
+      update(sketchIn);
+    }
+  }
+
   @Override
   public void update(final Memory skMem) {
     if (skMem == null) { return; }
@@ -28,6 +28,8 @@ import static org.apache.datasketches.Util.TAB;
 import static org.apache.datasketches.Util.ceilingPowerOf2;
 import static org.apache.datasketches.Util.checkNomLongs;
 
+import java.util.concurrent.Executor;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.ResizeFactor;
 import org.apache.datasketches.SketchesArgumentException;
@@ -55,6 +57,8 @@ public class UpdateSketchBuilder {
   private boolean bPropagateOrderedCompact;
   private double bMaxConcurrencyError;
   private int bMaxNumLocalThreads;
+  private int bMaxLocalPropagationsInFlight;
+  private Executor bPropagationExecutor;
 
   /**
    * Constructor for building a new UpdateSketch. The default configuration is
@@ -75,6 +79,8 @@ public class UpdateSketchBuilder {
    * <li>Concurrent NumPoolThreads: 3</li>
    * <li>Concurrent PropagateOrderedCompact: true</li>
    * <li>Concurrent MaxConcurrencyError: 0</li>
+   * <li>Concurrent MaxLocalPropagationsInFlight: 1</li>
+   * <li>Concurrent PropagationExecutor: null, a shared work-stealing pool of NumPoolThreads</li>
    * </ul>
    */
   public UpdateSketchBuilder() {
@@ -90,6 +96,8 @@ public class UpdateSketchBuilder {
     bPropagateOrderedCompact = true;
     bMaxConcurrencyError = 0;
     bMaxNumLocalThreads = 1;
+    bMaxLocalPropagationsInFlight = 1;
+    bPropagationExecutor = null;
   }
 
   /**
@@ -272,9 +280,16 @@ public class UpdateSketchBuilder {
 
   /**
    * Sets the number of pool threads used for background propagation in the concurrent sketches.
+   * This is the parallelism of the default work-stealing pool, which is shared by all concurrent
+   * sketches built with the same number of pool threads. It is not used if a propagation Executor
+   * is set.
    * @param numPoolThreads the given number of pool threads
    */
   public void setNumPoolThreads(final int numPoolThreads) {
+    if (numPoolThreads < 1) {
+      throw new SketchesArgumentException("Number of pool threads must be at least one: "
+          + numPoolThreads);
+    }
     bNumPoolThreads = numPoolThreads;
   }
 
@@ -286,6 +301,28 @@ public class UpdateSketchBuilder {
     return bNumPoolThreads;
   }
 
+  /**
+   * Sets the Executor that runs the background propagation of the concurrent shared sketches.
+   * The background tasks of one shared sketch run one at a time, and a shared sketch yields the
+   * Executor's thread after a few tasks, so many sketches can share a small Executor. If null, the
+   * default work-stealing pool of NumPoolThreads daemon threads is used. The Executor is never
+   * shut down by the sketches.
+   * @param executor the given Executor, or null for the default
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setPropagationExecutor(final Executor executor) {
+    bPropagationExecutor = executor;
+    return this;
+  }
+
+  /**
+   * Gets the Executor that runs the background propagation of the concurrent shared sketches.
+   * @return the Executor, or null if the default work-stealing pool is used
+   */
+  public Executor getPropagationExecutor() {
+    return bPropagationExecutor;
+  }
+
   /**
    * Sets the Propagate Ordered Compact flag to the given value. Used with concurrent sketches.
    *
@@ -338,6 +375,33 @@ public class UpdateSketchBuilder {
     return bMaxNumLocalThreads;
   }
 
+  /**
+   * Sets the maximum number of propagations from one local concurrent buffer that may be in
+   * flight at once. A full local buffer is handed off to the shared sketch and the writing thread
+   * continues, and only waits when this many propagations from its buffer are still in progress.
+   * Time spent waiting is reported by {@link ConcurrentThetaSketch#getWriterStallCount()} and
+   * {@link ConcurrentThetaSketch#getWriterStallNanos()} of the shared sketch.
+   * @param maxInFlight the given maximum number of propagations in flight, at least one
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setMaxLocalPropagationsInFlight(final int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new SketchesArgumentException(
+          "Max local propagations in flight must be at least one: " + maxInFlight);
+    }
+    bMaxLocalPropagationsInFlight = maxInFlight;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of propagations from one local concurrent buffer that may be in
+   * flight at once.
+   * @return the maximum number of local propagations in flight
+   */
+  public int getMaxLocalPropagationsInFlight() {
+    return bMaxLocalPropagationsInFlight;
+  }
+
   // BUILD FUNCTIONS
 
   /**
@@ -392,6 +456,7 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is a shared work-stealing pool)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
@@ -414,6 +479,7 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is a shared work-stealing pool)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
@@ -428,11 +494,13 @@ public class UpdateSketchBuilder {
    * and the given destination WritableMemory.
    */
   public UpdateSketch buildShared(final WritableMemory dstMem) {
-    ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
+    final Executor executor = getPropagationExecutorOrDefault();
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError,
+          executor);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, dstMem,
+          executor);
     }
   }
 
@@ -445,6 +513,7 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is a shared work-stealing pool)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
@@ -461,14 +530,20 @@ public class UpdateSketchBuilder {
    * and the given destination WritableMemory.
    */
   public UpdateSketch buildSharedFromSketch(final UpdateSketch sketch, final WritableMemory dstMem) {
-    ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
+    final Executor executor = getPropagationExecutorOrDefault();
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, executor);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, dstMem,
+          executor);
     }
   }
 
+  private Executor getPropagationExecutorOrDefault() {
+    return (bPropagationExecutor != null) ? bPropagationExecutor
+        : ConcurrentPropagationService.getDefaultExecutor(bNumPoolThreads);
+  }
+
   /**
    * Returns a local, on-heap, concurrent UpdateSketch to be used as a per-thread local buffer
    * along with the given concurrent shared UpdateSketch and the current configuration of this
@@ -478,6 +553,7 @@ public class UpdateSketchBuilder {
    * <ul>
    * <li>Local Nominal Entries or Local Log Nominal Entries</li>
    * <li>Propagate Ordered Compact flag</li>
+   * <li>Max Local Propagations In Flight</li>
    * </ul>
    *
    * @param shared the concurrent shared sketch to be accessed via the concurrent local sketch.
@@ -488,7 +564,8 @@ public class UpdateSketchBuilder {
       throw new SketchesStateException("The concurrent shared sketch must be built first.");
     }
     return new ConcurrentHeapThetaBuffer(bLocalLgNomLongs, bSeed,
-        (ConcurrentSharedThetaSketch) shared, bPropagateOrderedCompact, bMaxNumLocalThreads);
+        (ConcurrentSharedThetaSketch) shared, bPropagateOrderedCompact, bMaxNumLocalThreads,
+        bMaxLocalPropagationsInFlight);
   }
 
   @Override
@@ -507,8 +584,13 @@ public class UpdateSketchBuilder {
     sb.append("MemoryRequestServer:").append(TAB).append(mrsStr).append(LS);
     sb.append("Propagate Ordered Compact").append(TAB).append(bPropagateOrderedCompact).append(LS);
     sb.append("NumPoolThreads").append(TAB).append(bNumPoolThreads).append(LS);
+    final String peStr = (bPropagationExecutor == null) ? "default"
+        : bPropagationExecutor.getClass().getSimpleName();
+    sb.append("PropagationExecutor").append(TAB).append(peStr).append(LS);
     sb.append("MaxConcurrencyError").append(TAB).append(bMaxConcurrencyError).append(LS);
     sb.append("MaxNumLocalThreads").append(TAB).append(bMaxNumLocalThreads).append(LS);
+    sb.append("MaxLocalPropagationsInFlight").append(TAB).append(bMaxLocalPropagationsInFlight)
+        .append(LS);
     return sb.toString();
   }
 
@@ -26,6 +26,7 @@ import static org.apache.datasketches.Util.bytesToString;
 import static org.apache.datasketches.Util.ceilingPowerOf2;
 import static org.apache.datasketches.Util.ceilingPowerOfBdouble;
 import static org.apache.datasketches.Util.characterPad;
+import static org.apache.datasketches.Util.checkBounds;
 import static org.apache.datasketches.Util.checkIfMultipleOf8AndGT0;
 import static org.apache.datasketches.Util.checkIfPowerOf2;
 import static org.apache.datasketches.Util.checkProbability;
@@ -198,6 +199,25 @@ public class UtilTest {
     println(out);
   }
 
+  @Test
+  public void checkBoundsGood() {
+    checkBounds(0, 0, 0);
+    checkBounds(2, 8, 10);
+  }
+
+  @Test
+  public void checkBoundsBad() {
+    final long[][] ranges = {{-1, 1, 10}, {0, -1, 10}, {5, 6, 10}, {1, Long.MAX_VALUE, 10}};
+    for (final long[] r : ranges) {
+      try {
+        checkBounds(r[0], r[1], r[2]);
+        fail();
+      } catch (final SketchesArgumentException e) {
+        // expected
+      }
+    }
+  }
+
   @Test
   public void checkProbabilityFn1() {
     checkProbability(.5, "Good");
@@ -29,6 +29,7 @@ import java.io.PrintStream;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.Memory;
 import org.testng.annotations.Test;
 
@@ -39,6 +40,37 @@ import org.testng.annotations.Test;
 public class CpcSketchTest {
   static PrintStream ps = System.out;
 
+  @Test
+  public void checkUpdateWithHash() {
+    final CpcSketch itemSk = new CpcSketch(10);
+    final CpcSketch hash128Sk = new CpcSketch(10);
+    final CpcSketch hash64Sk = new CpcSketch(10);
+    final CpcSketch batchSk = new CpcSketch(10);
+    final int n = 100000;
+    final long[] hashes = new long[n];
+    final long[] hashOut = new long[2];
+    for (int i = 0; i < n; i++) {
+      itemSk.update(i);
+      MurmurHash3.hash(i, DEFAULT_UPDATE_SEED, hashOut);
+      hash128Sk.updateWithHash(hashOut[0], hashOut[1]);
+      hashes[i] = hashOut[0];
+      hash64Sk.updateWithHash(hashes[i]);
+    }
+    batchSk.updateWithHash(hashes, 0, n);
+    assertEquals(hash128Sk.toByteArray(), itemSk.toByteArray());
+    assertEquals(batchSk.toByteArray(), hash64Sk.toByteArray());
+    assertEquals(hash64Sk.getEstimate(), n, n * 0.06);
+    final CpcUnion union = new CpcUnion(10);
+    union.update(hash64Sk);
+    union.update(batchSk);
+    assertEquals(union.getResult().getEstimate(), hash64Sk.getEstimate(), n * 0.01);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkUpdateWithHashBounds() {
+    new CpcSketch(10).updateWithHash(new long[4], 2, 3);
+  }
+
   @Test
   public void checkUpdatesEstimate() {
     final CpcSketch sk = new CpcSketch(10, 0);
@@ -34,6 +34,18 @@ import org.testng.annotations.Test;
 @SuppressWarnings("javadoc")
 public class MurmurHash3Test {
 
+  @Test
+  public void checkSingleLongMatchesLongArr() {
+    final long[] hashOut = new long[2];
+    final long[] keys = {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 0x123456789ABCDEFL};
+    for (long key : keys) {
+      for (long seed : new long[] {0, 9001}) {
+        Assert.assertSame(hash(key, seed, hashOut), hashOut);
+        Assert.assertEquals(hashOut, hash(new long[] {key}, seed));
+      }
+    }
+  }
+
   @Test
   public void checkByteArrRemainderGT8() { //byte[], remainder > 8
     String keyStr = "The quick brown fox jumps over the lazy dog";
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.datasketches.memory.Memory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class ConcurrentHllSketchTest {
+
+  @Test
+  public void checkEmpty() {
+    final ConcurrentHllSketch sketch = new ConcurrentHllSketch(10);
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getEstimate(), 0.0);
+    assertEquals(sketch.getLgConfigK(), 10);
+    assertEquals(sketch.getTgtHllType(), HLL_8);
+    assertTrue(HllSketch.heapify(sketch.toCompactByteArray()).isEmpty());
+    assertTrue(sketch.getResult(HLL_4).isEmpty());
+  }
+
+  @Test
+  public void checkSingleThreadMatchesHllSketch() {
+    final ConcurrentHllSketch sketch = new ConcurrentHllSketch(12);
+    final HllSketch reference = new HllSketch(12, HLL_8);
+    for (int i = 0; i < 100000; i++) {
+      sketch.update(i);
+      reference.update(i);
+      sketch.update(i); //duplicates change nothing
+    }
+    assertFalse(sketch.isEmpty());
+    checkRegisters(sketch, reference);
+    assertEquals(sketch.getEstimate(), reference.getCompositeEstimate(), 1e-6);
+    assertEquals(sketch.getEstimate(), 100000, 100000 * 0.05);
+    assertTrue(sketch.getLowerBound(2) <= sketch.getEstimate());
+    assertTrue(sketch.getUpperBound(2) >= sketch.getEstimate());
+
+    //repeated queries use the same snapshot
+    final double est = sketch.getEstimate();
+    assertEquals(sketch.getEstimate(), est);
+    sketch.update(-1L);
+    reference.update(-1L);
+    checkRegisters(sketch, reference);
+
+    final HllSketch heapified = HllSketch.heapify(Memory.wrap(sketch.toCompactByteArray()));
+    assertEquals(heapified.getEstimate(), sketch.getEstimate());
+
+    sketch.reset();
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getEstimate(), 0.0);
+  }
+
+  @Test
+  public void checkConcurrentUpdates() throws InterruptedException {
+    final int numThreads = 4;
+    final int perThread = 50000;
+    final ConcurrentHllSketch sketch = new ConcurrentHllSketch(14);
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      final int start = t * (perThread / 2); //half of each range overlaps the next
+      threads.add(new Thread(() -> {
+        for (int i = start; i < (start + perThread); i++) {
+          sketch.update(i);
+          if ((i % 10000) == 0) { sketch.getEstimate(); }
+        }
+      }));
+    }
+    for (Thread thread : threads) { thread.start(); }
+    for (Thread thread : threads) { thread.join(); }
+
+    final HllSketch reference = new HllSketch(14, HLL_8);
+    for (int i = 0; i < ((numThreads + 1) * (perThread / 2)); i++) {
+      reference.update(i);
+    }
+    checkRegisters(sketch, reference);
+    assertEquals(sketch.getEstimate(), reference.getCompositeEstimate(), 1e-6);
+
+    final Union union = new Union(14);
+    union.update(sketch.getResult(HLL_4));
+    assertEquals(union.getEstimate(), sketch.getEstimate(), 1e-6);
+  }
+
+  private static void checkRegisters(final ConcurrentHllSketch sketch, final HllSketch reference) {
+    final AbstractHllArray arr = (AbstractHllArray) sketch.getResult(HLL_8).hllSketchImpl;
+    final AbstractHllArray refArr = (AbstractHllArray) reference.hllSketchImpl;
+    for (int i = 0; i < (1 << reference.getLgConfigK()); i++) {
+      assertEquals(arr.getSlotValue(i), refArr.getSlotValue(i));
+    }
+  }
+
+}
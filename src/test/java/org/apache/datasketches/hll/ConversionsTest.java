@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import java.util.Random;
+
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class ConversionsTest {
+
+  @Test
+  public void checkSpreadAndPack() {
+    Random rand = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      int nibbles = rand.nextInt();
+      long bytes = Conversions.spread4(nibbles & 0XFFFF_FFFFL);
+      for (int j = 0; j < 8; j++) {
+        assertEquals((int) (bytes >>> (8 * j)) & 0XFF, (nibbles >>> (4 * j)) & 0XF);
+      }
+      assertEquals(Conversions.pack4(bytes), nibbles);
+    }
+  }
+
+  @Test
+  public void checkWordConversionsMatchSlotConversions() {
+    for (int lgK : new int[] {4, 5, 8, 11, 14}) {
+      for (int n : new int[] {1 << lgK, 16 << lgK}) {
+        for (boolean direct : new boolean[] {false, true}) {
+          checkConversions(lgK, n, direct);
+        }
+      }
+    }
+  }
+
+  private static void checkConversions(int lgK, int n, boolean direct) {
+    HllSketch sk4 = new HllSketch(lgK, HLL_4);
+    HllSketch sk8 = new HllSketch(lgK, HLL_8);
+    Random rand = new Random(lgK + n);
+    for (int i = 0; i < n; i++) {
+      long hash = rand.nextLong();
+      //some large register values to create AuxHashMap exceptions
+      if ((i % 64) == 0) { hash >>>= 25; }
+      sk4.updateWithHash(hash);
+      sk8.updateWithHash(hash);
+    }
+    if (direct) {
+      sk4 = HllSketch.writableWrap(WritableMemory.wrap(sk4.toUpdatableByteArray()));
+      sk8 = HllSketch.writableWrap(WritableMemory.wrap(sk8.toUpdatableByteArray()));
+    }
+    assertEquals(sk4.getCurMode(), CurMode.HLL);
+    assertEquals(sk4.isMemory(), direct);
+    String comb = "lgK=" + lgK + ", n=" + n + ", direct=" + direct;
+    //HLL_6 sources use the slot by slot conversions
+    byte[] fast8 = sk4.copyAs(HLL_8).toUpdatableByteArray();
+    byte[] slow8 = sk4.copyAs(HLL_6).copyAs(HLL_8).toUpdatableByteArray();
+    assertEquals(fast8, slow8, comb);
+    HllSketch fast4 = sk8.copyAs(HLL_4);
+    byte[] slow4 = sk8.copyAs(HLL_6).copyAs(HLL_4).toUpdatableByteArray();
+    assertEquals(fast4.toUpdatableByteArray(), slow4, comb);
+    assertEquals(fast4.toCompactByteArray(), sk8.copyAs(HLL_6).copyAs(HLL_4).toCompactByteArray());
+    if (n > (1 << lgK)) {
+      assertNotNull(((AbstractHllArray) fast4.hllSketchImpl).getAuxHashMap(), comb);
+    }
+    //round trip
+    assertEquals(fast4.copyAs(HLL_8).getCompositeEstimate(), sk8.getCompositeEstimate(), comb);
+  }
+
+}
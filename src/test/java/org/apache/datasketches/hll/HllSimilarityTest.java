@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class HllSimilarityTest {
+
+  @Test
+  public void checkSmallOverlap() {
+    int lgK = 12;
+    int n = 100_000;
+    int overlap = 2_000; //2% of each set
+    HllSketch a = new HllSketch(lgK, HLL_4);
+    HllSketch b = new HllSketch(lgK, HLL_8);
+    for (int i = 0; i < n; i++) {
+      a.update(i);
+      b.update((i + n) - overlap);
+    }
+    double[] inter = HllSimilarity.intersection(a, b);
+    println("intersection: " + inter[0] + ", " + inter[1] + ", " + inter[2]);
+    assertTrue(inter[0] <= inter[1]);
+    assertTrue(inter[1] <= inter[2]);
+    assertTrue((inter[0] <= overlap) && (overlap <= inter[2]));
+    assertEquals(inter[1], overlap, overlap * 0.5);
+
+    //much better than inclusion-exclusion, which has an error of a few thousand here
+    Union u = new Union(lgK);
+    u.update(a);
+    u.update(b);
+    println("incl-excl: " + ((a.getEstimate() + b.getEstimate()) - u.getEstimate()));
+
+    double[] j = HllSimilarity.jaccard(a, b);
+    double trueJ = (double) overlap / ((2 * n) - overlap);
+    assertTrue((j[0] <= trueJ) && (trueJ <= j[2]));
+    assertEquals(j[1], trueJ, trueJ * 0.5);
+  }
+
+  @Test
+  public void checkVariousOverlaps() {
+    int lgK = 11;
+    int nA = 50_000;
+    int nB = 20_000;
+    for (int overlap : new int[] {0, 1_000, 10_000, 20_000}) {
+      HllSketch a = new HllSketch(lgK, HLL_6);
+      HllSketch b = new HllSketch(lgK + 2, HLL_4); //folded to lgK
+      for (int i = 0; i < nA; i++) { a.update(i); }
+      for (int i = 0; i < nB; i++) { b.update((i + nA) - overlap); }
+      double[] inter = HllSimilarity.intersection(a, b);
+      println(overlap + ": " + inter[0] + ", " + inter[1] + ", " + inter[2]);
+      assertTrue((inter[0] <= overlap) && (overlap <= inter[2]), "overlap " + overlap);
+      assertTrue(inter[2] <= (nB * 1.1));
+      double[] j = HllSimilarity.jaccard(a, b);
+      double trueJ = (double) overlap / ((nA + nB) - overlap);
+      assertTrue((j[0] <= trueJ) && (trueJ <= j[2]), "overlap " + overlap);
+    }
+  }
+
+  @Test
+  public void checkSparseAndDirect() {
+    int lgK = 10;
+    HllSketch a = new HllSketch(lgK, HLL_8); //LIST or SET mode
+    HllSketch b = new HllSketch(lgK, HLL_4,
+        WritableMemory.allocate(HllSketch.getMaxUpdatableSerializationBytes(lgK, HLL_4)));
+    for (int i = 0; i < 60; i++) { a.update(i); }
+    for (int i = 30; i < 5_000; i++) { b.update(i); }
+    assertTrue(a.getCurMode() != CurMode.HLL);
+    double[] inter = HllSimilarity.intersection(a, b);
+    assertTrue((inter[0] <= 30) && (30 <= inter[2]));
+    assertEquals(inter[1], 30, 10);
+  }
+
+  @Test
+  public void checkCornerCases() {
+    HllSketch empty = new HllSketch(10);
+    HllSketch a = new HllSketch(10);
+    for (int i = 0; i < 1000; i++) { a.update(i); }
+    assertEquals(HllSimilarity.jaccard(null, a), new double[] {0, 0, 0});
+    assertEquals(HllSimilarity.jaccard(empty, a), new double[] {0, 0, 0});
+    assertEquals(HllSimilarity.jaccard(empty, new HllSketch(12)), new double[] {1, 1, 1});
+    assertEquals(HllSimilarity.jaccard(a, a), new double[] {1, 1, 1});
+    assertEquals(HllSimilarity.intersection(empty, a), new double[] {0, 0, 0});
+    assertEquals(HllSimilarity.intersection(a, a)[1], a.getEstimate());
+
+    //identical contents
+    HllSketch b = a.copyAs(HLL_6);
+    double[] j = HllSimilarity.jaccard(a, b);
+    assertTrue(j[1] > 0.99);
+    println("identical: " + j[0] + ", " + j[1] + ", " + j[2]);
+    assertTrue(j[2] >= j[1]);
+    assertEquals(HllSimilarity.intersection(a, b)[1], a.getEstimate(), a.getEstimate() * 0.05);
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class HllSketchPoolTest {
+
+  @Test
+  public void checkMatchesIndividualSketches() {
+    for (TgtHllType type : TgtHllType.values()) {
+      for (int lgK : new int[] {4, 7, 8, 12}) {
+        checkMatchesIndividualSketches(lgK, type);
+      }
+    }
+  }
+
+  private static void checkMatchesIndividualSketches(int lgK, TgtHllType type) {
+    int numKeys = 200;
+    WritableMemory slab = WritableMemory.allocate(1 << 24);
+    HllSketchPool pool = new HllSketchPool(lgK, type, slab);
+    HllSketch[] sketches = new HllSketch[numKeys];
+    for (int k = 0; k < numKeys; k++) { sketches[k] = new HllSketch(lgK, type); }
+    //key k gets k + 1 distinct items, interleaved across the keys and with duplicates
+    for (int i = 0; i < numKeys; i++) {
+      for (int k = i; k < numKeys; k++) {
+        long key = (k + 1) * 1_000_003L;
+        pool.update(key, i);
+        pool.update(key, i);
+        sketches[k].update(i);
+      }
+    }
+    assertEquals(pool.getNumKeys(), numKeys);
+    assertFalse(pool.contains(0));
+    assertEquals(pool.getEstimate(0), 0.0);
+    assertNull(pool.getSketch(0));
+    for (int k = 0; k < numKeys; k++) {
+      long key = (k + 1) * 1_000_003L;
+      assertTrue(pool.contains(key));
+      assertEquals(pool.getEstimate(key), sketches[k].getEstimate(), "lgK=" + lgK + " k=" + k);
+      HllSketch sk = pool.getSketch(key);
+      assertEquals(sk.getEstimate(), sketches[k].getEstimate());
+      assertEquals(sk.getCurMode(), sketches[k].getCurMode());
+      assertEquals(sk.isMemory(), sk.getCurMode() == CurMode.HLL);
+    }
+    assertEquals(pool.getNumDenseKeys(), Math.max(0, (numKeys - pool.hllCouponCount) + 1));
+    assertEquals(pool.getLgConfigK(), lgK);
+    assertEquals(pool.getTgtHllType(), type);
+  }
+
+  @Test
+  public void checkSlabUsage() {
+    int lgK = 12;
+    WritableMemory slab = WritableMemory.allocate(1 << 20);
+    HllSketchPool pool = new HllSketchPool(lgK, TgtHllType.HLL_4, slab);
+    long minRecordBytes = HllSketchPool.recordBytes(HllSketchPool.MIN_LG_SLOTS);
+    for (long key = 0; key < 10_000; key++) { pool.update(key, key); }
+    assertEquals(pool.getSlabBytesUsed(), 10_000L * minRecordBytes);
+
+    //a key in SET mode stays in a compact record that doubles as it fills up
+    long used = pool.getSlabBytesUsed();
+    for (int i = 0; i < 100; i++) { pool.update(7, -i); }
+    assertEquals(pool.getSketch(7).getCurMode(), CurMode.SET);
+    assertEquals(pool.getNumDenseKeys(), 0);
+    long grownBytes = 0;
+    for (int lg = HllSketchPool.MIN_LG_SLOTS + 1; lg <= 8; lg++) {
+      grownBytes += HllSketchPool.recordBytes(lg);
+    }
+    assertEquals(pool.getSlabBytesUsed(), used + grownBytes);
+    assertTrue(grownBytes < HllSketch.getMaxUpdatableSerializationBytes(lgK, TgtHllType.HLL_4));
+
+    //the freed compact records are reused, each by a record of the same size
+    used = pool.getSlabBytesUsed();
+    for (int i = 0; i < 101; i++) { pool.update(-1, i); }
+    //only the record of the largest size is still in use by key 7
+    assertEquals(pool.getSlabBytesUsed(), used + HllSketchPool.recordBytes(8));
+
+    //the key moves to a dense slot when it enters HLL mode
+    for (int i = 100; i < (pool.hllCouponCount - 2); i++) { pool.update(7, -i); }
+    assertEquals(pool.getSketch(7).getCurMode(), CurMode.SET);
+    assertEquals(pool.getNumDenseKeys(), 0);
+    pool.update(7, 1);
+    assertEquals(pool.getSketch(7).getCurMode(), CurMode.HLL);
+    assertTrue(pool.getSketch(7).isMemory());
+    assertEquals(pool.getNumDenseKeys(), 1);
+    assertEquals(pool.getEstimate(7), pool.hllCouponCount, 2.0);
+
+    //the dense sketch is a live view and can be unioned
+    HllSketch dense = pool.getSketch(7);
+    dense.update(12345);
+    assertEquals(pool.getEstimate(7), dense.getEstimate());
+    Union union = new Union(lgK);
+    union.update(dense);
+    union.update(pool.getSketch(8));
+    assertEquals(union.getEstimate(), pool.hllCouponCount + 2.0, 3.0);
+
+    pool.reset();
+    assertEquals(pool.getNumKeys(), 0);
+    assertEquals(pool.getNumDenseKeys(), 0);
+    assertEquals(pool.getSlabBytesUsed(), 0);
+    assertFalse(pool.contains(7));
+  }
+
+  @Test
+  public void checkSlabFull() {
+    int lgK = 10;
+    //room for two compact records of the smallest size and one of the next size only
+    int minLg = HllSketchPool.MIN_LG_SLOTS;
+    WritableMemory slab = WritableMemory.allocate(
+        (int) ((2 * HllSketchPool.recordBytes(minLg)) + HllSketchPool.recordBytes(minLg + 1)));
+    HllSketchPool pool = new HllSketchPool(lgK, TgtHllType.HLL_8, slab);
+    pool.update(1, 1);
+    pool.update(2, 1);
+    //key 1 grows into the larger record and key 3 reuses the record freed by key 1
+    for (int i = 2; i <= 8; i++) { pool.update(1, i); }
+    pool.update(3, 1);
+    try {
+      pool.update(4, 1);
+      fail();
+    } catch (SketchesStateException e) {
+      //expected
+    }
+    assertFalse(pool.contains(4));
+    //key 2 cannot grow
+    for (int i = 2; i < 7; i++) { pool.update(2, i); }
+    try {
+      pool.update(2, 7);
+      fail();
+    } catch (SketchesStateException e) {
+      //expected
+    }
+    //the key is unchanged
+    assertEquals(pool.getEstimate(2), 6.0, 0.01);
+    assertEquals(pool.getSketch(2).getEstimate(), pool.getEstimate(2));
+    pool.update(2, 6);
+    assertEquals(pool.getEstimate(1), 8.0, 0.01);
+    assertEquals(pool.getNumKeys(), 3);
+    assertEquals(pool.getNumDenseKeys(), 0);
+  }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class HllSketchStoreTest {
+  private static final TgtHllType[] TYPES = {HLL_4, HLL_6, HLL_8};
+
+  @Test
+  public void checkWrapAndUnionAll() throws IOException {
+    final int lgK = 10;
+    final int numSketches = 3000; //forces the index to grow
+    final File file = tempFile();
+    final HllSketch[] sketches = new HllSketch[numSketches];
+    try (HllSketchStoreWriter writer = new HllSketchStoreWriter(file)) {
+      for (int i = 0; i < numSketches; i++) {
+        //LIST, SET and HLL modes of every type
+        final HllSketch sk = new HllSketch(lgK, TYPES[i % 3]);
+        final int n = (i % 7) * (i % 11) * 20;
+        for (int j = 0; j < n; j++) { sk.update(((long) i << 32) + j); }
+        sketches[i] = sk;
+        writer.append(1000L * i, sk);
+      }
+    }
+    try (HllSketchStore store = HllSketchStore.open(file)) {
+      assertEquals(store.getNumSketches(), numSketches);
+      assertEquals(store.getFileBytes(), file.length());
+      for (int i = 0; i < numSketches; i++) {
+        final HllSketch sk = store.wrap(1000L * i);
+        assertEquals(sk.getEstimate(), sketches[i].getEstimate());
+        assertEquals(sk.getTgtHllType(), sketches[i].getTgtHllType());
+        assertTrue(sk.isMemory());
+      }
+      assertNull(store.wrap(1));
+      assertFalse(store.contains(1));
+
+      //every third sketch in reverse order, with a repeat and a missing id
+      final long[] ids = new long[(numSketches / 3) + 2];
+      final Union expected = new Union(lgK);
+      int numIds = 0;
+      for (int i = numSketches - 1; i >= 0; i -= 3) {
+        ids[numIds++] = 1000L * i;
+        expected.update(sketches[i]);
+      }
+      ids[numIds++] = ids[0];
+      ids[numIds++] = 7;
+      final Union union = store.unionAll(ids, lgK);
+      assertEquals(union.getEstimate(), expected.getEstimate());
+      assertEquals(union.getResult().getEstimate(), expected.getResult().getEstimate());
+    }
+    file.delete();
+  }
+
+  @Test
+  public void checkAppendReplacesAndIncompleteRecord() throws IOException {
+    final File file = tempFile();
+    final HllSketch sk1 = new HllSketch(12);
+    final HllSketch sk2 = new HllSketch(12);
+    for (int i = 0; i < 100000; i++) { sk2.update(i); }
+    sk1.update(1);
+    try (HllSketchStoreWriter writer = new HllSketchStoreWriter(file)) {
+      writer.append(5, sk1);
+    }
+    try (HllSketchStoreWriter writer = new HllSketchStoreWriter(file)) {
+      writer.append(6, sk1);
+      writer.append(5, sk2);
+      writer.flush();
+    }
+    try (HllSketchStore store = HllSketchStore.open(file)) {
+      assertEquals(store.getNumSketches(), 2);
+      assertEquals(store.wrap(5).getEstimate(), sk2.getEstimate());
+      assertEquals(store.wrap(6).getEstimate(), sk1.getEstimate());
+    }
+    //cut the last record short, as an interrupted append would
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 9);
+    }
+    try (HllSketchStore store = HllSketchStore.open(file)) {
+      assertEquals(store.getNumSketches(), 2);
+      assertEquals(store.wrap(5).getEstimate(), sk1.getEstimate());
+    }
+    file.delete();
+  }
+
+  @Test
+  public void checkAppendAfterIncompleteRecord() throws IOException {
+    final File file = tempFile();
+    final HllSketch sk1 = new HllSketch(12);
+    final HllSketch sk2 = new HllSketch(12);
+    final HllSketch sk3 = new HllSketch(12);
+    for (int i = 0; i < 1000; i++) { sk1.update(i); }
+    for (int i = 0; i < 100000; i++) { sk2.update(-i); }
+    sk3.update(3);
+    try (HllSketchStoreWriter writer = new HllSketchStoreWriter(file)) {
+      writer.append(1, sk1);
+      writer.append(2, sk2);
+    }
+    final long completeBytes;
+    try (HllSketchStore store = HllSketchStore.open(file)) {
+      completeBytes = store.getFileBytes();
+    }
+    //cut the last record short, as an interrupted append would
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(completeBytes - 9);
+    }
+    try (HllSketchStoreWriter writer = new HllSketchStoreWriter(file)) {
+      writer.append(3, sk3);
+    }
+    try (HllSketchStore store = HllSketchStore.open(file)) {
+      assertEquals(store.getNumSketches(), 2);
+      assertTrue(store.contains(1));
+      assertFalse(store.contains(2));
+      assertTrue(store.contains(3));
+      assertEquals(store.wrap(1).getEstimate(), sk1.getEstimate());
+      assertEquals(store.wrap(3).getEstimate(), sk3.getEstimate());
+    }
+    //a torn record header is also removed
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() + 5);
+    }
+    try (HllSketchStoreWriter writer = new HllSketchStoreWriter(file)) {
+      writer.append(2, sk2);
+    }
+    try (HllSketchStore store = HllSketchStore.open(file)) {
+      assertEquals(store.getNumSketches(), 3);
+      assertEquals(store.wrap(2).getEstimate(), sk2.getEstimate());
+      assertEquals(store.wrap(3).getEstimate(), sk3.getEstimate());
+    }
+    file.delete();
+  }
+
+  @Test
+  public void checkNotAStoreFile() throws IOException {
+    final File file = tempFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeLong(123456789L);
+    }
+    try {
+      HllSketchStore.open(file);
+      fail();
+    } catch (SketchesArgumentException e) { } //OK
+    try {
+      new HllSketchStoreWriter(file);
+      fail();
+    } catch (SketchesArgumentException e) { } //OK
+    file.delete();
+    //an empty file is not a store until a writer has opened it
+    final File empty = tempFile();
+    try {
+      HllSketchStore.open(empty);
+      fail();
+    } catch (SketchesArgumentException e) { } //OK
+    new HllSketchStoreWriter(empty).close();
+    try (HllSketchStore store = HllSketchStore.open(empty)) {
+      assertEquals(store.getNumSketches(), 0);
+      assertEquals(store.unionAll(new long[] {1, 2}, 12).getEstimate(), 0.0);
+    }
+    empty.delete();
+  }
+
+  private static File tempFile() throws IOException {
+    final File file = File.createTempFile("HllSketchStoreTest", ".bin");
+    file.deleteOnExit();
+    return file;
+  }
+
+}
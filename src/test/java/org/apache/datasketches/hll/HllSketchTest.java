@@ -19,6 +19,7 @@
 
 package org.apache.datasketches.hll;
 
+import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 import static org.apache.datasketches.hll.HllSketch.getMaxUpdatableSerializationBytes;
 import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
 import static org.apache.datasketches.hll.HllUtil.LG_INIT_LIST_SIZE;
@@ -35,7 +36,11 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
 import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
 import org.testng.annotations.Test;
@@ -438,6 +443,86 @@ public class HllSketchTest {
     sk2 = HllSketch.heapify(Memory.wrap(arr));
   }
 
+  @Test
+  public void checkBatchUpdateMatchesItemUpdates() {
+    final int lgK = 10;
+    final int[] ns = {0, 1, 5, 100, 1000, 5000, 100000};
+    for (TgtHllType type : new TgtHllType[] {HLL_4, HLL_6, HLL_8}) {
+      for (int n : ns) {
+        final long[] data = new long[n + 3];
+        for (int i = 0; i < data.length; i++) { data[i] = i * 31L; }
+        final HllSketch itemSk = new HllSketch(lgK, type);
+        for (int i = 3; i < data.length; i++) { itemSk.update(data[i]); }
+
+        final HllSketch heapSk = new HllSketch(lgK, type);
+        heapSk.update(data, 3, n);
+        assertEquals(heapSk.toCompactByteArray(), itemSk.toCompactByteArray());
+
+        final int bytes = getMaxUpdatableSerializationBytes(lgK, type);
+        final HllSketch directSk = new HllSketch(lgK, type, WritableMemory.allocate(bytes));
+        directSk.update(data, 3, n);
+        assertEquals(directSk.toCompactByteArray(), itemSk.toCompactByteArray());
+
+        //in several batches and through buffers
+        final HllSketch bufferSk = new HllSketch(lgK, type);
+        final ByteBuffer byteBuf = ByteBuffer.allocateDirect(data.length * Long.BYTES);
+        byteBuf.asLongBuffer().put(data);
+        final LongBuffer longBuf = byteBuf.asLongBuffer();
+        longBuf.position(3);
+        longBuf.limit(3 + (n / 2));
+        bufferSk.update(longBuf);
+        assertEquals(longBuf.position(), 3 + (n / 2));
+        bufferSk.update(LongBuffer.wrap(data, 3 + (n / 2), n - (n / 2)));
+        assertEquals(bufferSk.toCompactByteArray(), itemSk.toCompactByteArray());
+      }
+    }
+  }
+
+  @Test
+  public void checkBatchUpdateOfUnion() {
+    final long[] data = new long[10000];
+    for (int i = 0; i < data.length; i++) { data[i] = i; }
+    final Union union = new Union(12);
+    union.update(data, 0, data.length);
+    final HllSketch sketch = new HllSketch(12, HLL_8);
+    sketch.update(data, 0, data.length);
+    assertEquals(union.getEstimate(), sketch.getEstimate(), data.length * 0.05);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBatchUpdateBounds() {
+    new HllSketch(10).update(new long[10], 5, 6);
+  }
+
+  @Test
+  public void checkUpdateWithHash() {
+    final int n = 50000;
+    final long[] hashes = new long[n];
+    final long[] hashOut = new long[2];
+    for (TgtHllType type : new TgtHllType[] {HLL_4, HLL_6, HLL_8}) {
+      final HllSketch itemSk = new HllSketch(12, type);
+      final HllSketch hash128Sk = new HllSketch(12, type);
+      final HllSketch hash64Sk = new HllSketch(12, type);
+      final HllSketch batchSk = new HllSketch(12, type);
+      for (int i = 0; i < n; i++) {
+        itemSk.update(i);
+        MurmurHash3.hash(i, DEFAULT_UPDATE_SEED, hashOut);
+        hash128Sk.updateWithHash(hashOut[0], hashOut[1]);
+        hashes[i] = hashOut[1];
+        hash64Sk.updateWithHash(hashes[i]);
+      }
+      batchSk.updateWithHash(hashes, 0, n);
+      assertEquals(hash128Sk.toCompactByteArray(), itemSk.toCompactByteArray());
+      assertEquals(batchSk.toCompactByteArray(), hash64Sk.toCompactByteArray());
+      assertEquals(hash64Sk.getEstimate(), n, n * 0.05);
+
+      final Union union = new Union(12);
+      union.updateWithHash(hashes, 0, n);
+      assertEquals(union.getResult(HLL_8).getCompositeEstimate(), hash64Sk.getCompositeEstimate(),
+          n * 1e-9);
+    }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.Random;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class HllSlidingWindowTest {
+
+  @Test
+  public void checkAgainstUnionOfBuckets() {
+    for (int numBuckets : new int[] {1, 2, 7, 16, 60}) {
+      checkAgainstUnionOfBuckets(numBuckets);
+    }
+  }
+
+  private static void checkAgainstUnionOfBuckets(final int numBuckets) {
+    final int lgK = 8;
+    final long width = 1000;
+    final HllSlidingWindow window = new HllSlidingWindow(lgK, numBuckets, width);
+    //the reference keeps every bucket as its own sketch
+    final HllSketch[] buckets = new HllSketch[400];
+    for (int i = 0; i < buckets.length; i++) { buckets[i] = new HllSketch(lgK, HLL_8); }
+    final Random rand = new Random(numBuckets);
+    long time = -5 * width; //negative times also work
+    int datum = 0;
+    for (int step = 0; step < 3000; step++) {
+      //mostly small steps, sometimes a gap longer than the window
+      time += (rand.nextInt(50) == 0) ? (numBuckets + 3) * width : rand.nextInt(300);
+      final int bucket = (int) Math.floorDiv(time, width) + 5;
+      if (bucket >= buckets.length) { break; }
+      final int numItems = rand.nextInt(40);
+      for (int i = 0; i < numItems; i++) {
+        //items repeat across nearby buckets
+        final long item = datum + rand.nextInt(100);
+        window.update(time, item);
+        buckets[bucket].update(item);
+      }
+      datum += 20;
+      final int windowBuckets = 1 + rand.nextInt(numBuckets);
+      final Union expected = new Union(lgK);
+      for (int b = Math.max(0, (bucket - windowBuckets) + 1); b <= bucket; b++) {
+        expected.update(buckets[b]);
+      }
+      //the registers are the same, but the HIP estimate depends on the order of the coupons
+      final double est = expected.getEstimate();
+      assertEquals(window.getEstimate(time, windowBuckets), est, est * 0.2);
+      assertEquals(window.getResult(time, windowBuckets, HLL_8).getCompositeEstimate(),
+          expected.getResult(HLL_8).getCompositeEstimate());
+    }
+  }
+
+  @Test
+  public void checkRotateAndReset() {
+    final HllSlidingWindow window = new HllSlidingWindow(12, 4, 10);
+    assertEquals(window.getLgConfigK(), 12);
+    assertEquals(window.getNumBuckets(), 4);
+    assertEquals(window.getBucketWidth(), 10);
+    for (int t = 0; t < 40; t++) {
+      for (int i = 0; i < 100; i++) { window.update(t, (t * 100L) + i); }
+    }
+    assertEquals(window.getEstimate(39, 1), 1000, 1000 * 0.05);
+    assertEquals(window.getEstimate(39, 4), 4000, 4000 * 0.05);
+    //an earlier time applies to the current bucket
+    window.update(5, "late");
+    assertEquals(window.getEstimate(5, 1), 1001, 1001 * 0.05);
+    //two buckets later the oldest two have expired
+    assertEquals(window.getEstimate(59, 4), 2000, 2000 * 0.05);
+    window.advance(100);
+    assertEquals(window.getEstimate(100, 4), 0.0);
+    window.update(101, new byte[] {1, 2, 3});
+    assertEquals(window.getEstimate(101, 4), 1.0, 1E-6);
+    window.reset();
+    assertEquals(window.getEstimate(0, 4), 0.0);
+  }
+
+  @Test
+  public void checkArguments() {
+    try {
+      new HllSlidingWindow(12, 0, 10);
+      fail();
+    } catch (SketchesArgumentException e) { } //OK
+    try {
+      new HllSlidingWindow(12, 4, 0);
+      fail();
+    } catch (SketchesArgumentException e) { } //OK
+    final HllSlidingWindow window = new HllSlidingWindow(12, 4, 10);
+    try {
+      window.getEstimate(0, 5);
+      fail();
+    } catch (SketchesArgumentException e) { } //OK
+    try {
+      window.getEstimate(0, 0);
+      fail();
+    } catch (SketchesArgumentException e) { } //OK
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class HllUnionKernelsTest {
+
+  @Test
+  public void checkMaxBytes() {
+    final Random rand = new Random(1);
+    for (int t = 0; t < 10000; t++) {
+      final long a = rand.nextLong() & 0X3F3F3F3F3F3F3F3FL;
+      final long b = rand.nextLong() & 0X3F3F3F3F3F3F3F3FL;
+      final long max = HllUnionKernels.maxBytes(a, b);
+      for (int shift = 0; shift < 64; shift += 8) {
+        final int va = (int) (a >>> shift) & 0XFF;
+        final int vb = (int) (b >>> shift) & 0XFF;
+        assertEquals((int) (max >>> shift) & 0XFF, Math.max(va, vb));
+      }
+    }
+  }
+
+  @Test
+  public void checkSpread6() {
+    final Random rand = new Random(2);
+    for (int t = 0; t < 10000; t++) {
+      final long packed = rand.nextLong() & 0XFFFF_FFFF_FFFFL;
+      final long spread = HllUnionKernels.spread6(packed);
+      for (int i = 0; i < 8; i++) {
+        assertEquals((int) (spread >>> (8 * i)) & 0XFF, (int) (packed >>> (6 * i)) & 0X3F);
+      }
+    }
+  }
+
+  @Test
+  public void checkUnionMatchesDirectUpdates() {
+    for (TgtHllType type : new TgtHllType[] {HLL_4, HLL_6, HLL_8}) {
+      for (boolean srcDirect : new boolean[] {false, true}) {
+        for (boolean unionDirect : new boolean[] {false, true}) {
+          checkUnion(type, srcDirect, unionDirect);
+        }
+      }
+    }
+  }
+
+  private static void checkUnion(final TgtHllType type, final boolean srcDirect,
+      final boolean unionDirect) {
+    final int lgMaxK = 10;
+    final Union union = unionDirect
+        ? new Union(lgMaxK, WritableMemory.allocate(Union.getMaxSerializationBytes(lgMaxK)))
+        : new Union(lgMaxK);
+    final HllSketch reference = new HllSketch(lgMaxK, HLL_8);
+    //same lgK, then folded from a larger lgK
+    final int[] lgKs = {10, 12, 10};
+    long v = 0;
+    for (int lgK : lgKs) {
+      final HllSketch source = srcDirect
+          ? new HllSketch(lgK, type,
+              WritableMemory.allocate(HllSketch.getMaxUpdatableSerializationBytes(lgK, type)))
+          : new HllSketch(lgK, type);
+      for (int i = 0; i < 20000; i++, v++) {
+        source.update(v);
+        reference.update(v);
+      }
+      union.update(source);
+    }
+    final HllSketch result = union.getResult(HLL_8);
+    final AbstractHllArray resArr = (AbstractHllArray) result.hllSketchImpl;
+    final AbstractHllArray refArr = (AbstractHllArray) reference.hllSketchImpl;
+    final String msg = type + ", srcDirect: " + srcDirect + ", unionDirect: " + unionDirect;
+    for (int i = 0; i < (1 << lgMaxK); i++) {
+      assertEquals(resArr.getSlotValue(i), refArr.getSlotValue(i), msg);
+    }
+    assertEquals(resArr.getKxQ0(), refArr.getKxQ0(), 1e-9, msg);
+    assertEquals(resArr.getKxQ1(), refArr.getKxQ1(), 1e-9, msg);
+    assertEquals(result.getCompositeEstimate(), reference.getCompositeEstimate(), 1e-6, msg);
+  }
+
+}
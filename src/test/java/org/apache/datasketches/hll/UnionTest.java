@@ -495,6 +495,54 @@ public class UnionTest {
    return sketch;
   }
 
+  @Test
+  public void checkBufferedSparseSources() {
+    int lgK = 12;
+    Union heapUnion = newUnion(lgK);
+    Union memUnion = new Union(lgK, WritableMemory.allocate(Union.getMaxSerializationBytes(lgK)));
+    HllSketch dense = new HllSketch(lgK, HLL_8);
+    for (int i = 0; i < 10000; i++) { dense.update(i); }
+    heapUnion.update(dense);
+    memUnion.update(dense);
+    assertEquals(heapUnion.getCurMode(), CurMode.HLL);
+    //many small overlapping LIST and SET mode sources, more coupons than fit in one batch
+    int key = 0;
+    for (int s = 0; s < 3000; s++) {
+      int n = ((s % 10) == 0) ? 100 : 5;
+      HllSketch sk = new HllSketch(lgK, HLL_4);
+      for (int i = 0; i < n; i++) { sk.update(key++ % 20000); }
+      assertTrue(sk.getCurMode() != CurMode.HLL);
+      heapUnion.update(sk);
+      memUnion.update(sk);
+    }
+    //a SET mode source larger than the buffer bypasses it
+    HllSketch bigSet = new HllSketch(21, HLL_8);
+    for (int i = 0; i < (2 * Union.PENDING_COUPONS_SIZE); i++) { bigSet.update(-i); }
+    assertEquals(bigSet.getCurMode(), CurMode.SET);
+    heapUnion.update(bigSet);
+    memUnion.update(bigSet);
+    heapUnion.update(new HllSketch(lgK));
+    assertFalse(heapUnion.isEmpty());
+
+    //same registers, the HIP estimate depends on the order of the updates
+    HllSketch r1 = heapUnion.getResult(HLL_8);
+    HllSketch r2 = memUnion.getResult(HLL_8);
+    assertEquals(r1.getCompositeEstimate(), r2.getCompositeEstimate());
+    PairIterator itr1 = r1.iterator();
+    PairIterator itr2 = r2.iterator();
+    while (itr1.nextAll()) {
+      assertTrue(itr2.nextAll());
+      assertEquals(itr1.getValue(), itr2.getValue());
+    }
+    assertEquals(heapUnion.getEstimate(), r2.getEstimate(), r2.getEstimate() * 0.01);
+
+    HllSketch one = new HllSketch(lgK);
+    one.update(-1);
+    heapUnion.update(one); //pending
+    heapUnion.reset();
+    assertTrue(heapUnion.isEmpty());
+  }
+
   private static Union newUnion(int lgK) {
     return new Union(lgK);
   }
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.testng.annotations.Test;
+
+public class ConcurrentKllFloatsSketchTest {
+
+  @Test
+  public void empty() {
+    final ConcurrentKllFloatsSketch sketch = new ConcurrentKllFloatsSketch();
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getK(), KllFloatsSketch.DEFAULT_K);
+    assertEquals(sketch.getLocalBufferSize(), ConcurrentKllFloatsSketch.DEFAULT_LOCAL_BUFFER_SIZE);
+    assertTrue(Float.isNaN(sketch.getQuantile(0.5)));
+    assertTrue(Float.isNaN(sketch.getMinValue()));
+    assertNull(sketch.getQuantiles(new double[] {0.5}));
+    assertTrue(sketch.getResult().isEmpty());
+  }
+
+  @Test
+  public void singleThread() throws InterruptedException {
+    final ExecutorService propagator = Executors.newSingleThreadExecutor();
+    final ConcurrentKllFloatsSketch sketch = new ConcurrentKllFloatsSketch(200, 100, propagator);
+    for (int i = 0; i < 250; i++) { sketch.update(i); }
+    sketch.update(Float.NaN);
+    sketch.awaitPropagation();
+    assertEquals(sketch.getN(), 200); // the last 50 items are still in the local buffer
+    sketch.flush();
+    sketch.awaitPropagation();
+    assertEquals(sketch.getN(), 250);
+    assertEquals(sketch.getMinValue(), 0f);
+    assertEquals(sketch.getMaxValue(), 249f);
+    assertEquals(sketch.getQuantile(0.5), 125f, 5f);
+    assertEquals(sketch.getRank(125f), 0.5, 0.02);
+    final KllFloatsSketch result = sketch.getResult();
+    assertEquals(result.getN(), 250);
+    assertEquals(result.getQuantile(0.5), sketch.getQuantile(0.5));
+    propagator.shutdown();
+  }
+
+  @Test
+  public void sortedViewIsReusedUntilPropagation() throws InterruptedException {
+    final ExecutorService propagator = Executors.newSingleThreadExecutor();
+    final ConcurrentKllFloatsSketch sketch = new ConcurrentKllFloatsSketch(200, 10, propagator);
+    for (int i = 0; i < 10; i++) { sketch.update(i); }
+    sketch.awaitPropagation();
+    final KllFloatsSortedView view = sketch.getSortedView();
+    assertSame(sketch.getSortedView(), view);
+    for (int i = 0; i < 10; i++) { sketch.update(i); }
+    sketch.awaitPropagation();
+    assertEquals(sketch.getSortedView().getN(), 20);
+    assertEquals(view.getN(), 10);
+    propagator.shutdown();
+  }
+
+  @Test
+  public void concurrentWritersAndReaders() throws Exception {
+    final int numWriters = 4;
+    final int numPerWriter = 200000;
+    final ExecutorService propagator = Executors.newFixedThreadPool(2);
+    final ConcurrentKllFloatsSketch sketch = new ConcurrentKllFloatsSketch(200, 256, propagator);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread[] writers = new Thread[numWriters];
+    for (int w = 0; w < numWriters; w++) {
+      final int writer = w;
+      writers[w] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < numPerWriter; i++) {
+            sketch.update((i * numWriters) + writer);
+          }
+          sketch.flush();
+        }
+      });
+    }
+    final Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          long prevN = 0;
+          while (prevN < ((long) numWriters * numPerWriter)) {
+            final KllFloatsSortedView view = sketch.getSortedView();
+            assertTrue(view.getN() >= prevN);
+            if (!view.isEmpty()) {
+              assertTrue(view.getQuantile(0.5) <= view.getMaxValue());
+            }
+            prevN = view.getN();
+            Thread.yield();
+          }
+        } catch (final Throwable t) {
+          failure.set(t);
+        }
+      }
+    });
+    reader.start();
+    for (final Thread writer : writers) { writer.start(); }
+    for (final Thread writer : writers) { writer.join(); }
+    sketch.awaitPropagation();
+    reader.join(10000);
+    propagator.shutdown();
+    if (failure.get() != null) { throw new AssertionError(failure.get()); }
+
+    final long n = (long) numWriters * numPerWriter;
+    assertEquals(sketch.getN(), n);
+    assertEquals(sketch.getMinValue(), 0f);
+    assertEquals(sketch.getMaxValue(), (float) (n - 1));
+    final double eps = sketch.getResult().getNormalizedRankError(false);
+    for (int i = 1; i < 10; i++) {
+      assertEquals(sketch.getRank((n * i) / 10), i / 10.0, eps);
+    }
+  }
+
+  @Test
+  public void rejectedPropagationRunsOnWriter() throws InterruptedException {
+    final ExecutorService propagator = Executors.newSingleThreadExecutor();
+    propagator.shutdown();
+    final ConcurrentKllFloatsSketch sketch = new ConcurrentKllFloatsSketch(200, 10, propagator);
+    for (int i = 0; i < 1000; i++) { sketch.update(i); }
+    sketch.awaitPropagation();
+    assertEquals(sketch.getN(), 1000);
+    assertEquals(sketch.getMaxValue(), 999f);
+  }
+
+  @Test
+  public void pendingBuffersAreCapped() {
+    // an executor that never runs the propagation task
+    final List<Runnable> tasks = new ArrayList<>();
+    final ConcurrentKllFloatsSketch sketch = new ConcurrentKllFloatsSketch(200, 10, tasks::add);
+    final int numBuffers = ConcurrentKllFloatsSketch.MAX_PENDING_BUFFERS + 5;
+    for (int i = 0; i < (numBuffers * 10); i++) { sketch.update(i); }
+    assertEquals(tasks.size(), 1);
+    // the buffers beyond the cap were propagated by the writer
+    assertEquals(sketch.getN(), 50);
+    // each task propagates a few buffers and then hands the rest to a new task
+    for (int i = 0; i < tasks.size(); i++) { tasks.get(i).run(); }
+    assertEquals(tasks.size(),
+        (ConcurrentKllFloatsSketch.MAX_PENDING_BUFFERS / ConcurrentKllFloatsSketch.MAX_BUFFERS_PER_RUN));
+    assertEquals(sketch.getN(), numBuffers * 10);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void badLocalBufferSize() {
+    new ConcurrentKllFloatsSketch(200, 0, ForkJoinPool.commonPool());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void nullExecutor() {
+    new ConcurrentKllFloatsSketch(200, 10, null);
+  }
+
+}
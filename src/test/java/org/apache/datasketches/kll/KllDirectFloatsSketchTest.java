@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.SplittableRandom;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesReadOnlyException;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableDirectHandle;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class KllDirectFloatsSketchTest {
+
+  @Test
+  public void emptyDirect() {
+    final KllFloatsSketch sketch = newDirect(200, 1000);
+    assertTrue(sketch.isDirect());
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getN(), 0);
+    assertEquals(sketch.getNumRetained(), 0);
+    assertTrue(Float.isNaN(sketch.getMinValue()));
+    assertTrue(Float.isNaN(sketch.getMaxValue()));
+    assertTrue(Float.isNaN(sketch.getQuantile(0.5)));
+    assertEquals(sketch.toByteArray().length, 8);
+  }
+
+  @Test
+  public void updateAndQueryMatchesSerializedImage() {
+    final KllFloatsSketch sketch = newDirect(200, 1000);
+    final int n = 100000;
+    for (int i = 1; i <= n; i++) {
+      sketch.update(i);
+    }
+    assertEquals(sketch.getN(), n);
+    assertEquals(sketch.getMinValue(), 1f);
+    assertEquals(sketch.getMaxValue(), (float) n);
+    assertTrue(sketch.isEstimationMode());
+    assertEquals(sketch.getQuantile(0.5), n / 2, n * 0.0133 * 2);
+
+    final KllFloatsSketch heap = KllFloatsSketch.heapify(Memory.wrap(sketch.toByteArray()));
+    final KllFloatsSketch heapUpd =
+        KllFloatsSketch.heapify(Memory.wrap(sketch.toUpdatableByteArray()));
+    final KllFloatsSketch wrapped = KllFloatsSketch.wrap(Memory.wrap(sketch.toByteArray()));
+    assertSameResults(heap, sketch);
+    assertSameResults(heapUpd, sketch);
+    assertSameResults(wrapped, sketch);
+  }
+
+  @Test
+  public void growsUsingMemoryRequestServer() {
+    final int k = 20;
+    final WritableMemory wmem =
+        WritableMemory.allocate((int) KllPreambleUtil.getUpdatableSizeBytes(1, k, Float.BYTES));
+    final KllFloatsSketch sketch =
+        KllFloatsSketch.newDirectInstance(k, wmem, new DefaultMemoryRequestServer());
+    final KllFloatsSketch heap = new KllFloatsSketch(k);
+    for (int i = 0; i < 1000; i++) {
+      sketch.update(i);
+      heap.update(i);
+    }
+    assertFalse(sketch.isSameResource(wmem));
+    assertEquals(sketch.getN(), heap.getN());
+    assertEquals(sketch.getNumRetained(), heap.getNumRetained());
+    assertEquals(sketch.getNumLevels(), heap.getNumLevels());
+    assertEquals(sketch.getMinValue(), 0f);
+    assertEquals(sketch.getMaxValue(), 999f);
+  }
+
+  @Test
+  public void offHeap() {
+    final int k = 200;
+    try (WritableDirectHandle h = WritableMemory.allocateDirect(
+        KllFloatsSketch.getMaxUpdatableSerializedSizeBytes(k, 1 << 20))) {
+      final WritableMemory wmem = h.get();
+      final KllFloatsSketch sketch = KllFloatsSketch.newDirectInstance(k, wmem, null);
+      for (int i = 0; i < (1 << 20); i++) {
+        sketch.update(i);
+      }
+      assertTrue(sketch.isSameResource(wmem));
+      final KllFloatsSketch rewrapped = KllFloatsSketch.writableWrap(wmem, null);
+      assertSameResults(rewrapped, sketch);
+      final KllFloatsSketch readOnly = KllFloatsSketch.wrap(wmem);
+      assertSameResults(readOnly, sketch);
+    }
+  }
+
+  @Test
+  public void mergeIntoDirect() {
+    final KllFloatsSketch sketch1 = newDirect(200, 1000);
+    final KllFloatsSketch sketch2 = new KllFloatsSketch(200);
+    final int n = 10000;
+    for (int i = 0; i < n; i++) {
+      sketch1.update(i);
+      sketch2.update((2 * n) - i - 1);
+    }
+    sketch1.merge(sketch2);
+    assertEquals(sketch1.getN(), 2L * n);
+    assertEquals(sketch1.getMinValue(), 0f);
+    assertEquals(sketch1.getMaxValue(), (2f * n) - 1);
+    assertEquals(sketch1.getQuantile(0.5), n, n * 0.02);
+
+    final KllFloatsSketch heap = new KllFloatsSketch(200);
+    heap.merge(sketch1);
+    assertEquals(heap.getN(), 2L * n);
+    assertEquals(heap.getMinValue(), 0f);
+    assertEquals(heap.getMaxValue(), (2f * n) - 1);
+  }
+
+  @Test
+  public void wrapCompactSingleItem() {
+    final KllFloatsSketch heap = new KllFloatsSketch();
+    heap.update(5f);
+    final KllFloatsSketch sketch = KllFloatsSketch.wrap(Memory.wrap(heap.toByteArray()));
+    assertEquals(sketch.getN(), 1);
+    assertEquals(sketch.getNumRetained(), 1);
+    assertEquals(sketch.getMinValue(), 5f);
+    assertEquals(sketch.getMaxValue(), 5f);
+    assertEquals(sketch.getQuantile(0.5), 5f);
+    assertEquals(sketch.getRank(6f), 1.0);
+  }
+
+  @Test
+  public void wrapCompactEmpty() {
+    final KllFloatsSketch sketch =
+        KllFloatsSketch.wrap(Memory.wrap(new KllFloatsSketch().toByteArray()));
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getNumRetained(), 0);
+    assertTrue(Float.isNaN(sketch.getMinValue()));
+    assertTrue(Float.isNaN(sketch.getMaxValue()));
+  }
+
+  @Test
+  public void readOnlyWrapDoesNotSortTheMemory() {
+    final KllFloatsSketch heap = new KllFloatsSketch();
+    for (int i = 100; i > 0; i--) {
+      heap.update(i);
+    }
+    final byte[] bytes = heap.toByteArray();
+    final KllFloatsSketch sketch = KllFloatsSketch.wrap(Memory.wrap(bytes));
+    assertEquals(sketch.getQuantile(0.0), 1f);
+    assertEquals(sketch.getQuantile(1.0), 100f);
+    assertEquals(sketch.getQuantile(0.5), 51f);
+    assertEquals(bytes, heap.toByteArray());
+  }
+
+  @Test
+  public void readOnlyThrows() {
+    final KllFloatsSketch heap = new KllFloatsSketch();
+    heap.update(1f);
+    heap.update(2f);
+    final KllFloatsSketch sketch = KllFloatsSketch.wrap(Memory.wrap(heap.toByteArray()));
+    try {
+      sketch.update(3f);
+      fail();
+    } catch (final SketchesReadOnlyException e) {
+      // expected
+    }
+    try {
+      sketch.merge(heap);
+      fail();
+    } catch (final SketchesReadOnlyException e) {
+      assertTrue(e.getMessage().contains("merge()"));
+    }
+    // a buffer without an array would be read in chunks, its position must not move
+    final FloatBuffer values = ByteBuffer.allocateDirect(3 * Float.BYTES).asFloatBuffer();
+    try {
+      sketch.update(values);
+      fail();
+    } catch (final SketchesReadOnlyException e) {
+      // expected
+    }
+    assertEquals(values.position(), 0);
+    assertEquals(sketch.getN(), 2);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void writableWrapCompactImage() {
+    final KllFloatsSketch heap = new KllFloatsSketch();
+    heap.update(1f);
+    heap.update(2f);
+    KllFloatsSketch.writableWrap(WritableMemory.wrap(heap.toByteArray()), null);
+  }
+
+  @Test
+  public void compactsInPlace() {
+    final int k = 8;
+    final WritableMemory wmem = WritableMemory.allocate(
+        (int) KllFloatsSketch.getMaxUpdatableSerializedSizeBytes(k, 1 << 20));
+    final KllFloatsSketch sketch = KllFloatsSketch.newDirectInstance(k, wmem, null);
+    final KllFloatsSketch other = newDirect(k, 100);
+    final SplittableRandom random = new SplittableRandom(1);
+    for (int i = 0; i < 100000; i++) {
+      sketch.update((float) random.nextDouble());
+      other.update((float) random.nextDouble());
+    }
+    sketch.merge(other);
+    assertTrue(sketch.isSameResource(wmem));
+    assertEquals(sketch.getN(), 200000);
+    final int numLevels = sketch.getNumLevels();
+    assertEquals(KllHelper.sumTheSampleWeights(numLevels, sketch.getLevels()), sketch.getN());
+    // every level above level zero must still be sorted
+    for (int level = 1; level < numLevels; level++) {
+      for (int i = sketch.getLevelsArrayAt(level) + 1; i < sketch.getLevelsArrayAt(level + 1); i++) {
+        assertTrue(sketch.getItemsArrayAt(i - 1) <= sketch.getItemsArrayAt(i));
+      }
+    }
+    assertEquals(sketch.getQuantile(0.5), 0.5, 0.1);
+    assertSameResults(KllFloatsSketch.heapify(wmem), sketch);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void destinationTooSmall() {
+    KllFloatsSketch.newDirectInstance(200, WritableMemory.allocate(100), null);
+  }
+
+  private static KllFloatsSketch newDirect(final int k, final int bytes) {
+    return KllFloatsSketch.newDirectInstance(k, WritableMemory.allocate(bytes), null);
+  }
+
+  private static void assertSameResults(final KllFloatsSketch actual,
+      final KllFloatsSketch expected) {
+    assertEquals(actual.getN(), expected.getN());
+    assertEquals(actual.getNumRetained(), expected.getNumRetained());
+    assertEquals(actual.getMinValue(), expected.getMinValue());
+    assertEquals(actual.getMaxValue(), expected.getMaxValue());
+    assertEquals(actual.getNormalizedRankError(false), expected.getNormalizedRankError(false));
+    final double[] fractions = {0.0, 0.1, 0.25, 0.5, 0.75, 0.9, 1.0};
+    assertEquals(actual.getQuantiles(fractions), expected.getQuantiles(fractions));
+    final float[] splitPoints = {expected.getQuantile(0.3), expected.getQuantile(0.6)};
+    assertEquals(actual.getCDF(splitPoints), expected.getCDF(splitPoints));
+    assertEquals(actual.getRank(splitPoints[1]), expected.getRank(splitPoints[1]));
+  }
+
+  @Test
+  public void bulkUpdate() {
+    final int n = 5000;
+    final float[] values = new float[n];
+    for (int i = 0; i < n; i++) { values[i] = i; }
+    final KllFloatsSketch heap = new KllFloatsSketch();
+    heap.update(values, 0, n);
+    final KllFloatsSketch sketch = newDirect(200, 1000);
+    sketch.update(values, 0, n);
+    assertEquals(sketch.getN(), n);
+    assertEquals(sketch.getNumRetained(), heap.getNumRetained());
+    assertEquals(sketch.getMinValue(), 0f);
+    assertEquals(sketch.getMaxValue(), (float) (n - 1));
+  }
+
+  @Test(expectedExceptions = SketchesReadOnlyException.class)
+  public void readOnlyBulkUpdateThrows() {
+    final KllFloatsSketch heap = new KllFloatsSketch();
+    heap.update(1f);
+    final KllFloatsSketch sketch = KllFloatsSketch.wrap(Memory.wrap(heap.toByteArray()));
+    sketch.update(new float[] {2f, 3f}, 0, 2);
+  }
+
+}
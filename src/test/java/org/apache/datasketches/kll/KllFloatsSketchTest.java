@@ -26,8 +26,18 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 import org.testng.annotations.Test;
 
 @SuppressWarnings("javadoc")
@@ -55,6 +65,85 @@ public class KllFloatsSketchTest {
     assertNotNull(sketch.toString());
   }
 
+  @Test
+  public void serializeIntoMemoryAtOffset() {
+    final int[] ns = {0, 1, 2, 1000, 100000};
+    for (int n : ns) {
+      final KllFloatsSketch sketch = new KllFloatsSketch();
+      for (int i = 1; i <= n; i++) { sketch.update(i); }
+      final byte[] expected = sketch.toByteArray();
+      final WritableMemory dst = WritableMemory.allocate(expected.length + 16);
+      dst.fill((byte) -1);
+      assertEquals(sketch.toByteArray(dst, 16), expected.length);
+      final byte[] actual = new byte[expected.length];
+      dst.getByteArray(16, actual, 0, actual.length);
+      assertEquals(actual, expected);
+
+      // the direct sketch writes the same image
+      final WritableMemory directMem =
+          WritableMemory.wrap(new byte[KllFloatsSketch.getMaxUpdatableSerializedSizeBytes(200, n)]);
+      final KllFloatsSketch direct = KllFloatsSketch.newDirectInstance(200, directMem, null);
+      direct.merge(sketch);
+      dst.fill((byte) -1);
+      direct.toByteArray(dst, 16);
+      dst.getByteArray(16, actual, 0, actual.length);
+      assertEquals(KllFloatsSketch.heapify(Memory.wrap(actual)).getN(), n);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void serializeIntoMemoryTooSmall() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    for (int i = 0; i < 1000; i++) { sketch.update(i); }
+    sketch.toByteArray(WritableMemory.allocate(sketch.getSerializedSizeBytes()), 1);
+  }
+
+  @Test
+  public void readHeaderFromMemory() {
+    final int[] ns = {0, 1, 2, 1000, 100000};
+    for (int n : ns) {
+      final KllFloatsSketch sketch = new KllFloatsSketch(100);
+      for (int i = 1; i <= n; i++) { sketch.update(i); }
+      final Memory[] images = {
+          Memory.wrap(sketch.toByteArray()),
+          Memory.wrap(sketch.toUpdatableByteArray())
+      };
+      for (Memory mem : images) {
+        assertEquals(KllFloatsSketch.isEmpty(mem), sketch.isEmpty());
+        assertEquals(KllFloatsSketch.getN(mem), sketch.getN());
+        assertEquals(KllFloatsSketch.getK(mem), 100);
+        assertEquals(KllFloatsSketch.getNumLevels(mem), sketch.getNumLevels());
+        assertEquals(KllFloatsSketch.getMinValue(mem), sketch.getMinValue());
+        assertEquals(KllFloatsSketch.getMaxValue(mem), sketch.getMaxValue());
+      }
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void readHeaderFromWrongFamily() {
+    final KllDoublesSketch sketch = new KllDoublesSketch();
+    sketch.update(1);
+    KllFloatsSketch.getN(Memory.wrap(sketch.toByteArray()));
+  }
+
+  @Test
+  public void seededRandomIsReproducible() {
+    final KllFloatsSketch sk1 = new KllFloatsSketch(200, new SplittableRandom(42));
+    final KllFloatsSketch sk2 = new KllFloatsSketch(200, new SplittableRandom(42));
+    final KllFloatsSketch sk3 = new KllFloatsSketch(200, new SplittableRandom(42));
+    final KllFloatsSketch sk4 = new KllFloatsSketch(200, new SplittableRandom(42));
+    for (int i = 0; i < 100000; i++) {
+      sk1.update(i);
+      sk2.update(i);
+      sk3.update(-i);
+      sk4.update(-i);
+    }
+    assertEquals(sk1.toByteArray(), sk2.toByteArray());
+    sk1.merge(sk3);
+    sk2.merge(sk4);
+    assertEquals(sk1.toByteArray(), sk2.toByteArray());
+  }
+
   @Test(expectedExceptions = SketchesArgumentException.class)
   public void getQuantileInvalidArg() {
     final KllFloatsSketch sketch = new KllFloatsSketch();
@@ -421,4 +510,136 @@ public class KllFloatsSketchTest {
     assertEquals(quantiles1[2], 3f);
   }
 
+  @Test
+  public void bulkUpdateMatchesSingleUpdates() {
+    final int n = 10000;
+    final float[] values = new float[n + 10];
+    for (int i = 0; i < values.length; i++) { values[i] = i; }
+    final KllFloatsSketch single = new KllFloatsSketch();
+    for (int i = 5; i < (n + 5); i++) { single.update(values[i]); }
+    final KllFloatsSketch bulk = new KllFloatsSketch();
+    bulk.update(values, 5, 1000);
+    bulk.update(values, 1005, n - 1000);
+    assertEquals(bulk.getN(), single.getN());
+    assertEquals(bulk.getMinValue(), 5f);
+    assertEquals(bulk.getMaxValue(), (float) (n + 4));
+    assertEquals(bulk.getNumRetained(), single.getNumRetained());
+    assertEquals(bulk.getQuantile(0.5), n / 2, n * PMF_EPS_FOR_K_256);
+  }
+
+  @Test
+  public void bulkUpdateIgnoresNaNs() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(new float[] {Float.NaN, Float.NaN}, 0, 2);
+    assertTrue(sketch.isEmpty());
+    sketch.update(new float[] {Float.NaN, 3f, Float.NaN, 1f, 2f}, 0, 5);
+    assertEquals(sketch.getN(), 3);
+    assertEquals(sketch.getMinValue(), 1f);
+    assertEquals(sketch.getMaxValue(), 3f);
+    assertEquals(sketch.getQuantile(0.5), 2f);
+  }
+
+  @Test
+  public void bulkUpdateFromBuffers() {
+    final int n = 3000;
+    final FloatBuffer heapBuf = FloatBuffer.allocate(n);
+    final FloatBuffer directBuf = ByteBuffer.allocateDirect(n * Float.BYTES)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    for (int i = 0; i < n; i++) {
+      heapBuf.put(i);
+      directBuf.put(i);
+    }
+    heapBuf.flip();
+    directBuf.flip();
+    final KllFloatsSketch sketch1 = new KllFloatsSketch();
+    sketch1.update(heapBuf);
+    final KllFloatsSketch sketch2 = new KllFloatsSketch();
+    sketch2.update(directBuf);
+    assertFalse(heapBuf.hasRemaining());
+    assertFalse(directBuf.hasRemaining());
+    assertEquals(sketch1.getN(), n);
+    assertEquals(sketch2.getN(), n);
+    assertEquals(sketch1.getNumRetained(), sketch2.getNumRetained());
+    assertEquals(sketch2.getMinValue(), 0f);
+    assertEquals(sketch2.getMaxValue(), (float) (n - 1));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void bulkUpdateOutOfBounds() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(new float[10], 5, 6);
+  }
+
+  @Test
+  public void mergeAllMatchesSequentialMerge() {
+    final int numSketches = 200;
+    final int n = 1000;
+    final List<KllFloatsSketch> sketches = new ArrayList<>();
+    final KllFloatsSketch expected = new KllFloatsSketch();
+    for (int s = 0; s < numSketches; s++) {
+      final KllFloatsSketch sketch = new KllFloatsSketch((s % 3) == 1 ? 100 : 200);
+      for (int i = 0; i < n; i++) { sketch.update((i * numSketches) + s); }
+      sketches.add(sketch);
+      expected.merge(sketch);
+    }
+    sketches.add(null);
+    sketches.add(new KllFloatsSketch());
+    final KllFloatsSketch merged = KllFloatsSketch.mergeAll(sketches);
+    checkMergeAll(merged, expected, (long) numSketches * n);
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      checkMergeAll(KllFloatsSketch.mergeAll(sketches, pool), expected, (long) numSketches * n);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void mergeAllSmall() {
+    final KllFloatsSketch sketch1 = new KllFloatsSketch();
+    sketch1.update(1f);
+    sketch1.update(3f);
+    final KllFloatsSketch sketch2 = new KllFloatsSketch();
+    sketch2.update(2f);
+    final KllFloatsSketch merged = KllFloatsSketch.mergeAll(Arrays.asList(sketch1, sketch2));
+    assertEquals(merged.getN(), 3);
+    assertEquals(merged.getNumRetained(), 3);
+    assertFalse(merged.isEstimationMode());
+    assertEquals(merged.getMinValue(), 1f);
+    assertEquals(merged.getMaxValue(), 3f);
+    assertEquals(merged.getQuantile(0.5), 2f);
+  }
+
+  @Test
+  public void mergeAllEmpty() {
+    final KllFloatsSketch merged = KllFloatsSketch.mergeAll(new ArrayList<KllFloatsSketch>());
+    assertTrue(merged.isEmpty());
+    assertEquals(merged.getK(), KllFloatsSketch.DEFAULT_K);
+    final KllFloatsSketch merged2 = KllFloatsSketch.mergeAll(
+        Arrays.asList(new KllFloatsSketch(300), new KllFloatsSketch()));
+    assertTrue(merged2.isEmpty());
+    assertEquals(merged2.getK(), 300);
+  }
+
+  private static void checkMergeAll(final KllFloatsSketch merged, final KllFloatsSketch expected,
+      final long n) {
+    assertEquals(merged.getN(), n);
+    assertEquals(merged.getK(), 200);
+    assertEquals(merged.getMinValue(), 0f);
+    assertEquals(merged.getMaxValue(), (float) (n - 1));
+    assertEquals(merged.getNormalizedRankError(false), expected.getNormalizedRankError(false));
+    assertTrue(merged.getNumRetained()
+        <= KllHelper.computeTotalCapacity(200, KllFloatsSketch.DEFAULT_M, merged.getNumLevels()));
+    final double eps = expected.getNormalizedRankError(false);
+    for (int i = 1; i < 10; i++) {
+      assertEquals(merged.getRank((n * i) / 10), i / 10.0, eps);
+    }
+    // the result must still work as a normal sketch
+    merged.update(-1f);
+    merged.merge(expected);
+    assertEquals(merged.getN(), (2 * n) + 1);
+    assertEquals(merged.getMinValue(), -1f);
+    assertEquals(merged.getQuantile(0.5), n / 2, n * eps);
+  }
+
 }
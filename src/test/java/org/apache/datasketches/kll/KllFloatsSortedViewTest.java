@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.testng.annotations.Test;
+
+public class KllFloatsSortedViewTest {
+
+  @Test
+  public void empty() {
+    final KllFloatsSortedView view = new KllFloatsSketch().getSortedView();
+    assertTrue(view.isEmpty());
+    assertEquals(view.getN(), 0);
+    assertEquals(view.getNumRetained(), 0);
+    assertTrue(Float.isNaN(view.getQuantile(0.5)));
+    assertNull(view.getQuantiles(new double[] {0.0, 1.0}));
+    assertTrue(Double.isNaN(view.getRank(0f)));
+    assertNull(view.getCDF(new float[] {0f}));
+    assertNull(view.getPMF(new float[] {0f}));
+  }
+
+  @Test
+  public void sameResultsAsSketch() {
+    final Random rand = new Random(1);
+    for (final int n : new int[] {1, 10, 100, 1000, 100000}) {
+      final KllFloatsSketch sketch = new KllFloatsSketch();
+      for (int i = 0; i < n; i++) {
+        sketch.update(rand.nextInt(n / 2 + 1)); // with duplicates
+      }
+      checkSameResults(sketch.getSortedView(), sketch, n);
+    }
+  }
+
+  @Test
+  public void sameResultsAsReadOnlySketch() {
+    final KllFloatsSketch heap = new KllFloatsSketch();
+    for (int i = 0; i < 10000; i++) { heap.update(i); }
+    final KllFloatsSketch sketch = KllFloatsSketch.wrap(Memory.wrap(heap.toByteArray()));
+    checkSameResults(sketch.getSortedView(), sketch, 10000);
+  }
+
+  @Test
+  public void notAffectedByLaterUpdates() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    for (int i = 1; i <= 100; i++) { sketch.update(i); }
+    final KllFloatsSortedView view = sketch.getSortedView();
+    for (int i = 101; i <= 1000; i++) { sketch.update(i); }
+    assertEquals(view.getN(), 100);
+    assertEquals(view.getMaxValue(), 100f);
+    assertEquals(view.getQuantile(0.5), 51f);
+    assertEquals(view.getRank(51f), 0.5);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void fractionOutOfRange() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(1f);
+    sketch.getSortedView().getQuantile(1.1);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void splitPointsOutOfOrder() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(1f);
+    sketch.getSortedView().getCDF(new float[] {2f, 1f});
+  }
+
+  private static void checkSameResults(final KllFloatsSortedView view,
+      final KllFloatsSketch sketch, final int n) {
+    assertEquals(view.getN(), sketch.getN());
+    assertEquals(view.getNumRetained(), sketch.getNumRetained());
+    assertEquals(view.getMinValue(), sketch.getMinValue());
+    assertEquals(view.getMaxValue(), sketch.getMaxValue());
+    final double[] fractions = {0.0, 0.001, 0.1, 0.25, 0.5, 0.9, 0.99, 0.999, 1.0};
+    assertEquals(view.getQuantiles(fractions), sketch.getQuantiles(fractions));
+    final float[] splitPoints = new float[20];
+    for (int i = 0; i < splitPoints.length; i++) {
+      splitPoints[i] = ((float) i * n) / (2 * splitPoints.length) - 0.5f;
+      assertEquals(view.getRank(splitPoints[i]), sketch.getRank(splitPoints[i]));
+      assertEquals(view.getRank(i), sketch.getRank(i));
+    }
+    assertEquals(view.getCDF(splitPoints), sketch.getCDF(splitPoints));
+    assertEquals(view.getPMF(splitPoints), sketch.getPMF(splitPoints));
+  }
+
+}
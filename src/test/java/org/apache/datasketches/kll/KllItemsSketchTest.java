@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Comparator;
+
+import org.apache.datasketches.ArrayOfStringsSerDe;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class KllItemsSketchTest {
+
+  private static final double PMF_EPS_FOR_K_256 = 0.013; // PMF rank error (epsilon) for k=256
+
+  @Test
+  public void empty() {
+    final KllItemsSketch<String> sketch = new KllItemsSketch<>(Comparator.naturalOrder());
+    sketch.update(null); // this must not change anything
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getN(), 0);
+    assertEquals(sketch.getNumRetained(), 0);
+    assertTrue(Double.isNaN(sketch.getRank("a")));
+    assertNull(sketch.getMinValue());
+    assertNull(sketch.getMaxValue());
+    assertNull(sketch.getQuantile(0.5));
+    assertNull(sketch.getQuantiles(new double[] {0}));
+    assertNull(sketch.getPMF(new String[] {"a"}));
+    assertNotNull(sketch.toString(true, true));
+  }
+
+  @Test
+  public void manyItemsEstimationMode() {
+    final KllItemsSketch<Integer> sketch = new KllItemsSketch<>(Comparator.naturalOrder());
+    final int n = 100000;
+    for (int i = 0; i < n; i++) {
+      sketch.update(n - i - 1);
+    }
+    assertEquals(sketch.getN(), n);
+    assertTrue(sketch.isEstimationMode());
+    for (int i = 0; i < n; i += 100) {
+      assertEquals(sketch.getRank(i), (double) i / n, PMF_EPS_FOR_K_256);
+    }
+    final double[] pmf = sketch.getPMF(new Integer[] {n / 2});
+    assertEquals(pmf[0], 0.5, PMF_EPS_FOR_K_256);
+    assertEquals(pmf[1], 0.5, PMF_EPS_FOR_K_256);
+    assertEquals(sketch.getMinValue(), Integer.valueOf(0));
+    assertEquals(sketch.getMaxValue(), Integer.valueOf(n - 1));
+    assertEquals(sketch.getQuantile(0.5), n / 2, n * PMF_EPS_FOR_K_256);
+    final Integer[] quantiles = sketch.getQuantiles(3);
+    assertEquals(quantiles[0], Integer.valueOf(0));
+    assertEquals(quantiles[2], Integer.valueOf(n - 1));
+    long totalWeight = 0;
+    final KllItemsSketchIterator<Integer> it = sketch.iterator();
+    while (it.next()) {
+      assertTrue((it.getValue() >= 0) && (it.getValue() < n));
+      totalWeight += it.getWeight();
+    }
+    assertEquals(totalWeight, n);
+  }
+
+  @Test
+  public void reverseComparator() {
+    final KllItemsSketch<Integer> sketch =
+        new KllItemsSketch<>(Comparator.<Integer>reverseOrder());
+    for (int i = 0; i < 1000; i++) {
+      sketch.update(i);
+    }
+    assertEquals(sketch.getMinValue(), Integer.valueOf(999));
+    assertEquals(sketch.getMaxValue(), Integer.valueOf(0));
+    assertEquals(sketch.getQuantile(0.1), 900, 1000 * PMF_EPS_FOR_K_256);
+  }
+
+  @Test
+  public void merge() {
+    final KllItemsSketch<Integer> sketch1 = new KllItemsSketch<>(Comparator.naturalOrder());
+    final KllItemsSketch<Integer> sketch2 = new KllItemsSketch<>(128, Comparator.naturalOrder());
+    final int n = 10000;
+    for (int i = 0; i < n; i++) {
+      sketch1.update(i);
+      sketch2.update((2 * n) - i - 1);
+    }
+    sketch1.merge(sketch2);
+    assertEquals(sketch1.getN(), 2L * n);
+    assertEquals(sketch1.getMinValue(), Integer.valueOf(0));
+    assertEquals(sketch1.getMaxValue(), Integer.valueOf((2 * n) - 1));
+    assertEquals(sketch1.getQuantile(0.5), n, n * 0.02);
+    assertEquals(sketch1.getNormalizedRankError(false), sketch2.getNormalizedRankError(false));
+  }
+
+  @Test
+  public void serializeDeserialize() {
+    final ArrayOfStringsSerDe serDe = new ArrayOfStringsSerDe();
+    final KllItemsSketch<String> sketch1 = new KllItemsSketch<>(Comparator.naturalOrder());
+    // empty
+    KllItemsSketch<String> sketch2 =
+        KllItemsSketch.heapify(Memory.wrap(sketch1.toByteArray(serDe)), Comparator.naturalOrder(),
+            serDe);
+    assertTrue(sketch2.isEmpty());
+    // single item
+    sketch1.update("a");
+    sketch2 = KllItemsSketch.heapify(Memory.wrap(sketch1.toByteArray(serDe)),
+        Comparator.naturalOrder(), serDe);
+    assertEquals(sketch2.getN(), 1);
+    assertEquals(sketch2.getMinValue(), "a");
+    assertEquals(sketch2.getMaxValue(), "a");
+    // estimation mode
+    for (int i = 0; i < 1000; i++) {
+      sketch1.update(Integer.toString(i));
+    }
+    sketch2 = KllItemsSketch.heapify(Memory.wrap(sketch1.toByteArray(serDe)),
+        Comparator.naturalOrder(), serDe);
+    assertEquals(sketch2.getN(), sketch1.getN());
+    assertEquals(sketch2.getNumRetained(), sketch1.getNumRetained());
+    assertEquals(sketch2.getMinValue(), sketch1.getMinValue());
+    assertEquals(sketch2.getMaxValue(), sketch1.getMaxValue());
+    assertEquals(sketch2.getQuantile(0.5), sketch1.getQuantile(0.5));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void heapifyFloatsSketchImage() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(1);
+    KllItemsSketch.heapify(Memory.wrap(sketch.toByteArray()), Comparator.<String>naturalOrder(),
+        new ArrayOfStringsSerDe());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void outOfOrderSplitPoints() {
+    final KllItemsSketch<String> sketch = new KllItemsSketch<>(Comparator.naturalOrder());
+    sketch.update("a");
+    sketch.getCDF(new String[] {"b", "a"});
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class KllLongsSketchTest {
+
+  private static final double PMF_EPS_FOR_K_256 = 0.013; // PMF rank error (epsilon) for k=256
+
+  @Test
+  public void empty() {
+    final KllLongsSketch sketch = new KllLongsSketch();
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getN(), 0);
+    assertEquals(sketch.getNumRetained(), 0);
+    assertTrue(Double.isNaN(sketch.getRank(0)));
+    assertEquals(sketch.getMinValue(), Long.MAX_VALUE);
+    assertEquals(sketch.getMaxValue(), Long.MIN_VALUE);
+    assertNull(sketch.getQuantiles(new double[] {0}));
+    assertNull(sketch.getPMF(new long[] {0}));
+    assertNotNull(sketch.toString(true, true));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void getQuantileEmpty() {
+    new KllLongsSketch().getQuantile(0.5);
+  }
+
+  @Test
+  public void oneItem() {
+    final KllLongsSketch sketch = new KllLongsSketch();
+    sketch.update(1);
+    assertEquals(sketch.getN(), 1);
+    assertEquals(sketch.getNumRetained(), 1);
+    assertEquals(sketch.getRank(1), 0.0);
+    assertEquals(sketch.getRank(2), 1.0);
+    assertEquals(sketch.getMinValue(), 1L);
+    assertEquals(sketch.getMaxValue(), 1L);
+    assertEquals(sketch.getQuantile(0.5), 1L);
+  }
+
+  @Test
+  public void manyItemsEstimationMode() {
+    final KllLongsSketch sketch = new KllLongsSketch();
+    final int n = 1000000;
+    // values beyond the 24-bit float mantissa
+    final long base = 1L << 40;
+    for (int i = 0; i < n; i++) {
+      sketch.update(base + i);
+    }
+    assertEquals(sketch.getN(), n);
+    assertTrue(sketch.isEstimationMode());
+    for (int i = 0; i < n; i += 1000) {
+      assertEquals(sketch.getRank(base + i), (double) i / n, PMF_EPS_FOR_K_256);
+    }
+    final double[] pmf = sketch.getPMF(new long[] {base + (n / 2)});
+    assertEquals(pmf[0], 0.5, PMF_EPS_FOR_K_256);
+    assertEquals(pmf[1], 0.5, PMF_EPS_FOR_K_256);
+    assertEquals(sketch.getMinValue(), base);
+    assertEquals(sketch.getQuantile(0), base);
+    assertEquals(sketch.getMaxValue(), (base + n) - 1);
+    assertEquals(sketch.getQuantile(1), (base + n) - 1);
+    final long median = sketch.getQuantile(0.5);
+    assertEquals(median - base, n / 2, n * PMF_EPS_FOR_K_256);
+    final long[] quantiles = sketch.getQuantiles(new double[] {0, 0.5, 1});
+    assertEquals(quantiles[0], base);
+    assertEquals(quantiles[1], median);
+    assertEquals(quantiles[2], (base + n) - 1);
+  }
+
+  @Test
+  public void merge() {
+    final KllLongsSketch sketch1 = new KllLongsSketch();
+    final KllLongsSketch sketch2 = new KllLongsSketch();
+    final int n = 10000;
+    for (int i = 0; i < n; i++) {
+      sketch1.update(i);
+      sketch2.update((2 * n) - i - 1);
+    }
+    sketch1.merge(sketch2);
+    assertEquals(sketch1.getN(), 2L * n);
+    assertEquals(sketch1.getMinValue(), 0L);
+    assertEquals(sketch1.getMaxValue(), (2L * n) - 1);
+    assertEquals(sketch1.getQuantile(0.5), n, n * PMF_EPS_FOR_K_256);
+  }
+
+  @Test
+  public void mergeIntoEmpty() {
+    final KllLongsSketch sketch1 = new KllLongsSketch();
+    for (int i = 0; i < 1000000; i++) {
+      sketch1.update(i);
+    }
+    final KllLongsSketch sketch2 = new KllLongsSketch();
+    sketch2.merge(sketch1);
+    assertEquals(sketch2.getMinValue(), 0L);
+    assertEquals(sketch2.getMaxValue(), 999999L);
+  }
+
+  @Test
+  public void serializeDeserializeEmpty() {
+    final byte[] bytes = new KllLongsSketch().toByteArray();
+    final KllLongsSketch sketch = KllLongsSketch.heapify(Memory.wrap(bytes));
+    assertTrue(sketch.isEmpty());
+    assertEquals(sketch.getMinValue(), Long.MAX_VALUE);
+    assertEquals(sketch.getMaxValue(), Long.MIN_VALUE);
+    assertEquals(sketch.getSerializedSizeBytes(), 8);
+  }
+
+  @Test
+  public void serializeDeserializeOneItem() {
+    final KllLongsSketch sketch1 = new KllLongsSketch();
+    sketch1.update(Long.MAX_VALUE);
+    final byte[] bytes = sketch1.toByteArray();
+    assertEquals(bytes.length, 16);
+    final KllLongsSketch sketch2 = KllLongsSketch.heapify(Memory.wrap(bytes));
+    assertEquals(sketch2.getN(), 1);
+    assertEquals(sketch2.getMinValue(), Long.MAX_VALUE);
+    assertEquals(sketch2.getMaxValue(), Long.MAX_VALUE);
+  }
+
+  @Test
+  public void serializeDeserialize() {
+    final KllLongsSketch sketch1 = new KllLongsSketch();
+    final int n = 1000;
+    for (int i = 0; i < n; i++) {
+      sketch1.update(-i);
+    }
+    final byte[] bytes = sketch1.toByteArray();
+    assertEquals(bytes.length, sketch1.getSerializedSizeBytes());
+    final KllLongsSketch sketch2 = KllLongsSketch.heapify(Memory.wrap(bytes));
+    assertFalse(sketch2.isEmpty());
+    assertEquals(sketch2.getNumRetained(), sketch1.getNumRetained());
+    assertEquals(sketch2.getN(), sketch1.getN());
+    assertEquals(sketch2.getMinValue(), sketch1.getMinValue());
+    assertEquals(sketch2.getMaxValue(), sketch1.getMaxValue());
+    assertEquals(sketch2.getQuantile(0.5), sketch1.getQuantile(0.5));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void heapifyDoublesSketchImage() {
+    final KllDoublesSketch sketch = new KllDoublesSketch();
+    sketch.update(1);
+    sketch.update(2);
+    KllLongsSketch.heapify(Memory.wrap(sketch.toByteArray()));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void outOfOrderSplitPoints() {
+    final KllLongsSketch sketch = new KllLongsSketch();
+    sketch.update(0);
+    sketch.getCDF(new long[] {1, 0});
+  }
+
+  @Test
+  public void getMaxSerializedSizeBytes() {
+    final int sizeBytes =
+        KllLongsSketch.getMaxSerializedSizeBytes(KllLongsSketch.DEFAULT_K, 1_000_000_000);
+    assertEquals(sizeBytes, 6180);
+  }
+
+  @Test
+  public void iterator() {
+    final KllLongsSketch sketch = new KllLongsSketch();
+    for (int i = 0; i < 1000; i++) {
+      sketch.update(i);
+    }
+    final KllLongsSketchIterator it = sketch.iterator();
+    long totalWeight = 0;
+    while (it.next()) {
+      assertTrue((it.getValue() >= 0) && (it.getValue() < 1000));
+      totalWeight += it.getWeight();
+    }
+    assertEquals(totalWeight, 1000);
+  }
+
+}
@@ -24,6 +24,8 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.util.HashSet;
+import java.util.Random;
+import java.util.SplittableRandom;
 
 import org.testng.annotations.Test;
 
@@ -46,25 +48,25 @@ public class DebugUnionTest {
     UpdateDoublesSketch[] sketchArr = new UpdateDoublesSketch[numSketches];
 
     //builds the input sketches, all on heap
-    DoublesSketch.setRandom(1); //make deterministic for test
+    final Random rand = new Random(1); //make deterministic for test
     final HashSet<Double> set = new HashSet<>(); //holds input values
     for (int s = 0; s < numSketches; s++) {
-      sketchArr[s] = buildHeapSketch(sketchK, n, valueLimit, set);
+      sketchArr[s] = buildHeapSketch(sketchK, n, valueLimit, set, rand);
     }
 
     //loads the on heap union
-    DoublesSketch.setRandom(1); //make deterministic for test
-    DoublesUnion hUnion = DoublesUnion.builder().setMaxK(unionK).build();
+    DoublesUnion hUnion = DoublesUnion.builder().setMaxK(unionK)
+        .setRandom(new SplittableRandom(1)).build(); //make deterministic for test
     for (int s = 0; s < numSketches; s++) { hUnion.update(sketchArr[s]); }
     DoublesSketch hSketch = hUnion.getResult();
 
     //loads the direct union
-    DoublesSketch.setRandom(1); //make deterministic for test
     DoublesUnion dUnion;
     DoublesSketch dSketch;
     try ( WritableDirectHandle wdh = WritableMemory.allocateDirect(10_000_000) ) {
       WritableMemory wmem = wdh.get();
-      dUnion = DoublesUnion.builder().setMaxK(8).build(wmem);
+      dUnion = DoublesUnion.builder().setMaxK(8)
+          .setRandom(new SplittableRandom(1)).build(wmem); //make deterministic for test
       for (int s = 0; s < numSketches; s++) { dUnion.update(sketchArr[s]); }
       dSketch = dUnion.getResult(); //result is on heap
     }
@@ -100,10 +102,10 @@ public class DebugUnionTest {
   }
 
   private static UpdateDoublesSketch buildHeapSketch(final int k, final int n, final int valueLimit,
-      final HashSet<Double> set) {
+      final HashSet<Double> set, final Random rand) {
     final UpdateDoublesSketch uSk = DoublesSketch.builder().setK(k).build();
     for (int i = 0; i < n; i++) {
-      final double value = DoublesSketch.rand.nextInt(valueLimit) + 1;
+      final double value = rand.nextInt(valueLimit) + 1;
       uSk.update(value);
       set.add(value);
     }
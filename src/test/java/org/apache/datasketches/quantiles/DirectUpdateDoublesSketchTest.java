@@ -29,7 +29,6 @@ import static org.testng.Assert.fail;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.apache.datasketches.memory.WritableMemory;
@@ -38,11 +37,6 @@ import org.apache.datasketches.SketchesArgumentException;
 @SuppressWarnings("javadoc")
 public class DirectUpdateDoublesSketchTest {
 
-  @BeforeMethod
-  public void setUp() {
-    DoublesSketch.rand.setSeed(32749); // make sketches deterministic for testing
-  }
-
   @Test
   public void checkBigMinMax () {
     int k = 32;
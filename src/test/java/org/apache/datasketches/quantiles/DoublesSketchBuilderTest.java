@@ -22,6 +22,8 @@ package org.apache.datasketches.quantiles;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
+import java.util.SplittableRandom;
+
 import org.testng.annotations.Test;
 
 import org.apache.datasketches.memory.WritableMemory;
@@ -47,6 +49,36 @@ public class DoublesSketchBuilderTest {
     assertEquals(bldr.getK(), PreambleUtil.DEFAULT_K);
   }
 
+  @Test
+  public void checkSeededRandomIsReproducible() {
+    final DoublesSketchBuilder bldr1 = DoublesSketch.builder().setK(16).setRandom(new SplittableRandom(7));
+    final DoublesSketchBuilder bldr2 = DoublesSketch.builder().setK(16).setRandom(new SplittableRandom(7));
+    assertTrue(bldr1.getRandom() != null);
+    println(bldr1.toString());
+    final UpdateDoublesSketch heap1 = bldr1.build();
+    final UpdateDoublesSketch heap2 = bldr2.build();
+    final UpdateDoublesSketch direct1 =
+        bldr1.build(WritableMemory.allocate(DoublesSketch.getUpdatableStorageBytes(16, 100000)));
+    final UpdateDoublesSketch direct2 =
+        bldr2.build(WritableMemory.allocate(DoublesSketch.getUpdatableStorageBytes(16, 100000)));
+    for (int i = 0; i < 100000; i++) {
+      heap1.update(i);
+      heap2.update(i);
+      direct1.update(i);
+      direct2.update(i);
+    }
+    assertEquals(heap1.toByteArray(), heap2.toByteArray());
+    assertEquals(direct1.toByteArray(), direct2.toByteArray());
+
+    final DoublesUnion union1 = DoublesUnion.builder().setMaxK(16).setRandom(new SplittableRandom(3)).build();
+    final DoublesUnion union2 = DoublesUnion.builder().setMaxK(16).setRandom(new SplittableRandom(3)).build();
+    union1.update(heap1);
+    union1.update(direct1);
+    union2.update(heap2);
+    union2.update(direct2);
+    assertEquals(union1.getResult().toByteArray(), union2.getResult().toByteArray());
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
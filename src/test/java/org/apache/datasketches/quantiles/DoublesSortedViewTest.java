@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.quantiles;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.testng.annotations.Test;
+
+public class DoublesSortedViewTest {
+
+  @Test
+  public void empty() {
+    final DoublesSortedView view = DoublesSketch.builder().build().getSortedView();
+    assertTrue(view.isEmpty());
+    assertEquals(view.getN(), 0);
+    assertEquals(view.getRetainedItems(), 0);
+    assertTrue(Double.isNaN(view.getQuantile(0.5)));
+    assertNull(view.getQuantiles(new double[] {0.0, 1.0}));
+    assertTrue(Double.isNaN(view.getRank(0.0)));
+    assertNull(view.getCDF(new double[] {0.0}));
+    assertNull(view.getPMF(new double[] {0.0}));
+  }
+
+  @Test
+  public void sameResultsAsSketch() {
+    final Random rand = new Random(1);
+    for (final int n : new int[] {1, 10, 100, 1000, 100000}) {
+      final UpdateDoublesSketch sketch = DoublesSketch.builder().build();
+      for (int i = 0; i < n; i++) {
+        sketch.update(rand.nextInt(n / 2 + 1)); // with duplicates
+      }
+      checkSameResults(sketch.getSortedView(), sketch, n);
+    }
+  }
+
+  @Test
+  public void sameResultsAsCompactDirectSketch() {
+    final UpdateDoublesSketch heap = DoublesSketch.builder().build();
+    for (int i = 0; i < 10000; i++) { heap.update(i); }
+    final DoublesSketch sketch = DoublesSketch.wrap(Memory.wrap(heap.compact().toByteArray()));
+    checkSameResults(sketch.getSortedView(), sketch, 10000);
+  }
+
+  @Test
+  public void notAffectedByLaterUpdates() {
+    final UpdateDoublesSketch sketch = DoublesSketch.builder().build();
+    for (int i = 1; i <= 100; i++) { sketch.update(i); }
+    final DoublesSortedView view = sketch.getSortedView();
+    for (int i = 101; i <= 1000; i++) { sketch.update(i); }
+    assertEquals(view.getN(), 100);
+    assertEquals(view.getMaxValue(), 100.0);
+    assertEquals(view.getQuantile(0.5), 51.0);
+    assertEquals(view.getRank(51.0), 0.5);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void fractionOutOfRange() {
+    final UpdateDoublesSketch sketch = DoublesSketch.builder().build();
+    sketch.update(1.0);
+    sketch.getSortedView().getQuantile(1.1);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void splitPointsOutOfOrder() {
+    final UpdateDoublesSketch sketch = DoublesSketch.builder().build();
+    sketch.update(1.0);
+    sketch.getSortedView().getCDF(new double[] {2.0, 1.0});
+  }
+
+  private static void checkSameResults(final DoublesSortedView view,
+      final DoublesSketch sketch, final int n) {
+    assertEquals(view.getN(), sketch.getN());
+    assertEquals(view.getRetainedItems(), sketch.getRetainedItems());
+    assertEquals(view.getMinValue(), sketch.getMinValue());
+    assertEquals(view.getMaxValue(), sketch.getMaxValue());
+    final double[] fractions = {0.0, 0.001, 0.1, 0.25, 0.5, 0.9, 0.99, 0.999, 1.0};
+    assertEquals(view.getQuantiles(fractions), sketch.getQuantiles(fractions));
+    final double[] splitPoints = new double[20];
+    for (int i = 0; i < splitPoints.length; i++) {
+      splitPoints[i] = ((double) i * n) / (2 * splitPoints.length) - 0.5;
+      assertEquals(view.getRank(splitPoints[i]), sketch.getRank(splitPoints[i]));
+      assertEquals(view.getRank(i), sketch.getRank(i));
+    }
+    assertEquals(view.getCDF(splitPoints), sketch.getCDF(splitPoints));
+    assertEquals(view.getPMF(splitPoints), sketch.getPMF(splitPoints));
+  }
+
+}
@@ -110,7 +110,6 @@ public class ForwardCompatibilityTest {
   }
 
   private static void getAndCheck(String ver, int n, double quantile) {
-    DoublesSketch.rand.setSeed(131); //make deterministic
     //create fileName
     int k = 128;
     double nf = 0.5;
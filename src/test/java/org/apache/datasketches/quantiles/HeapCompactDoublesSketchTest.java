@@ -25,7 +25,6 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.apache.datasketches.memory.Memory;
@@ -35,11 +34,6 @@ import org.apache.datasketches.SketchesArgumentException;
 @SuppressWarnings("javadoc")
 public class HeapCompactDoublesSketchTest {
 
-  @BeforeMethod
-  public void setUp() {
-    DoublesSketch.rand.setSeed(32749); // make sketches deterministic for testing
-  }
-
   @Test
   public void heapifyFromUpdateSketch() {
     final int k = 4;
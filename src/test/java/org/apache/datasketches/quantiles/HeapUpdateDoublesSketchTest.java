@@ -33,10 +33,11 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 
 import org.testng.Assert;
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.apache.datasketches.memory.Memory;
@@ -47,11 +48,6 @@ import org.apache.datasketches.SketchesArgumentException;
 @SuppressWarnings("javadoc")
 public class HeapUpdateDoublesSketchTest {
 
-  @BeforeMethod
-  public void setUp() {
-    DoublesSketch.rand.setSeed(32749); // make sketches deterministic for testing
-  }
-
   // Please note that this is a randomized test that could probabilistically fail
   // if we didn't set the seed. (The probability of failure could be reduced by increasing k.)
   // Setting the seed has now made it deterministic.
@@ -1133,4 +1129,80 @@ public class HeapUpdateDoublesSketchTest {
     //System.err.print(s); //disable here
   }
 
+  @Test
+  public void bulkUpdateMatchesSingleUpdates() {
+    final int k = 128;
+    final int n = 10000;
+    final double[] values = new double[n + 10];
+    for (int i = 0; i < values.length; i++) { values[i] = i; }
+    final UpdateDoublesSketch single = DoublesSketch.builder().setK(k).build();
+    for (int i = 5; i < (n + 5); i++) { single.update(values[i]); }
+    final UpdateDoublesSketch bulk = DoublesSketch.builder().setK(k).build();
+    bulk.update(values, 5, 7);
+    bulk.update(values, 12, n - 7);
+    assertEquals(bulk.getN(), single.getN());
+    assertEquals(bulk.getMinValue(), 5.0);
+    assertEquals(bulk.getMaxValue(), n + 4.0);
+    assertEquals(bulk.getBaseBufferCount(), single.getBaseBufferCount());
+    assertEquals(bulk.getBitPattern(), single.getBitPattern());
+    assertEquals(bulk.getRetainedItems(), single.getRetainedItems());
+    assertEquals(bulk.getQuantile(0.5), n / 2, n * 0.02);
+  }
+
+  @Test
+  public void bulkUpdateIgnoresNaNs() {
+    final UpdateDoublesSketch sketch = DoublesSketch.builder().build();
+    sketch.update(new double[] {Double.NaN}, 0, 1);
+    assertTrue(sketch.isEmpty());
+    sketch.update(new double[] {Double.NaN, 3.0, Double.NaN, 1.0, 2.0}, 0, 5);
+    assertEquals(sketch.getN(), 3);
+    assertEquals(sketch.getMinValue(), 1.0);
+    assertEquals(sketch.getMaxValue(), 3.0);
+    assertEquals(sketch.getQuantile(0.5), 2.0);
+  }
+
+  @Test
+  public void bulkUpdateFromBuffers() {
+    final int n = 3000;
+    final DoubleBuffer heapBuf = DoubleBuffer.allocate(n);
+    final DoubleBuffer directBuf = ByteBuffer.allocateDirect(n * Double.BYTES)
+        .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    for (int i = 0; i < n; i++) {
+      heapBuf.put(i);
+      directBuf.put(i);
+    }
+    heapBuf.flip();
+    directBuf.flip();
+    final UpdateDoublesSketch sketch1 = DoublesSketch.builder().build();
+    sketch1.update(heapBuf);
+    final UpdateDoublesSketch sketch2 = DoublesSketch.builder().build();
+    sketch2.update(directBuf);
+    assertFalse(heapBuf.hasRemaining());
+    assertFalse(directBuf.hasRemaining());
+    assertEquals(sketch1.getN(), n);
+    assertEquals(sketch2.getN(), n);
+    assertEquals(sketch1.getRetainedItems(), sketch2.getRetainedItems());
+    assertEquals(sketch2.getMinValue(), 0.0);
+    assertEquals(sketch2.getMaxValue(), n - 1.0);
+  }
+
+  @Test
+  public void directBulkUpdate() {
+    final int n = 2000;
+    final double[] values = new double[n];
+    for (int i = 0; i < n; i++) { values[i] = i; }
+    final UpdateDoublesSketch sketch = DoublesSketch.builder()
+        .build(WritableMemory.allocate(DoublesSketch.getUpdatableStorageBytes(128, n)));
+    sketch.update(values, 0, n);
+    assertEquals(sketch.getN(), n);
+    assertEquals(sketch.getMinValue(), 0.0);
+    assertEquals(sketch.getMaxValue(), n - 1.0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void bulkUpdateOutOfBounds() {
+    final UpdateDoublesSketch sketch = DoublesSketch.builder().build();
+    sketch.update(new double[10], -1, 2);
+  }
+
 }
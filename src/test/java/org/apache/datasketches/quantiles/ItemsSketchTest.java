@@ -23,10 +23,11 @@ import static org.testng.Assert.assertEquals;
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.function.Function;
 
 import org.testng.Assert;
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.apache.datasketches.memory.Memory;
@@ -40,11 +41,6 @@ import org.apache.datasketches.SketchesArgumentException;
 @SuppressWarnings("javadoc")
 public class ItemsSketchTest {
 
-  @BeforeMethod
-  public void setUp() {
-    ItemsSketch.rand.setSeed(32749); // make sketches deterministic for testing
-  }
-
   @Test
   public void empty() {
     ItemsSketch<String> sketch = ItemsSketch.getInstance(128, Comparator.naturalOrder());
@@ -533,10 +529,11 @@ public class ItemsSketchTest {
           }
         }
     );
+    final Random rand = new Random(32749);
     for (Comparator<String> c : Arrays.asList(natural, reverse, numeric)) {
       final ItemsSketch<String> sketch = ItemsSketch.getInstance(16, c);
       for (int i = 0; i < 10000; i++) {
-        sketch.update(String.valueOf(ItemsSketch.rand.nextInt(1000000)));
+        sketch.update(String.valueOf(rand.nextInt(1000000)));
       }
       final String[] quantiles = sketch.getQuantiles(100);
       final String[] sorted = Arrays.copyOf(quantiles, quantiles.length);
@@ -545,6 +542,35 @@ public class ItemsSketchTest {
     }
   }
 
+  @Test
+  public void checkSeededRandomIsReproducible() {
+    final ItemsSketch<Long> sk1 =
+        ItemsSketch.getInstance(16, Comparator.naturalOrder(), new SplittableRandom(11));
+    final ItemsSketch<Long> sk2 =
+        ItemsSketch.getInstance(16, Comparator.naturalOrder(), new SplittableRandom(11));
+    for (long i = 0; i < 10000; i++) {
+      sk1.update(i);
+      sk2.update(i);
+    }
+    final ArrayOfItemsSerDe<Long> serDe = new ArrayOfLongsSerDe();
+    assertEquals(sk1.toByteArray(serDe), sk2.toByteArray(serDe));
+    assertEquals(sk1.downSample(8).toByteArray(serDe), sk2.downSample(8).toByteArray(serDe));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void checkSeededSharedRandIsReproducible() {
+    final ArrayOfItemsSerDe<Long> serDe = new ArrayOfLongsSerDe();
+    final byte[][] images = new byte[2][];
+    for (int i = 0; i < 2; i++) {
+      ItemsSketch.rand.setSeed(11);
+      final ItemsSketch<Long> sk = ItemsSketch.getInstance(16, Comparator.naturalOrder());
+      for (long j = 0; j < 10000; j++) { sk.update(j); }
+      images[i] = sk.downSample(8).toByteArray(serDe);
+    }
+    assertEquals(images[0], images[1]);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
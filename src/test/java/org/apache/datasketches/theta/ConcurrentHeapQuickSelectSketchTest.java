@@ -29,6 +29,11 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
@@ -660,6 +665,135 @@ public class ConcurrentHeapQuickSelectSketchTest {
     assertEquals(bldr.getMaxNumLocalThreads(), 4);
   }
 
+  @Test
+  public void checkPropagationsInFlight() {
+    int lgK = 10;
+    int k = 1 << lgK;
+    int u = 50 * k;
+    UpdateSketchBuilder bldr = new UpdateSketchBuilder();
+    bldr.setLogNominalEntries(lgK);
+    bldr.setLocalLogNominalEntries(4);
+    assertEquals(bldr.getMaxLocalPropagationsInFlight(), 1);
+    assertEquals(bldr.setMaxLocalPropagationsInFlight(2), bldr);
+    assertEquals(bldr.getMaxLocalPropagationsInFlight(), 2);
+    UpdateSketch shared = bldr.buildShared();
+    UpdateSketch local = bldr.buildLocal(shared);
+    ConcurrentThetaSketch cts = (ConcurrentThetaSketch) shared;
+    assertEquals(cts.getWriterStallCount(), 0);
+    assertEquals(cts.getWriterStallNanos(), 0);
+
+    for (int i = 0; i < u; i++) { local.update(i); }
+    waitForBgPropagationToComplete(shared);
+
+    double est = shared.getEstimate();
+    assertTrue(est <= shared.getUpperBound(3) && est >= shared.getLowerBound(3));
+    assertEquals(est, u, u * 0.1);
+    assertTrue(cts.getWriterStallCount() >= 0);
+    assertTrue(cts.getWriterStallNanos() >= 0);
+    assertTrue((cts.getWriterStallCount() > 0) || (cts.getWriterStallNanos() == 0));
+  }
+
+  @Test
+  public void checkPropagationsInFlightDirect() {
+    int lgK = 10;
+    int u = 50 << lgK;
+    UpdateSketchBuilder bldr = new UpdateSketchBuilder();
+    bldr.setLogNominalEntries(lgK);
+    bldr.setLocalLogNominalEntries(4);
+    bldr.setMaxLocalPropagationsInFlight(3);
+    WritableMemory wmem = WritableMemory.allocate((4 << lgK) * 8 + 64);
+    UpdateSketch shared = bldr.buildShared(wmem);
+    UpdateSketch local = bldr.buildLocal(shared);
+    for (int i = 0; i < u; i++) { local.update(i); }
+    waitForBgPropagationToComplete(shared);
+    assertEquals(shared.getEstimate(), u, u * 0.1);
+    ConcurrentThetaSketch cts = (ConcurrentThetaSketch) shared;
+    assertTrue(cts.getWriterStallNanos() >= 0);
+    local.reset();
+    for (int i = u; i < (2 * u); i++) { local.update(i); }
+    waitForBgPropagationToComplete(shared);
+    assertEquals(shared.getEstimate(), 2 * u, u * 0.2);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBadPropagationsInFlight() {
+    new UpdateSketchBuilder().setMaxLocalPropagationsInFlight(0);
+  }
+
+  @Test
+  public void checkPropagationExecutor() throws InterruptedException {
+    int lgK = 10;
+    int u = 20 << lgK;
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    AtomicInteger runs = new AtomicInteger();
+    UpdateSketchBuilder bldr = new UpdateSketchBuilder();
+    bldr.setLogNominalEntries(lgK);
+    bldr.setLocalLogNominalEntries(4);
+    assertEquals(bldr.getPropagationExecutor(), null);
+    assertEquals(bldr.setPropagationExecutor(r -> { runs.incrementAndGet(); pool.execute(r); }), bldr);
+    UpdateSketch shared1 = bldr.buildShared();
+    UpdateSketch shared2 = bldr.buildShared(WritableMemory.allocate((4 << lgK) * 8 + 64));
+    UpdateSketch local1 = bldr.buildLocal(shared1);
+    UpdateSketch local2 = bldr.buildLocal(shared2);
+    for (int i = 0; i < u; i++) {
+      local1.update(i);
+      local2.update(i + u);
+    }
+    ConcurrentThetaSketch cts1 = (ConcurrentThetaSketch) shared1;
+    ConcurrentThetaSketch cts2 = (ConcurrentThetaSketch) shared2;
+    assertTrue(cts1.awaitTermination(10, TimeUnit.SECONDS));
+    assertTrue(cts2.awaitTermination(10, TimeUnit.SECONDS));
+    assertTrue(runs.get() > 0);
+    assertEquals(shared1.getEstimate(), u, u * 0.1);
+    assertEquals(shared2.getEstimate(), u, u * 0.1);
+
+    //closed sketches propagate on the writing thread, and a shut down executor is tolerated
+    assertFalse(cts1.isClosed());
+    cts1.close();
+    assertTrue(cts1.isClosed());
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    for (int i = u; i < (2 * u); i++) {
+      local1.update(i);
+      local2.update(i + u);
+    }
+    assertTrue(cts1.awaitTermination(0, TimeUnit.NANOSECONDS));
+    assertTrue(cts2.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(shared1.getEstimate(), 2 * u, u * 0.2);
+    assertEquals(shared2.getEstimate(), 2 * u, u * 0.2);
+    cts2.close();
+  }
+
+  @Test
+  public void checkClosedSketchSkipsExecutor() {
+    UpdateSketchBuilder bldr = new UpdateSketchBuilder();
+    bldr.setLogNominalEntries(8);
+    bldr.setLocalLogNominalEntries(4);
+    bldr.setPropagationExecutor(r -> { throw new RejectedExecutionException(); });
+    UpdateSketch shared = bldr.buildShared();
+    UpdateSketch local = bldr.buildLocal(shared);
+    try (ConcurrentThetaSketch cts = (ConcurrentThetaSketch) shared) {
+      for (int i = 0; i < 1000; i++) { local.update(i); }
+      assertFalse(cts.isClosed());
+    }
+    assertEquals(shared.getEstimate(), 1000, 1000 * 0.3);
+    assertTrue(((ConcurrentThetaSketch) shared).isClosed());
+  }
+
+  @Test
+  public void checkDefaultExecutor() {
+    ExecutorService two = ConcurrentPropagationService.getDefaultExecutor(2);
+    ExecutorService three = ConcurrentPropagationService.getDefaultExecutor(3);
+    // alternating pool sizes must not replace the pools
+    assertTrue(three != two);
+    assertTrue(ConcurrentPropagationService.getDefaultExecutor(2) == two);
+    assertTrue(ConcurrentPropagationService.getDefaultExecutor(3) == three);
+    UpdateSketchBuilder bldr = new UpdateSketchBuilder();
+    assertTrue(bldr.toString().contains("default"));
+    bldr.setPropagationExecutor(Runnable::run);
+    assertFalse(bldr.toString().contains("PropagationExecutor\tdefault"));
+  }
+
   @Test(expectedExceptions = UnsupportedOperationException.class)
   public void checkToByteArray() {
     SharedLocal sl = new SharedLocal();
@@ -741,8 +875,6 @@ public class ConcurrentHeapQuickSelectSketchTest {
     }
     ConcurrentSharedThetaSketch csts = (ConcurrentSharedThetaSketch)shared;
     csts.awaitBgPropagationTermination();
-    ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
-    csts.initBgPropagationService();
   }
 
 }
@@ -21,9 +21,16 @@ package org.apache.datasketches.theta;
 
 import static org.apache.datasketches.theta.JaccardSimilarity.exactlyEqual;
 import static org.apache.datasketches.theta.JaccardSimilarity.jaccard;
+import static org.apache.datasketches.theta.JaccardSimilarity.jaccardMatrix;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.datasketches.memory.Memory;
 import org.testng.annotations.Test;
 
 /**
@@ -234,6 +241,61 @@ public class JaccardSimilarityTest {
     println(result[0] + ", " + result[1] + ", " + result[2]);
   }
 
+  @Test
+  public void checkOrderedCompactMatchesGeneralPath() {
+    int[][] cases = { //{kA, nA, kB, offsetB, nB}
+        {4096, 1000, 4096, 500, 1000},
+        {4096, 4096, 4096, 0, 4096},
+        {4096, 100000, 4096, 0, 100000},
+        {4096, 100000, 1024, 50000, 200000},
+        {512, 1 << 20, 4096, 0, 1 << 18},
+        {4096, 1, 4096, 0, 1},
+        {4096, 1, 4096, 1, 1},
+        {4096, 10, 4096, 10000, 1000000},
+    };
+    for (int[] c : cases) {
+      UpdateSketch skA = UpdateSketch.builder().setNominalEntries(c[0]).build();
+      UpdateSketch skB = UpdateSketch.builder().setNominalEntries(c[2]).build();
+      for (int i = 0; i < c[1]; i++) { skA.update(i); }
+      for (int i = 0; i < c[4]; i++) { skB.update(c[3] + i); }
+      //unordered compact sketches take the path through the Union and Intersection
+      double[] expected = jaccard(skA.compact(false, null), skB.compact(false, null));
+      CompactSketch heapA = skA.compact(true, null);
+      CompactSketch heapB = skB.compact(true, null);
+      Sketch directA = Sketch.wrap(Memory.wrap(heapA.toByteArray()));
+      Sketch directB = Sketch.wrap(Memory.wrap(heapB.toByteArray()));
+      assertEquals(jaccard(heapA, heapB), expected);
+      assertEquals(jaccard(directA, directB), expected);
+      assertEquals(jaccard(heapA, directB), expected);
+      assertEquals(jaccard(directB, heapA), expected);
+    }
+  }
+
+  @Test
+  public void checkJaccardMatrix() {
+    List<Sketch> sketches = new ArrayList<>();
+    for (int s = 0; s < 60; s++) {
+      UpdateSketch sk = UpdateSketch.builder().setNominalEntries(1024).build();
+      for (int i = 0; i < (1000 * (s % 7)); i++) { sk.update((s * 300) + i); }
+      //a mix of update, unordered and ordered compact sketches
+      sketches.add(((s % 3) == 0) ? sk : sk.compact((s % 3) == 1, null));
+    }
+    double[][] parallel = jaccardMatrix(sketches);
+    double[][] serial = jaccardMatrix(sketches, null);
+    ForkJoinPool pool = new ForkJoinPool(3);
+    double[][] ownPool = jaccardMatrix(sketches, pool);
+    pool.shutdown();
+    for (int i = 0; i < sketches.size(); i++) {
+      assertEquals(serial[i][i], 1.0);
+      for (int j = 0; j < sketches.size(); j++) {
+        double expected = jaccard(sketches.get(i), sketches.get(j))[1];
+        assertEquals(serial[i][j], expected, 1E-12);
+        assertEquals(parallel[i][j], serial[i][j]);
+        assertEquals(ownPool[i][j], serial[i][j]);
+      }
+    }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
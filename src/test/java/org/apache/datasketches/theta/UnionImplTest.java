@@ -26,6 +26,11 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.Util;
 import org.apache.datasketches.memory.Memory;
@@ -266,6 +271,121 @@ public class UnionImplTest {
     //println(csk.toString(true, true, 1, true));
   }
 
+  @Test
+  public void checkUpdateIterableMatchesSequentialUpdates() {
+    final int lgK = 9;
+    final List<Sketch> sketches = new ArrayList<>();
+    long v = 0;
+    for (int i = 0; i < 300; i++) {
+      final UpdateSketch sk = Sketches.updateSketchBuilder().setLogNominalEntries(lgK - (i % 3))
+          .build();
+      final int n = (i % 7 == 0) ? 1 : (i % 5 == 0) ? 0 : 50 * (i % 40);
+      for (int j = 0; j < n; j++) { sk.update(v++); }
+      v -= n / 3; //overlap with the next sketch
+      switch (i % 4) {
+        case 0: sketches.add(sk.compact()); break; //heap ordered, or single item or empty
+        case 1: sketches.add(Sketch.wrap(Memory.wrap(sk.compact(true, null).toByteArray()))); break;
+        case 2: sketches.add(sk.compact(false, null)); break;
+        default: sketches.add(sk); break;
+      }
+    }
+    sketches.add(null);
+    checkSameResult(sketches, lgK, false);
+    checkSameResult(sketches, lgK, true);
+    checkSameResult(sketches, 4, false);
+    checkSameResult(sketches, 4, true);
+    checkSameResult(sketches.subList(0, 10), 12, false);
+  }
+
+  private static void checkSameResult(final List<Sketch> sketches, final int lgK,
+      final boolean direct) {
+    final SetOperationBuilder bldr = SetOperation.builder().setNominalEntries(1 << lgK);
+    final Union sequential = direct
+        ? bldr.buildUnion(WritableMemory.allocate(SetOperation.getMaxUnionBytes(1 << lgK)))
+        : bldr.buildUnion();
+    for (Sketch sk : sketches) { sequential.update(sk); }
+    final Union batch = direct
+        ? bldr.buildUnion(WritableMemory.allocate(SetOperation.getMaxUnionBytes(1 << lgK)))
+        : bldr.buildUnion();
+    final CompactSketch expected = sequential.getResult();
+    final CompactSketch result = batch.union(sketches);
+    assertEquals(result.getThetaLong(), expected.getThetaLong());
+    assertEquals(result.getRetainedEntries(), expected.getRetainedEntries());
+    assertTrue(Arrays.equals(result.getCache(), expected.getCache()));
+    assertEquals(result.isEmpty(), expected.isEmpty());
+
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final Union parallel = direct
+          ? bldr.buildUnion(WritableMemory.allocate(SetOperation.getMaxUnionBytes(1 << lgK)))
+          : bldr.buildUnion();
+      final CompactSketch parallelResult = parallel.union(sketches, pool);
+      assertEquals(parallelResult.getThetaLong(), expected.getThetaLong());
+      assertTrue(Arrays.equals(parallelResult.getCache(), expected.getCache()));
+      assertTrue(Arrays.equals(bldr.parallelUnion(sketches, pool).getCache(), expected.getCache()));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void checkParallelMergeMatchesSequentialMerge() {
+    final ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      //many small exact mode sketches, whose union is far larger than k
+      final List<Sketch> small = new ArrayList<>();
+      for (int i = 0; i < 400; i++) {
+        final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(1024).build();
+        for (int j = 0; j < 500; j++) { sk.update((i * 300) + j); }
+        small.add((i % 2) == 0 ? sk.compact()
+            : Sketch.wrap(Memory.wrap(sk.compact(true, null).toByteArray())));
+      }
+      //a few large estimation mode sketches
+      final List<Sketch> large = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(1 << 14).build();
+        for (int j = 0; j < 100000; j++) { sk.update((i * 50000) + j); }
+        large.add(sk.compact());
+      }
+      for (final List<Sketch> sketches : Arrays.asList(small, large)) {
+        final ThetaMultiwayMerge merge = new ThetaMultiwayMerge(sketches);
+        for (final int limit : new int[] {1, 17, 1 << 10, (1 << 12) + 1, 1 << 16, 1 << 20}) {
+          final long[] expected = merge.merge(0, Long.MAX_VALUE, limit);
+          assertTrue(Arrays.equals(merge.merge(Long.MAX_VALUE, limit, pool), expected));
+          assertTrue(Arrays.equals(merge.merge(Long.MAX_VALUE, limit, null), expected));
+          final long hi = Long.MAX_VALUE / 3;
+          assertTrue(Arrays.equals(merge.merge(hi, limit, pool), merge.merge(0, hi, limit)));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void checkUpdateIterableEmptyAndRepeated() {
+    final Union union = SetOperation.builder().buildUnion();
+    union.update(Arrays.asList(null, UpdateSketch.builder().build().compact()));
+    assertTrue(union.getResult().isEmpty());
+    union.update((Iterable<Sketch>) null);
+    assertTrue(union.getResult().isEmpty());
+
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(64).build();
+    for (int i = 0; i < 1000; i++) { sk.update(i); }
+    final CompactSketch csk = sk.compact();
+    final CompactSketch result = union.union(Arrays.asList(csk, csk, csk));
+    assertEquals(result.getEstimate(), csk.getEstimate(), 0.0);
+    union.update(Arrays.asList(csk));
+    assertEquals(union.getResult().getEstimate(), csk.getEstimate(), 0.0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkUpdateIterableSeedConflict() {
+    final UpdateSketch sk = UpdateSketch.builder().setSeed(123).build();
+    sk.update(1);
+    SetOperation.builder().buildUnion().update(Arrays.asList(sk.compact()));
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());